@@ -0,0 +1,43 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+/**
+ * The recorded responses and the locations shared by the benchmarks.
+ */
+final class Fixtures {
+
+    static final String HERE_ROUTE = "/responses/here-public-transport-route.json";
+    static final String MAPZEN_SOURCES_TO_TARGETS = "/responses/mapzen-sources-to-targets.json";
+
+    static final Location TU_BERLIN = new Location(52.51221, 13.32697);
+    static final Location ALEXANDERPLATZ = new Location(52.520699, 13.410964);
+    static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+
+    private Fixtures() {
+    }
+
+    static String read(String name) throws IOException, URISyntaxException {
+        return new String(Files.readAllBytes(Paths.get(Fixtures.class.getResource(name).toURI())),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the given number of distinct locations around the TU Berlin
+     */
+    static Location[] locations(int count) {
+        Location[] locations = new Location[count];
+        for (int i = 0; i < count; i++) {
+            locations[i] = new Location(TU_BERLIN.getLatitude() + (i / 10) * 0.001,
+                    TU_BERLIN.getLongitude() + (i % 10) * 0.001);
+        }
+        return locations;
+    }
+}
@@ -0,0 +1,66 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the latency of a request with a new {@link OkHttpClient} per request, as the wrappers used to do, with
+ * the latency of a request on the shared pooled connection of an {@link HttpTransport}, against a local mock server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpTransportBenchmark {
+
+    private final static String WALKING_ROUTE = "{\"trip\":{\"summary\":{\"time\":1234,\"length\":1.5}}}";
+
+    private MockWebServer server;
+    private HttpTransport transport;
+    private Request request;
+
+    @Setup
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(WALKING_ROUTE);
+            }
+        });
+        server.start();
+        transport = new HttpTransport.HttpTransportBuilder().build();
+        request = new Request.Builder().url(server.url("/route")).build();
+    }
+
+    @TearDown
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public String clientPerRequest() throws IOException {
+        try (Response response = new OkHttpClient().newCall(request).execute()) {
+            return response.body().string();
+        }
+    }
+
+    @Benchmark
+    public String sharedTransport() throws IOException, RoutingAPIException {
+        try (Response response = transport.execute(request)) {
+            return response.body().string();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Creates the server socket of a mock server with TCP_NODELAY set on its connections. Without it the split
+ * header/body writes of the mock server run into delayed ACKs on reused connections.
+ */
+class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+    // the backlog of a server socket which is bound without one
+    private final static int DEFAULT_BACKLOG = 50;
+
+    @Override
+    public ServerSocket createServerSocket() throws IOException {
+        return new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                Socket socket = super.accept();
+                socket.setTcpNoDelay(true);
+                return socket;
+            }
+        };
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port) throws IOException {
+        return createServerSocket(port, DEFAULT_BACKLOG, null);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+        return createServerSocket(port, backlog, null);
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+        ServerSocket socket = createServerSocket();
+        socket.bind(new InetSocketAddress(address, port), backlog);
+        return socket;
+    }
+}
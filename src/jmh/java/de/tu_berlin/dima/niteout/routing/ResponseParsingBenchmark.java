@@ -0,0 +1,65 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.RouteSummary;
+import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.*;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the recorded responses of here.com and of the Mapzen matrix service from their UTF-8 bytes, like the wrappers
+ * read the bodies of the responses. The object trees of the responses, which the wrappers used to build from the
+ * reader of the body, are the baselines of the streaming readers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private byte[] hereRoute;
+    private byte[] mapzenMatrix;
+    private JsonStreams.ValueReader<List<TimeMatrixEntry>> sourcesToTargetsReader;
+
+    @Setup
+    public void readResponses() throws Exception {
+        hereRoute = Fixtures.read(Fixtures.HERE_ROUTE).getBytes(StandardCharsets.UTF_8);
+        mapzenMatrix = Fixtures.read(Fixtures.MAPZEN_SOURCES_TO_TARGETS).getBytes(StandardCharsets.UTF_8);
+        sourcesToTargetsReader = new MapzenMatrixApiWrapper("key").getSourcesToTargetsReader();
+    }
+
+    @Benchmark
+    public RouteSummary hereRouteSummary() throws RoutingAPIException {
+        return HereWrapper.readRouteSummary(ResponseBody.create(null, hereRoute));
+    }
+
+    @Benchmark
+    public JsonObject hereRouteTree() {
+        return Json.createReader(ResponseBody.create(null, hereRoute).charStream()).readObject();
+    }
+
+    @Benchmark
+    public TimeMatrixEntry hereMatrixEntry() throws RoutingAPIException {
+        return HereWrapper.readTimeMatrixEntry(0, 0, ResponseBody.create(null, hereRoute));
+    }
+
+    /**
+     * The 40x40 matrix of the recorded response.
+     */
+    @Benchmark
+    public List<TimeMatrixEntry> mapzenSourcesToTargets() throws RoutingAPIException {
+        return JsonStreams.read(ResponseBody.create(null, mapzenMatrix), "mapzen", sourcesToTargetsReader);
+    }
+
+    @Benchmark
+    public JsonObject mapzenSourcesToTargetsTree() {
+        return Json.createReader(ResponseBody.create(null, mapzenMatrix).charStream()).readObject();
+    }
+}
@@ -0,0 +1,97 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests trips through the {@link RoutingService} from here.com and Mapzen wrappers that are pointed at a local mock
+ * server, which answers with the recorded responses. The trips answered by the route cache show the cost of the
+ * dispatch alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingServiceBenchmark {
+
+    private final static String WALKING_ROUTE = "{\"trip\":{\"summary\":{\"time\":1234,\"length\":1.5}}}";
+    // the mock server must not be throttled by the scheduler of here.com
+    private final static double UNTHROTTLED_RPS = 1_000_000;
+
+    private MockWebServer server;
+    private RoutingService routingService;
+    private RoutingService cachedRoutingService;
+
+    @Setup
+    public void startServer() throws Exception {
+        String hereRoute = Fixtures.read(Fixtures.HERE_ROUTE);
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getPath().startsWith("/here/")) {
+                    return new MockResponse().setBody(hereRoute);
+                }
+                if (request.getPath().startsWith("/valhalla/route")) {
+                    return new MockResponse().setBody(WALKING_ROUTE);
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+
+        HereWrapper hereWrapper = new HereWrapper("app-id", "app-code", HttpTransport.getDefault(),
+                new MatrixRequestExecutor.MatrixRequestExecutorBuilder(),
+                new RequestScheduler(new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                        .initialRate(UNTHROTTLED_RPS)
+                        .bounds(UNTHROTTLED_RPS, UNTHROTTLED_RPS)
+                        .build()),
+                server.url("/here/calculateroute.json").toString());
+        MapzenApiWrapper mapzenWrapper = new MapzenApiWrapper("key", HttpTransport.getDefault(),
+                server.url("/").toString() + "%s/%s");
+
+        routingService = new RoutingService.RoutingServiceBuilder()
+                .publicTransportWrapper(hereWrapper)
+                .walkingDirectionsAPI(mapzenWrapper)
+                .build();
+        cachedRoutingService = new RoutingService.RoutingServiceBuilder()
+                .publicTransportWrapper(hereWrapper)
+                .walkingDirectionsAPI(mapzenWrapper)
+                .routeCache(new InMemoryRouteCache.InMemoryRouteCacheBuilder().build())
+                .build();
+        cachedPublicTransportTripTime();
+    }
+
+    @TearDown
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public int publicTransportTripTime() throws RoutingAPIException {
+        return routingService.getTripTime(TransportMode.PUBLIC_TRANSPORT, Fixtures.TU_BERLIN,
+                Fixtures.ALEXANDERPLATZ, Fixtures.EVENING);
+    }
+
+    @Benchmark
+    public int walkingTripTime() throws RoutingAPIException {
+        return routingService.getTripTime(TransportMode.WALKING, Fixtures.TU_BERLIN, Fixtures.ALEXANDERPLATZ,
+                Fixtures.EVENING);
+    }
+
+    @Benchmark
+    public int cachedPublicTransportTripTime() throws RoutingAPIException {
+        return cachedRoutingService.getTripTime(TransportMode.PUBLIC_TRANSPORT, Fixtures.TU_BERLIN,
+                Fixtures.ALEXANDERPLATZ, Fixtures.EVENING);
+    }
+}
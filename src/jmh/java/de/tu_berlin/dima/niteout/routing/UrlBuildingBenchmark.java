@@ -0,0 +1,49 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.mapzen.MatrixType;
+import org.openjdk.jmh.annotations.*;
+
+import javax.json.JsonObject;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the urls of the requests of a here.com route and of a Mapzen matrix, whose request is passed as encoded json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlBuildingBenchmark {
+
+    /**
+     * The number of start and of destination locations of the matrix.
+     */
+    @Param({"5", "25"})
+    public int matrixLocations;
+
+    private HereWrapper hereWrapper;
+    private MapzenMatrixApiWrapper matrixWrapper;
+    private JsonObject matrixRequest;
+
+    @Setup
+    public void createWrappers() throws RoutingAPIException {
+        hereWrapper = new HereWrapper("app-id", "app-code");
+        matrixWrapper = new MapzenMatrixApiWrapper("key");
+        Location[] locations = Fixtures.locations(matrixLocations);
+        matrixRequest = matrixWrapper.buildSourcesToTargetsRequest(locations, locations);
+    }
+
+    @Benchmark
+    public String hereRouteUrl() {
+        return hereWrapper.buildURL(Fixtures.TU_BERLIN, Fixtures.ALEXANDERPLATZ, Fixtures.EVENING);
+    }
+
+    @Benchmark
+    public String mapzenMatrixUrl() throws URISyntaxException {
+        return matrixWrapper.getUrl(MatrixType.SOURCES_TO_TARGETS.getApiString(), matrixRequest);
+    }
+}
@@ -0,0 +1,209 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A rate limiter which learns the rate an external API allows from its responses.
+ * <p>
+ * The rate follows the AIMD scheme of TCP congestion control: every successful request increases it additively, by
+ * about {@code additiveIncrease} requests per second for every second of requests at the current rate, while a
+ * response that signals overload (429 or 5xx) cuts it by a factor. Cuts happen at most once per second, so a burst of
+ * throttled requests that were already in flight counts as a single signal. A {@code Retry-After} header blocks all
+ * requests until the time it names.
+ * <p>
+ * Unlike the Guava {@code RateLimiter}, a permit is never waited for inside the limiter: {@link #tryAcquire()}
+ * either grants it or tells the caller how long to wait, so a single scheduler thread can serve all waiting requests.
+ */
+public final class AdaptiveRateLimiter {
+
+    public final static double DEFAULT_INITIAL_RATE = 1;
+    public final static double DEFAULT_MIN_RATE = 0.1;
+    public final static double DEFAULT_MAX_RATE = 10;
+    public final static double DEFAULT_ADDITIVE_INCREASE = 0.1;
+    public final static double DEFAULT_DECREASE_FACTOR = 0.5;
+
+    private final static long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double minRate;
+    private final double maxRate;
+    private final double additiveIncrease;
+    private final double decreaseFactor;
+    private final LongSupplier ticker;
+
+    private double rate;
+    private long nextFreeNanos;
+    private long blockedUntilNanos;
+    private long lastDecreaseNanos;
+
+    private AdaptiveRateLimiter(AdaptiveRateLimiterBuilder builder) {
+        this.minRate = builder.minRate;
+        this.maxRate = builder.maxRate;
+        this.additiveIncrease = builder.additiveIncrease;
+        this.decreaseFactor = builder.decreaseFactor;
+        this.ticker = builder.ticker;
+        this.rate = builder.initialRate;
+
+        long now = ticker.getAsLong();
+        this.nextFreeNanos = now;
+        this.blockedUntilNanos = now;
+        this.lastDecreaseNanos = now - DECREASE_INTERVAL_NANOS;
+    }
+
+    /**
+     * Takes a permit if one is available right now.
+     * @return 0 if the permit was taken, otherwise the nanoseconds until the next permit may be available
+     */
+    synchronized long tryAcquire() {
+        long now = ticker.getAsLong();
+        long freeAt = Math.max(nextFreeNanos, blockedUntilNanos);
+        if (now < freeAt) {
+            return freeAt - now;
+        }
+        nextFreeNanos = now + intervalNanos();
+        return 0;
+    }
+
+    /**
+     * Reports a successful request, which increases the rate.
+     */
+    synchronized void onSuccess() {
+        rate = Math.min(maxRate, rate + additiveIncrease / rate);
+    }
+
+    /**
+     * Reports a request that was throttled by the API (429), which decreases the rate.
+     * @param retryAfterMillis how long the API asked to wait before the next request, or a negative value if it did
+     *                         not say
+     */
+    synchronized void onThrottled(long retryAfterMillis) {
+        long now = ticker.getAsLong();
+        decrease(now);
+        if (retryAfterMillis > 0) {
+            blockedUntilNanos = Math.max(blockedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        }
+    }
+
+    /**
+     * Reports a request that failed because the API is overloaded or unavailable (5xx), which decreases the rate.
+     */
+    synchronized void onServerError() {
+        decrease(ticker.getAsLong());
+    }
+
+    /**
+     * @return the current rate in requests per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void decrease(long now) {
+        if (now - lastDecreaseNanos < DECREASE_INTERVAL_NANOS) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        rate = Math.max(minRate, rate * decreaseFactor);
+        // the permit that was already handed out at the old rate is spaced at the new one
+        nextFreeNanos = Math.max(nextFreeNanos, now + intervalNanos());
+    }
+
+    private long intervalNanos() {
+        return (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    /**
+     * Parses the value of a {@code Retry-After} header, which is either a number of seconds or an HTTP date.
+     * @return the milliseconds to wait, or -1 if the value is missing or invalid
+     */
+    static long parseRetryAfterMillis(String value, long nowMillis) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            // not a number of seconds
+        }
+        try {
+            long millis = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, millis - nowMillis);
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public static class AdaptiveRateLimiterBuilder {
+        private double initialRate = DEFAULT_INITIAL_RATE;
+        private double minRate = DEFAULT_MIN_RATE;
+        private double maxRate = DEFAULT_MAX_RATE;
+        private double additiveIncrease = DEFAULT_ADDITIVE_INCREASE;
+        private double decreaseFactor = DEFAULT_DECREASE_FACTOR;
+        private LongSupplier ticker = System::nanoTime;
+
+        /**
+         * @param initialRate the rate in requests per second until the limiter learned a better one
+         */
+        public AdaptiveRateLimiterBuilder initialRate(double initialRate) {
+            this.initialRate = initialRate;
+            return this;
+        }
+
+        /**
+         * @param minRate the rate in requests per second which is never undercut
+         * @param maxRate the rate in requests per second which is never exceeded, e.g. the quota of the api key
+         */
+        public AdaptiveRateLimiterBuilder bounds(double minRate, double maxRate) {
+            this.minRate = minRate;
+            this.maxRate = maxRate;
+            return this;
+        }
+
+        /**
+         * @param additiveIncrease the increase of the rate in requests per second after a second of successful
+         *                         requests
+         */
+        public AdaptiveRateLimiterBuilder additiveIncrease(double additiveIncrease) {
+            this.additiveIncrease = additiveIncrease;
+            return this;
+        }
+
+        /**
+         * @param decreaseFactor the factor the rate is multiplied with when the API signals overload
+         */
+        public AdaptiveRateLimiterBuilder decreaseFactor(double decreaseFactor) {
+            this.decreaseFactor = decreaseFactor;
+            return this;
+        }
+
+        /**
+         * @param ticker the source of the current time in nanoseconds, for tests
+         */
+        AdaptiveRateLimiterBuilder ticker(LongSupplier ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public AdaptiveRateLimiter build() {
+
+            if (minRate <= 0 || maxRate < minRate) {
+                throw new IllegalArgumentException("the rates must be positive and minRate must not exceed maxRate");
+            }
+            if (initialRate < minRate || initialRate > maxRate) {
+                throw new IllegalArgumentException("initialRate must be between minRate and maxRate");
+            }
+            if (additiveIncrease < 0) {
+                throw new IllegalArgumentException("additiveIncrease cannot be negative");
+            }
+            if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+                throw new IllegalArgumentException("decreaseFactor must be between 0 and 1");
+            }
+
+            return new AdaptiveRateLimiter(this);
+        }
+    }
+}
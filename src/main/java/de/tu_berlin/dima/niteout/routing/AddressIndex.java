@@ -0,0 +1,303 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The locations of the house numbers of a local address dataset, indexed by postal code, street and house number.
+ * <p>
+ * The dataset is a CSV table with the columns of an OpenAddresses extract: {@code LON}, {@code LAT}, {@code NUMBER},
+ * {@code STREET} and {@code POSTCODE}; other columns are ignored, as are rows which miss one of these. Streets are
+ * looked up by their normalized name within a postal code, see {@link GeocodingCache#createKey}. The house numbers
+ * of a street are kept sorted in primitive arrays with their coordinates in micro degrees, so a house number is
+ * found by a binary search.
+ */
+public final class AddressIndex {
+
+    private final static double MICRO_DEGREES = 1e6;
+
+    private final Map<Integer, Map<String, Street>> postalCodes;
+    private final int streetCount;
+    private final int houseCount;
+
+    private AddressIndex(Map<Integer, Map<String, Street>> postalCodes) {
+        this.postalCodes = postalCodes;
+        int streets = 0;
+        int houses = 0;
+        for (Map<String, Street> postalCode : postalCodes.values()) {
+            streets += postalCode.size();
+            for (Street street : postalCode.values()) {
+                houses += street.numbers.length;
+            }
+        }
+        this.streetCount = streets;
+        this.houseCount = houses;
+    }
+
+    /**
+     * Loads an address dataset.
+     * @param table the CSV file of the dataset
+     */
+    public static AddressIndex load(Path table) throws RoutingAPIException {
+        Path absolute = table.toAbsolutePath();
+        return load(absolute.getParent(), absolute.getFileName().toString());
+    }
+
+    /**
+     * Loads a table of an address dataset.
+     * @param dataset a directory containing the table, or a zip archive of it
+     * @param table the name of the table within the dataset, e.g. {@code de/berlin.csv}
+     */
+    public static AddressIndex load(Path dataset, String table) throws RoutingAPIException {
+        Map<Integer, Map<String, StreetBuilder>> builders = new HashMap<>();
+        try (GtfsFeedReader reader = new GtfsFeedReader(dataset)) {
+            reader.read(table, true, row -> {
+                String number = row.get("NUMBER");
+                String street = row.get("STREET");
+                int postalCode = parsePostalCode(row.get("POSTCODE"));
+                if (number.isEmpty() || street.isEmpty() || postalCode < 0 || row.get("LAT").isEmpty() ||
+                        row.get("LON").isEmpty()) {
+                    return;
+                }
+                HouseNumber houseNumber = HouseNumber.parse(number);
+                if (houseNumber == null) {
+                    return;
+                }
+                builders.computeIfAbsent(postalCode, p -> new HashMap<>())
+                        .computeIfAbsent(GeocodingCache.normalizeStreet(street), s -> new StreetBuilder())
+                        .add(houseNumber, row.getDouble("LAT"), row.getDouble("LON"));
+            });
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not close address dataset " + dataset, e);
+        }
+
+        Map<Integer, Map<String, Street>> postalCodes = new HashMap<>(builders.size() * 2);
+        for (Map.Entry<Integer, Map<String, StreetBuilder>> postalCode : builders.entrySet()) {
+            Map<String, Street> streets = new HashMap<>(postalCode.getValue().size() * 2);
+            for (Map.Entry<String, StreetBuilder> street : postalCode.getValue().entrySet()) {
+                streets.put(street.getKey(), street.getValue().build());
+            }
+            postalCodes.put(postalCode.getKey(), streets);
+        }
+        return new AddressIndex(postalCodes);
+    }
+
+    /**
+     * Finds the location of a house number. A missing house number is interpolated between the closest house numbers
+     * on the same side of the street, or on either side if one side has none.
+     * @param maxInterpolationGap the maximum difference between the house numbers interpolated between
+     * @return the location, or {@code null} if the street is unknown or the house number can not be interpolated
+     */
+    Location find(String postalCode, String street, String number, int maxInterpolationGap) {
+        Map<String, Street> streets = postalCodes.get(parsePostalCode(postalCode));
+        Street houses = streets != null ? streets.get(GeocodingCache.normalizeStreet(street)) : null;
+        HouseNumber houseNumber = number != null ? HouseNumber.parse(number) : null;
+        if (houses == null || houseNumber == null) {
+            return null;
+        }
+        return houses.find(houseNumber, maxInterpolationGap);
+    }
+
+    /**
+     * @return the number of streets, counted once per postal code
+     */
+    public int getStreetCount() {
+        return streetCount;
+    }
+
+    /**
+     * @return the number of distinct house numbers
+     */
+    public int getHouseCount() {
+        return houseCount;
+    }
+
+    /**
+     * @return the postal code as a number, or -1 if it is not a German postal code
+     */
+    private static int parsePostalCode(String postalCode) {
+        if (postalCode == null || postalCode.isEmpty() || postalCode.length() > 5) {
+            return -1;
+        }
+        for (int i = 0; i < postalCode.length(); i++) {
+            if (!Character.isDigit(postalCode.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(postalCode);
+    }
+
+    /**
+     * A house number, split into its number and the normalized suffix which follows it, like the "a" of "12a".
+     */
+    private static class HouseNumber {
+        private final int number;
+        private final String suffix;
+
+        private HouseNumber(int number, String suffix) {
+            this.number = number;
+            this.suffix = suffix;
+        }
+
+        /**
+         * @return the house number, or {@code null} if it does not start with a number
+         */
+        static HouseNumber parse(String houseNumber) {
+            String normalized = GeocodingCache.normalizeHouseNumber(houseNumber);
+            int digits = 0;
+            while (digits < normalized.length() && digits < 9 && Character.isDigit(normalized.charAt(digits))) {
+                digits++;
+            }
+            if (digits == 0) {
+                return null;
+            }
+            return new HouseNumber(Integer.parseInt(normalized.substring(0, digits)),
+                    normalized.substring(digits).intern());
+        }
+    }
+
+    /**
+     * The house numbers of a street, sorted by number and suffix.
+     */
+    private static class Street {
+        private final int[] numbers;
+        // null if no house number of the street has a suffix
+        private final String[] suffixes;
+        private final int[] latitudes;
+        private final int[] longitudes;
+
+        private Street(int[] numbers, String[] suffixes, int[] latitudes, int[] longitudes) {
+            this.numbers = numbers;
+            this.suffixes = suffixes;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+        }
+
+        Location find(HouseNumber houseNumber, int maxInterpolationGap) {
+            int number = houseNumber.number;
+            int first = lowerBound(number);
+            if (first < numbers.length && numbers[first] == number) {
+                // the suffix, or else the number without a suffix, or else any suffix of the number
+                int match = first;
+                for (int i = first; i < numbers.length && numbers[i] == number; i++) {
+                    if (suffix(i).equals(houseNumber.suffix)) {
+                        match = i;
+                        break;
+                    }
+                }
+                return location(match);
+            }
+
+            int lower = first - 1;
+            while (lower >= 0 && numbers[lower] % 2 != number % 2) {
+                lower--;
+            }
+            int upper = first;
+            while (upper < numbers.length && numbers[upper] % 2 != number % 2) {
+                upper++;
+            }
+            if (lower < 0 || upper >= numbers.length) {
+                lower = first - 1;
+                upper = first;
+            }
+            if (lower < 0 || upper >= numbers.length || numbers[upper] - numbers[lower] > maxInterpolationGap) {
+                return null;
+            }
+            double fraction = (number - numbers[lower]) / (double) (numbers[upper] - numbers[lower]);
+            return new Location(
+                    (latitudes[lower] + fraction * (latitudes[upper] - latitudes[lower])) / MICRO_DEGREES,
+                    (longitudes[lower] + fraction * (longitudes[upper] - longitudes[lower])) / MICRO_DEGREES);
+        }
+
+        /**
+         * @return the index of the first house number which is not less than the number
+         */
+        private int lowerBound(int number) {
+            int low = 0;
+            int high = numbers.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (numbers[middle] < number) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private String suffix(int i) {
+            return suffixes != null ? suffixes[i] : "";
+        }
+
+        private Location location(int i) {
+            return new Location(latitudes[i] / MICRO_DEGREES, longitudes[i] / MICRO_DEGREES);
+        }
+    }
+
+    /**
+     * Collects the house numbers of a street while the dataset is read.
+     */
+    private static class StreetBuilder {
+        private int count;
+        private int[] numbers = new int[4];
+        private String[] suffixes = new String[4];
+        private int[] latitudes = new int[4];
+        private int[] longitudes = new int[4];
+
+        void add(HouseNumber houseNumber, double latitude, double longitude) {
+            if (count == numbers.length) {
+                numbers = Arrays.copyOf(numbers, count * 2);
+                suffixes = Arrays.copyOf(suffixes, count * 2);
+                latitudes = Arrays.copyOf(latitudes, count * 2);
+                longitudes = Arrays.copyOf(longitudes, count * 2);
+            }
+            numbers[count] = houseNumber.number;
+            suffixes[count] = houseNumber.suffix;
+            latitudes[count] = (int) Math.round(latitude * MICRO_DEGREES);
+            longitudes[count] = (int) Math.round(longitude * MICRO_DEGREES);
+            count++;
+        }
+
+        /**
+         * Sorts the house numbers and keeps the first location of a house number which occurs more than once.
+         */
+        Street build() {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            // stable, so the first of equal house numbers stays first
+            Arrays.sort(order, Comparator.<Integer>comparingInt(i -> numbers[i]).thenComparing(i -> suffixes[i]));
+
+            int distinct = 0;
+            boolean hasSuffixes = false;
+            int[] sortedNumbers = new int[count];
+            String[] sortedSuffixes = new String[count];
+            int[] sortedLatitudes = new int[count];
+            int[] sortedLongitudes = new int[count];
+            for (int i : order) {
+                if (distinct > 0 && sortedNumbers[distinct - 1] == numbers[i] &&
+                        sortedSuffixes[distinct - 1].equals(suffixes[i])) {
+                    continue;
+                }
+                sortedNumbers[distinct] = numbers[i];
+                sortedSuffixes[distinct] = suffixes[i];
+                sortedLatitudes[distinct] = latitudes[i];
+                sortedLongitudes[distinct] = longitudes[i];
+                hasSuffixes |= !suffixes[i].isEmpty();
+                distinct++;
+            }
+            return new Street(Arrays.copyOf(sortedNumbers, distinct),
+                    hasSuffixes ? Arrays.copyOf(sortedSuffixes, distinct) : null,
+                    Arrays.copyOf(sortedLatitudes, distinct), Arrays.copyOf(sortedLongitudes, distinct));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking variant of the {@link RoutingAPI}.
+ * <p>
+ * None of the methods block the calling thread for the round trip to the external APIs. The returned futures are
+ * completed on the threads of the HTTP client, and complete exceptionally with a {@link RoutingAPIException} which
+ * contains an identifier of the error.
+ */
+public interface AsyncRoutingAPI {
+
+    /**
+     * Get the amount of time (in seconds) to travel between two locations with the specified transport mode
+     * @param transportMode the mode of transport for the trip (e.g. walking, public transport)
+     * @param startLocation the location where the trip starts
+     * @param destinationLocation the location where the trip terminates
+     * @param startTime the date and time at which the trip starts
+     * @return a future of the total number of seconds required for the trip
+     * @see RoutingAPI#getTripTime(TransportMode, Location, Location, LocalDateTime)
+     */
+    CompletableFuture<Integer> getTripTimeAsync(TransportMode transportMode,
+                                                Location startLocation, Location destinationLocation,
+                                                LocalDateTime startTime);
+
+    /**
+     * Gets the summary details about a route between two locations with the specified transport mode
+     * @param transportMode the mode of transport for the trip (e.g. walking, public transport)
+     * @param startLocation the location where the trip starts
+     * @param destinationLocation the location where the trip terminates
+     * @param startTime the date and time at which the trip starts
+     * @return a future of a RouteSummary with the details about the route
+     * @see RoutingAPI#getRouteSummary(TransportMode, Location, Location, LocalDateTime)
+     */
+    CompletableFuture<RouteSummary> getRouteSummaryAsync(TransportMode transportMode,
+                                                         Location startLocation, Location destinationLocation,
+                                                         LocalDateTime startTime);
+
+    /**
+     * Gets a matrix with trip information between start and destination locations
+     * @param transportMode the mode of transport for the trip (e.g. walking, public transport)
+     * @param startLocations the locations where the trips start
+     * @param destinationLocations the locations where the trips terminate
+     * @param startTime the date and time at which the trips start
+     * @return a future of a matrix with trip information between start and destination locations
+     * @see RoutingAPI#getMatrix(TransportMode, Location[], Location[], LocalDateTime)
+     */
+    CompletableFuture<List<TimeMatrixEntry>> getMatrixAsync(TransportMode transportMode,
+                                                            Location[] startLocations, Location[] destinationLocations,
+                                                            LocalDateTime startTime);
+}
@@ -0,0 +1,462 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.util.concurrent.RateLimiter;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+import de.tu_berlin.dima.niteout.routing.model.TravelTimeMatrix;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Precomputes the matrices between a known set of venues at known departure times, so that the trips between them
+ * are answered from the {@link RouteCache} of a {@link RoutingService}, or are put into a {@link MatrixStore}.
+ * <p>
+ * The matrix of the venues is split into tiles like a matrix of an external API, and every tile of every transport
+ * mode and departure slot is a task that is requested through
+ * {@link RoutingService#getTravelTimeMatrix(TransportMode, Location[], Location[], LocalDateTime)}, one after another.
+ * The requests are subject to the rate limits of the external APIs, and the warmer can be limited to a number of
+ * tasks per second on top. A task rejected by a rate limit is retried after a growing delay; a task that fails
+ * otherwise is counted and skipped. Walking trips do not depend on the departure, so they are computed for the first
+ * slot only.
+ * <p>
+ * The completed tasks are appended to a checkpoint file, if one is set, so a run which was interrupted resumes with
+ * the first task it did not complete. The checkpoint belongs to the venues, slots, modes and tile size of the run;
+ * a checkpoint of other settings is started over.
+ */
+public class CacheWarmer {
+
+    public final static int DEFAULT_TILE_LOCATIONS = 100;
+    public final static int DEFAULT_MAX_RETRIES = 3;
+    public final static Duration DEFAULT_RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final static String CHECKPOINT_HEADER = "# warm-up ";
+
+    /**
+     * Receives the matrix of every tile, e.g. to keep the matrices of the venues outside of the route cache.
+     */
+    @FunctionalInterface
+    public interface MatrixStore {
+
+        /**
+         * @param firstRow the index of the venue of the first row of the tile
+         * @param firstColumn the index of the venue of the first column of the tile
+         */
+        void store(TransportMode transportMode, LocalDateTime departure, int firstRow, int firstColumn,
+                   TravelTimeMatrix matrix);
+    }
+
+    /**
+     * Is notified after every task.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * The immutable state of a run.
+     */
+    public static final class Progress {
+        private final int taskCount;
+        private final int completedTaskCount;
+        private final int resumedTaskCount;
+        private final int failedTaskCount;
+        private final long cellCount;
+        private final long elapsedNanos;
+
+        private Progress(int taskCount, int completedTaskCount, int resumedTaskCount, int failedTaskCount,
+                         long cellCount, long elapsedNanos) {
+            this.taskCount = taskCount;
+            this.completedTaskCount = completedTaskCount;
+            this.resumedTaskCount = resumedTaskCount;
+            this.failedTaskCount = failedTaskCount;
+            this.cellCount = cellCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getTaskCount() {
+            return taskCount;
+        }
+
+        /**
+         * @return the number of completed tasks, including those completed by an earlier run
+         */
+        public int getCompletedTaskCount() {
+            return completedTaskCount;
+        }
+
+        /**
+         * @return the number of tasks completed by an earlier run, which were skipped
+         */
+        public int getResumedTaskCount() {
+            return resumedTaskCount;
+        }
+
+        public int getFailedTaskCount() {
+            return failedTaskCount;
+        }
+
+        /**
+         * @return the number of matrix cells computed by this run, including those answered by the cache
+         */
+        public long getCellCount() {
+            return cellCount;
+        }
+
+        public Duration getElapsed() {
+            return Duration.ofNanos(elapsedNanos);
+        }
+
+        /**
+         * @return the throughput of this run
+         */
+        public double getCellsPerSecond() {
+            return elapsedNanos == 0 ? 0 : cellCount * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return whether every task has been completed
+         */
+        public boolean isComplete() {
+            return completedTaskCount == taskCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" +
+                    "completed=" + completedTaskCount + "/" + taskCount +
+                    ", failed=" + failedTaskCount +
+                    ", cells=" + cellCount +
+                    ", cellsPerSecond=" + Math.round(getCellsPerSecond()) +
+                    '}';
+        }
+    }
+
+    /**
+     * A tile of the matrix of a transport mode and departure.
+     */
+    private static final class Task {
+        private final TransportMode transportMode;
+        private final LocalDateTime departure;
+        private final MatrixTilePlanner.Tile tile;
+
+        Task(TransportMode transportMode, LocalDateTime departure, MatrixTilePlanner.Tile tile) {
+            this.transportMode = transportMode;
+            this.departure = departure;
+            this.tile = tile;
+        }
+    }
+
+    private final RoutingService routingService;
+    private final Location[] venues;
+    private final List<LocalDateTime> departures;
+    private final List<TransportMode> transportModes;
+    private final int tileLocations;
+    private final Path checkpoint;
+    private final RateLimiter rateLimiter;
+    private final int maxRetries;
+    private final Duration retryDelay;
+    private final MatrixStore matrixStore;
+    private final ProgressListener progressListener;
+
+    private CacheWarmer(CacheWarmerBuilder builder) {
+        this.routingService = builder.routingService;
+        this.venues = builder.venues;
+        this.departures = builder.departures;
+        this.transportModes = builder.transportModes;
+        this.tileLocations = builder.tileLocations;
+        this.checkpoint = builder.checkpoint;
+        this.rateLimiter = builder.tasksPerSecond > 0 ? RateLimiter.create(builder.tasksPerSecond) : null;
+        this.maxRetries = builder.maxRetries;
+        this.retryDelay = builder.retryDelay;
+        this.matrixStore = builder.matrixStore;
+        this.progressListener = builder.progressListener;
+    }
+
+    /**
+     * Computes the tasks which were not completed by an earlier run with the same checkpoint.
+     * @return the progress after the last task
+     * @throws RoutingAPIException if the checkpoint can not be read or written
+     * @throws InterruptedException if the thread was interrupted, after the task in progress was checkpointed
+     */
+    public Progress run() throws RoutingAPIException, InterruptedException {
+        List<Task> tasks = planTasks();
+        String header = CHECKPOINT_HEADER + fingerprint();
+        Set<Integer> completed = readCheckpoint(header);
+        long start = System.nanoTime();
+        int resumed = completed.size();
+        int failed = 0;
+        long cells = 0;
+        Progress progress = new Progress(tasks.size(), resumed, resumed, 0, 0, 0);
+
+        try (BufferedWriter writer = openCheckpoint(header, completed.isEmpty())) {
+            for (int k = 0; k < tasks.size(); k++) {
+                if (completed.contains(k)) {
+                    continue;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("warm-up interrupted after " + progress);
+                }
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }
+                Task task = tasks.get(k);
+                if (compute(task)) {
+                    completed.add(k);
+                    cells += (long) task.tile.getRowCount() * task.tile.getColumnCount();
+                    if (writer != null) {
+                        writer.write(Integer.toString(k));
+                        writer.newLine();
+                        writer.flush();
+                    }
+                } else {
+                    failed++;
+                }
+                progress = new Progress(tasks.size(), completed.size(), resumed, failed, cells,
+                        System.nanoTime() - start);
+                if (progressListener != null) {
+                    progressListener.onProgress(progress);
+                }
+            }
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not write warm-up checkpoint " + checkpoint, e);
+        }
+        return progress;
+    }
+
+    /**
+     * @return whether the task was completed
+     */
+    private boolean compute(Task task) throws InterruptedException {
+        MatrixTilePlanner.Tile tile = task.tile;
+        Location[] rows = Arrays.copyOfRange(venues, tile.getFirstRow(), tile.getFirstRow() + tile.getRowCount());
+        Location[] columns = Arrays.copyOfRange(venues, tile.getFirstColumn(),
+                tile.getFirstColumn() + tile.getColumnCount());
+        long delay = retryDelay.toMillis();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                TravelTimeMatrix matrix = routingService.getTravelTimeMatrix(task.transportMode, rows, columns,
+                        task.departure);
+                if (matrixStore != null) {
+                    matrixStore.store(task.transportMode, task.departure, tile.getFirstRow(), tile.getFirstColumn(),
+                            matrix);
+                }
+                return true;
+            } catch (RoutingAPIException e) {
+                if (e.getCode() != RoutingAPIException.ErrorCode.API_ERROR_RATE_LIMITED || attempt >= maxRetries) {
+                    return false;
+                }
+                TimeUnit.MILLISECONDS.sleep(delay);
+                delay *= 2;
+            }
+        }
+    }
+
+    private List<Task> planTasks() {
+        List<MatrixTilePlanner.Tile> tiles = MatrixTilePlanner.plan(venues.length, venues.length, tileLocations);
+        List<Task> tasks = new ArrayList<>();
+        for (TransportMode transportMode : transportModes) {
+            // walking trips are cached without their departure
+            List<LocalDateTime> modeDepartures = transportMode == TransportMode.WALKING ?
+                    departures.subList(0, 1) : departures;
+            for (LocalDateTime departure : modeDepartures) {
+                for (MatrixTilePlanner.Tile tile : tiles) {
+                    tasks.add(new Task(transportMode, departure, tile));
+                }
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * @return a checksum of the settings which determine the tasks
+     */
+    private String fingerprint() {
+        StringBuilder settings = new StringBuilder();
+        for (Location venue : venues) {
+            settings.append(venue.getLatitude()).append(',').append(venue.getLongitude()).append(';');
+        }
+        settings.append(departures).append(transportModes).append(tileLocations);
+        CRC32 checksum = new CRC32();
+        checksum.update(settings.toString().getBytes(StandardCharsets.UTF_8));
+        return venues.length + " venues " + departures.size() + " departures " + Long.toHexString(checksum.getValue());
+    }
+
+    /**
+     * @return the completed tasks of the checkpoint, or none if there is no checkpoint of the same settings
+     */
+    private Set<Integer> readCheckpoint(String header) throws RoutingAPIException {
+        Set<Integer> completed = new HashSet<>();
+        if (checkpoint == null || !Files.exists(checkpoint)) {
+            return completed;
+        }
+        try {
+            List<String> lines = Files.readAllLines(checkpoint, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(header)) {
+                return completed;
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                try {
+                    completed.add(Integer.parseInt(line.trim()));
+                } catch (NumberFormatException e) {
+                    // a line torn by an interruption, its task is computed again
+                }
+            }
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not read warm-up checkpoint " + checkpoint, e);
+        }
+        return completed;
+    }
+
+    private BufferedWriter openCheckpoint(String header, boolean startOver) throws IOException {
+        if (checkpoint == null) {
+            return null;
+        }
+        if (startOver) {
+            BufferedWriter writer = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8);
+            writer.write(header);
+            writer.newLine();
+            writer.flush();
+            return writer;
+        }
+        BufferedWriter writer = Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        // a torn line must not swallow the first task of this run
+        writer.newLine();
+        return writer;
+    }
+
+    public static class CacheWarmerBuilder {
+        private RoutingService routingService;
+        private Location[] venues;
+        private List<LocalDateTime> departures;
+        private List<TransportMode> transportModes = Arrays.asList(TransportMode.values());
+        private int tileLocations = DEFAULT_TILE_LOCATIONS;
+        private Path checkpoint;
+        private double tasksPerSecond;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private Duration retryDelay = DEFAULT_RETRY_DELAY;
+        private MatrixStore matrixStore;
+        private ProgressListener progressListener;
+
+        /**
+         * @param routingService the service which computes the matrices and whose cache is warmed up
+         */
+        public CacheWarmerBuilder routingService(RoutingService routingService) {
+            this.routingService = routingService;
+            return this;
+        }
+
+        public CacheWarmerBuilder venues(Location... venues) {
+            this.venues = venues.clone();
+            return this;
+        }
+
+        /**
+         * @param departures the departure slots, e.g. every 15 minutes of an evening
+         */
+        public CacheWarmerBuilder departures(List<LocalDateTime> departures) {
+            this.departures = new ArrayList<>(departures);
+            return this;
+        }
+
+        /**
+         * @param transportModes the modes whose matrices are computed, by default all of them
+         */
+        public CacheWarmerBuilder transportModes(TransportMode... transportModes) {
+            this.transportModes = Arrays.asList(transportModes.clone());
+            return this;
+        }
+
+        /**
+         * @param tileLocations the maximum number of start and destination locations of a task
+         */
+        public CacheWarmerBuilder tileLocations(int tileLocations) {
+            this.tileLocations = tileLocations;
+            return this;
+        }
+
+        /**
+         * @param checkpoint the file the completed tasks are written to and resumed from
+         */
+        public CacheWarmerBuilder checkpoint(Path checkpoint) {
+            this.checkpoint = checkpoint;
+            return this;
+        }
+
+        /**
+         * @param tasksPerSecond the maximum number of tasks started per second, or 0 for no limit beyond the rate
+         *                       limits of the external APIs
+         */
+        public CacheWarmerBuilder tasksPerSecond(double tasksPerSecond) {
+            this.tasksPerSecond = tasksPerSecond;
+            return this;
+        }
+
+        /**
+         * @param maxRetries the number of times a task rejected by a rate limit is retried
+         * @param retryDelay the delay before the first retry, which doubles with every retry
+         */
+        public CacheWarmerBuilder retries(int maxRetries, Duration retryDelay) {
+            this.maxRetries = maxRetries;
+            this.retryDelay = retryDelay;
+            return this;
+        }
+
+        public CacheWarmerBuilder matrixStore(MatrixStore matrixStore) {
+            this.matrixStore = matrixStore;
+            return this;
+        }
+
+        public CacheWarmerBuilder progressListener(ProgressListener progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public CacheWarmer build() {
+
+            if (routingService == null) {
+                throw new IllegalArgumentException("routingService is not set");
+            }
+            if (routingService.getRouteCache() == null && matrixStore == null) {
+                throw new IllegalArgumentException("the routing service has no route cache and no matrixStore is set");
+            }
+            if (venues == null || venues.length == 0) {
+                throw new IllegalArgumentException("venues are not set");
+            }
+            if (departures == null || departures.isEmpty()) {
+                throw new IllegalArgumentException("departures are not set");
+            }
+            if (transportModes.isEmpty()) {
+                throw new IllegalArgumentException("transportModes are not set");
+            }
+            if (tileLocations < 2) {
+                throw new IllegalArgumentException("tileLocations must be at least 2");
+            }
+            if (tasksPerSecond < 0) {
+                throw new IllegalArgumentException("tasksPerSecond cannot be negative");
+            }
+            if (maxRetries < 0 || retryDelay.isNegative()) {
+                throw new IllegalArgumentException("retries cannot be negative");
+            }
+
+            return new CacheWarmer(this);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+import de.tu_berlin.dima.niteout.routing.model.TravelTimeMatrix;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Looks up the cells of a time matrix in a {@link RouteCache} and computes which part of the matrix still has to be
+ * requested.
+ * <p>
+ * The missing part is the sub-matrix of all start locations and all destination locations that have at least one
+ * missing cell. Once it is computed, {@link #complete(List)} or {@link #complete(TravelTimeMatrix)} caches its cells
+ * and merges them with the cached ones.
+ */
+class CachedMatrix {
+
+    private final static double KILOMETERS_PER_MILE = 1.609344;
+
+    private final RouteCache routeCache;
+    private final RouteCacheKey[][] keys;
+    private final CachedRoute[][] cells;
+    private final int destinationCount;
+    private final int[] missingStartIndices;
+    private final int[] missingDestinationIndices;
+    private final Location[] missingStartLocations;
+    private final Location[] missingDestinationLocations;
+
+    CachedMatrix(RouteCache routeCache, TransportMode transportMode,
+                 Location[] startLocations, Location[] destinationLocations, LocalDateTime departure) {
+        this.routeCache = routeCache;
+        this.keys = new RouteCacheKey[startLocations.length][destinationLocations.length];
+        this.cells = new CachedRoute[startLocations.length][destinationLocations.length];
+        this.destinationCount = destinationLocations.length;
+
+        boolean[] startMissing = new boolean[startLocations.length];
+        boolean[] destinationMissing = new boolean[destinationLocations.length];
+        for (int i = 0; i < startLocations.length; i++) {
+            for (int j = 0; j < destinationLocations.length; j++) {
+                keys[i][j] = routeCache.createKey(transportMode, startLocations[i], destinationLocations[j], departure);
+                CachedRoute cell = routeCache.get(keys[i][j]);
+                if (cell != null && cell.hasDistance()) {
+                    cells[i][j] = cell;
+                } else {
+                    startMissing[i] = true;
+                    destinationMissing[j] = true;
+                }
+            }
+        }
+
+        this.missingStartIndices = indicesOf(startMissing);
+        this.missingDestinationIndices = indicesOf(destinationMissing);
+        this.missingStartLocations = select(startLocations, missingStartIndices);
+        this.missingDestinationLocations = select(destinationLocations, missingDestinationIndices);
+    }
+
+    /**
+     * @return whether all cells were cached, so nothing has to be requested
+     */
+    boolean isComplete() {
+        return missingStartIndices.length == 0;
+    }
+
+    Location[] getMissingStartLocations() {
+        return missingStartLocations;
+    }
+
+    Location[] getMissingDestinationLocations() {
+        return missingDestinationLocations;
+    }
+
+    /**
+     * @param missingEntries the matrix between the missing start and destination locations, indexed relative to
+     *                       {@link #getMissingStartLocations()} and {@link #getMissingDestinationLocations()}
+     * @return the complete matrix in row-major order
+     */
+    List<TimeMatrixEntry> complete(List<TimeMatrixEntry> missingEntries) {
+        for (TimeMatrixEntry entry : missingEntries) {
+            put(entry.getFromIndex(), entry.getToIndex(),
+                    CachedRoute.ofMatrixCell(entry.getTime(), entry.getDistance(), entry.getUnits()));
+        }
+
+        List<TimeMatrixEntry> matrix = new ArrayList<>(cells.length * (cells.length == 0 ? 0 : cells[0].length));
+        for (int i = 0; i < cells.length; i++) {
+            for (int j = 0; j < cells[i].length; j++) {
+                CachedRoute cell = cells[i][j];
+                if (cell != null) {
+                    matrix.add(new TimeMatrixEntry(i, j, cell.getTime(), cell.getDistance(), cell.getUnits()));
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Like {@link #complete(List)}, but with matrices in flat primitive arrays.
+     * @param missingMatrix the matrix between the missing start and destination locations
+     * @return the complete matrix, in the units of the missing matrix
+     */
+    TravelTimeMatrix complete(TravelTimeMatrix missingMatrix) {
+        for (int i = 0; i < missingMatrix.getRowCount(); i++) {
+            for (int j = 0; j < missingMatrix.getColumnCount(); j++) {
+                if (missingMatrix.hasCell(i, j)) {
+                    put(i, j, CachedRoute.ofMatrixCell(missingMatrix.time(i, j), missingMatrix.distance(i, j),
+                            missingMatrix.getUnits()));
+                }
+            }
+        }
+
+        TravelTimeMatrix matrix = new TravelTimeMatrix(cells.length, destinationCount, missingMatrix.getUnits());
+        for (int i = 0; i < cells.length; i++) {
+            for (int j = 0; j < cells[i].length; j++) {
+                CachedRoute cell = cells[i][j];
+                if (cell != null) {
+                    matrix.set(i, j, cell.getTime(), convert(cell.getDistance(), cell.getUnits(), matrix.getUnits()));
+                }
+            }
+        }
+        return matrix;
+    }
+
+    private void put(int missingI, int missingJ, CachedRoute cell) {
+        int i = missingStartIndices[missingI];
+        int j = missingDestinationIndices[missingJ];
+        cells[i][j] = cell;
+        routeCache.put(keys[i][j], cell);
+    }
+
+    private static double convert(double distance, DistanceUnits from, DistanceUnits to) {
+        if (from == to) {
+            return distance;
+        }
+        return from == DistanceUnits.MILES ? distance * KILOMETERS_PER_MILE : distance / KILOMETERS_PER_MILE;
+    }
+
+    private static int[] indicesOf(boolean[] flags) {
+        int count = 0;
+        for (boolean flag : flags) {
+            if (flag) count++;
+        }
+        int[] indices = new int[count];
+        for (int i = 0, k = 0; i < flags.length; i++) {
+            if (flags[i]) indices[k++] = i;
+        }
+        return indices;
+    }
+
+    private static Location[] select(Location[] locations, int[] indices) {
+        Location[] selected = new Location[indices.length];
+        for (int k = 0; k < indices.length; k++) {
+            selected[k] = locations[indices[k]];
+        }
+        return selected;
+    }
+}
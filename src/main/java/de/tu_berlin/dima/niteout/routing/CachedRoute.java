@@ -0,0 +1,102 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
+import de.tu_berlin.dima.niteout.routing.model.RouteSummary;
+
+/**
+ * The immutable value of a {@link RouteCache} entry.
+ * <p>
+ * Depending on the request that computed it, an entry knows only the trip time (trip time requests), the trip time
+ * and the distance (matrix cells) or the complete {@link RouteSummary} (route summary requests).
+ */
+public final class CachedRoute {
+
+    private final int time;
+    private final double distance;
+    private final DistanceUnits units;
+    private final RouteSummary routeSummary;
+    // the time the entry was read from a cache it expires from, in milliseconds since the epoch
+    private final long expiresAt;
+
+    private CachedRoute(int time, double distance, DistanceUnits units, RouteSummary routeSummary) {
+        this(time, distance, units, routeSummary, Long.MAX_VALUE);
+    }
+
+    private CachedRoute(int time, double distance, DistanceUnits units, RouteSummary routeSummary, long expiresAt) {
+        this.time = time;
+        this.distance = distance;
+        this.units = units;
+        this.routeSummary = routeSummary;
+        this.expiresAt = expiresAt;
+    }
+
+    public static CachedRoute ofTripTime(int time) {
+        return new CachedRoute(time, Double.NaN, null, null);
+    }
+
+    public static CachedRoute ofMatrixCell(int time, double distance, DistanceUnits units) {
+        return new CachedRoute(time, distance, units, null);
+    }
+
+    public static CachedRoute ofRouteSummary(RouteSummary routeSummary) {
+        return new CachedRoute(routeSummary.getTotalDuration(), Double.NaN, null, new RouteSummary(routeSummary));
+    }
+
+    /**
+     * @return the trip time in seconds
+     */
+    public int getTime() {
+        return time;
+    }
+
+    /**
+     * @return whether the distance of the trip is known as it is reported in a matrix
+     */
+    public boolean hasDistance() {
+        return units != null;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public DistanceUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * @return whether the complete route summary of the trip is known
+     */
+    public boolean hasRouteSummary() {
+        return routeSummary != null;
+    }
+
+    /**
+     * @return whether this entry would lose its route summary if it were replaced by the other one
+     */
+    boolean knowsMoreThan(CachedRoute other) {
+        return routeSummary != null && other.routeSummary == null;
+    }
+
+    /**
+     * @return the same entry, which expires at the given time wherever it is cached
+     */
+    CachedRoute expiringAt(long expiresAt) {
+        return new CachedRoute(time, distance, units, routeSummary, expiresAt);
+    }
+
+    /**
+     * @return the time the entry expires in milliseconds since the epoch, or {@link Long#MAX_VALUE} if it only expires
+     * by the time to live of the cache it is put into
+     */
+    long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return a copy of the cached route summary, or {@code null} if only the time of the trip is known
+     */
+    public RouteSummary getRouteSummary() {
+        return routeSummary == null ? null : new RouteSummary(routeSummary);
+    }
+}
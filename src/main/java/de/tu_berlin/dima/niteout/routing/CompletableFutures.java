@@ -0,0 +1,62 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Helpers for the asynchronous API, which completes its futures exceptionally with {@link RoutingAPIException}s.
+ */
+final class CompletableFutures {
+
+    private CompletableFutures() { }
+
+    /**
+     * @return a future that is already completed exceptionally with the given exception
+     */
+    static <T> CompletableFuture<T> failed(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    /**
+     * Wraps a checked exception thrown inside a completion stage, so the stage completes exceptionally with it.
+     */
+    static CompletionException wrap(RoutingAPIException e) {
+        return new CompletionException(e);
+    }
+
+    /**
+     * Strips the {@link CompletionException} and {@link ExecutionException} wrappers added by completion stages.
+     */
+    static Throwable unwrap(Throwable throwable) {
+        Throwable current = throwable;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+                && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    /**
+     * @return a future completed with the results of all futures in order, or exceptionally as soon as the first of
+     * them completes exceptionally
+     */
+    static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        CompletableFuture<List<T>> result = CompletableFuture
+                .allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> futures.stream().map(CompletableFuture::join).collect(toList()));
+        for (CompletableFuture<T> future : futures) {
+            future.whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    result.completeExceptionally(unwrap(throwable));
+                }
+            });
+        }
+        return result;
+    }
+}
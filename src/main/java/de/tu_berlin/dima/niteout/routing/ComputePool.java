@@ -0,0 +1,86 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the CPU bound searches of the local wrappers, e.g. the rows of a matrix, in parallel.
+ * <p>
+ * Each search gets the state of the thread it runs on, so the large arrays of a search are allocated once per thread
+ * and not once per request.
+ */
+final class ComputePool {
+
+    private static volatile ExecutorService sharedPool;
+
+    /**
+     * Computes one of a number of independent results with the search state of the current thread.
+     */
+    @FunctionalInterface
+    interface Task<S, T> {
+        T compute(int index, S state) throws RoutingAPIException;
+    }
+
+    private ComputePool() {
+    }
+
+    /**
+     * @return the pool of one thread per core shared by all wrappers that were not given their own pool
+     */
+    static ExecutorService getSharedPool() {
+        if (sharedPool == null) {
+            synchronized (ComputePool.class) {
+                if (sharedPool == null) {
+                    sharedPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("routing-compute-%d").build());
+                }
+            }
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Runs the tasks for all indices in parallel; a single task runs on the calling thread.
+     * @return the results in the order of the indices
+     */
+    static <S, T> List<T> computeAll(ExecutorService executorService, int count, ThreadLocal<S> states,
+                                     Task<S, T> task) throws RoutingAPIException {
+        if (count == 1) {
+            return Collections.singletonList(task.compute(0, states.get()));
+        }
+
+        List<Future<T>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(executorService.submit(() -> task.compute(index, states.get())));
+        }
+        List<T> results = new ArrayList<>(count);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RoutingAPIException) {
+                throw (RoutingAPIException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID, e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "interrupted while waiting for the searches", e);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,192 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link RoutingMetrics} registry which keeps the metrics in memory: a {@link LatencyHistogram} of the requests and
+ * of the parsing of the responses of every endpoint, one of the rate limiter waits of every provider, the errors of
+ * every endpoint by {@link RoutingAPIException.ErrorCode} and the hits and misses of the route cache by transport mode.
+ * <p>
+ * Recording does not lock and, once an endpoint was seen, does not allocate. The getters return the live metrics,
+ * which keep changing while requests are recorded; the getters of an endpoint or provider that was not seen yet return
+ * empty metrics and do not register it.
+ */
+public class DefaultRoutingMetrics implements RoutingMetrics {
+
+    private final static int ERROR_CODES = RoutingAPIException.ErrorCode.values().length;
+
+    private static final class EndpointMetrics {
+        final LatencyHistogram requests = new LatencyHistogram();
+        final LatencyHistogram parses = new LatencyHistogram();
+        final AtomicLongArray errors = new AtomicLongArray(ERROR_CODES);
+    }
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, EndpointMetrics>> providers =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> rateLimiterWaits = new ConcurrentHashMap<>();
+    // complete from the start, so it is only read concurrently
+    private final Map<TransportMode, LongAdder> cacheHits = new EnumMap<>(TransportMode.class);
+    private final Map<TransportMode, LongAdder> cacheMisses = new EnumMap<>(TransportMode.class);
+
+    public DefaultRoutingMetrics() {
+        for (TransportMode transportMode : TransportMode.values()) {
+            cacheHits.put(transportMode, new LongAdder());
+            cacheMisses.put(transportMode, new LongAdder());
+        }
+    }
+
+    @Override
+    public void recordRequest(String provider, String endpoint, long latencyNanos) {
+        endpoint(provider, endpoint).requests.record(latencyNanos);
+    }
+
+    @Override
+    public void recordRateLimiterWait(String provider, long waitNanos) {
+        LatencyHistogram waits = rateLimiterWaits.get(provider);
+        if (waits == null) {
+            waits = rateLimiterWaits.computeIfAbsent(provider, ignored -> new LatencyHistogram());
+        }
+        waits.record(waitNanos);
+    }
+
+    @Override
+    public void recordParse(String provider, String endpoint, long parseNanos) {
+        endpoint(provider, endpoint).parses.record(parseNanos);
+    }
+
+    @Override
+    public void recordError(String provider, String endpoint, RoutingAPIException.ErrorCode code) {
+        endpoint(provider, endpoint).errors.incrementAndGet(code.ordinal());
+    }
+
+    @Override
+    public void recordCacheLookup(TransportMode transportMode, boolean hit) {
+        (hit ? cacheHits : cacheMisses).get(transportMode).increment();
+    }
+
+    private EndpointMetrics endpoint(String provider, String endpoint) {
+        // get before computeIfAbsent, which locks the bin of the key even if it is present
+        ConcurrentHashMap<String, EndpointMetrics> endpoints = providers.get(provider);
+        if (endpoints == null) {
+            endpoints = providers.computeIfAbsent(provider, ignored -> new ConcurrentHashMap<>());
+        }
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            metrics = endpoints.computeIfAbsent(endpoint, ignored -> new EndpointMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the providers with recorded requests, parses or errors
+     */
+    public Set<String> getProviders() {
+        return Collections.unmodifiableSet(new TreeSet<>(providers.keySet()));
+    }
+
+    /**
+     * @return the endpoints of the provider with recorded requests, parses or errors
+     */
+    public Set<String> getEndpoints(String provider) {
+        Map<String, EndpointMetrics> endpoints = providers.get(provider);
+        return endpoints == null ? Collections.emptySet() :
+                Collections.unmodifiableSet(new TreeSet<>(endpoints.keySet()));
+    }
+
+    /**
+     * @return the latencies of the requests to the endpoint
+     */
+    public LatencyHistogram getRequestLatency(String provider, String endpoint) {
+        EndpointMetrics metrics = findEndpoint(provider, endpoint);
+        return metrics == null ? new LatencyHistogram() : metrics.requests;
+    }
+
+    /**
+     * @return the times to read and parse the responses of the endpoint
+     */
+    public LatencyHistogram getParseTime(String provider, String endpoint) {
+        EndpointMetrics metrics = findEndpoint(provider, endpoint);
+        return metrics == null ? new LatencyHistogram() : metrics.parses;
+    }
+
+    /**
+     * @return the waits of the requests to the provider for a permit of its rate limit
+     */
+    public LatencyHistogram getRateLimiterWait(String provider) {
+        LatencyHistogram waits = rateLimiterWaits.get(provider);
+        return waits == null ? new LatencyHistogram() : waits;
+    }
+
+    public long getErrorCount(String provider, String endpoint, RoutingAPIException.ErrorCode code) {
+        EndpointMetrics metrics = findEndpoint(provider, endpoint);
+        return metrics == null ? 0 : metrics.errors.get(code.ordinal());
+    }
+
+    /**
+     * @return the metrics of the endpoint, or {@code null} if nothing was recorded for it
+     */
+    private EndpointMetrics findEndpoint(String provider, String endpoint) {
+        Map<String, EndpointMetrics> endpoints = providers.get(provider);
+        return endpoints == null ? null : endpoints.get(endpoint);
+    }
+
+    public long getCacheHitCount(TransportMode transportMode) {
+        return cacheHits.get(transportMode).sum();
+    }
+
+    public long getCacheMissCount(TransportMode transportMode) {
+        return cacheMisses.get(transportMode).sum();
+    }
+
+    /**
+     * @return the share of the lookups of trips of the transport mode which were cached, or 1 if there were none
+     */
+    public double getCacheHitRatio(TransportMode transportMode) {
+        long hits = getCacheHitCount(transportMode);
+        long lookups = hits + getCacheMissCount(transportMode);
+        return lookups == 0 ? 1 : (double) hits / lookups;
+    }
+
+    /**
+     * @return a report of all metrics, one line per endpoint, provider and transport mode
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (String provider : getProviders()) {
+            for (String endpoint : getEndpoints(provider)) {
+                EndpointMetrics metrics = providers.get(provider).get(endpoint);
+                report.append(provider).append(' ').append(endpoint)
+                        .append(": requests ").append(metrics.requests)
+                        .append("; parses ").append(metrics.parses);
+                for (RoutingAPIException.ErrorCode code : RoutingAPIException.ErrorCode.values()) {
+                    long errors = metrics.errors.get(code.ordinal());
+                    if (errors > 0) {
+                        report.append("; ").append(code).append('=').append(errors);
+                    }
+                }
+                report.append('\n');
+            }
+        }
+        for (Map.Entry<String, LatencyHistogram> waits : new TreeMap<>(rateLimiterWaits).entrySet()) {
+            report.append(waits.getKey()).append(" rate limiter waits: ").append(waits.getValue()).append('\n');
+        }
+        for (TransportMode transportMode : TransportMode.values()) {
+            if (getCacheHitCount(transportMode) + getCacheMissCount(transportMode) > 0) {
+                report.append(transportMode).append(" cache hits: ").append(getCacheHitCount(transportMode))
+                        .append(", misses: ").append(getCacheMissCount(transportMode)).append('\n');
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct locations of a request, so that locations which are given more than once, or lie within a few meters
+ * of each other, are requested only once.
+ * <p>
+ * The first of a group of nearby locations represents the group. A location joins the group of the first
+ * representative within the merge distance; the representatives are found through a {@link SpatialGrid} whose cells
+ * are as large as the merge distance, so only the cell of a location and its neighbours are searched.
+ */
+final class DistinctLocations {
+
+    private final Location[] locations;
+    private final int[] indices;
+
+    private DistinctLocations(Location[] locations, int[] indices) {
+        this.locations = locations;
+        this.indices = indices;
+    }
+
+    /**
+     * @param locations the locations of a request
+     * @param mergeDistanceMeters the distance up to which locations are merged, 0 to merge only identical coordinates
+     */
+    static DistinctLocations of(Location[] locations, double mergeDistanceMeters) {
+        if (mergeDistanceMeters < 0) {
+            throw new IllegalArgumentException("the merge distance must not be negative");
+        }
+        List<Location> distinct = new ArrayList<>();
+        int[] indices = new int[locations.length];
+
+        if (mergeDistanceMeters == 0) {
+            // locations have no equality of their own, so they are compared by their coordinates
+            Map<List<Double>, Integer> distinctIndices = new HashMap<>();
+            for (int i = 0; i < locations.length; i++) {
+                List<Double> coordinates = Arrays.asList(locations[i].getLatitude(), locations[i].getLongitude());
+                Integer index = distinctIndices.putIfAbsent(coordinates, distinct.size());
+                if (index == null) {
+                    index = distinct.size();
+                    distinct.add(locations[i]);
+                }
+                indices[i] = index;
+            }
+            return new DistinctLocations(distinct.toArray(new Location[distinct.size()]), indices);
+        }
+
+        // the cells are at least as large as the merge distance, so nearby locations are in neighbouring cells
+        SpatialGrid grid = new SpatialGrid(mergeDistanceMeters);
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        for (int i = 0; i < locations.length; i++) {
+            Location location = locations[i];
+            int index = findNearby(grid, cells, distinct, location, mergeDistanceMeters);
+            if (index < 0) {
+                index = distinct.size();
+                distinct.add(location);
+                cells.computeIfAbsent(grid.pack(location.getLatitude(), location.getLongitude()),
+                        cell -> new ArrayList<>(1)).add(index);
+            }
+            indices[i] = index;
+        }
+        return new DistinctLocations(distinct.toArray(new Location[distinct.size()]), indices);
+    }
+
+    /**
+     * @return the distinct locations, in the order of their first occurrence
+     */
+    Location[] getLocations() {
+        return locations;
+    }
+
+    /**
+     * @return the index of the distinct location which represents a location of the request
+     */
+    int getIndex(int location) {
+        return indices[location];
+    }
+
+    private static int findNearby(SpatialGrid grid, Map<Long, List<Integer>> cells, List<Location> distinct,
+                                  Location location, double mergeDistanceMeters) {
+        for (long cell : grid.neighbourhood(location.getLatitude(), location.getLongitude())) {
+            List<Integer> candidates = cells.get(cell);
+            if (candidates == null) {
+                continue;
+            }
+            for (int candidate : candidates) {
+                if (GeoMath.haversineMeters(location, distinct.get(candidate)) <= mergeDistanceMeters) {
+                    return candidate;
+                }
+            }
+        }
+        return -1;
+    }
+}
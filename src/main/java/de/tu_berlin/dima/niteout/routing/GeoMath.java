@@ -0,0 +1,40 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+/**
+ * Distances on the surface of the earth.
+ */
+final class GeoMath {
+
+    static final double EARTH_RADIUS_METERS = 6_371_008.8;
+    static final double METERS_PER_DEGREE_LATITUDE = Math.toRadians(1) * EARTH_RADIUS_METERS;
+
+    private GeoMath() { }
+
+    /**
+     * @return the great-circle distance between the coordinates in meters
+     */
+    static double haversineMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLatitude = Math.toRadians(latitude2 - latitude1);
+        double dLongitude = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLatitude / 2) * Math.sin(dLatitude / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLongitude / 2) * Math.sin(dLongitude / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * @return the great-circle distance between the locations in meters
+     */
+    static double haversineMeters(Location a, Location b) {
+        return haversineMeters(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+    }
+
+    /**
+     * @return the length of one degree of longitude at the given latitude in meters
+     */
+    static double metersPerDegreeLongitude(double latitude) {
+        return METERS_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(latitude));
+    }
+}
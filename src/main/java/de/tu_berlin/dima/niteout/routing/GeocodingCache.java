@@ -0,0 +1,210 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Address;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the locations of addresses by their normalized street, house number and postal code.
+ * <p>
+ * Addresses which differ only in case, spacing, punctuation or the spelling of "Strasse" share one entry, and
+ * addresses which were not found are cached as well, so they are not requested again. With a file, every new entry is
+ * appended to it as a line of text and the file is read when the cache is opened; a line torn by a crash is cut off
+ * then, so the lines appended later are read intact.
+ */
+public class GeocodingCache implements Closeable {
+
+    private final static char SEPARATOR = '\t';
+    private final static Pattern PUNCTUATION = Pattern.compile("[.,;:/\\-]");
+    private final static Pattern WHITESPACE = Pattern.compile("\\s+");
+    private final static Pattern STREET_SUFFIX = Pattern.compile("(stra(ss|\u00df)e|str)\\b");
+
+    private final Path file;
+    private final Map<String, Optional<Location>> locations = new ConcurrentHashMap<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private BufferedWriter writer;
+
+    private GeocodingCache(GeocodingCacheBuilder builder) throws RoutingAPIException {
+        this.file = builder.file;
+        if (file == null) {
+            return;
+        }
+        try {
+            if (Files.exists(file)) {
+                load();
+            }
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not open geocoding cache " + file, e);
+        }
+    }
+
+    /**
+     * @return the key of the address, built from its normalized street, house number and postal code
+     */
+    public static String createKey(Address address) {
+        return address.getPostalCode() + SEPARATOR + normalizeStreet(address.getStreet()) + SEPARATOR +
+                normalizeHouseNumber(address.getHouseNumber());
+    }
+
+    static String normalizeStreet(String street) {
+        if (street == null) {
+            return "";
+        }
+        String normalized = street.toLowerCase(Locale.GERMAN);
+        normalized = PUNCTUATION.matcher(normalized).replaceAll(" ");
+        normalized = STREET_SUFFIX.matcher(normalized).replaceAll("str");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    static String normalizeHouseNumber(String houseNumber) {
+        if (houseNumber == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(houseNumber.toLowerCase(Locale.GERMAN)).replaceAll("");
+    }
+
+    /**
+     * @return the cached location of the key, an empty location if the address was not found, or {@code null} if the
+     * key is not cached
+     */
+    Optional<Location> get(String key) {
+        Optional<Location> location = locations.get(key);
+        if (location != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return location;
+    }
+
+    /**
+     * @param location the location of the address, {@code null} if it was not found
+     * @throws RoutingAPIException if the entry can not be appended to the file, it is cached in memory nonetheless
+     */
+    void put(String key, Location location) throws RoutingAPIException {
+        Optional<Location> previous = locations.put(key, Optional.ofNullable(location));
+        if (file != null && !Optional.ofNullable(location).equals(previous)) {
+            append(key, location);
+        }
+    }
+
+    private synchronized void append(String key, Location location) throws RoutingAPIException {
+        if (writer == null) {
+            // closed
+            return;
+        }
+        try {
+            writer.write(key);
+            if (location != null) {
+                writer.write(SEPARATOR + Double.toString(location.getLatitude()) + SEPARATOR +
+                        Double.toString(location.getLongitude()));
+            }
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not append to geocoding cache " + file, e);
+        }
+    }
+
+    /**
+     * Reads the complete lines of the file and truncates it after the last one. A torn line may still have three or
+     * five fields, like a house number or a longitude cut short, so it is dropped rather than ended.
+     */
+    private void load() throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        int length = content.length;
+        while (length > 0 && content[length - 1] != '\n') {
+            length--;
+        }
+        String lines = new String(content, 0, length, StandardCharsets.UTF_8);
+        int start = 0;
+        int end;
+        while ((end = lines.indexOf('\n', start)) >= 0) {
+            // postal code, street, house number and optionally latitude and longitude
+            String[] fields = lines.substring(start, end).split(String.valueOf(SEPARATOR), -1);
+            start = end + 1;
+            if (fields.length != 3 && fields.length != 5) {
+                continue;
+            }
+            String key = fields[0] + SEPARATOR + fields[1] + SEPARATOR + fields[2];
+            try {
+                locations.put(key, fields.length == 3 ? Optional.empty() : Optional.of(
+                        new Location(Double.parseDouble(fields[3]), Double.parseDouble(fields[4]))));
+            } catch (NumberFormatException e) {
+                // a line which was torn and ended by an earlier version
+            }
+        }
+
+        if (length < content.length) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+    }
+
+    /**
+     * Writes the appended entries to the file.
+     */
+    public synchronized void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * @return the number of cached addresses
+     */
+    public int size() {
+        return locations.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    public static class GeocodingCacheBuilder {
+        private Path file;
+
+        /**
+         * @param file the file the cache is kept in, or {@code null} to keep it in memory only
+         */
+        public GeocodingCacheBuilder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public GeocodingCache build() throws RoutingAPIException {
+            return new GeocodingCache(this);
+        }
+    }
+}
@@ -1,18 +1,189 @@
 package de.tu_berlin.dima.niteout.routing;
 
+import com.google.common.util.concurrent.RateLimiter;
 import de.tu_berlin.dima.niteout.routing.model.Address;
 import de.tu_berlin.dima.niteout.routing.model.Location;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 
 /**
  * Created by aardila on 1/29/2017.
  */
 public class GeocodingService implements GeocodingAPI {
 
-    GeocodingAPI provider = new MapzenSearchApiWrapper(System.getProperty("API_KEY_MAPZEN"));
+    public final static int DEFAULT_MAX_CONCURRENCY = 4;
+
+    GeocodingAPI provider;
+    private final GeocodingCache cache;
+    private final UpstreamRequestExecutor requestExecutor;
+
+    public GeocodingService() {
+        this(new GeocodingServiceBuilder());
+    }
+
+    private GeocodingService(GeocodingServiceBuilder builder) {
+        this.provider = builder.geocodingAPI != null ? builder.geocodingAPI
+                : new MapzenSearchApiWrapper(System.getProperty("API_KEY_MAPZEN"));
+        this.cache = builder.cache;
+        UpstreamRequestExecutor.UpstreamRequestExecutorBuilder requestExecutor =
+                new UpstreamRequestExecutor.UpstreamRequestExecutorBuilder().maxConcurrency(builder.maxConcurrency);
+        if (builder.requestsPerSecond > 0) {
+            requestExecutor.rateLimiter(RateLimiter.create(builder.requestsPerSecond));
+        }
+        this.requestExecutor = requestExecutor.build();
+    }
 
     @Override
     public Location getLocation(Address address) throws RoutingAPIException {
-        return provider.getLocation(address);
+        if (cache == null) {
+            return provider.getLocation(address);
+        }
+        String key = GeocodingCache.createKey(address);
+        Optional<Location> cached = cache.get(key);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        Location location = provider.getLocation(address);
+        cache.put(key, location);
+        flushCache();
+        return location;
+    }
+
+    /**
+     * Geocodes a batch of addresses.
+     * <p>
+     * Addresses with the same normalized street, house number and postal code are requested once, and cached
+     * addresses are not requested at all. The remaining addresses are requested concurrently. Each location is cached
+     * as soon as it is found, so after a failure the batch may be geocoded again without repeating the addresses which
+     * were already found.
+     * @param addresses the addresses to geocode
+     * @return the locations in the order of the addresses, {@code null} where an address was not found
+     * @throws RoutingAPIException the exception of the first failing request
+     */
+    public List<Location> getLocations(List<Address> addresses) throws RoutingAPIException {
+
+        List<String> keys = new ArrayList<>(addresses.size());
+        Map<String, Location> locations = new HashMap<>();
+        Map<String, Address> requested = new LinkedHashMap<>();
+        for (Address address : addresses) {
+            String key = GeocodingCache.createKey(address);
+            keys.add(key);
+            if (locations.containsKey(key) || requested.containsKey(key)) {
+                continue;
+            }
+            Optional<Location> cached = cache != null ? cache.get(key) : null;
+            if (cached != null) {
+                locations.put(key, cached.orElse(null));
+            } else {
+                requested.put(key, address);
+            }
+        }
+
+        List<Map.Entry<String, Address>> requests = new ArrayList<>(requested.entrySet());
+        try {
+            List<Geocoded> geocoded = requestExecutor.execute(requests.size(), i -> {
+                Map.Entry<String, Address> request = requests.get(i);
+                Location location = provider.getLocation(request.getValue());
+                if (cache != null) {
+                    cache.put(request.getKey(), location);
+                }
+                return new Geocoded(request.getKey(), location);
+            }, null, Comparator.comparing((Geocoded g) -> g.key));
+            for (Geocoded g : geocoded) {
+                locations.put(g.key, g.location);
+            }
+        } finally {
+            flushCache();
+        }
+
+        List<Location> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            result.add(locations.get(key));
+        }
+        return result;
+    }
+
+    private void flushCache() throws RoutingAPIException {
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.flush();
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not write the geocoding cache", e);
+        }
+    }
+
+    /**
+     * The location of a requested address.
+     */
+    private static class Geocoded {
+        private final String key;
+        private final Location location;
+
+        Geocoded(String key, Location location) {
+            this.key = key;
+            this.location = location;
+        }
+    }
+
+    public static class GeocodingServiceBuilder {
+        private GeocodingAPI geocodingAPI;
+        private GeocodingCache cache;
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private double requestsPerSecond;
+
+        /**
+         * @param geocodingAPI the provider the addresses are requested from, instead of the Mapzen Search API
+         */
+        public GeocodingServiceBuilder geocodingAPI(GeocodingAPI geocodingAPI) {
+            this.geocodingAPI = geocodingAPI;
+            return this;
+        }
+
+        /**
+         * @param cache the cache of the locations, without it only the addresses within a batch are deduplicated
+         */
+        public GeocodingServiceBuilder cache(GeocodingCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrency the maximum number of concurrent requests of a batch
+         */
+        public GeocodingServiceBuilder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * @param requestsPerSecond the rate limit of the provider, or 0 for none
+         */
+        public GeocodingServiceBuilder requestsPerSecond(double requestsPerSecond) {
+            this.requestsPerSecond = requestsPerSecond;
+            return this;
+        }
+
+        public GeocodingService build() {
+
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be at least 1");
+            }
+            if (requestsPerSecond < 0) {
+                throw new IllegalArgumentException("requestsPerSecond cannot be negative");
+            }
+
+            return new GeocodingService(this);
+        }
     }
 }
@@ -0,0 +1,234 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the CSV tables of a GTFS feed, which is either a directory or a zip archive.
+ * <p>
+ * Rows are streamed to a {@link RowHandler}, so even the large {@code stop_times.txt} of a city wide feed is never
+ * held in memory as strings.
+ */
+class GtfsFeedReader implements Closeable {
+
+    /**
+     * Receives the rows of a table one by one.
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        void handle(Row row) throws RoutingAPIException;
+    }
+
+    /**
+     * A row of a table, whose fields are looked up by the column names of the header.
+     */
+    static class Row {
+        private final String fileName;
+        private final Map<String, Integer> columns;
+        private String[] fields;
+        private int lineNumber;
+
+        private Row(String fileName, Map<String, Integer> columns) {
+            this.fileName = fileName;
+            this.columns = columns;
+        }
+
+        /**
+         * @return the trimmed field of the column, or an empty string if the column or the field is missing
+         */
+        String get(String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.length) {
+                return "";
+            }
+            return fields[index].trim();
+        }
+
+        /**
+         * @return the field of a column which has to be present
+         * @throws RoutingAPIException if the field is empty
+         */
+        String getRequired(String column) throws RoutingAPIException {
+            String value = get(column);
+            if (value.isEmpty()) {
+                throw invalid("missing " + column);
+            }
+            return value;
+        }
+
+        int getInt(String column, int defaultValue) throws RoutingAPIException {
+            String value = get(column);
+            if (value.isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw invalid("invalid number in " + column + ": " + value);
+            }
+        }
+
+        double getDouble(String column) throws RoutingAPIException {
+            String value = getRequired(column);
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw invalid("invalid number in " + column + ": " + value);
+            }
+        }
+
+        RoutingAPIException invalid(String message) {
+            return new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    fileName + ":" + lineNumber + ": " + message);
+        }
+    }
+
+    private final Path feed;
+    private final ZipFile zipFile;
+
+    /**
+     * @param feed a directory containing the tables, or a zip archive of them
+     */
+    GtfsFeedReader(Path feed) throws RoutingAPIException {
+        this.feed = feed;
+        try {
+            this.zipFile = Files.isDirectory(feed) ? null : new ZipFile(feed.toFile());
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not open GTFS feed " + feed, e);
+        }
+    }
+
+    /**
+     * @return whether the feed contains the table
+     */
+    boolean hasTable(String fileName) {
+        if (zipFile != null) {
+            return zipFile.getEntry(fileName) != null;
+        }
+        return Files.isRegularFile(feed.resolve(fileName));
+    }
+
+    /**
+     * Streams all rows of a table to the handler.
+     * @param fileName the name of the table, e.g. {@code stops.txt}
+     * @param required whether a missing table is an error, otherwise it is treated as an empty table
+     */
+    void read(String fileName, boolean required, RowHandler handler) throws RoutingAPIException {
+        if (!hasTable(fileName)) {
+            if (required) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                        "GTFS feed " + feed + " does not contain " + fileName);
+            }
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(fileName),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            String header = reader.readLine();
+            if (header == null) {
+                return;
+            }
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+            String[] names = split(header);
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                columns.put(names[i].trim(), i);
+            }
+
+            Row row = new Row(fileName, columns);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                row.lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                // a quoted field may contain line breaks
+                while (hasOpenQuote(line)) {
+                    String next = reader.readLine();
+                    if (next == null) {
+                        break;
+                    }
+                    line = line + "\n" + next;
+                }
+                row.fields = split(line);
+                handler.handle(row);
+            }
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not read " + fileName + " of GTFS feed " + feed, e);
+        }
+    }
+
+    private InputStream open(String fileName) throws IOException {
+        if (zipFile != null) {
+            ZipEntry entry = zipFile.getEntry(fileName);
+            return zipFile.getInputStream(entry);
+        }
+        return Files.newInputStream(feed.resolve(fileName));
+    }
+
+    private static boolean hasOpenQuote(String line) {
+        boolean open = false;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                open = !open;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Splits a line of RFC 4180 CSV, in which quoted fields may contain commas and doubled quotes.
+     */
+    static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zipFile != null) {
+            zipFile.close();
+        }
+    }
+}
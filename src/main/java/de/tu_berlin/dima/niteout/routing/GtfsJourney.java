@@ -0,0 +1,46 @@
+package de.tu_berlin.dima.niteout.routing;
+
+/**
+ * A journey found on a {@link GtfsTimetable}, with times in seconds after midnight of the service day of the
+ * search and distances in meters.
+ */
+class GtfsJourney {
+
+    int departure;
+    int arrival;
+    int walkingTime;
+    double walkingDistance;
+    double rideDistance;
+    int rides;
+
+    /**
+     * @return a journey which walks the whole way
+     */
+    static GtfsJourney walking(int departure, int walkingTime, double walkingDistance) {
+        GtfsJourney journey = new GtfsJourney();
+        journey.departure = departure;
+        journey.arrival = departure + walkingTime;
+        journey.walkingTime = walkingTime;
+        journey.walkingDistance = walkingDistance;
+        return journey;
+    }
+
+    int getDuration() {
+        return arrival - departure;
+    }
+
+    /**
+     * @return the time spent on trips and waiting for them
+     */
+    int getPublicTransportTime() {
+        return getDuration() - walkingTime;
+    }
+
+    double getDistance() {
+        return walkingDistance + rideDistance;
+    }
+
+    int getNumberOfChanges() {
+        return Math.max(0, rides - 1);
+    }
+}
@@ -0,0 +1,528 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import de.tu_berlin.dima.niteout.routing.model.mapzen.PedestrianCostingOption;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * Answers public transport requests locally from a {@link GtfsTimetable}, using the RAPTOR algorithm.
+ * <p>
+ * Walking between stops is estimated from the straight-line distance. Walking to the first stop, from the last stop
+ * and the whole way is estimated from the straight-line distance as well, unless a {@link PedestrianGraph} is given:
+ * then these walks follow its ways, see {@link PedestrianStopAccess}. A journey is only used if it arrives earlier
+ * than walking the whole way, otherwise the walking trip is returned. Since walking along the ways is never shorter
+ * than the straight line, the walk along the ways is only searched if no journey arrives before the straight-line
+ * walk. Times and date times are local times of the feed.
+ * <p>
+ * A matrix is computed with one one-to-all search per start location, which reaches all destinations at once. The
+ * searches of the start locations run in parallel on a pool sized to the number of cores. A profile of a matrix
+ * over a window of departures reuses the labels of each later departure for the earlier ones.
+ */
+public class GtfsPublicTransportWrapper implements PublicTransportWrapper {
+
+    public final static double DEFAULT_WALKING_SPEED_KMH = 5.1;
+    public final static int DEFAULT_MAX_WALKING_DISTANCE_METERS = 1000;
+    public final static int DEFAULT_MAX_CHANGES = 6;
+    public final static int DEFAULT_MINIMUM_CHANGE_TIME_SECONDS = 60;
+    public final static Duration DEFAULT_MAX_TRIP_DURATION = Duration.ofHours(4);
+
+    private final GtfsTimetable timetable;
+    private final double walkingSpeed;
+    private final int maxWalkingDistance;
+    private final int maxChanges;
+    private final int minimumChangeTime;
+    private final int maxTripDuration;
+    private final ExecutorService executorService;
+    // null without a pedestrian graph
+    private final PedestrianStopAccess pedestrianAccess;
+    private final ThreadLocal<RaptorSearch> searches = ThreadLocal.withInitial(this::createSearch);
+
+    private GtfsPublicTransportWrapper(GtfsPublicTransportWrapperBuilder builder) {
+        this.timetable = builder.timetable;
+        this.walkingSpeed = builder.walkingSpeedKmh / 3.6;
+        this.maxWalkingDistance = builder.maxWalkingDistanceMeters;
+        this.maxChanges = builder.maxChanges;
+        this.minimumChangeTime = builder.minimumChangeTimeSeconds;
+        this.maxTripDuration = (int) builder.maxTripDuration.getSeconds();
+        this.executorService = builder.executorService != null ? builder.executorService : ComputePool.getSharedPool();
+        if (builder.pedestrianGraph != null) {
+            Map<PedestrianCostingOption, Double> costingOptions = new EnumMap<>(PedestrianCostingOption.class);
+            costingOptions.put(PedestrianCostingOption.WALKING_SPEED, builder.walkingSpeedKmh);
+            this.pedestrianAccess = new PedestrianStopAccess(timetable, builder.pedestrianGraph,
+                    new PedestrianCosting(costingOptions), builder.maxSnapDistanceMeters);
+        } else {
+            this.pedestrianAccess = null;
+        }
+    }
+
+    @Override
+    public int getPublicTransportTripTime(Location start, Location destination, LocalDateTime departure)
+            throws RoutingAPIException {
+        return route(start, destination, departure).getDuration();
+    }
+
+    @Override
+    public RouteSummary getPublicTransportRouteSummary(Location start, Location destination, LocalDateTime departure)
+            throws RoutingAPIException {
+        GtfsJourney journey = route(start, destination, departure);
+        LocalDateTime serviceDay = departure.toLocalDate().atStartOfDay();
+
+        HashMap<TransportMode, Integer> modeOfTransportTravelTimes = new HashMap<>();
+        modeOfTransportTravelTimes.put(TransportMode.PUBLIC_TRANSPORT, journey.getPublicTransportTime());
+        modeOfTransportTravelTimes.put(TransportMode.WALKING, journey.walkingTime);
+
+        RouteSummary routeSummary = new RouteSummary();
+        routeSummary.setDepartureTime(serviceDay.plusSeconds(journey.departure));
+        routeSummary.setArrivalTime(serviceDay.plusSeconds(journey.arrival));
+        routeSummary.setTotalDuration(journey.getDuration());
+        routeSummary.setModeOfTransportTravelTimes(modeOfTransportTravelTimes);
+        routeSummary.setNumberOfChanges(journey.getNumberOfChanges());
+        // meters, like the summaries of here.com
+        routeSummary.setTotalDistance(Math.round(journey.getDistance()));
+        return routeSummary;
+    }
+
+    @Override
+    public List<TimeMatrixEntry> getMultiModalMatrix(Location[] startLocations, Location[] destinationLocations,
+                                                     LocalDateTime departureTime) throws RoutingAPIException {
+        return getMultiModalTravelTimeMatrix(startLocations, destinationLocations, departureTime).asEntries();
+    }
+
+    @Override
+    public TravelTimeMatrix getMultiModalTravelTimeMatrix(Location[] startLocations, Location[] destinationLocations,
+                                                          LocalDateTime departureTime) throws RoutingAPIException {
+        checkRequest(startLocations, destinationLocations, departureTime);
+        LocalDate date = departureTime.toLocalDate();
+        int departure = departureTime.toLocalTime().toSecondOfDay();
+        StopsNearby[] egress = findStopsNearby(destinationLocations);
+
+        // each search sets the cells of its own row
+        TravelTimeMatrix matrix = new TravelTimeMatrix(startLocations.length, destinationLocations.length,
+                DistanceUnits.KILOMETERS);
+        searchRows(startLocations.length, (i, search) -> {
+            StopsNearby access = findStopsNearby(startLocations[i]);
+            search.reset(date);
+            search.search(access.stops, access.getArrivals(departure), null, null, departure + maxTripDuration);
+
+            double[] walkingDistances = getStraightLineDistances(startLocations[i], destinationLocations);
+            GtfsJourney[] journeys = new GtfsJourney[destinationLocations.length];
+            boolean[] walksNeeded = new boolean[destinationLocations.length];
+            for (int j = 0; j < destinationLocations.length; j++) {
+                GtfsJourney walking = walk(walkingDistances[j], departure);
+                journeys[j] = selectJourney(search, access, egress[j], getArrivalBound(walking));
+                walksNeeded[j] = isWalkNeeded(journeys[j], walking);
+            }
+            walkOnGraph(startLocations[i], destinationLocations, walksNeeded, walkingDistances);
+
+            for (int j = 0; j < destinationLocations.length; j++) {
+                GtfsJourney journey = earlier(journeys[j], walk(walkingDistances[j], departure));
+                matrix.set(i, j, journey.getDuration(), journey.getDistance() / 1000);
+            }
+            return null;
+        });
+        return matrix;
+    }
+
+    /**
+     * Gets matrices for departures sampled over a window of time, e.g. to find the time of a meeting at which the
+     * trips of all participants are short.
+     * <p>
+     * Unlike in {@link #getMultiModalMatrix(Location[], Location[], LocalDateTime)}, the time of an entry is the time
+     * from the sampled departure until the arrival, including the time to wait for the first trip.
+     * @param startLocations the locations where the trips start
+     * @param destinationLocations the locations where the trips terminate
+     * @param earliestDeparture the first departure of the window
+     * @param latestDeparture the last departure of the window, at most one day after the first one
+     * @param step the time between two sampled departures
+     * @return the matrix of each sampled departure
+     */
+    public SortedMap<LocalDateTime, List<TimeMatrixEntry>> getMultiModalMatrixProfile(
+            Location[] startLocations, Location[] destinationLocations,
+            LocalDateTime earliestDeparture, LocalDateTime latestDeparture, Duration step)
+            throws RoutingAPIException {
+
+        checkRequest(startLocations, destinationLocations, earliestDeparture);
+        if (latestDeparture == null || latestDeparture.isBefore(earliestDeparture)
+                || latestDeparture.isAfter(earliestDeparture.plusDays(1))) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_ERROR_BAD_REQUEST,
+                    "the departure window must end within one day after it starts");
+        }
+        if (step == null || step.getSeconds() < 1) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_ERROR_BAD_REQUEST,
+                    "the step between departures must be at least one second");
+        }
+
+        LocalDate date = earliestDeparture.toLocalDate();
+        int earliest = earliestDeparture.toLocalTime().toSecondOfDay();
+        int latest = earliest + (int) Duration.between(earliestDeparture, latestDeparture).getSeconds();
+        int stepSeconds = (int) step.getSeconds();
+        int departureCount = (latest - earliest) / stepSeconds + 1;
+        StopsNearby[] egress = findStopsNearby(destinationLocations);
+
+        List<List<List<TimeMatrixEntry>>> rows = searchRows(startLocations.length, (i, search) -> {
+            StopsNearby access = findStopsNearby(startLocations[i]);
+            double[] walkingDistances = getStraightLineDistances(startLocations[i], destinationLocations);
+            GtfsJourney[][] journeys = new GtfsJourney[departureCount][destinationLocations.length];
+            boolean[] walksNeeded = new boolean[destinationLocations.length];
+            search.reset(date);
+            // from the last departure to the first one, so the labels of later departures can be kept
+            for (int k = departureCount - 1; k >= 0; k--) {
+                int departure = earliest + k * stepSeconds;
+                search.search(access.stops, access.getArrivals(departure), null, null, latest + maxTripDuration);
+                for (int j = 0; j < destinationLocations.length; j++) {
+                    GtfsJourney walking = walk(walkingDistances[j], departure);
+                    journeys[k][j] = selectJourney(search, access, egress[j], getArrivalBound(walking));
+                    walksNeeded[j] |= isWalkNeeded(journeys[k][j], walking);
+                }
+            }
+            walkOnGraph(startLocations[i], destinationLocations, walksNeeded, walkingDistances);
+
+            List<List<TimeMatrixEntry>> rowsByDeparture = new ArrayList<>(departureCount);
+            for (int k = 0; k < departureCount; k++) {
+                int departure = earliest + k * stepSeconds;
+                List<TimeMatrixEntry> row = new ArrayList<>(destinationLocations.length);
+                for (int j = 0; j < destinationLocations.length; j++) {
+                    GtfsJourney walking = walk(walkingDistances[j], departure);
+                    GtfsJourney journey = earlier(journeys[k][j], walking);
+                    int time = journey == walking ? walking.getDuration() : journey.arrival - departure;
+                    row.add(new TimeMatrixEntry(i, j, time, journey.getDistance() / 1000,
+                            DistanceUnits.KILOMETERS));
+                }
+                rowsByDeparture.add(row);
+            }
+            return rowsByDeparture;
+        });
+
+        SortedMap<LocalDateTime, List<TimeMatrixEntry>> profile = new TreeMap<>();
+        for (int k = 0; k < departureCount; k++) {
+            List<TimeMatrixEntry> matrix = new ArrayList<>(startLocations.length * destinationLocations.length);
+            for (List<List<TimeMatrixEntry>> rowsByDeparture : rows) {
+                matrix.addAll(rowsByDeparture.get(k));
+            }
+            profile.put(earliestDeparture.plusSeconds((long) k * stepSeconds), matrix);
+        }
+        return profile;
+    }
+
+    /**
+     * @return the timetable the requests are answered from
+     */
+    public GtfsTimetable getTimetable() {
+        return timetable;
+    }
+
+    private RaptorSearch createSearch() {
+        return new RaptorSearch(timetable, walkingSpeed, maxChanges + 1, minimumChangeTime);
+    }
+
+    /**
+     * Runs the searches of all rows in parallel, each with the search state of its thread.
+     * @return the rows in the order of the start locations
+     */
+    private <T> List<T> searchRows(int rowCount, ComputePool.Task<RaptorSearch, T> rowSearch)
+            throws RoutingAPIException {
+        return ComputePool.computeAll(executorService, rowCount, searches, rowSearch);
+    }
+
+    GtfsJourney route(Location start, Location destination, LocalDateTime departure) throws RoutingAPIException {
+        checkRequest(new Location[]{start}, new Location[]{destination}, departure);
+
+        int departureSeconds = departure.toLocalTime().toSecondOfDay();
+        Location[] destinations = {destination};
+        double[] walkingDistances = getStraightLineDistances(start, destinations);
+        GtfsJourney walking = walk(walkingDistances[0], departureSeconds);
+        StopsNearby access = findStopsNearby(start);
+        StopsNearby egress = findStopsNearby(destination);
+        GtfsJourney journey = null;
+        if (access.size() > 0 && egress.size() > 0) {
+            RaptorSearch search = searches.get();
+            search.run(departure.toLocalDate(), access.stops, access.getArrivals(departureSeconds),
+                    egress.stops, egress.times, getArrivalBound(walking));
+            journey = selectJourney(search, access, egress, getArrivalBound(walking));
+        }
+
+        walkOnGraph(start, destinations, new boolean[]{isWalkNeeded(journey, walking)}, walkingDistances);
+        return earlier(journey, walk(walkingDistances[0], departureSeconds));
+    }
+
+    /**
+     * Selects the journey to a destination from the labels of a search: the earliest arrival, with as few rides as
+     * possible.
+     * @param arrivalBound the journey has to arrive before this time
+     * @return the journey, or {@code null} if no journey arrives before the bound
+     */
+    private GtfsJourney selectJourney(RaptorSearch search, StopsNearby access, StopsNearby egress,
+                                      int arrivalBound) {
+        int bestArrival = arrivalBound;
+        int bestRides = -1;
+        int bestEgress = -1;
+        for (int rides = 1; rides <= search.getLastRound(); rides++) {
+            for (int i = 0; i < egress.size(); i++) {
+                int arrival = search.getArrival(rides, egress.stops[i]);
+                if (arrival != RaptorSearch.UNREACHED && arrival + egress.times[i] < bestArrival) {
+                    bestArrival = arrival + egress.times[i];
+                    bestRides = rides;
+                    bestEgress = i;
+                }
+            }
+        }
+        if (bestRides < 0) {
+            return null;
+        }
+
+        GtfsJourney journey = search.getJourney(bestRides, egress.stops[bestEgress],
+                access.stops, access.times, access.distances);
+        journey.arrival += egress.times[bestEgress];
+        journey.walkingTime += egress.times[bestEgress];
+        journey.walkingDistance += egress.distances[bestEgress];
+        return journey;
+    }
+
+    /**
+     * @return the bound of the arrivals of the journeys which may be used instead of a walk along the straight line
+     */
+    private int getArrivalBound(GtfsJourney straightLineWalk) {
+        int bound = straightLineWalk.departure + maxTripDuration;
+        // a walk along the ways may take longer than along the straight line, so it does not bound the journeys
+        return pedestrianAccess == null ? Math.min(straightLineWalk.arrival, bound) : bound;
+    }
+
+    /**
+     * @return whether walking the whole way may be faster than the journey, so the walk has to be known exactly
+     */
+    private static boolean isWalkNeeded(GtfsJourney journey, GtfsJourney straightLineWalk) {
+        return journey == null || journey.arrival >= straightLineWalk.arrival;
+    }
+
+    /**
+     * @return the journey if it arrives before the walk, otherwise the walk
+     */
+    private static GtfsJourney earlier(GtfsJourney journey, GtfsJourney walking) {
+        return journey != null && journey.arrival < walking.arrival ? journey : walking;
+    }
+
+    private GtfsJourney walk(double distance, int departure) {
+        return GtfsJourney.walking(departure, getWalkingTime(distance), distance);
+    }
+
+    private static double[] getStraightLineDistances(Location start, Location[] destinations) {
+        double[] distances = new double[destinations.length];
+        for (int j = 0; j < destinations.length; j++) {
+            distances[j] = GeoMath.haversineMeters(start, destinations[j]);
+        }
+        return distances;
+    }
+
+    /**
+     * Replaces the straight-line distances of the needed walks by the distances along the pedestrian graph, if there
+     * is one.
+     */
+    private void walkOnGraph(Location start, Location[] destinations, boolean[] walksNeeded, double[] distances) {
+        if (pedestrianAccess != null) {
+            pedestrianAccess.walkToLocations(start, destinations, walksNeeded, distances);
+        }
+    }
+
+    private static void checkRequest(Location[] startLocations, Location[] destinationLocations,
+                                     LocalDateTime departure) throws RoutingAPIException {
+        if (startLocations == null || destinationLocations == null || departure == null
+                || Arrays.asList(startLocations).contains(null) || Arrays.asList(destinationLocations).contains(null)) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_ERROR_BAD_REQUEST,
+                    "start, destination and departure are required");
+        }
+    }
+
+    private int getWalkingTime(double distanceMeters) {
+        return (int) Math.ceil(distanceMeters / walkingSpeed);
+    }
+
+    private StopsNearby[] findStopsNearby(Location[] locations) {
+        StopsNearby[] nearby = new StopsNearby[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            nearby[i] = findStopsNearby(locations[i]);
+        }
+        return nearby;
+    }
+
+    private StopsNearby findStopsNearby(Location location) {
+        IntStream.Builder stops = IntStream.builder();
+        DoubleStream.Builder distances = DoubleStream.builder();
+        timetable.forEachStopWithin(location.getLatitude(), location.getLongitude(), maxWalkingDistance,
+                (stop, distance) -> {
+                    stops.add(stop);
+                    distances.add(distance);
+                });
+        int[] candidates = stops.build().toArray();
+        double[] walkingDistances = distances.build().toArray();
+        if (pedestrianAccess != null) {
+            pedestrianAccess.walkToStops(location, candidates, walkingDistances);
+        }
+
+        // the stops which are too far along the ways are left out
+        int count = 0;
+        for (double distance : walkingDistances) {
+            if (distance <= maxWalkingDistance) {
+                count++;
+            }
+        }
+        StopsNearby nearby = new StopsNearby();
+        nearby.stops = new int[count];
+        nearby.distances = new int[count];
+        nearby.times = new int[count];
+        int i = 0;
+        for (int k = 0; k < candidates.length; k++) {
+            if (walkingDistances[k] <= maxWalkingDistance) {
+                nearby.stops[i] = candidates[k];
+                nearby.distances[i] = (int) Math.round(walkingDistances[k]);
+                nearby.times[i] = getWalkingTime(nearby.distances[i]);
+                i++;
+            }
+        }
+        return nearby;
+    }
+
+    /**
+     * The stops within walking distance of a location.
+     */
+    private static class StopsNearby {
+        int[] stops;
+        int[] times;
+        int[] distances;
+
+        int size() {
+            return stops.length;
+        }
+
+        /**
+         * @return the arrival times at the stops when leaving at the departure
+         */
+        int[] getArrivals(int departure) {
+            int[] arrivals = new int[times.length];
+            for (int i = 0; i < times.length; i++) {
+                arrivals[i] = departure + times[i];
+            }
+            return arrivals;
+        }
+    }
+
+    public static class GtfsPublicTransportWrapperBuilder {
+        private GtfsTimetable timetable;
+        private double walkingSpeedKmh = DEFAULT_WALKING_SPEED_KMH;
+        private int maxWalkingDistanceMeters = DEFAULT_MAX_WALKING_DISTANCE_METERS;
+        private int maxChanges = DEFAULT_MAX_CHANGES;
+        private int minimumChangeTimeSeconds = DEFAULT_MINIMUM_CHANGE_TIME_SECONDS;
+        private Duration maxTripDuration = DEFAULT_MAX_TRIP_DURATION;
+        private PedestrianGraph pedestrianGraph;
+        private int maxSnapDistanceMeters = OsmPedestrianWrapper.DEFAULT_MAX_SNAP_DISTANCE_METERS;
+        private ExecutorService executorService;
+
+        /**
+         * @param timetable the timetable the requests are answered from
+         */
+        public GtfsPublicTransportWrapperBuilder timetable(GtfsTimetable timetable) {
+            this.timetable = timetable;
+            return this;
+        }
+
+        /**
+         * @param walkingSpeedKmh the walking speed to, between and from stops
+         */
+        public GtfsPublicTransportWrapperBuilder walkingSpeedKmh(double walkingSpeedKmh) {
+            this.walkingSpeedKmh = walkingSpeedKmh;
+            return this;
+        }
+
+        /**
+         * @param maxWalkingDistanceMeters the maximum walking distance to the first and from the last stop, along the
+         *                                 ways of the pedestrian graph if there is one
+         */
+        public GtfsPublicTransportWrapperBuilder maxWalkingDistanceMeters(int maxWalkingDistanceMeters) {
+            this.maxWalkingDistanceMeters = maxWalkingDistanceMeters;
+            return this;
+        }
+
+        /**
+         * @param maxChanges the maximum number of changes between trips
+         */
+        public GtfsPublicTransportWrapperBuilder maxChanges(int maxChanges) {
+            this.maxChanges = maxChanges;
+            return this;
+        }
+
+        /**
+         * @param minimumChangeTimeSeconds the minimum time to change from one trip to another
+         */
+        public GtfsPublicTransportWrapperBuilder minimumChangeTimeSeconds(int minimumChangeTimeSeconds) {
+            this.minimumChangeTimeSeconds = minimumChangeTimeSeconds;
+            return this;
+        }
+
+        /**
+         * @param maxTripDuration journeys arriving later than this after the departure are not searched
+         */
+        public GtfsPublicTransportWrapperBuilder maxTripDuration(Duration maxTripDuration) {
+            this.maxTripDuration = maxTripDuration;
+            return this;
+        }
+
+        /**
+         * @param pedestrianGraph the graph whose ways are walked to the first stop, from the last stop and the whole
+         *                        way, instead of the straight line
+         */
+        public GtfsPublicTransportWrapperBuilder pedestrianGraph(PedestrianGraph pedestrianGraph) {
+            this.pedestrianGraph = pedestrianGraph;
+            return this;
+        }
+
+        /**
+         * @param maxSnapDistanceMeters the maximum straight-line distance from a location or a stop to the nearest
+         *                              way of the pedestrian graph
+         */
+        public GtfsPublicTransportWrapperBuilder maxSnapDistanceMeters(int maxSnapDistanceMeters) {
+            this.maxSnapDistanceMeters = maxSnapDistanceMeters;
+            return this;
+        }
+
+        /**
+         * @param executorService the pool the searches of a matrix run on, instead of the shared pool
+         */
+        public GtfsPublicTransportWrapperBuilder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        public GtfsPublicTransportWrapper build() {
+
+            if (timetable == null) {
+                throw new IllegalArgumentException("timetable is required");
+            }
+            if (walkingSpeedKmh <= 0) {
+                throw new IllegalArgumentException("walkingSpeedKmh must be positive");
+            }
+            if (maxWalkingDistanceMeters < 0) {
+                throw new IllegalArgumentException("maxWalkingDistanceMeters must not be negative");
+            }
+            if (maxChanges < 0) {
+                throw new IllegalArgumentException("maxChanges must not be negative");
+            }
+            if (minimumChangeTimeSeconds < 0) {
+                throw new IllegalArgumentException("minimumChangeTimeSeconds must not be negative");
+            }
+            if (maxTripDuration == null || maxTripDuration.isNegative()) {
+                throw new IllegalArgumentException("maxTripDuration must not be negative");
+            }
+            if (maxSnapDistanceMeters < 0) {
+                throw new IllegalArgumentException("maxSnapDistanceMeters must not be negative");
+            }
+
+            return new GtfsPublicTransportWrapper(this);
+        }
+    }
+}
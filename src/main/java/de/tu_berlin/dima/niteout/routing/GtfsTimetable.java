@@ -0,0 +1,351 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A public transport timetable loaded from a GTFS feed, stored in flat primitive arrays.
+ * <p>
+ * Trips which serve the same sequence of stops are grouped into patterns, the routes of the RAPTOR algorithm. The
+ * trips of a pattern are ordered by their departure and never overtake each other, so the first trip that can be
+ * caught at a stop is found by binary search. All times are seconds after midnight of the service day and may exceed
+ * 24 hours for trips running past midnight.
+ * <p>
+ * Lists of variable length are stored as an offsets array and a values array: the values of element {@code i} are
+ * {@code values[offsets[i]]} to {@code values[offsets[i + 1] - 1]}. The arrays are buffers, which wrap arrays on the
+ * heap when the timetable is loaded from a feed, and map a file when a timetable written by {@link #save(Path)} is
+ * opened with {@link #open(Path)}.
+ * <p>
+ * A timetable is immutable and may be shared by any number of threads.
+ */
+public final class GtfsTimetable {
+
+    public final static int DEFAULT_MAX_TRANSFER_DISTANCE_METERS = 250;
+
+    final static int SECONDS_PER_DAY = 86_400;
+
+    private final static double GRID_CELL_METERS = 500;
+    private final static int MAX_CACHED_SERVICE_DAYS = 64;
+
+    // stops
+    String[] stopIds;
+    DoubleBuffer stopLatitudes;
+    DoubleBuffer stopLongitudes;
+
+    // patterns: their stops and their trips
+    IntBuffer patternStopOffsets;
+    IntBuffer patternStops;
+    IntBuffer patternTripOffsets;
+
+    // trips, grouped by pattern; the stop times of a trip are stored at consecutive indices
+    IntBuffer tripStopTimeOffsets;
+    IntBuffer tripPatterns;
+    IntBuffer tripServices;
+    IntBuffer arrivals;
+    IntBuffer departures;
+
+    // walking transfers between stops, the minimum time is 0 unless given by the feed
+    IntBuffer transferOffsets;
+    IntBuffer transferStops;
+    IntBuffer transferDistances;
+    IntBuffer transferMinimumTimes;
+
+    // services as epoch days and a bit mask of the weekdays, starting with monday; exceptions by their GTFS type
+    IntBuffer serviceStartDays;
+    IntBuffer serviceEndDays;
+    IntBuffer serviceWeekdays;
+    IntBuffer serviceExceptionOffsets;
+    IntBuffer serviceExceptionDays;
+    IntBuffer serviceExceptionTypes;
+
+    // derived: the patterns serving a stop and the position of the stop in the pattern
+    IntBuffer stopPatternOffsets;
+    IntBuffer stopPatterns;
+    IntBuffer stopPatternPositions;
+
+    // derived: a grid of the stops for nearby searches
+    private PointGrid stopGrid;
+
+    private final Map<LocalDate, BitSet> activeServicesByDate = new ConcurrentHashMap<>();
+
+    GtfsTimetable() {
+    }
+
+    /**
+     * Loads a GTFS feed and generates walking transfers between all stops within
+     * {@link #DEFAULT_MAX_TRANSFER_DISTANCE_METERS}.
+     * @param feed a directory containing the tables of the feed, or a zip archive of them
+     */
+    public static GtfsTimetable load(Path feed) throws RoutingAPIException {
+        return load(feed, DEFAULT_MAX_TRANSFER_DISTANCE_METERS);
+    }
+
+    /**
+     * Loads a GTFS feed.
+     * @param feed a directory containing the tables of the feed, or a zip archive of them
+     * @param maxTransferDistanceMeters the maximum straight-line distance of the generated walking transfers
+     */
+    public static GtfsTimetable load(Path feed, int maxTransferDistanceMeters) throws RoutingAPIException {
+        return new GtfsTimetableLoader(feed, maxTransferDistanceMeters).load();
+    }
+
+    /**
+     * Opens a timetable written by {@link #save(Path)}. The file is mapped into memory, not read.
+     */
+    public static GtfsTimetable open(Path file) throws RoutingAPIException {
+        RoutingDataFile.Reader reader = new RoutingDataFile.Reader(file, RoutingDataFile.KIND_GTFS_TIMETABLE);
+        GtfsTimetable timetable = new GtfsTimetable();
+        timetable.stopIds = readStrings(reader.readInts(), reader.readBytes());
+        timetable.stopLatitudes = reader.readDoubles();
+        timetable.stopLongitudes = reader.readDoubles();
+        timetable.patternStopOffsets = reader.readInts();
+        timetable.patternStops = reader.readInts();
+        timetable.patternTripOffsets = reader.readInts();
+        timetable.tripStopTimeOffsets = reader.readInts();
+        timetable.tripPatterns = reader.readInts();
+        timetable.tripServices = reader.readInts();
+        timetable.arrivals = reader.readInts();
+        timetable.departures = reader.readInts();
+        timetable.transferOffsets = reader.readInts();
+        timetable.transferStops = reader.readInts();
+        timetable.transferDistances = reader.readInts();
+        timetable.transferMinimumTimes = reader.readInts();
+        timetable.serviceStartDays = reader.readInts();
+        timetable.serviceEndDays = reader.readInts();
+        timetable.serviceWeekdays = reader.readInts();
+        timetable.serviceExceptionOffsets = reader.readInts();
+        timetable.serviceExceptionDays = reader.readInts();
+        timetable.serviceExceptionTypes = reader.readInts();
+        timetable.stopPatternOffsets = reader.readInts();
+        timetable.stopPatterns = reader.readInts();
+        timetable.stopPatternPositions = reader.readInts();
+        timetable.stopGrid = PointGrid.read(reader, timetable.stopLatitudes, timetable.stopLongitudes);
+        return timetable;
+    }
+
+    /**
+     * Writes the timetable to a file which can be opened with {@link #open(Path)}.
+     */
+    public void save(Path file) throws RoutingAPIException {
+        RoutingDataFile.Writer writer = new RoutingDataFile.Writer(RoutingDataFile.KIND_GTFS_TIMETABLE);
+        writeStrings(writer, stopIds);
+        writer.writeDoubles(stopLatitudes)
+                .writeDoubles(stopLongitudes)
+                .writeInts(patternStopOffsets)
+                .writeInts(patternStops)
+                .writeInts(patternTripOffsets)
+                .writeInts(tripStopTimeOffsets)
+                .writeInts(tripPatterns)
+                .writeInts(tripServices)
+                .writeInts(arrivals)
+                .writeInts(departures)
+                .writeInts(transferOffsets)
+                .writeInts(transferStops)
+                .writeInts(transferDistances)
+                .writeInts(transferMinimumTimes)
+                .writeInts(serviceStartDays)
+                .writeInts(serviceEndDays)
+                .writeInts(serviceWeekdays)
+                .writeInts(serviceExceptionOffsets)
+                .writeInts(serviceExceptionDays)
+                .writeInts(serviceExceptionTypes)
+                .writeInts(stopPatternOffsets)
+                .writeInts(stopPatterns)
+                .writeInts(stopPatternPositions);
+        stopGrid.write(writer);
+        writer.write(file);
+    }
+
+    /**
+     * Writes strings as the offsets of their UTF-8 bytes and the bytes.
+     */
+    private static void writeStrings(RoutingDataFile.Writer writer, String[] strings) {
+        byte[][] encoded = new byte[strings.length][];
+        int[] offsets = new int[strings.length + 1];
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            offsets[i + 1] = offsets[i] + encoded[i].length;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(offsets[strings.length]);
+        for (byte[] string : encoded) {
+            bytes.put(string);
+        }
+        writer.writeInts(IntBuffer.wrap(offsets)).writeBytes(bytes);
+    }
+
+    private static String[] readStrings(IntBuffer offsets, ByteBuffer bytes) {
+        String[] strings = new String[offsets.limit() - 1];
+        byte[] string = new byte[0];
+        for (int i = 0; i < strings.length; i++) {
+            int length = offsets.get(i + 1) - offsets.get(i);
+            if (string.length < length) {
+                string = new byte[length];
+            }
+            for (int k = 0; k < length; k++) {
+                string[k] = bytes.get(offsets.get(i) + k);
+            }
+            strings[i] = new String(string, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    public int getStopCount() {
+        return stopLatitudes.limit();
+    }
+
+    public int getPatternCount() {
+        return patternTripOffsets.limit() - 1;
+    }
+
+    public int getTripCount() {
+        return tripPatterns.limit();
+    }
+
+    public int getTransferCount() {
+        return transferStops.limit();
+    }
+
+    /**
+     * Builds the grid of the stops. Has to be called once the stops are set.
+     */
+    void indexStops() {
+        stopGrid = PointGrid.build(stopLatitudes, stopLongitudes, GRID_CELL_METERS);
+    }
+
+    /**
+     * Builds the lookup of the patterns serving a stop. Has to be called once the patterns are set.
+     */
+    void indexPatterns() {
+        int stopCount = getStopCount();
+        int[] offsets = new int[stopCount + 1];
+        for (int k = 0; k < patternStops.limit(); k++) {
+            offsets[patternStops.get(k) + 1]++;
+        }
+        for (int stop = 0; stop < stopCount; stop++) {
+            offsets[stop + 1] += offsets[stop];
+        }
+        int[] patterns = new int[patternStops.limit()];
+        int[] positions = new int[patternStops.limit()];
+        int[] next = Arrays.copyOf(offsets, stopCount);
+        for (int pattern = 0; pattern < getPatternCount(); pattern++) {
+            for (int k = patternStopOffsets.get(pattern); k < patternStopOffsets.get(pattern + 1); k++) {
+                int index = next[patternStops.get(k)]++;
+                patterns[index] = pattern;
+                positions[index] = k - patternStopOffsets.get(pattern);
+            }
+        }
+        stopPatternOffsets = IntBuffer.wrap(offsets);
+        stopPatterns = IntBuffer.wrap(patterns);
+        stopPatternPositions = IntBuffer.wrap(positions);
+    }
+
+    /**
+     * Visits all stops within a straight-line distance of the coordinate.
+     */
+    void forEachStopWithin(double latitude, double longitude, double radiusMeters, PointGrid.PointVisitor visitor) {
+        stopGrid.forEachWithin(latitude, longitude, radiusMeters, visitor);
+    }
+
+    /**
+     * @return the services which run on the date, indexed by service
+     */
+    BitSet getActiveServices(LocalDate date) {
+        BitSet activeServices = activeServicesByDate.get(date);
+        if (activeServices == null) {
+            if (activeServicesByDate.size() >= MAX_CACHED_SERVICE_DAYS) {
+                activeServicesByDate.clear();
+            }
+            activeServices = computeActiveServices(date);
+            activeServicesByDate.put(date, activeServices);
+        }
+        return activeServices;
+    }
+
+    private BitSet computeActiveServices(LocalDate date) {
+        int day = (int) date.toEpochDay();
+        int weekday = 1 << (date.getDayOfWeek().getValue() - 1);
+        int serviceCount = serviceStartDays.limit();
+        BitSet activeServices = new BitSet(serviceCount);
+        for (int service = 0; service < serviceCount; service++) {
+            boolean active = serviceStartDays.get(service) <= day && day <= serviceEndDays.get(service)
+                    && (serviceWeekdays.get(service) & weekday) != 0;
+            for (int k = serviceExceptionOffsets.get(service); k < serviceExceptionOffsets.get(service + 1); k++) {
+                if (serviceExceptionDays.get(k) == day) {
+                    active = serviceExceptionTypes.get(k) == 1;
+                }
+            }
+            activeServices.set(service, active);
+        }
+        return activeServices;
+    }
+
+    /**
+     * Finds the first trip of a pattern which departs at a position no earlier than the given time.
+     * @param activeServices the services running on the service day the time refers to
+     * @return the trip, or -1 if no further trip runs on the service day
+     */
+    int findEarliestTrip(int pattern, int position, int time, BitSet activeServices) {
+        int end = patternTripOffsets.get(pattern + 1);
+        int low = patternTripOffsets.get(pattern);
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (departures.get(tripStopTimeOffsets.get(middle) + position) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int trip = low; trip < end; trip++) {
+            if (activeServices.get(tripServices.get(trip))) {
+                return trip;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the straight-line length of the part of a pattern between two positions in meters
+     */
+    double getPatternDistance(int pattern, int fromPosition, int toPosition) {
+        double distance = 0;
+        int offset = patternStopOffsets.get(pattern);
+        for (int position = fromPosition; position < toPosition; position++) {
+            int stop = patternStops.get(offset + position);
+            int nextStop = patternStops.get(offset + position + 1);
+            distance += GeoMath.haversineMeters(stopLatitudes.get(stop), stopLongitudes.get(stop),
+                    stopLatitudes.get(nextStop), stopLongitudes.get(nextStop));
+        }
+        return distance;
+    }
+
+    /**
+     * @return the index of the stop with the GTFS id, or -1 if there is no such stop
+     */
+    int getStopIndex(String stopId) {
+        for (int stop = 0; stop < stopIds.length; stop++) {
+            if (stopIds[stop].equals(stopId)) {
+                return stop;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "GtfsTimetable{" +
+                "stops=" + getStopCount() +
+                ", patterns=" + getPatternCount() +
+                ", trips=" + getTripCount() +
+                ", transfers=" + getTransferCount() +
+                '}';
+    }
+}
@@ -0,0 +1,503 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a {@link GtfsTimetable} from the tables of a GTFS feed.
+ * <p>
+ * The stop times are collected in primitive arrays, sorted into trips by a counting sort and grouped into patterns.
+ * Trips with the same stops which overtake each other are split into separate patterns, so the trips of every
+ * pattern stay ordered at all stops. Missing times of stops which are not time points are interpolated.
+ */
+class GtfsTimetableLoader {
+
+    private final static DateTimeFormatter GTFS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private final static int MISSING_TIME = -1;
+    // positions in a pattern are encoded in 15 bits by the RAPTOR search
+    private final static int MAX_PATTERN_LENGTH = 1 << 15;
+
+    private final Path feed;
+    private final int maxTransferDistanceMeters;
+
+    private final Map<String, Integer> stopIndices = new HashMap<>();
+    private final Map<String, Integer> serviceIndices = new HashMap<>();
+    private final Map<String, Integer> tripIndices = new HashMap<>();
+
+    GtfsTimetableLoader(Path feed, int maxTransferDistanceMeters) {
+        this.feed = feed;
+        this.maxTransferDistanceMeters = maxTransferDistanceMeters;
+    }
+
+    GtfsTimetable load() throws RoutingAPIException {
+        GtfsTimetable timetable = new GtfsTimetable();
+        try (GtfsFeedReader reader = new GtfsFeedReader(feed)) {
+            readStops(reader, timetable);
+            timetable.indexStops();
+            readServices(reader, timetable);
+            int[] tripServices = readTrips(reader);
+            readStopTimes(reader, timetable, tripServices);
+            timetable.indexPatterns();
+            readTransfers(reader, timetable);
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not close GTFS feed " + feed, e);
+        }
+        return timetable;
+    }
+
+    private void readStops(GtfsFeedReader reader, GtfsTimetable timetable) throws RoutingAPIException {
+        List<String> ids = new ArrayList<>();
+        DoubleStream.Builder latitudes = DoubleStream.builder();
+        DoubleStream.Builder longitudes = DoubleStream.builder();
+
+        reader.read("stops.txt", true, row -> {
+            // stations, entrances and nodes are not served by trips
+            if (row.getInt("location_type", 0) != 0) {
+                return;
+            }
+            String id = row.getRequired("stop_id");
+            stopIndices.put(id, ids.size());
+            ids.add(id);
+            latitudes.add(row.getDouble("stop_lat"));
+            longitudes.add(row.getDouble("stop_lon"));
+        });
+
+        if (ids.isEmpty()) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "GTFS feed " + feed + " does not contain any stops");
+        }
+        timetable.stopIds = ids.toArray(new String[ids.size()]);
+        timetable.stopLatitudes = DoubleBuffer.wrap(latitudes.build().toArray());
+        timetable.stopLongitudes = DoubleBuffer.wrap(longitudes.build().toArray());
+    }
+
+    private void readServices(GtfsFeedReader reader, GtfsTimetable timetable) throws RoutingAPIException {
+        if (!reader.hasTable("calendar.txt") && !reader.hasTable("calendar_dates.txt")) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "GTFS feed " + feed + " contains neither calendar.txt nor calendar_dates.txt");
+        }
+
+        IntStream.Builder startDays = IntStream.builder();
+        IntStream.Builder endDays = IntStream.builder();
+        IntStream.Builder weekdays = IntStream.builder();
+        String[] weekdayColumns = {"monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"};
+        reader.read("calendar.txt", false, row -> {
+            serviceIndices.put(row.getRequired("service_id"), serviceIndices.size());
+            int mask = 0;
+            for (int i = 0; i < weekdayColumns.length; i++) {
+                if (row.getInt(weekdayColumns[i], 0) == 1) {
+                    mask |= 1 << i;
+                }
+            }
+            weekdays.add(mask);
+            startDays.add(parseDate(row, "start_date"));
+            endDays.add(parseDate(row, "end_date"));
+        });
+
+        IntStream.Builder exceptionServices = IntStream.builder();
+        IntStream.Builder exceptionDays = IntStream.builder();
+        IntStream.Builder exceptionTypes = IntStream.builder();
+        reader.read("calendar_dates.txt", false, row -> {
+            String id = row.getRequired("service_id");
+            Integer service = serviceIndices.get(id);
+            if (service == null) {
+                // a service defined only by its dates
+                service = serviceIndices.size();
+                serviceIndices.put(id, service);
+                weekdays.add(0);
+                startDays.add(Integer.MAX_VALUE);
+                endDays.add(Integer.MIN_VALUE);
+            }
+            exceptionServices.add(service);
+            exceptionDays.add(parseDate(row, "date"));
+            exceptionTypes.add(row.getInt("exception_type", 0));
+        });
+
+        timetable.serviceStartDays = IntBuffer.wrap(startDays.build().toArray());
+        timetable.serviceEndDays = IntBuffer.wrap(endDays.build().toArray());
+        timetable.serviceWeekdays = IntBuffer.wrap(weekdays.build().toArray());
+
+        int[] services = exceptionServices.build().toArray();
+        int[] days = exceptionDays.build().toArray();
+        int[] types = exceptionTypes.build().toArray();
+        int[] offsets = new int[serviceIndices.size() + 1];
+        for (int service : services) {
+            offsets[service + 1]++;
+        }
+        for (int service = 0; service < serviceIndices.size(); service++) {
+            offsets[service + 1] += offsets[service];
+        }
+        int[] next = Arrays.copyOf(offsets, serviceIndices.size());
+        int[] sortedDays = new int[services.length];
+        int[] sortedTypes = new int[services.length];
+        for (int k = 0; k < services.length; k++) {
+            int index = next[services[k]]++;
+            sortedDays[index] = days[k];
+            sortedTypes[index] = types[k];
+        }
+        timetable.serviceExceptionOffsets = IntBuffer.wrap(offsets);
+        timetable.serviceExceptionDays = IntBuffer.wrap(sortedDays);
+        timetable.serviceExceptionTypes = IntBuffer.wrap(sortedTypes);
+    }
+
+    private static int parseDate(GtfsFeedReader.Row row, String column) throws RoutingAPIException {
+        String value = row.getRequired(column);
+        try {
+            return (int) LocalDate.parse(value, GTFS_DATE).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw row.invalid("invalid date in " + column + ": " + value);
+        }
+    }
+
+    /**
+     * @return the service of each trip
+     */
+    private int[] readTrips(GtfsFeedReader reader) throws RoutingAPIException {
+        IntStream.Builder services = IntStream.builder();
+        reader.read("trips.txt", true, row -> {
+            Integer service = serviceIndices.get(row.getRequired("service_id"));
+            if (service == null) {
+                // the trip never runs
+                return;
+            }
+            tripIndices.put(row.getRequired("trip_id"), tripIndices.size());
+            services.add(service);
+        });
+        return services.build().toArray();
+    }
+
+    private void readStopTimes(GtfsFeedReader reader, GtfsTimetable timetable, int[] tripServices)
+            throws RoutingAPIException {
+
+        IntStream.Builder rowTrips = IntStream.builder();
+        IntStream.Builder rowStops = IntStream.builder();
+        IntStream.Builder rowSequences = IntStream.builder();
+        IntStream.Builder rowArrivals = IntStream.builder();
+        IntStream.Builder rowDepartures = IntStream.builder();
+        reader.read("stop_times.txt", true, row -> {
+            Integer trip = tripIndices.get(row.getRequired("trip_id"));
+            Integer stop = stopIndices.get(row.getRequired("stop_id"));
+            if (trip == null || stop == null) {
+                return;
+            }
+            int arrival = parseTime(row, "arrival_time");
+            int departure = parseTime(row, "departure_time");
+            rowTrips.add(trip);
+            rowStops.add(stop);
+            rowSequences.add(row.getInt("stop_sequence", 0));
+            rowArrivals.add(arrival == MISSING_TIME ? departure : arrival);
+            rowDepartures.add(departure == MISSING_TIME ? arrival : departure);
+        });
+        int[] trips = rowTrips.build().toArray();
+        int[] stops = rowStops.build().toArray();
+        int[] sequences = rowSequences.build().toArray();
+        int[] arrivals = rowArrivals.build().toArray();
+        int[] departures = rowDepartures.build().toArray();
+
+        // counting sort of the rows by trip, then by stop sequence within each trip
+        int tripCount = tripServices.length;
+        int[] tripOffsets = new int[tripCount + 1];
+        for (int trip : trips) {
+            tripOffsets[trip + 1]++;
+        }
+        for (int trip = 0; trip < tripCount; trip++) {
+            tripOffsets[trip + 1] += tripOffsets[trip];
+        }
+        int[] rows = new int[trips.length];
+        int[] next = Arrays.copyOf(tripOffsets, tripCount);
+        for (int row = 0; row < trips.length; row++) {
+            rows[next[trips[row]]++] = row;
+        }
+        for (int trip = 0; trip < tripCount; trip++) {
+            sortBySequence(rows, tripOffsets[trip], tripOffsets[trip + 1], sequences);
+            interpolateMissingTimes(rows, tripOffsets[trip], tripOffsets[trip + 1], arrivals, departures);
+        }
+
+        // group the trips by their sequence of stops
+        Map<StopSequence, List<Integer>> tripsByStops = new LinkedHashMap<>();
+        for (int trip = 0; trip < tripCount; trip++) {
+            int from = tripOffsets[trip];
+            int to = tripOffsets[trip + 1];
+            if (to - from < 2 || departures[rows[from]] == MISSING_TIME) {
+                continue;
+            }
+            if (to - from > MAX_PATTERN_LENGTH) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                        "a trip of GTFS feed " + feed + " has more than " + MAX_PATTERN_LENGTH + " stops");
+            }
+            int[] tripStops = new int[to - from];
+            for (int k = from; k < to; k++) {
+                tripStops[k - from] = stops[rows[k]];
+            }
+            tripsByStops.computeIfAbsent(new StopSequence(tripStops), key -> new ArrayList<>()).add(trip);
+        }
+
+        IntStream.Builder patternStopOffsets = IntStream.builder().add(0);
+        IntStream.Builder patternStops = IntStream.builder();
+        IntStream.Builder patternTripOffsets = IntStream.builder().add(0);
+        IntStream.Builder tripStopTimeOffsets = IntStream.builder();
+        IntStream.Builder tripPatterns = IntStream.builder();
+        IntStream.Builder sortedTripServices = IntStream.builder();
+        IntStream.Builder sortedArrivals = IntStream.builder();
+        IntStream.Builder sortedDepartures = IntStream.builder();
+        int patternCount = 0;
+        int patternStopCount = 0;
+        int sortedTripCount = 0;
+        int stopTimeCount = 0;
+
+        for (Map.Entry<StopSequence, List<Integer>> group : tripsByStops.entrySet()) {
+            int[] patternStopsOfGroup = group.getKey().stops;
+            for (List<Integer> patternTrips : splitOvertakingTrips(group.getValue(), tripOffsets, rows,
+                    arrivals, departures)) {
+                for (int stop : patternStopsOfGroup) {
+                    patternStops.add(stop);
+                }
+                patternStopCount += patternStopsOfGroup.length;
+                patternStopOffsets.add(patternStopCount);
+
+                for (int trip : patternTrips) {
+                    tripStopTimeOffsets.add(stopTimeCount);
+                    tripPatterns.add(patternCount);
+                    sortedTripServices.add(tripServices[trip]);
+                    for (int k = tripOffsets[trip]; k < tripOffsets[trip + 1]; k++) {
+                        sortedArrivals.add(arrivals[rows[k]]);
+                        sortedDepartures.add(departures[rows[k]]);
+                    }
+                    stopTimeCount += patternStopsOfGroup.length;
+                }
+                sortedTripCount += patternTrips.size();
+                patternTripOffsets.add(sortedTripCount);
+                patternCount++;
+            }
+        }
+
+        timetable.patternStopOffsets = IntBuffer.wrap(patternStopOffsets.build().toArray());
+        timetable.patternStops = IntBuffer.wrap(patternStops.build().toArray());
+        timetable.patternTripOffsets = IntBuffer.wrap(patternTripOffsets.build().toArray());
+        timetable.tripStopTimeOffsets = IntBuffer.wrap(tripStopTimeOffsets.build().toArray());
+        timetable.tripPatterns = IntBuffer.wrap(tripPatterns.build().toArray());
+        timetable.tripServices = IntBuffer.wrap(sortedTripServices.build().toArray());
+        timetable.arrivals = IntBuffer.wrap(sortedArrivals.build().toArray());
+        timetable.departures = IntBuffer.wrap(sortedDepartures.build().toArray());
+    }
+
+    /**
+     * @return the time in seconds after midnight of the service day, or {@link #MISSING_TIME} if the field is empty
+     */
+    private static int parseTime(GtfsFeedReader.Row row, String column) throws RoutingAPIException {
+        String value = row.get(column);
+        if (value.isEmpty()) {
+            return MISSING_TIME;
+        }
+        int seconds = 0;
+        int part = 0;
+        int parts = 1;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ':') {
+                seconds = seconds * 60 + part;
+                part = 0;
+                parts++;
+            } else if (c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+            } else {
+                throw row.invalid("invalid time in " + column + ": " + value);
+            }
+        }
+        if (parts != 3) {
+            throw row.invalid("invalid time in " + column + ": " + value);
+        }
+        return seconds * 60 + part;
+    }
+
+    private static void sortBySequence(int[] rows, int from, int to, int[] sequences) {
+        // stop times are usually ordered already
+        boolean sorted = true;
+        for (int k = from + 1; k < to && sorted; k++) {
+            sorted = sequences[rows[k - 1]] <= sequences[rows[k]];
+        }
+        if (sorted) {
+            return;
+        }
+        long[] keys = new long[to - from];
+        for (int k = from; k < to; k++) {
+            keys[k - from] = ((long) sequences[rows[k]] << 32) | rows[k];
+        }
+        Arrays.sort(keys);
+        for (int k = from; k < to; k++) {
+            rows[k] = (int) keys[k - from];
+        }
+    }
+
+    /**
+     * Interpolates the times of stops without times linearly between the surrounding time points. A trip whose
+     * first or last stop has no time is marked as unusable by a missing first departure.
+     */
+    private static void interpolateMissingTimes(int[] rows, int from, int to, int[] arrivals, int[] departures) {
+        if (from == to) {
+            return;
+        }
+        if (departures[rows[from]] == MISSING_TIME || arrivals[rows[to - 1]] == MISSING_TIME) {
+            departures[rows[from]] = MISSING_TIME;
+            return;
+        }
+        int previous = from;
+        for (int k = from + 1; k < to; k++) {
+            if (arrivals[rows[k]] == MISSING_TIME) {
+                continue;
+            }
+            int start = departures[rows[previous]];
+            int end = arrivals[rows[k]];
+            for (int missing = previous + 1; missing < k; missing++) {
+                int time = start + (end - start) * (missing - previous) / (k - previous);
+                arrivals[rows[missing]] = time;
+                departures[rows[missing]] = time;
+            }
+            previous = k;
+        }
+    }
+
+    /**
+     * Splits trips with the same stops into groups in which no trip overtakes another one.
+     * @return the groups, each ordered by departure
+     */
+    private static List<List<Integer>> splitOvertakingTrips(List<Integer> trips, int[] tripOffsets, int[] rows,
+                                                            int[] arrivals, int[] departures) {
+        trips.sort(Comparator.comparingInt((Integer trip) -> departures[rows[tripOffsets[trip]]])
+                .thenComparingInt(trip -> arrivals[rows[tripOffsets[trip + 1] - 1]]));
+
+        List<List<Integer>> groups = new ArrayList<>();
+        for (int trip : trips) {
+            List<Integer> group = null;
+            for (List<Integer> candidate : groups) {
+                int last = candidate.get(candidate.size() - 1);
+                if (!overtakes(trip, last, tripOffsets, rows, arrivals, departures)) {
+                    group = candidate;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.add(group);
+            }
+            group.add(trip);
+        }
+        return groups;
+    }
+
+    /**
+     * @return whether the trip is earlier than the previous trip at any stop
+     */
+    private static boolean overtakes(int trip, int previousTrip, int[] tripOffsets, int[] rows,
+                                     int[] arrivals, int[] departures) {
+        int offset = tripOffsets[trip];
+        int previousOffset = tripOffsets[previousTrip];
+        for (int k = 0; k < tripOffsets[trip + 1] - offset; k++) {
+            if (arrivals[rows[offset + k]] < arrivals[rows[previousOffset + k]]
+                    || departures[rows[offset + k]] < departures[rows[previousOffset + k]]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates walking transfers between all stops within the maximum transfer distance and adds the transfers
+     * of the feed, whose minimum transfer time is respected. The transfers the feed forbids are not generated.
+     */
+    private void readTransfers(GtfsFeedReader reader, GtfsTimetable timetable) throws RoutingAPIException {
+        Map<Integer, Map<Integer, Integer>> minimumTimes = new HashMap<>();
+        Map<Integer, Set<Integer>> forbidden = new HashMap<>();
+        reader.read("transfers.txt", false, row -> {
+            Integer fromStop = stopIndices.get(row.getRequired("from_stop_id"));
+            Integer toStop = stopIndices.get(row.getRequired("to_stop_id"));
+            // a transfer within a stop needs no walking
+            if (fromStop == null || toStop == null || fromStop.equals(toStop)) {
+                return;
+            }
+            // type 3 forbids the transfer, even between stops within the walking distance
+            if (row.getInt("transfer_type", 0) == 3) {
+                forbidden.computeIfAbsent(fromStop, stop -> new HashSet<>()).add(toStop);
+                return;
+            }
+            minimumTimes.computeIfAbsent(fromStop, stop -> new HashMap<>())
+                    .put(toStop, row.getInt("min_transfer_time", 0));
+        });
+
+        int stopCount = timetable.getStopCount();
+        int[] offsets = new int[stopCount + 1];
+        IntStream.Builder targets = IntStream.builder();
+        IntStream.Builder distances = IntStream.builder();
+        IntStream.Builder times = IntStream.builder();
+        int count = 0;
+        for (int stop = 0; stop < stopCount; stop++) {
+            Map<Integer, Integer> explicit = minimumTimes.getOrDefault(stop, Collections.emptyMap());
+            Set<Integer> forbiddenStops = forbidden.getOrDefault(stop, Collections.emptySet());
+            Set<Integer> generated = new HashSet<>();
+            int fromStop = stop;
+            int[] generatedCount = {0};
+            timetable.forEachStopWithin(timetable.stopLatitudes.get(stop), timetable.stopLongitudes.get(stop),
+                    maxTransferDistanceMeters, (toStop, distance) -> {
+                        if (toStop == fromStop || forbiddenStops.contains(toStop)) {
+                            return;
+                        }
+                        targets.add(toStop);
+                        distances.add((int) Math.round(distance));
+                        times.add(explicit.getOrDefault(toStop, 0));
+                        generated.add(toStop);
+                        generatedCount[0]++;
+                    });
+            count += generatedCount[0];
+            for (Map.Entry<Integer, Integer> transfer : explicit.entrySet()) {
+                int toStop = transfer.getKey();
+                if (generated.contains(toStop) || forbiddenStops.contains(toStop)) {
+                    continue;
+                }
+                targets.add(toStop);
+                distances.add((int) Math.round(GeoMath.haversineMeters(
+                        timetable.stopLatitudes.get(stop), timetable.stopLongitudes.get(stop),
+                        timetable.stopLatitudes.get(toStop), timetable.stopLongitudes.get(toStop))));
+                times.add(transfer.getValue());
+                count++;
+            }
+            offsets[stop + 1] = count;
+        }
+
+        timetable.transferOffsets = IntBuffer.wrap(offsets);
+        timetable.transferStops = IntBuffer.wrap(targets.build().toArray());
+        timetable.transferDistances = IntBuffer.wrap(distances.build().toArray());
+        timetable.transferMinimumTimes = IntBuffer.wrap(times.build().toArray());
+    }
+
+    /**
+     * The stops of a trip, as key of the patterns.
+     */
+    private static final class StopSequence {
+        private final int[] stops;
+        private final int hashCode;
+
+        private StopSequence(int[] stops) {
+            this.stops = stops;
+            this.hashCode = Arrays.hashCode(stops);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StopSequence && Arrays.equals(stops, ((StopSequence) o).stops);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
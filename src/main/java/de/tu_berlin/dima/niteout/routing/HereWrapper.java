@@ -1,27 +1,21 @@
 package de.tu_berlin.dima.niteout.routing;
 
-import com.google.common.util.concurrent.RateLimiter;
 import de.tu_berlin.dima.niteout.routing.model.*;
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.stream.JsonParsingException;
-import java.io.IOException;
-import java.io.Reader;
+import javax.json.stream.JsonParser;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
-import static java.util.stream.Collectors.toList;
-
 /*
  *
  *
@@ -53,220 +47,499 @@ class HereWrapper implements PublicTransportWrapper {
     private final static String URL_DEPARTURE = "departure=%s";
     private final static String URL_MODE = "mode=fastest;publicTransport";
     private final static String URL_COMBINE_CHANGE = "combineChange=true";
-    private final static double MAX_API_RPS = 1;
+    private final static String PROVIDER = "here.com";
+    private final static String ENDPOINT = "calculateroute";
+    private final static double INITIAL_API_RPS = 1;
+    private final static double MIN_API_RPS = 0.2;
+    private final static double MAX_API_RPS = 10;
+    private final static int MAX_CONCURRENT_MATRIX_REQUESTS = 4;
+    // the attempts after a request was throttled or the api was unavailable
+    private final static int MAX_RETRIES = 2;
 
 
     public final static DateTimeFormatter ISO_LOCAL_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
 
+    private final String baseUrl;
     private final String apiId;
     private final String apiCode;
 
-    private final RateLimiter rateLimiter = RateLimiter.create(MAX_API_RPS); // TODO fine-tune RPS value
-    private final OkHttpClient httpClient = new OkHttpClient();
+    private final RequestScheduler requestScheduler;
+    private final HttpTransport transport;
+    private final ProviderMetrics metrics;
+    private final MatrixRequestExecutor matrixRequestExecutor;
 
     public HereWrapper(String apiId, String apiCode) throws RoutingAPIException {
+        this(apiId, apiCode, HttpTransport.getDefault());
+    }
+
+    public HereWrapper(String apiId, String apiCode, HttpTransport transport) throws RoutingAPIException {
+        this(apiId, apiCode, transport, new MatrixRequestExecutor.MatrixRequestExecutorBuilder()
+                .maxConcurrency(MAX_CONCURRENT_MATRIX_REQUESTS));
+    }
+
+    /**
+     * @param matrixRequestExecutor the settings of the executor which requests the cells of matrices, the request
+     *                              scheduler of here.com is added to them
+     */
+    public HereWrapper(String apiId, String apiCode, HttpTransport transport,
+                       MatrixRequestExecutor.MatrixRequestExecutorBuilder matrixRequestExecutor)
+            throws RoutingAPIException {
+        this(apiId, apiCode, transport, matrixRequestExecutor, new RequestScheduler(
+                new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                        .initialRate(INITIAL_API_RPS)
+                        .bounds(MIN_API_RPS, MAX_API_RPS)
+                        .build()));
+    }
+
+    /**
+     * @param requestScheduler the scheduler of all requests to here.com, which learns the rate the api allows
+     */
+    public HereWrapper(String apiId, String apiCode, HttpTransport transport,
+                       MatrixRequestExecutor.MatrixRequestExecutorBuilder matrixRequestExecutor,
+                       RequestScheduler requestScheduler) throws RoutingAPIException {
+        this(apiId, apiCode, transport, matrixRequestExecutor, requestScheduler, URL_MAIN);
+    }
+
+    /**
+     * @param baseUrl the url of the routes, e.g. of a mock server, to which the parameters of a route are appended
+     */
+    public HereWrapper(String apiId, String apiCode, HttpTransport transport,
+                       MatrixRequestExecutor.MatrixRequestExecutorBuilder matrixRequestExecutor,
+                       RequestScheduler requestScheduler, String baseUrl) throws RoutingAPIException {
         if (apiId == null || apiId.trim().isEmpty() || apiCode == null || apiCode.trim().isEmpty()) {
             throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_CREDENTIALS_INVALID,
                     "The api code or api id for here.com were either empty or not set or could not accessed.");
         }
+        this.baseUrl = baseUrl;
         this.apiId = apiId;
         this.apiCode = apiCode;
+        this.transport = transport;
+        this.metrics = new ProviderMetrics(transport, PROVIDER);
+        this.requestScheduler = requestScheduler;
+        this.matrixRequestExecutor = matrixRequestExecutor
+                .requestScheduler(requestScheduler)
+                .metrics(metrics)
+                .build();
+    }
+
+    /**
+     * @return the scheduler of the requests, e.g. to monitor its queue depth and wait time
+     */
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
     }
 
     @Override
     public int getPublicTransportTripTime(Location start, Location destination, LocalDateTime departure) throws RoutingAPIException {
-        return getMatrixEntryForRouteArguments(0, 0, start, destination, departure).getTime();
+        return getMatrixEntryForRouteArguments(0, 0, start, destination, departure,
+                RequestScheduler.Priority.INTERACTIVE).getTime();
     }
 
     public List<TimeMatrixEntry> getMultiModalMatrix(Location[] startLocations, Location[] destinationLocations,
                                                      LocalDateTime departureTime) throws RoutingAPIException {
+        return getMultiModalMatrix(startLocations, destinationLocations, departureTime, null);
+    }
 
-        // Parallelize all start locations, map each of them to all destination locations and get a MatrixEntry for
-        // each combination. Then collect them again to a single list and return it.
+    /**
+     * Gets a matrix like {@link #getMultiModalMatrix(Location[], Location[], LocalDateTime)}, but hands each entry to
+     * the consumer as soon as it is available.
+     * @param onEntry receives the entries in the order in which their requests complete, may be {@code null}
+     * @return all entries in row-major order
+     */
+    List<TimeMatrixEntry> getMultiModalMatrix(Location[] startLocations, Location[] destinationLocations,
+                                              LocalDateTime departureTime, Consumer<TimeMatrixEntry> onEntry)
+            throws RoutingAPIException {
+
+        // Every combination of start and destination location is a request of its own. They run on the bounded pool
+        // of the matrix request executor, which also acquires the permits of the request scheduler.
+        return matrixRequestExecutor.execute(startLocations.length, destinationLocations.length,
+                (i, j) -> getMatrixEntryForRouteArguments(i, j, startLocations[i], destinationLocations[j],
+                        departureTime, null),
+                onEntry,
+                Comparator.comparingInt(TimeMatrixEntry::getFromIndex).thenComparingInt(TimeMatrixEntry::getToIndex));
+    }
 
-        IntStream startIndices = IntStream.range(0, startLocations.length);
-        List<TimeMatrixEntry> matrix = null;
+    @Override
+    public CompletableFuture<Integer> getPublicTransportTripTimeAsync(Location start, Location destination,
+                                                                      LocalDateTime departure) {
+        return getMatrixEntryForRouteArgumentsAsync(0, 0, start, destination, departure,
+                RequestScheduler.Priority.INTERACTIVE, Thread.currentThread()).thenApply(TimeMatrixEntry::getTime);
+    }
 
-        try {
-            matrix = startIndices.parallel()
-                    .mapToObj(i -> IntStream.range(0, destinationLocations.length)
-                            .mapToObj(j -> {
-                                try {
-                                    return getMatrixEntryForRouteArguments(i, j, startLocations[i], destinationLocations[j], departureTime);
-                                } catch (RoutingAPIException e) {
-                                    // do ugly exception wrapping
-                                    throw new RuntimeException(e);
-                                }
-                            })
-                            .collect(toList()))
-                    .flatMap(l -> l.stream())
-                    .collect(toList());
-        } catch (RuntimeException e) {
-            // unwrap ugly wrapped exception if it is RoutingApiException
-            if (e.getCause() != null && e.getCause() instanceof RoutingAPIException) {
-                throw (RoutingAPIException) e.getCause();
-            }
-            throw e;
-        }
-        return matrix;
+    @Override
+    public CompletableFuture<List<TimeMatrixEntry>> getMultiModalMatrixAsync(Location[] startLocations,
+                                                                             Location[] destinationLocations,
+                                                                             LocalDateTime departureTime) {
+        // like the blocking matrix, the cells wait for the limits of the matrix request executor, which also acquires
+        // their permits of the request scheduler; only their retries ask the scheduler again
+        Object caller = new Object();
+        return matrixRequestExecutor.executeAsync(startLocations.length, destinationLocations.length,
+                (i, j) -> getMatrixEntryForRouteArgumentsAsync(i, j, startLocations[i], destinationLocations[j],
+                        departureTime, null, caller));
     }
 
     private TimeMatrixEntry getMatrixEntryForRouteArguments(int fromIndex, int toIndex, Location start, Location destination,
-                                                            LocalDateTime departure) throws RoutingAPIException {
+                                                            LocalDateTime departure,
+                                                            RequestScheduler.Priority priority)
+            throws RoutingAPIException {
 
-        Reader response = getHTTPResponse(start, destination, departure);
-        assert response != null;
-        JsonObject json;
-
-        try {
-            json = Json.createReader(response).readObject();
-        } catch (JsonParsingException e) {
-            throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, "here.com api " +
-                    "response could not be converted to json, probably it returned an error instead of json", e);
+        try (Response response = getHTTPResponse(start, destination, departure, priority)) {
+            return metrics.parse(ENDPOINT, () -> readTimeMatrixEntry(fromIndex, toIndex, response.body()));
         }
-
-        assert json != null;
-        return getTimeMatrixEntryFromJsonRoute(fromIndex, toIndex, json);
     }
 
-    private TimeMatrixEntry getTimeMatrixEntryFromJsonRoute(int fromIndex, int toIndex, JsonObject json) throws RoutingAPIException {
-
-        // error handling
-
+    private CompletableFuture<TimeMatrixEntry> getMatrixEntryForRouteArgumentsAsync(int fromIndex, int toIndex,
+                                                                                    Location start,
+                                                                                    Location destination,
+                                                                                    LocalDateTime departure,
+                                                                                    RequestScheduler.Priority priority,
+                                                                                    Object caller) {
+        return getHTTPResponseAsync(start, destination, departure, priority, caller).thenApply(response -> {
+            try (Response closeableResponse = response) {
+                return metrics.parse(ENDPOINT, () -> readTimeMatrixEntry(fromIndex, toIndex,
+                        closeableResponse.body()));
+            } catch (RoutingAPIException e) {
+                throw CompletableFutures.wrap(e);
+            }
+        });
+    }
 
-        JsonObject jsonRouteSummary;
+    /**
+     * Reads the time and distance of the first route of a response. Only the summary of the route is read, the
+     * response is not read any further once it is found.
+     */
+    static TimeMatrixEntry readTimeMatrixEntry(int fromIndex, int toIndex, ResponseBody response)
+            throws RoutingAPIException {
+        // only get first RouteSummary as it will not return alternatives due to missing 'alternative' request parameter
+        RouteFields route = JsonStreams.read(response, "here.com", parser -> readFirstRoute(parser, false));
+        return new TimeMatrixEntry(fromIndex, toIndex, route.baseTime, route.distance, DistanceUnits.KILOMETERS);
+    }
 
-        try {
-            // only get first RouteSummary as it will not return alternatives due to missing 'alternative' request parameter
-            jsonRouteSummary = json
-                    .getJsonObject("response")
-                    .getJsonArray("route")
-                    .getJsonObject(0)
-                    .getJsonObject("summary");
-        } catch (NullPointerException e) {
-            throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, "here.com api " +
-                    "response does not contain any routes: " + json.toString(), e);
+    @Override
+    public RouteSummary getPublicTransportRouteSummary(Location start, Location destination, LocalDateTime departure) throws RoutingAPIException {
+        try (Response response = getHTTPResponse(start, destination, departure,
+                RequestScheduler.Priority.INTERACTIVE)) {
+            return metrics.parse(ENDPOINT, () -> readRouteSummary(response.body()));
         }
-
-        int distance = jsonRouteSummary.getInt("distance");
-        int time = jsonRouteSummary.getInt("baseTime");
-
-        return new TimeMatrixEntry(fromIndex, toIndex, time, distance, DistanceUnits.KILOMETERS);
     }
 
     @Override
-    public RouteSummary getPublicTransportRouteSummary(Location start, Location destination, LocalDateTime departure) throws RoutingAPIException {
-        Reader responseReader = getHTTPResponse(start, destination, departure);
-        JsonObject json = null;
+    public CompletableFuture<RouteSummary> getPublicTransportRouteSummaryAsync(Location start, Location destination,
+                                                                               LocalDateTime departure) {
+        return getHTTPResponseAsync(start, destination, departure, RequestScheduler.Priority.INTERACTIVE,
+                Thread.currentThread()).thenApply(response -> {
+            try (Response closeableResponse = response) {
+                return metrics.parse(ENDPOINT, () -> readRouteSummary(closeableResponse.body()));
+            } catch (RoutingAPIException e) {
+                throw CompletableFutures.wrap(e);
+            }
+        });
+    }
 
-        try {
-            json = Json.createReader(responseReader).readObject();
-        } catch (JsonParsingException e) {
-            throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, "here.com api " +
-                    "response could not be converted to json", e);
+    /**
+     * Reads the summary of the first route of a response, with the travel times of its maneuvers summed up by mode.
+     */
+    static RouteSummary readRouteSummary(ResponseBody response) throws RoutingAPIException {
+        RouteFields route = JsonStreams.read(response, "here.com", parser -> readFirstRoute(parser, true));
+        if (route.departure == null) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON,
+                    "the route in the here.com api response has no departure");
         }
 
-        assert json != null;
-        return getRouteSummaryFromJsonResponse(json);
+        HashMap<TransportMode, Integer> modeOfTransportTravelTimes = new HashMap<>();
+        modeOfTransportTravelTimes.put(TransportMode.PUBLIC_TRANSPORT, route.publicTransportTravelTime);
+        modeOfTransportTravelTimes.put(TransportMode.WALKING, route.walkingTravelTime);
 
+        // departure: route/summary/departure
+        LocalDateTime departure = LocalDateTime.parse(route.departure, ISO_OFFSET_DATE_TIME);
+
+        // arrival: departure + travelTime
+        LocalDateTime arrival = departure.plus(Duration.ofSeconds(route.travelTime));
+
+        RouteSummary routeSummary = new RouteSummary();
+        routeSummary.setArrivalTime(arrival);
+        routeSummary.setDepartureTime(departure);
+        // number of changes: route/publicTransportLine -1
+        routeSummary.setNumberOfChanges(route.publicTransportLines - 1);
+        routeSummary.setTotalDuration(route.travelTime);
+        routeSummary.setModeOfTransportTravelTimes(modeOfTransportTravelTimes);
+        routeSummary.setTotalDistance(route.distance);
+        return routeSummary;
     }
 
-    private RouteSummary getRouteSummaryFromJsonResponse(JsonObject json) throws RoutingAPIException {
+    /**
+     * The fields of a route which are read from a response.
+     */
+    private static class RouteFields {
+        boolean hasSummary;
+        int baseTime;
+        int travelTime;
+        int distance;
+        String departure;
+        int walkingTravelTime;
+        int publicTransportTravelTime;
+        int publicTransportLines;
+    }
 
-        JsonObject route = null;
-        try {
-            route = json
-                    .getJsonObject("response")
-                    .getJsonArray("route")
-                    .getJsonObject(0);
-        } catch (NullPointerException e) {
-            throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, "here.com api " +
-                    "response does not contain any routes: " + json.toString(), e);
+    /**
+     * Reads the first route of a response: response/route[0].
+     * @param withManeuvers whether the maneuvers and lines of the route are read, or just its summary
+     */
+    private static RouteFields readFirstRoute(JsonParser parser, boolean withManeuvers) throws RoutingAPIException {
+        // the fields of an error response, which has no routes
+        StringBuilder error = new StringBuilder();
+
+        JsonStreams.expect(parser, JsonParser.Event.START_OBJECT);
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            String key = parser.getString();
+            switch (key) {
+                case "response":
+                    RouteFields route = readResponse(parser, withManeuvers);
+                    if (route != null) {
+                        return route;
+                    }
+                    break;
+                case "type":
+                case "subtype":
+                case "details":
+                    error.append(' ').append(key).append('=').append(JsonStreams.readString(parser));
+                    break;
+                default:
+                    JsonStreams.skipValue(parser);
+            }
         }
+        throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, "here.com api " +
+                "response does not contain any routes:" + error);
+    }
 
-        assert route != null;
+    /**
+     * @return the first route, or {@code null} if the response has none
+     */
+    private static RouteFields readResponse(JsonParser parser, boolean withManeuvers) throws RoutingAPIException {
+        JsonStreams.expect(parser, JsonParser.Event.START_OBJECT);
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            if (!parser.getString().equals("route")) {
+                JsonStreams.skipValue(parser);
+                continue;
+            }
+            JsonStreams.expect(parser, JsonParser.Event.START_ARRAY);
+            if (parser.next() != JsonParser.Event.START_OBJECT) {
+                return null;
+            }
+            RouteFields route = readRoute(parser, withManeuvers);
+            if (!route.hasSummary) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON,
+                        "the route in the here.com api response has no summary");
+            }
+            return route;
+        }
+        return null;
+    }
 
-        // travel times for modes: route/leg[]/maneuver{_type,traveltime}
-        JsonArray legs = route.getJsonArray("leg");
+    private static RouteFields readRoute(JsonParser parser, boolean withManeuvers) throws RoutingAPIException {
+        RouteFields route = new RouteFields();
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            switch (parser.getString()) {
+                case "summary":
+                    readSummary(parser, route);
+                    if (!withManeuvers) {
+                        return route;
+                    }
+                    break;
+                case "leg":
+                    if (withManeuvers) {
+                        readLegs(parser, route);
+                    } else {
+                        JsonStreams.skipValue(parser);
+                    }
+                    break;
+                case "publicTransportLine":
+                    if (withManeuvers) {
+                        route.publicTransportLines = countElements(parser);
+                    } else {
+                        JsonStreams.skipValue(parser);
+                    }
+                    break;
+                default:
+                    JsonStreams.skipValue(parser);
+            }
+        }
+        return route;
+    }
 
-        int publicTransportTravelTime = 0,
-                walkingTravelTime = 0;
+    // route/summary{distance,baseTime,travelTime,departure}
+    private static void readSummary(JsonParser parser, RouteFields route) throws RoutingAPIException {
+        JsonStreams.expect(parser, JsonParser.Event.START_OBJECT);
+        while (parser.next() == JsonParser.Event.KEY_NAME) {
+            switch (parser.getString()) {
+                case "distance":
+                    route.distance = JsonStreams.readInt(parser);
+                    break;
+                case "baseTime":
+                    route.baseTime = JsonStreams.readInt(parser);
+                    break;
+                case "travelTime":
+                    route.travelTime = JsonStreams.readInt(parser);
+                    break;
+                case "departure":
+                    route.departure = JsonStreams.readString(parser);
+                    break;
+                default:
+                    JsonStreams.skipValue(parser);
+            }
+        }
+        route.hasSummary = true;
+    }
 
-        for (int i = 0; i < legs.size(); i++) {
-            JsonArray maneuvers = legs.getJsonObject(i).getJsonArray("maneuver");
-            for (int j = 0; j < maneuvers.size(); j++) {
-                JsonObject maneuver = maneuvers.getJsonObject(j);
-                String type = maneuver.getJsonString("_type").getString();
-                int travelTime = maneuver.getInt("travelTime");
-                switch (type) {
-                    case "PrivateTransportManeuverType":
-                        walkingTravelTime += travelTime;
+    // travel times for modes: route/leg[]/maneuver{_type,traveltime}
+    private static void readLegs(JsonParser parser, RouteFields route) throws RoutingAPIException {
+        JsonStreams.expect(parser, JsonParser.Event.START_ARRAY);
+        while (parser.next() == JsonParser.Event.START_OBJECT) {
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                if (parser.getString().equals("maneuver")) {
+                    readManeuvers(parser, route);
+                } else {
+                    JsonStreams.skipValue(parser);
+                }
+            }
+        }
+    }
+
+    private static void readManeuvers(JsonParser parser, RouteFields route) throws RoutingAPIException {
+        JsonStreams.expect(parser, JsonParser.Event.START_ARRAY);
+        while (parser.next() == JsonParser.Event.START_OBJECT) {
+            String type = null;
+            int travelTime = 0;
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                switch (parser.getString()) {
+                    case "_type":
+                        type = JsonStreams.readString(parser);
                         break;
-                    case "PublicTransportManeuverType":
-                        publicTransportTravelTime += travelTime;
+                    case "travelTime":
+                        travelTime = JsonStreams.readInt(parser);
                         break;
                     default:
-                        throw new RoutingAPIException(RoutingAPIException.ErrorCode.DATA_SOURCE_RESPONSE_INVALID,
-                                "can not handle transport type ["
-                                        + type + "] in response by here.com: \n" + route);
+                        JsonStreams.skipValue(parser);
                 }
             }
+            if ("PrivateTransportManeuverType".equals(type)) {
+                route.walkingTravelTime += travelTime;
+            } else if ("PublicTransportManeuverType".equals(type)) {
+                route.publicTransportTravelTime += travelTime;
+            } else {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.DATA_SOURCE_RESPONSE_INVALID,
+                        "can not handle transport type [" + type + "] in response by here.com");
+            }
         }
+    }
 
-        HashMap<TransportMode, Integer> modeOfTransportTravelTimes = new HashMap<>();
-        modeOfTransportTravelTimes.put(TransportMode.PUBLIC_TRANSPORT, publicTransportTravelTime);
-        modeOfTransportTravelTimes.put(TransportMode.WALKING, walkingTravelTime);
-
-        // total duration: route/summary/travelTime
-        int duration = route.getJsonObject("summary").getInt("travelTime");
-
-        // departure: route/summary/departure
-        String departureAsISOString = route.getJsonObject("summary").getString("departure");
-        LocalDateTime departure = LocalDateTime.parse(departureAsISOString, ISO_OFFSET_DATE_TIME);
-
-        // arrival: departure + travelTime
-        LocalDateTime arrival = departure.plus(Duration.ofSeconds(duration));
-
-        // number of changes: route/publicTransportLine -1
-        int numberOfChanges = route.getJsonArray("publicTransportLine").size() - 1;
-
-        // distance: route/summary/distance
-        int distance = route.getJsonObject("summary").getInt("distance");
+    private static int countElements(JsonParser parser) throws RoutingAPIException {
+        JsonStreams.expect(parser, JsonParser.Event.START_ARRAY);
+        int count = 0;
+        for (JsonParser.Event event = parser.next(); event != JsonParser.Event.END_ARRAY; event = parser.next()) {
+            if (event == JsonParser.Event.START_OBJECT || event == JsonParser.Event.START_ARRAY) {
+                JsonStreams.skipRest(parser);
+            }
+            count++;
+        }
+        return count;
+    }
 
-        RouteSummary routeSummary = new RouteSummary();
-        routeSummary.setArrivalTime(arrival);
-        routeSummary.setDepartureTime(departure);
-        routeSummary.setNumberOfChanges(numberOfChanges);
-        routeSummary.setTotalDuration(duration);
-        routeSummary.setModeOfTransportTravelTimes(modeOfTransportTravelTimes);
-        routeSummary.setTotalDistance(distance);
-        return routeSummary;
+    /**
+     * Requests a route and retries the request if here.com throttled it or was unavailable.
+     * @param priority the priority of the request at the scheduler, or {@code null} if the caller already acquired a
+     *                 permit of the scheduler
+     * @return the response, which must be closed by the caller
+     */
+    private Response getHTTPResponse(Location start, Location destination, LocalDateTime departure,
+                                   RequestScheduler.Priority priority) throws RoutingAPIException {
+        Request request = new Request.Builder()
+                .url(buildURL(start, destination, departure.withNano(0)))
+                .build();
 
+        for (int attempt = 0; ; attempt++) {
+            // a retry waits for a permit like a bulk request, unless it retries an interactive one
+            if (priority != null || attempt > 0) {
+                long waitStart = System.nanoTime();
+                acquirePermit(priority != null ? priority : RequestScheduler.Priority.BULK);
+                metrics.recordRateLimiterWait(waitStart);
+            }
+            Response response = metrics.execute(transport, request, ENDPOINT);
+            if (!requestScheduler.onResponse(response.code(), response.header("Retry-After"))) {
+                return response;
+            }
+            response.close();
+            metrics.recordError(ENDPOINT, RoutingAPIException.getErrorForStatusCode(response.code()));
+            if (attempt == MAX_RETRIES) {
+                throw overloaded(response.code());
+            }
+        }
     }
 
-    private Reader getHTTPResponse(Location start, Location destination, LocalDateTime departure) throws RoutingAPIException {
-        String url = buildURL(start, destination, departure.withNano(0));
-
-        System.out.println("call URL " + url);
+    private void acquirePermit(RequestScheduler.Priority priority) throws RoutingAPIException {
+        try {
+            requestScheduler.acquire(priority, Thread.currentThread());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, "interrupted while waiting for the " +
+                    "rate limit of here.com", e);
+        }
+    }
 
+    /**
+     * The non-blocking variant of {@link #getHTTPResponse(Location, Location, LocalDateTime,
+     * RequestScheduler.Priority)}. The permits of the scheduler are handed out by its own thread, so waiting for the
+     * rate limit does not block the caller and in-flight requests do not occupy any thread.
+     * @param priority the priority of the request at the scheduler, or {@code null} if the caller already acquired a
+     *                 permit of the scheduler
+     * @param caller the caller whose requests share the permits of their priority fairly with other callers
+     * @return a future of the response, which must be closed by the consumer
+     */
+    private CompletableFuture<Response> getHTTPResponseAsync(Location start, Location destination,
+                                                             LocalDateTime departure,
+                                                             RequestScheduler.Priority priority, Object caller) {
         Request request = new Request.Builder()
-                .url(url)
+                .url(buildURL(start, destination, departure.withNano(0)))
                 .build();
 
-        //Acquire a ticket from the rate limiter
-        rateLimiter.acquire();
-        Response response = null;
-        try {
-            response = httpClient.newCall(request).execute();
-        } catch (IOException e) {
-            throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, e);
+        return sendAsync(request, priority, caller, 0);
+    }
+
+    private CompletableFuture<Response> sendAsync(Request request, RequestScheduler.Priority priority, Object caller,
+                                                  int attempt) {
+        CompletableFuture<Response> sent;
+        // a retry waits for a permit like a bulk request, unless it retries an interactive one
+        if (priority != null || attempt > 0) {
+            long waitStart = System.nanoTime();
+            sent = requestScheduler.acquireAsync(priority != null ? priority : RequestScheduler.Priority.BULK, caller)
+                    .thenCompose(ignored -> {
+                        metrics.recordRateLimiterWait(waitStart);
+                        return metrics.executeAsync(transport, request, ENDPOINT);
+                    });
+        } else {
+            sent = metrics.executeAsync(transport, request, ENDPOINT);
         }
+        return sent
+                .thenCompose(response -> {
+                    if (!requestScheduler.onResponse(response.code(), response.header("Retry-After"))) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    response.close();
+                    metrics.recordError(ENDPOINT, RoutingAPIException.getErrorForStatusCode(response.code()));
+                    if (attempt == MAX_RETRIES) {
+                        return CompletableFutures.failed(overloaded(response.code()));
+                    }
+                    return sendAsync(request, priority, caller, attempt + 1);
+                });
+    }
 
-        return response.body().charStream();
+    private static RoutingAPIException overloaded(int statusCode) {
+        return RoutingAPIException.buildFromStatusCode(statusCode, "here.com api still answered with status " +
+                statusCode + " after " + (MAX_RETRIES + 1) + " attempts");
     }
 
-    private String buildURL(Location start, Location destination, LocalDateTime departure) {
-        return URL_MAIN +
+    String buildURL(Location start, Location destination, LocalDateTime departure) {
+        return baseUrl +
                 formatFirstParameter(URL_APP_ID, apiId) +
                 formatParameter(URL_APP_CODE, apiCode) +
                 formatParameter(URL_START, start.getLatitude(), start.getLongitude()) +
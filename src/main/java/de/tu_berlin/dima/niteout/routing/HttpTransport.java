@@ -0,0 +1,235 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HTTP transport layer shared by all wrappers of external APIs (here.com and Mapzen).
+ * <p>
+ * It holds a single {@link OkHttpClient}, so all requests share one connection pool and one dispatcher. Connections
+ * are kept alive between requests and HTTP/2 is used whenever the server supports it, so subsequent requests to the
+ * same host do not pay for a new TCP connection and TLS handshake.
+ * <p>
+ * Use {@link #getDefault()} to get the transport used by the wrappers, or build a custom one with the
+ * {@link HttpTransportBuilder} and install it with {@link #setDefault(HttpTransport)} before the first request.
+ */
+public class HttpTransport {
+
+    public final static int DEFAULT_MAX_IDLE_CONNECTIONS = 16;
+    public final static long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public final static long DEFAULT_CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public final static long DEFAULT_READ_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public final static long DEFAULT_WRITE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public final static int DEFAULT_MAX_REQUESTS = 64;
+    public final static int DEFAULT_MAX_REQUESTS_PER_HOST = 16;
+
+    private static volatile HttpTransport defaultTransport;
+
+    private final OkHttpClient httpClient;
+    private final RoutingMetrics metrics;
+
+    private HttpTransport(HttpTransportBuilder builder) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.maxRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxRequestsPerHost);
+
+        this.httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(builder.maxIdleConnections, builder.keepAliveMillis,
+                        TimeUnit.MILLISECONDS))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(builder.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(builder.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(builder.writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * @return the transport shared by all API wrappers, created with the default settings on first access
+     */
+    public static HttpTransport getDefault() {
+        if (defaultTransport == null) {
+            synchronized (HttpTransport.class) {
+                if (defaultTransport == null) {
+                    defaultTransport = new HttpTransportBuilder().build();
+                }
+            }
+        }
+        return defaultTransport;
+    }
+
+    /**
+     * Replaces the transport shared by all API wrappers. Wrappers that were already created keep the transport
+     * they were created with.
+     * @param transport the new shared transport
+     */
+    public static void setDefault(HttpTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport cannot be null");
+        }
+        synchronized (HttpTransport.class) {
+            defaultTransport = transport;
+        }
+    }
+
+    /**
+     * @return the underlying client, e.g. to enqueue calls or to inspect the connection pool
+     */
+    OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return the registry into which the wrappers using this transport record their requests
+     */
+    public RoutingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Executes the request synchronously on the shared client.
+     * @param request the request to execute
+     * @return the response, which must be consumed or closed by the caller to release the connection
+     * @throws RoutingAPIException with {@link RoutingAPIException.ErrorCode#HTTP} if the request failed
+     */
+    Response execute(Request request) throws RoutingAPIException {
+        try {
+            return httpClient.newCall(request).execute();
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, e);
+        }
+    }
+
+    /**
+     * Enqueues the request on the shared client without blocking the calling thread.
+     * @param request the request to execute
+     * @return a future of the response, which must be consumed or closed by the caller to release the connection.
+     * It completes exceptionally with {@link RoutingAPIException.ErrorCode#HTTP} if the request failed.
+     */
+    CompletableFuture<Response> executeAsync(Request request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        Call call = httpClient.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                if (!future.complete(response)) {
+                    response.close();
+                }
+            }
+        });
+        // propagate cancellation of the future to the call
+        future.whenComplete((response, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    public static class HttpTransportBuilder {
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+        private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private long readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+        private long writeTimeoutMillis = DEFAULT_WRITE_TIMEOUT_MILLIS;
+        private int maxRequests = DEFAULT_MAX_REQUESTS;
+        private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        private RoutingMetrics metrics = RoutingMetrics.NONE;
+
+        /**
+         * @param maxIdleConnections the number of idle connections kept in the pool
+         */
+        public HttpTransportBuilder maxIdleConnections(int maxIdleConnections) {
+            this.maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        /**
+         * @param keepAlive how long an idle connection is kept in the pool before it is closed
+         */
+        public HttpTransportBuilder keepAlive(long keepAlive, TimeUnit unit) {
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        public HttpTransportBuilder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public HttpTransportBuilder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public HttpTransportBuilder writeTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * @param maxRequests the maximum number of requests executed concurrently by asynchronous calls
+         */
+        public HttpTransportBuilder maxRequests(int maxRequests) {
+            this.maxRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * @param maxRequestsPerHost the maximum number of requests to a single host executed concurrently by
+         *                           asynchronous calls
+         */
+        public HttpTransportBuilder maxRequestsPerHost(int maxRequestsPerHost) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /**
+         * @param metrics the registry into which the wrappers using the transport record the latencies, rate limiter
+         *                waits, parse times and errors of their requests, e.g. a {@link DefaultRoutingMetrics}
+         */
+        public HttpTransportBuilder metrics(RoutingMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public HttpTransport build() {
+
+            if (maxIdleConnections < 1) {
+                throw new IllegalArgumentException("maxIdleConnections must be at least 1");
+            }
+            if (keepAliveMillis <= 0) {
+                throw new IllegalArgumentException("keepAlive must be positive");
+            }
+            if (connectTimeoutMillis < 0 || readTimeoutMillis < 0 || writeTimeoutMillis < 0) {
+                throw new IllegalArgumentException("timeouts cannot be negative");
+            }
+            if (maxRequests < 1 || maxRequestsPerHost < 1) {
+                throw new IllegalArgumentException("maxRequests and maxRequestsPerHost must be at least 1");
+            }
+            if (metrics == null) {
+                throw new IllegalArgumentException("metrics cannot be null, use RoutingMetrics.NONE instead");
+            }
+
+            return new HttpTransport(this);
+        }
+    }
+}
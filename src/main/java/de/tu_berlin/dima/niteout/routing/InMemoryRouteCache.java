@@ -0,0 +1,189 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded {@link RouteCache} in memory.
+ * <p>
+ * Walking and public transport trips are kept in separate LRU caches with their own size limit and time to live,
+ * because walking times do not depend on the time of the day while public transport times change with the timetable.
+ */
+public class InMemoryRouteCache implements RouteCache {
+
+    public final static long DEFAULT_MAXIMUM_SIZE = 100_000;
+    public final static Duration DEFAULT_WALKING_TIME_TO_LIVE = Duration.ofDays(7);
+    public final static Duration DEFAULT_PUBLIC_TRANSPORT_TIME_TO_LIVE = Duration.ofHours(6);
+    public final static Duration DEFAULT_DEPARTURE_BUCKET = Duration.ofMinutes(5);
+    public final static double DEFAULT_GRID_SIZE_METERS = 25;
+
+    private final Cache<RouteCacheKey, CachedRoute> walkingCache;
+    private final Cache<RouteCacheKey, CachedRoute> publicTransportCache;
+    private final Duration departureBucket;
+    private final SpatialGrid grid;
+    private final LongSupplier clock;
+
+    private InMemoryRouteCache(InMemoryRouteCacheBuilder builder) {
+        this.walkingCache = CacheBuilder.newBuilder()
+                .maximumSize(builder.walkingMaximumSize)
+                .expireAfterWrite(builder.walkingTimeToLive.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.publicTransportCache = CacheBuilder.newBuilder()
+                .maximumSize(builder.publicTransportMaximumSize)
+                .expireAfterWrite(builder.publicTransportTimeToLive.toMillis(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        this.departureBucket = builder.departureBucket;
+        this.grid = new SpatialGrid(builder.gridSizeMeters);
+        this.clock = builder.clock;
+    }
+
+    @Override
+    public RouteCacheKey createKey(TransportMode transportMode, Location start, Location destination,
+                                   LocalDateTime departure) {
+        return RouteCacheKey.of(transportMode, start, destination, departure, grid, departureBucket);
+    }
+
+    @Override
+    public CachedRoute get(RouteCacheKey key) {
+        Cache<RouteCacheKey, CachedRoute> cache = getCache(key);
+        // a trip copied from a cache behind this one expires when it expires there; the peek is not counted
+        CachedRoute route = cache.asMap().get(key);
+        if (route != null && route.getExpiresAt() <= clock.getAsLong()) {
+            cache.asMap().remove(key, route);
+        }
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(RouteCacheKey key, CachedRoute route) {
+        getCache(key).put(key, route);
+    }
+
+    @Override
+    public void putKeepingSummary(RouteCacheKey key, CachedRoute route) {
+        // the map view neither counts the lookup nor renews a kept entry
+        getCache(key).asMap().merge(key, route,
+                (previous, replacement) -> previous.knowsMoreThan(replacement) ? previous : replacement);
+    }
+
+    @Override
+    public void invalidateAll() {
+        walkingCache.invalidateAll();
+        publicTransportCache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats getStatistics() {
+        return walkingCache.stats().plus(publicTransportCache.stats());
+    }
+
+    /**
+     * @return the counters of the cache of the given transport mode only
+     */
+    public CacheStats getStatistics(TransportMode transportMode) {
+        return transportMode == TransportMode.WALKING ? walkingCache.stats() : publicTransportCache.stats();
+    }
+
+    /**
+     * @return the number of cached trips
+     */
+    public long size() {
+        return walkingCache.size() + publicTransportCache.size();
+    }
+
+    private Cache<RouteCacheKey, CachedRoute> getCache(RouteCacheKey key) {
+        return key.getTransportMode() == TransportMode.WALKING ? walkingCache : publicTransportCache;
+    }
+
+    public static class InMemoryRouteCacheBuilder {
+        private long walkingMaximumSize = DEFAULT_MAXIMUM_SIZE;
+        private long publicTransportMaximumSize = DEFAULT_MAXIMUM_SIZE;
+        private Duration walkingTimeToLive = DEFAULT_WALKING_TIME_TO_LIVE;
+        private Duration publicTransportTimeToLive = DEFAULT_PUBLIC_TRANSPORT_TIME_TO_LIVE;
+        private Duration departureBucket = DEFAULT_DEPARTURE_BUCKET;
+        private double gridSizeMeters = DEFAULT_GRID_SIZE_METERS;
+        private LongSupplier clock = System::currentTimeMillis;
+
+        /**
+         * @param maximumSize the maximum number of cached trips per transport mode
+         */
+        public InMemoryRouteCacheBuilder maximumSize(long maximumSize) {
+            this.walkingMaximumSize = maximumSize;
+            this.publicTransportMaximumSize = maximumSize;
+            return this;
+        }
+
+        public InMemoryRouteCacheBuilder walkingMaximumSize(long walkingMaximumSize) {
+            this.walkingMaximumSize = walkingMaximumSize;
+            return this;
+        }
+
+        public InMemoryRouteCacheBuilder publicTransportMaximumSize(long publicTransportMaximumSize) {
+            this.publicTransportMaximumSize = publicTransportMaximumSize;
+            return this;
+        }
+
+        public InMemoryRouteCacheBuilder walkingTimeToLive(Duration walkingTimeToLive) {
+            this.walkingTimeToLive = walkingTimeToLive;
+            return this;
+        }
+
+        public InMemoryRouteCacheBuilder publicTransportTimeToLive(Duration publicTransportTimeToLive) {
+            this.publicTransportTimeToLive = publicTransportTimeToLive;
+            return this;
+        }
+
+        /**
+         * @param departureBucket the length of the buckets public transport departure times are truncated to
+         */
+        public InMemoryRouteCacheBuilder departureBucket(Duration departureBucket) {
+            this.departureBucket = departureBucket;
+            return this;
+        }
+
+        /**
+         * @param gridSizeMeters the edge length of the grid cells start and destination are snapped to
+         */
+        public InMemoryRouteCacheBuilder gridSizeMeters(double gridSizeMeters) {
+            this.gridSizeMeters = gridSizeMeters;
+            return this;
+        }
+
+        /**
+         * @param clock the current time in milliseconds, for tests
+         */
+        InMemoryRouteCacheBuilder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public InMemoryRouteCache build() {
+
+            if (walkingMaximumSize < 0 || publicTransportMaximumSize < 0) {
+                throw new IllegalArgumentException("maximumSize cannot be negative");
+            }
+            if (walkingTimeToLive.isNegative() || walkingTimeToLive.isZero()
+                    || publicTransportTimeToLive.isNegative() || publicTransportTimeToLive.isZero()) {
+                throw new IllegalArgumentException("timeToLive must be positive");
+            }
+            if (departureBucket.getSeconds() < 1) {
+                throw new IllegalArgumentException("departureBucket must be at least one second");
+            }
+            if (gridSizeMeters <= 0) {
+                throw new IllegalArgumentException("gridSizeMeters must be positive");
+            }
+
+            return new InMemoryRouteCache(this);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import okhttp3.ResponseBody;
+
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.spi.JsonProvider;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParserFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+/**
+ * Helpers to pull single fields out of a JSON response with a {@link JsonParser}, without building the object tree of
+ * the whole response.
+ * <p>
+ * The readers of the responses walk the events of the parser, keep the values of the fields they need and skip all
+ * other values. Skipping a value only counts the nesting of its objects and arrays, so nothing of it is allocated
+ * besides the parser's own buffer.
+ * <p>
+ * The responses are decoded as UTF-8 straight from the buffered source of their body into the parser's buffer, which
+ * is taken from the buffer pool of the JSON provider, so neither a {@link java.io.Reader} of the body nor a buffer
+ * per response is allocated.
+ */
+final class JsonStreams {
+
+    /**
+     * Reads a value from the events of a parser.
+     */
+    @FunctionalInterface
+    interface ValueReader<T> {
+        T read(JsonParser parser) throws RoutingAPIException;
+    }
+
+    // looking up the JSON provider is expensive, so the parsers and readers are created by single factories, which
+    // share the buffer pool of the provider
+    private final static JsonProvider JSON_PROVIDER = JsonProvider.provider();
+    private final static JsonParserFactory PARSER_FACTORY = JSON_PROVIDER.createParserFactory(null);
+    private final static JsonReaderFactory READER_FACTORY = JSON_PROVIDER.createReaderFactory(null);
+
+    private JsonStreams() {
+    }
+
+    /**
+     * Reads a response with a value reader and closes the parser and the body. The rest of the body, which the value
+     * reader did not need, is discarded by the transport, so the connection can be reused.
+     * @param source the name of the API the response is from, for the error message
+     */
+    static <T> T read(ResponseBody response, String source, ValueReader<T> reader) throws RoutingAPIException {
+        try (JsonParser parser = PARSER_FACTORY.createParser(response.byteStream(), StandardCharsets.UTF_8)) {
+            return reader.read(parser);
+        } catch (JsonException | NoSuchElementException e) {
+            throw invalid(source, e);
+        }
+    }
+
+    /**
+     * Reads the object tree of a response and closes the body.
+     * @param source the name of the API the response is from, for the error message
+     */
+    static JsonObject readObject(ResponseBody response, String source) throws RoutingAPIException {
+        try (JsonReader reader = READER_FACTORY.createReader(response.byteStream(), StandardCharsets.UTF_8)) {
+            return reader.readObject();
+        } catch (JsonException | IllegalStateException e) {
+            throw invalid(source, e);
+        }
+    }
+
+    private static RoutingAPIException invalid(String source, RuntimeException e) {
+        return new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, source +
+                " api response could not be converted to json, probably it returned an error instead of json", e);
+    }
+
+    /**
+     * Reads the next event, which has to be of the expected kind.
+     */
+    static void expect(JsonParser parser, JsonParser.Event expected) throws RoutingAPIException {
+        JsonParser.Event event = parser.next();
+        if (event != expected) {
+            throw unexpected(event, expected.name());
+        }
+    }
+
+    /**
+     * Reads the next value, which has to be a number.
+     */
+    static int readInt(JsonParser parser) throws RoutingAPIException {
+        JsonParser.Event event = parser.next();
+        if (event != JsonParser.Event.VALUE_NUMBER) {
+            throw unexpected(event, "a number");
+        }
+        return parser.getInt();
+    }
+
+    /**
+     * Reads the next value, which has to be a number.
+     */
+    static double readDouble(JsonParser parser) throws RoutingAPIException {
+        JsonParser.Event event = parser.next();
+        if (event != JsonParser.Event.VALUE_NUMBER) {
+            throw unexpected(event, "a number");
+        }
+        return parser.getBigDecimal().doubleValue();
+    }
+
+    /**
+     * Reads the next value, which has to be a string.
+     */
+    static String readString(JsonParser parser) throws RoutingAPIException {
+        JsonParser.Event event = parser.next();
+        if (event != JsonParser.Event.VALUE_STRING) {
+            throw unexpected(event, "a string");
+        }
+        return parser.getString();
+    }
+
+    /**
+     * Skips the next value, including all values nested in it.
+     */
+    static void skipValue(JsonParser parser) {
+        JsonParser.Event event = parser.next();
+        if (event == JsonParser.Event.START_OBJECT || event == JsonParser.Event.START_ARRAY) {
+            skipRest(parser);
+        }
+    }
+
+    /**
+     * Skips the rest of the object or array whose start was the last event, including all values nested in it.
+     */
+    static void skipRest(JsonParser parser) {
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static RoutingAPIException unexpected(JsonParser.Event event, String expected) {
+        return new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON,
+                "expected " + expected + " in the api response, but found " + event);
+    }
+}
@@ -0,0 +1,116 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in nanoseconds, which can be recorded concurrently without locks.
+ * <p>
+ * Like an HdrHistogram, the values are counted in buckets of exponentially growing width: a value is bucketed by its
+ * highest six bits, so the value at a percentile is at most 1/32 (about 3%) above the recorded one. Values above
+ * {@link #MAX_VALUE} (about 4.9 hours) are counted as {@link #MAX_VALUE}. The histogram takes 10 KB, independent of the
+ * number of values.
+ */
+public final class LatencyHistogram {
+
+    private final static int SUB_BUCKET_BITS = 6;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private final static int MAX_VALUE_BITS = 44;
+    private final static int BUCKETS = SUB_BUCKETS + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    public final static long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos the duration, negative durations are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // another thread raised the maximum in the meantime
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @return the largest value in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile the percentile between 0 and 100, e.g. 99 for the 99th percentile
+     * @return the upper bound of the bucket of the value at the percentile in nanoseconds, or 0 if nothing was
+     * recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        // the counts are read one after another, so their total may differ from the count while values are recorded
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long top = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.1f us, p50=%.1f us, p99=%.1f us, max=%.1f us", getCount(),
+                getMean() / 1000, getValueAtPercentile(50) / 1000.0, getValueAtPercentile(99) / 1000.0,
+                getMax() / 1000.0);
+    }
+}
@@ -1,17 +1,14 @@
 package de.tu_berlin.dima.niteout.routing;
 
-import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.apache.http.client.utils.URIBuilder;
 
-import javax.json.Json;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
-import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A base class for Mapzen API consumers/wrappers
@@ -19,56 +16,159 @@ import java.util.LinkedHashMap;
  */
 abstract class MapzenApi {
 
+    // the url of an endpoint of a service, formatted with the service and the endpoint
+    final static String DEFAULT_URL_FORMAT = "https://%s.mapzen.com/%s";
+    final static String PROVIDER = "mapzen";
+
     protected final String apiKey;
     protected final String service;
-    private final String urlFormat = "https://%s.mapzen.com/%s";
+    private final String urlFormat;
+    private final HttpTransport transport;
+    protected final ProviderMetrics metrics;
 
     protected MapzenApi(String service, String apiKey) {
+        this(service, apiKey, HttpTransport.getDefault());
+    }
+
+    protected MapzenApi(String service, String apiKey, HttpTransport transport) {
+        this(service, apiKey, transport, DEFAULT_URL_FORMAT);
+    }
+
+    /**
+     * @param urlFormat the format of the url of an endpoint, e.g. of a mock server, which is formatted with the
+     *                  service and the endpoint
+     */
+    protected MapzenApi(String service, String apiKey, HttpTransport transport, String urlFormat) {
         assert !service.isEmpty();
         assert !apiKey.isEmpty();
+        assert transport != null;
+        assert urlFormat != null;
 
         this.service = service;
         this.apiKey = apiKey;
+        this.transport = transport;
+        this.urlFormat = urlFormat;
+        this.metrics = new ProviderMetrics(transport, PROVIDER);
     }
 
     protected JsonObject getResponse(String endpoint, JsonObject jsonObject) throws RoutingAPIException {
         final String url;
-        final JsonObject json;
         try {
             url = getUrl(endpoint, jsonObject);
-            json =  getResponse(url);
         } catch (URISyntaxException e) {
             throw new RoutingAPIException(RoutingAPIException.ErrorCode.INVALID_URI_SYNTAX, e);
         }
-        if (json.containsKey("status_code") && json.getJsonNumber("status_code").intValue() != 200) {
-            throw RoutingAPIException.buildFromStatusCode(json.getJsonNumber("status_code").intValue(), json.toString());
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = metrics.execute(transport, request, endpoint(endpoint))) {
+            return metrics.parse(endpoint(endpoint), () -> checkStatusCode(readJson(response)));
         }
-        return json;
     }
 
     protected JsonObject getResponse(String endpoint, LinkedHashMap<String, String> queryString) throws RoutingAPIException {
         final String url;
         try {
             url = getUrl(endpoint, queryString);
-            return getResponse(url);
         } catch (URISyntaxException e) {
             throw new RoutingAPIException(RoutingAPIException.ErrorCode.INVALID_URI_SYNTAX, e);
         }
+        Request request = new Request.Builder().url(url).build();
+        try (Response response = metrics.execute(transport, request, endpoint(endpoint))) {
+            return metrics.parse(endpoint(endpoint), () -> readJson(response));
+        }
     }
 
-    private JsonObject getResponse(String url) throws RoutingAPIException {
-        OkHttpClient httpClient = new OkHttpClient();
+    /**
+     * The non-blocking variant of {@link #getResponse(String, JsonObject)}.
+     * @return a future of the response, completed exceptionally with a {@link RoutingAPIException} on failure
+     */
+    protected CompletableFuture<JsonObject> getResponseAsync(String endpoint, JsonObject jsonObject) {
+        final String url;
+        try {
+            url = getUrl(endpoint, jsonObject);
+        } catch (URISyntaxException e) {
+            return CompletableFutures.failed(
+                    new RoutingAPIException(RoutingAPIException.ErrorCode.INVALID_URI_SYNTAX, e));
+        }
+        Request request = new Request.Builder().url(url).build();
+        return metrics.executeAsync(transport, request, endpoint(endpoint)).thenApply(response -> {
+            try (Response closeableResponse = response) {
+                return metrics.parse(endpoint(endpoint), () -> checkStatusCode(readJson(closeableResponse)));
+            } catch (RoutingAPIException e) {
+                throw CompletableFutures.wrap(e);
+            }
+        });
+    }
+
+    /**
+     * Gets a response like {@link #getResponse(String, JsonObject)}, but reads it with a streaming reader instead of
+     * building the object tree of the whole response. The reader has to check the status code of the response.
+     */
+    protected <T> T getResponse(String endpoint, JsonObject jsonObject, JsonStreams.ValueReader<T> reader)
+            throws RoutingAPIException {
+        final String url;
+        try {
+            url = getUrl(endpoint, jsonObject);
+        } catch (URISyntaxException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.INVALID_URI_SYNTAX, e);
+        }
         Request request = new Request.Builder().url(url).build();
-        Response response;
+        try (Response response = metrics.execute(transport, request, endpoint(endpoint))) {
+            return metrics.parse(endpoint(endpoint), () ->
+                    JsonStreams.read(response.body(), PROVIDER, reader));
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #getResponse(String, JsonObject, JsonStreams.ValueReader)}.
+     * @return a future of the response, completed exceptionally with a {@link RoutingAPIException} on failure
+     */
+    protected <T> CompletableFuture<T> getResponseAsync(String endpoint, JsonObject jsonObject,
+                                                        JsonStreams.ValueReader<T> reader) {
+        final String url;
         try {
-            response = httpClient.newCall(request).execute();
-        } catch (IOException e) {
-            throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, e);
+            url = getUrl(endpoint, jsonObject);
+        } catch (URISyntaxException e) {
+            return CompletableFutures.failed(
+                    new RoutingAPIException(RoutingAPIException.ErrorCode.INVALID_URI_SYNTAX, e));
+        }
+        Request request = new Request.Builder().url(url).build();
+        return metrics.executeAsync(transport, request, endpoint(endpoint)).thenApply(response -> {
+            try (Response closeableResponse = response) {
+                return metrics.parse(endpoint(endpoint), () ->
+                        JsonStreams.read(closeableResponse.body(), PROVIDER, reader));
+            } catch (RoutingAPIException e) {
+                throw CompletableFutures.wrap(e);
+            }
+        });
+    }
+
+    /**
+     * @return the name of the endpoint in the metrics, e.g. {@code matrix/sources_to_targets}
+     */
+    protected String endpoint(String endpoint) {
+        return service + "/" + endpoint;
+    }
+
+    private static JsonObject readJson(Response response) throws RoutingAPIException {
+        return JsonStreams.readObject(response.body(), PROVIDER);
+    }
+
+    private static JsonObject checkStatusCode(JsonObject json) throws RoutingAPIException {
+        if (json.containsKey("status_code") && json.getJsonNumber("status_code").intValue() != 200) {
+            throw RoutingAPIException.buildFromStatusCode(json.getJsonNumber("status_code").intValue(), json.toString());
         }
-        JsonReader jsonReader = Json.createReader(response.body().charStream());
-        JsonObject out = jsonReader.readObject();
+        return json;
+    }
 
-        return out;
+    /**
+     * Checks the status code of a response read by a streaming reader.
+     * @param statusCode the status code of the response, or 0 if it has none
+     * @param error the error message of the response, may be {@code null}
+     */
+    protected static void checkStatusCode(int statusCode, String error) throws RoutingAPIException {
+        if (statusCode != 0 && statusCode != 200) {
+            throw RoutingAPIException.buildFromStatusCode(statusCode, error);
+        }
     }
 
     protected String getUrl(String endpoint, JsonObject jsonObject) throws URISyntaxException {
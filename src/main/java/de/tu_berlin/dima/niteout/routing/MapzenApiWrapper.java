@@ -3,9 +3,11 @@ package de.tu_berlin.dima.niteout.routing;
 import de.tu_berlin.dima.niteout.routing.model.Location;
 import de.tu_berlin.dima.niteout.routing.model.RouteSummary;
 import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import de.tu_berlin.dima.niteout.routing.model.TravelTimeMatrix;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An implementation of the {@link WalkingDirectionsAPI} as a facade to other Mapzen APIs (like Mobility and Matrix)
@@ -14,9 +16,21 @@ import java.util.List;
 class MapzenApiWrapper implements WalkingDirectionsAPI {
 
     private final String apiKey;
+    private final HttpTransport transport;
+    private final String urlFormat;
 
     public MapzenApiWrapper(String apiKey) {
+        this(apiKey, HttpTransport.getDefault(), MapzenApi.DEFAULT_URL_FORMAT);
+    }
+
+    /**
+     * @param urlFormat the format of the url of an endpoint of the Mapzen services, e.g. of a mock server, see
+     *                  {@link MapzenApi#MapzenApi(String, String, HttpTransport, String)}
+     */
+    MapzenApiWrapper(String apiKey, HttpTransport transport, String urlFormat) {
         this.apiKey = apiKey;
+        this.transport = transport;
+        this.urlFormat = urlFormat;
     }
 
     @Override
@@ -27,7 +41,7 @@ class MapzenApiWrapper implements WalkingDirectionsAPI {
     @Override
     public int getWalkingTripTime(Location start, Location destination,
                                   LocalDateTime departureTime) throws RoutingAPIException {
-        MapzenMobilityApiWrapper mobilityWrapper = new MapzenMobilityApiWrapper(apiKey);
+        MapzenMobilityApiWrapper mobilityWrapper = newMobilityWrapper();
         return departureTime == null ?
                 mobilityWrapper.getWalkingTripTime(start, destination) :
                 mobilityWrapper.getWalkingTripTime(start, destination, departureTime);
@@ -41,7 +55,7 @@ class MapzenApiWrapper implements WalkingDirectionsAPI {
     @Override
     public RouteSummary getWalkingRouteSummary(Location start, Location destination,
                                                LocalDateTime departureTime) throws RoutingAPIException {
-        MapzenMobilityApiWrapper mobilityWrapper = new MapzenMobilityApiWrapper(apiKey);
+        MapzenMobilityApiWrapper mobilityWrapper = newMobilityWrapper();
         return departureTime == null ?
                 mobilityWrapper.getWalkingRouteSummary(start, destination) :
                 mobilityWrapper.getWalkingRouteSummary(start, destination, departureTime);
@@ -51,7 +65,50 @@ class MapzenApiWrapper implements WalkingDirectionsAPI {
     public List<TimeMatrixEntry> getWalkingMatrix(Location[] startLocations,
                                                   Location[] destinationLocations) throws RoutingAPIException {
 
-        MapzenMatrixApiWrapper matrixWrapper = new MapzenMatrixApiWrapper(this.apiKey);
+        MapzenMatrixApiWrapper matrixWrapper = newMatrixWrapper();
         return matrixWrapper.getWalkingMatrix(startLocations, destinationLocations);
     }
+
+    @Override
+    public TravelTimeMatrix getWalkingTravelTimeMatrix(Location[] startLocations,
+                                                       Location[] destinationLocations) throws RoutingAPIException {
+        return newMatrixWrapper().getWalkingTravelTimeMatrix(startLocations, destinationLocations);
+    }
+
+    @Override
+    public CompletableFuture<Integer> getWalkingTripTimeAsync(Location start, Location destination) {
+        try {
+            return newMobilityWrapper().getWalkingTripTimeAsync(start, destination, null);
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<RouteSummary> getWalkingRouteSummaryAsync(Location start, Location destination,
+                                                                       LocalDateTime departureTime) {
+        try {
+            return newMobilityWrapper().getWalkingRouteSummaryAsync(start, destination, departureTime);
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<TimeMatrixEntry>> getWalkingMatrixAsync(Location[] startLocations,
+                                                                          Location[] destinationLocations) {
+        try {
+            return newMatrixWrapper().getWalkingMatrixAsync(startLocations, destinationLocations);
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    private MapzenMobilityApiWrapper newMobilityWrapper() throws RoutingAPIException {
+        return new MapzenMobilityApiWrapper(apiKey, transport, urlFormat);
+    }
+
+    private MapzenMatrixApiWrapper newMatrixWrapper() throws RoutingAPIException {
+        return new MapzenMatrixApiWrapper(apiKey, transport, urlFormat);
+    }
 }
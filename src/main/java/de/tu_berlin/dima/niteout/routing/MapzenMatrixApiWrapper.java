@@ -1,17 +1,23 @@
 package de.tu_berlin.dima.niteout.routing;
 
+import com.google.common.util.concurrent.RateLimiter;
 import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
 import de.tu_berlin.dima.niteout.routing.model.Location;
 import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import de.tu_berlin.dima.niteout.routing.model.TravelTimeMatrix;
 import de.tu_berlin.dima.niteout.routing.model.mapzen.CostingModel;
 import de.tu_berlin.dima.niteout.routing.model.mapzen.MatrixType;
 import de.tu_berlin.dima.niteout.routing.model.mapzen.Units;
 
 import javax.json.*;
+import javax.json.stream.JsonParser;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -20,16 +26,55 @@ import java.util.List;
  */
 class MapzenMatrixApiWrapper extends MapzenApi {
 
+    // the limits of the free plan of the matrix service
+    final static int MAX_MATRIX_LOCATIONS = 50;
+    private final static double MAX_API_RPS = 2;
+    private final static int MAX_CONCURRENT_TILE_REQUESTS = 4;
+
+    // shared by all wrappers, since the limits apply to the api key
+    private final static RateLimiter RATE_LIMITER = RateLimiter.create(MAX_API_RPS);
+    private final static MatrixRequestExecutor TILE_REQUEST_EXECUTOR =
+            new MatrixRequestExecutor.MatrixRequestExecutorBuilder()
+                    .maxConcurrency(MAX_CONCURRENT_TILE_REQUESTS)
+                    .rateLimiter(RATE_LIMITER)
+                    // shared by all wrappers, so it records into the registry of the default transport
+                    .metrics(new ProviderMetrics(() -> HttpTransport.getDefault().getMetrics(), PROVIDER))
+                    .build();
+
     private final Units MapzenDistanceUnits = Units.KM;
     private final DistanceUnits MatrixDistanceUnits = DistanceUnits.KILOMETERS;
+    private final MatrixRequestExecutor tileRequestExecutor;
 
     public MapzenMatrixApiWrapper(String apiKey) throws RoutingAPIException {
+        this(apiKey, HttpTransport.getDefault(), TILE_REQUEST_EXECUTOR);
+    }
 
-        super("matrix", apiKey);
+    /**
+     * @param tileRequestExecutor the executor of the requests of the tiles of large matrices, which has to respect
+     *                            the rate limit of the api key
+     */
+    MapzenMatrixApiWrapper(String apiKey, HttpTransport transport, MatrixRequestExecutor tileRequestExecutor)
+            throws RoutingAPIException {
+        this(apiKey, transport, tileRequestExecutor, DEFAULT_URL_FORMAT);
+    }
+
+    /**
+     * @param urlFormat the format of the url of an endpoint, see {@link MapzenApi#MapzenApi(String, String,
+     *                  HttpTransport, String)}
+     */
+    MapzenMatrixApiWrapper(String apiKey, HttpTransport transport, String urlFormat) throws RoutingAPIException {
+        this(apiKey, transport, TILE_REQUEST_EXECUTOR, urlFormat);
+    }
+
+    MapzenMatrixApiWrapper(String apiKey, HttpTransport transport, MatrixRequestExecutor tileRequestExecutor,
+                           String urlFormat) throws RoutingAPIException {
+
+        super("matrix", apiKey, transport, urlFormat);
 
         if (apiKey == null || apiKey.trim().length() == 0)
             throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_CREDENTIALS_INVALID,
                     "The api key for mapzen was either empty or not set or could not accessed.");
+        this.tileRequestExecutor = tileRequestExecutor;
     }
 
     /**
@@ -45,29 +90,11 @@ class MapzenMatrixApiWrapper extends MapzenApi {
         jsonBuilder.addLocations(destinations);
         JsonObject requestJsonObject = jsonBuilder.build(this.MapzenDistanceUnits);
 
-        JsonObject response = super.getResponse(MatrixType.ONE_TO_MANY.getApiString(), requestJsonObject);
-
-        JsonArray outerArray = response.getJsonArray(MatrixType.ONE_TO_MANY.getApiString());
-        JsonArray innerArray = outerArray.getJsonArray(0);
-
-        ArrayList<TimeMatrixEntry> out = new ArrayList<>(destinations.length);
-
-        for (JsonValue value : innerArray) {
-            JsonObject jsonObject = (JsonObject)value;
-            int index = jsonObject.getInt("to_index");
-            if (index == 0) { continue; } // skip 'from_index' : 0 'to_index' : 0 since it's the departure/start point
-
-            TimeMatrixEntry entry = new TimeMatrixEntry(
-                    0,
-                    index - 1,
-                    jsonObject.getInt("time"),
-                    jsonObject.getJsonNumber("distance").doubleValue(),
-                    MatrixDistanceUnits
-            );
-            out.add(entry);
-        }
-
-        return out;
+        // skip 'from_index' : 0 'to_index' : 0 since it's the departure/start point
+        return super.getResponse(MatrixType.ONE_TO_MANY.getApiString(), requestJsonObject,
+                matrixReader(MatrixType.ONE_TO_MANY, (row, column, fromIndex, toIndex, time, distance) ->
+                        row != 0 || toIndex == 0 ? null : new TimeMatrixEntry(0, toIndex - 1, time, distance,
+                                MatrixDistanceUnits)));
     }
 
     public List<TimeMatrixEntry> getWalkingMatrix(
@@ -78,38 +105,131 @@ class MapzenMatrixApiWrapper extends MapzenApi {
         jsonBuilder.addLocation(destinationLocation);
         JsonObject requestJsonObject = jsonBuilder.build(this.MapzenDistanceUnits);
 
-        JsonObject response = this.getResponse(MatrixType.MANY_TO_ONE.getApiString(), requestJsonObject);
-
-        ArrayList<TimeMatrixEntry> out = new ArrayList<>(startLocations.length);
-
-        for (JsonValue jsonValue : response.getJsonArray(MatrixType.MANY_TO_ONE.getApiString())) {
-            JsonArray innerArray = (JsonArray)jsonValue;
-            JsonObject jsonObject = innerArray.getJsonObject(0);
-            int fromIndex = jsonObject.getInt("from_index");
-            if (fromIndex >= startLocations.length) continue; //skip last combination ("from destination to destination")
-
-            TimeMatrixEntry entry;
-            try {
-                entry = new TimeMatrixEntry(
-                        fromIndex,
-                        0,
-                        jsonObject.getInt("time"),
-                        jsonObject.getJsonNumber("distance").doubleValue(),
-                        MatrixDistanceUnits);
-            } catch (ClassCastException e) {
-                throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON,
-                        "could not cast JsonValue to JsonNumber when trying to get time and distance from json \n"
-                        + jsonObject.toString());
+        //skip last combination ("from destination to destination")
+        return this.getResponse(MatrixType.MANY_TO_ONE.getApiString(), requestJsonObject,
+                matrixReader(MatrixType.MANY_TO_ONE, (row, column, fromIndex, toIndex, time, distance) ->
+                        column != 0 || fromIndex >= startLocations.length ? null : new TimeMatrixEntry(fromIndex, 0,
+                                time, distance, MatrixDistanceUnits)));
+    }
+
+    /**
+     * Gets the matrix between all start and all destination locations. A matrix with more locations than a single
+     * request allows is split into tiles, which are requested concurrently within the rate limit of the api key.
+     */
+    public List<TimeMatrixEntry> getWalkingMatrix(Location[] startLocations, Location[] destinationLocations) throws
+            RoutingAPIException {
+        return getWalkingTravelTimeMatrix(startLocations, destinationLocations).asEntries();
+    }
+
+    /**
+     * Gets a matrix like {@link #getWalkingMatrix(Location[], Location[])}, but in flat primitive arrays. Locations
+     * which are given more than once are requested only once.
+     */
+    public TravelTimeMatrix getWalkingTravelTimeMatrix(Location[] startLocations, Location[] destinationLocations)
+            throws RoutingAPIException {
+
+        DistinctLocations distinctStarts = DistinctLocations.of(startLocations, 0);
+        DistinctLocations distinctDestinations = DistinctLocations.of(destinationLocations, 0);
+        TravelTimeMatrix matrix = getTiledMatrix(distinctStarts.getLocations(), distinctDestinations.getLocations());
+        return scatter(matrix, distinctStarts, startLocations.length, distinctDestinations,
+                destinationLocations.length);
+    }
+
+    private TravelTimeMatrix getTiledMatrix(Location[] startLocations, Location[] destinationLocations)
+            throws RoutingAPIException {
+
+        List<MatrixTilePlanner.Tile> tiles = MatrixTilePlanner.plan(startLocations.length, destinationLocations.length,
+                MAX_MATRIX_LOCATIONS);
+        List<TileEntries> tileEntries = tileRequestExecutor.execute(tiles.size(), 1, (t, ignored) -> {
+            MatrixTilePlanner.Tile tile = tiles.get(t);
+            return new TileEntries(t, requestTile(tileLocations(startLocations, tile.getFirstRow(),
+                    tile.getRowCount()), tileLocations(destinationLocations, tile.getFirstColumn(),
+                    tile.getColumnCount())));
+        }, null, Comparator.comparingInt(entries -> entries.tile));
+
+        TravelTimeMatrix matrix = new TravelTimeMatrix(startLocations.length, destinationLocations.length,
+                MatrixDistanceUnits);
+        for (TileEntries entries : tileEntries) {
+            setTileEntries(matrix, tiles.get(entries.tile), entries.entries);
+        }
+        return matrix;
+    }
+
+    /**
+     * The non-blocking variant of {@link #getWalkingMatrix(Location[], Location[])}. Its tiles are requested through
+     * the same executor and within the same limits as those of the blocking variant.
+     */
+    public CompletableFuture<List<TimeMatrixEntry>> getWalkingMatrixAsync(Location[] startLocations,
+                                                                          Location[] destinationLocations) {
+
+        DistinctLocations distinctStarts = DistinctLocations.of(startLocations, 0);
+        DistinctLocations distinctDestinations = DistinctLocations.of(destinationLocations, 0);
+        Location[] starts = distinctStarts.getLocations();
+        Location[] destinations = distinctDestinations.getLocations();
+        List<MatrixTilePlanner.Tile> tiles = MatrixTilePlanner.plan(starts.length, destinations.length,
+                MAX_MATRIX_LOCATIONS);
+        return tileRequestExecutor.executeAsync(tiles.size(), 1, (t, ignored) -> {
+            MatrixTilePlanner.Tile tile = tiles.get(t);
+            return requestTileAsync(tileLocations(starts, tile.getFirstRow(), tile.getRowCount()),
+                    tileLocations(destinations, tile.getFirstColumn(), tile.getColumnCount()));
+        }).thenApply(tileEntries -> {
+            TravelTimeMatrix matrix = new TravelTimeMatrix(starts.length, destinations.length, MatrixDistanceUnits);
+            for (int t = 0; t < tiles.size(); t++) {
+                setTileEntries(matrix, tiles.get(t), tileEntries.get(t));
             }
-            out.add(entry);
+            return scatter(matrix, distinctStarts, startLocations.length, distinctDestinations,
+                    destinationLocations.length).asEntries();
+        });
+    }
+
+    /**
+     * Requests a single tile of a matrix, which must not exceed {@link #MAX_MATRIX_LOCATIONS}.
+     * @return the entries of the tile, indexed relative to its locations
+     */
+    List<TimeMatrixEntry> requestTile(Location[] startLocations, Location[] destinationLocations)
+            throws RoutingAPIException {
+        JsonObject requestJsonObject = buildSourcesToTargetsRequest(startLocations, destinationLocations);
+        return this.getResponse(MatrixType.SOURCES_TO_TARGETS.getApiString(), requestJsonObject,
+                getSourcesToTargetsReader());
+    }
+
+    /**
+     * The non-blocking variant of {@link #requestTile(Location[], Location[])}.
+     */
+    CompletableFuture<List<TimeMatrixEntry>> requestTileAsync(Location[] startLocations,
+                                                              Location[] destinationLocations) {
+        JsonObject requestJsonObject = buildSourcesToTargetsRequest(startLocations, destinationLocations);
+        return this.getResponseAsync(MatrixType.SOURCES_TO_TARGETS.getApiString(), requestJsonObject,
+                getSourcesToTargetsReader());
+    }
+
+    /**
+     * The entries of a tile, as they are returned by the tile request executor.
+     */
+    private static class TileEntries {
+        private final int tile;
+        private final List<TimeMatrixEntry> entries;
+
+        TileEntries(int tile, List<TimeMatrixEntry> entries) {
+            this.tile = tile;
+            this.entries = entries;
         }
-        return out;
+    }
 
+    private static Location[] tileLocations(Location[] locations, int first, int count) {
+        return Arrays.copyOfRange(locations, first, first + count);
     }
 
-    public List<TimeMatrixEntry> getWalkingMatrix(Location[] startLocations, Location[] destinationLocations) throws
-            RoutingAPIException {
+    // the entries of a tile are indexed relative to its first row and column
+    private static void setTileEntries(TravelTimeMatrix matrix, MatrixTilePlanner.Tile tile,
+                                       List<TimeMatrixEntry> entries) {
+        for (TimeMatrixEntry entry : entries) {
+            matrix.set(tile.getFirstRow() + entry.getFromIndex(), tile.getFirstColumn() + entry.getToIndex(),
+                    entry.getTime(), entry.getDistance());
+        }
+    }
 
+    JsonObject buildSourcesToTargetsRequest(Location[] startLocations, Location[] destinationLocations) {
         JsonArrayBuilder sourcesBuilder = Json.createArrayBuilder();
         JsonArrayBuilder targetsBuilder = Json.createArrayBuilder();
         for (Location source : startLocations) {
@@ -118,35 +238,17 @@ class MapzenMatrixApiWrapper extends MapzenApi {
         for (Location target : destinationLocations) {
             targetsBuilder.add(serializeLocation(target));
         }
-        JsonObject requestJsonObject = Json.createObjectBuilder()
+        return Json.createObjectBuilder()
                 .add("sources", sourcesBuilder.build())
                 .add("targets", targetsBuilder.build())
                 .add("costing", "pedestrian")
                 .add("units", this.MapzenDistanceUnits.getApiString())
                 .build();
+    }
 
-        JsonObject response = null;
-        response = this.getResponse(MatrixType.SOURCES_TO_TARGETS.getApiString(), requestJsonObject);
-
-        JsonArray outerArray = response.getJsonArray(MatrixType.SOURCES_TO_TARGETS.getApiString());
-        ArrayList<TimeMatrixEntry> out = new ArrayList<>();
-
-        for (JsonValue innerJsonValue : outerArray) {
-            JsonArray innerArray = (JsonArray)innerJsonValue;
-            for (JsonValue value : innerArray) {
-                JsonObject jsonObject = (JsonObject)value;
-                TimeMatrixEntry entry = new TimeMatrixEntry(
-                        jsonObject.getInt("from_index"),
-                        jsonObject.getInt("to_index"),
-                        jsonObject.getInt("time"),
-                        jsonObject.getJsonNumber("distance").doubleValue(),
-                        MatrixDistanceUnits
-                );
-                out.add(entry);
-            }
-        }
-
-        return out;
+    JsonStreams.ValueReader<List<TimeMatrixEntry>> getSourcesToTargetsReader() {
+        return matrixReader(MatrixType.SOURCES_TO_TARGETS, (row, column, fromIndex, toIndex, time, distance) ->
+                new TimeMatrixEntry(fromIndex, toIndex, time, distance, MatrixDistanceUnits));
     }
 
     private JsonObject serializeLocation(Location location) {
@@ -156,31 +258,188 @@ class MapzenMatrixApiWrapper extends MapzenApi {
                 .build();
     }
 
+    /**
+     * Gets the matrix between all locations.
+     */
     public List<TimeMatrixEntry> getWalkingMatrix(Location[] locations) throws RoutingAPIException {
+        return getWalkingTravelTimeMatrix(locations, 0, false).asEntries();
+    }
+
+    /**
+     * Gets the matrix between all locations, requesting every distinct location only once. Locations within the merge
+     * distance of each other are taken to be the same, so their rows and columns are copies of each other.
+     * <p>
+     * In symmetric mode the walking time from a location to another is taken to be the time back, so only the upper
+     * triangle of a matrix which needs more than one request is requested and mirrored to the lower one, which saves
+     * almost half of the requests of a large matrix.
+     * @param locations the start and destination locations
+     * @param mergeDistanceMeters the distance up to which locations are merged, 0 to merge only identical coordinates
+     * @param symmetric whether to request only the upper triangle of the matrix
+     * @return the matrix, indexed by the given locations
+     */
+    public TravelTimeMatrix getWalkingTravelTimeMatrix(Location[] locations, double mergeDistanceMeters,
+                                                       boolean symmetric) throws RoutingAPIException {
+
+        DistinctLocations distinct = DistinctLocations.of(locations, mergeDistanceMeters);
+        Location[] distinctLocations = distinct.getLocations();
+        TravelTimeMatrix matrix;
+        if (distinctLocations.length <= MAX_MATRIX_LOCATIONS) {
+            matrix = TravelTimeMatrix.fromEntries(distinctLocations.length, distinctLocations.length,
+                    MatrixDistanceUnits, requestManyToMany(distinctLocations));
+        } else if (symmetric) {
+            matrix = getSymmetricMatrix(distinctLocations);
+        } else {
+            matrix = getTiledMatrix(distinctLocations, distinctLocations);
+        }
+        return scatter(matrix, distinct, locations.length, distinct, locations.length);
+    }
+
+    private TravelTimeMatrix getSymmetricMatrix(Location[] locations) throws RoutingAPIException {
+
+        List<MatrixTilePlanner.Tile> tiles = MatrixTilePlanner.planUpperTriangle(locations.length,
+                MAX_MATRIX_LOCATIONS);
+        List<TileEntries> tileEntries = tileRequestExecutor.execute(tiles.size(), 1, (t, ignored) -> {
+            MatrixTilePlanner.Tile tile = tiles.get(t);
+            Location[] rows = tileLocations(locations, tile.getFirstRow(), tile.getRowCount());
+            // a tile on the diagonal is between the same locations, which are sent only once
+            return new TileEntries(t, tile.getFirstRow() == tile.getFirstColumn() ? requestManyToMany(rows) :
+                    requestTile(rows, tileLocations(locations, tile.getFirstColumn(), tile.getColumnCount())));
+        }, null, Comparator.comparingInt(entries -> entries.tile));
+
+        TravelTimeMatrix matrix = new TravelTimeMatrix(locations.length, locations.length, MatrixDistanceUnits);
+        for (TileEntries entries : tileEntries) {
+            MatrixTilePlanner.Tile tile = tiles.get(entries.tile);
+            setTileEntries(matrix, tile, entries.entries);
+            if (tile.getFirstRow() != tile.getFirstColumn()) {
+                for (TimeMatrixEntry entry : entries.entries) {
+                    matrix.set(tile.getFirstColumn() + entry.getToIndex(), tile.getFirstRow() + entry.getFromIndex(),
+                            entry.getTime(), entry.getDistance());
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Copies the cells of a matrix between distinct locations to the matrix between the locations they represent.
+     */
+    private static TravelTimeMatrix scatter(TravelTimeMatrix matrix, DistinctLocations rows, int rowCount,
+                                            DistinctLocations columns, int columnCount) {
+        if (matrix.getRowCount() == rowCount && matrix.getColumnCount() == columnCount) {
+            // every location is distinct and represents itself
+            return matrix;
+        }
+        TravelTimeMatrix scattered = new TravelTimeMatrix(rowCount, columnCount, matrix.getUnits());
+        for (int i = 0; i < rowCount; i++) {
+            int row = rows.getIndex(i);
+            for (int j = 0; j < columnCount; j++) {
+                int column = columns.getIndex(j);
+                if (matrix.hasCell(row, column)) {
+                    scattered.set(i, j, matrix.time(row, column), matrix.distance(row, column));
+                }
+            }
+        }
+        return scattered;
+    }
+
+    /**
+     * Requests the matrix between all of the locations at once, which must not exceed {@link #MAX_MATRIX_LOCATIONS}.
+     */
+    List<TimeMatrixEntry> requestManyToMany(Location[] locations) throws RoutingAPIException {
         JsonBuilder jsonBuilder = new JsonBuilder();
         jsonBuilder.addLocations(locations);
         JsonObject requestJsonObject = jsonBuilder.build(this.MapzenDistanceUnits);
 
-        JsonObject response = null;
-        response = this.getResponse(MatrixType.MANY_TO_MANY.getApiString(), requestJsonObject);
+        return this.getResponse(MatrixType.MANY_TO_MANY.getApiString(), requestJsonObject,
+                matrixReader(MatrixType.MANY_TO_MANY, (row, column, fromIndex, toIndex, time, distance) ->
+                        new TimeMatrixEntry(fromIndex, toIndex, time, distance, MatrixDistanceUnits)));
+    }
 
+    /**
+     * Maps an entry of a matrix response to an entry of the matrix.
+     */
+    @FunctionalInterface
+    interface EntryMapper {
+        /**
+         * @param row the position of the entry's row in the response
+         * @param column the position of the entry in its row
+         * @return the entry, or {@code null} to leave it out
+         */
+        TimeMatrixEntry map(int row, int column, int fromIndex, int toIndex, int time, double distance);
+    }
 
-        ArrayList<TimeMatrixEntry> out = new ArrayList<>();
+    /**
+     * Creates a streaming reader of a matrix response, which reads the entries of the matrix one by one and skips all
+     * other fields of the response.
+     */
+    JsonStreams.ValueReader<List<TimeMatrixEntry>> matrixReader(MatrixType matrixType, EntryMapper mapper) {
+        return parser -> {
+            List<TimeMatrixEntry> entries = null;
+            int statusCode = 0;
+            String error = null;
+
+            JsonStreams.expect(parser, JsonParser.Event.START_OBJECT);
+            while (parser.next() == JsonParser.Event.KEY_NAME) {
+                String key = parser.getString();
+                if (key.equals(matrixType.getApiString())) {
+                    entries = readMatrixEntries(parser, mapper);
+                } else if (key.equals("status_code")) {
+                    statusCode = JsonStreams.readInt(parser);
+                } else if (key.equals("error")) {
+                    error = JsonStreams.readString(parser);
+                } else {
+                    JsonStreams.skipValue(parser);
+                }
+            }
 
-        for (JsonValue innerValue : response.getJsonArray(MatrixType.MANY_TO_MANY.getApiString())) {
-            for (JsonValue element : ((JsonArray)innerValue)) {
-                JsonObject jsonObject = (JsonObject)element;
-                TimeMatrixEntry entry = new TimeMatrixEntry(
-                        jsonObject.getInt("from_index"),
-                        jsonObject.getInt("to_index"),
-                        jsonObject.getInt("time"),
-                        jsonObject.getJsonNumber("distance").doubleValue(),
-                        MatrixDistanceUnits
-                );
-                out.add(entry);
+            checkStatusCode(statusCode, error);
+            if (entries == null) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON,
+                        "mapzen api response does not contain a " + matrixType.getApiString() + " matrix");
             }
-        }
+            return entries;
+        };
+    }
 
+    // [[{from_index, to_index, time, distance}, ...], ...]
+    private static List<TimeMatrixEntry> readMatrixEntries(JsonParser parser, EntryMapper mapper)
+            throws RoutingAPIException {
+        ArrayList<TimeMatrixEntry> out = new ArrayList<>();
+        JsonStreams.expect(parser, JsonParser.Event.START_ARRAY);
+        for (int row = 0; parser.next() == JsonParser.Event.START_ARRAY; row++) {
+            for (int column = 0; parser.next() == JsonParser.Event.START_OBJECT; column++) {
+                int fromIndex = -1;
+                int toIndex = -1;
+                int time = -1;
+                double distance = Double.NaN;
+                while (parser.next() == JsonParser.Event.KEY_NAME) {
+                    switch (parser.getString()) {
+                        case "from_index":
+                            fromIndex = JsonStreams.readInt(parser);
+                            break;
+                        case "to_index":
+                            toIndex = JsonStreams.readInt(parser);
+                            break;
+                        case "time":
+                            time = JsonStreams.readInt(parser);
+                            break;
+                        case "distance":
+                            distance = JsonStreams.readDouble(parser);
+                            break;
+                        default:
+                            JsonStreams.skipValue(parser);
+                    }
+                }
+                if (fromIndex < 0 || toIndex < 0 || time < 0 || Double.isNaN(distance)) {
+                    throw new RoutingAPIException(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON,
+                            "an entry of the mapzen matrix response lacks its indices, time or distance");
+                }
+                TimeMatrixEntry entry = mapper.map(row, column, fromIndex, toIndex, time, distance);
+                if (entry != null) {
+                    out.add(entry);
+                }
+            }
+        }
         return out;
     }
 
@@ -12,6 +12,7 @@ import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
 import javax.json.*;
 
 
@@ -25,8 +26,16 @@ class MapzenMobilityApiWrapper extends MapzenApi {
     public final static DateTimeFormatter ISO_LOCAL_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm");
 
     public MapzenMobilityApiWrapper(String apiKey) throws RoutingAPIException {
+        this(apiKey, HttpTransport.getDefault(), DEFAULT_URL_FORMAT);
+    }
+
+    /**
+     * @param urlFormat the format of the url of an endpoint, see {@link MapzenApi#MapzenApi(String, String,
+     *                  HttpTransport, String)}
+     */
+    MapzenMobilityApiWrapper(String apiKey, HttpTransport transport, String urlFormat) throws RoutingAPIException {
 
-        super("valhalla", apiKey);
+        super("valhalla", apiKey, transport, urlFormat);
 
         if (apiKey == null || apiKey.trim().length() == 0)
             throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_CREDENTIALS_INVALID,
@@ -43,23 +52,36 @@ class MapzenMobilityApiWrapper extends MapzenApi {
         JsonObject response = departureTime == null ?
                 getRouteResponse(start, destination, CostingModel.PEDESTRIAN) :
                 getRouteResponse(start, destination, CostingModel.PEDESTRIAN, departureTime);
-        int tripDuration = response.getJsonObject("trip").getJsonObject("summary").getInt("time");
 
-        return tripDuration;
+        return getTripDuration(response);
+    }
+
+    /**
+     * The non-blocking variant of {@link #getWalkingTripTime(Location, Location, LocalDateTime)}.
+     * @param departureTime the departure time, or {@code null} to ignore the time of the day
+     */
+    public CompletableFuture<Integer> getWalkingTripTimeAsync(Location start, Location destination,
+                                                              LocalDateTime departureTime) {
+
+        return getRouteResponseAsync(start, destination, CostingModel.PEDESTRIAN, departureTime)
+                .thenApply(this::getTripDuration);
     }
 
     public int getPublicTransportTripTime(Location start, Location destination, LocalDateTime departureTime) throws RoutingAPIException {
 
         //WARNING: multimodal currently supports pedestrian and transit. In the future, multimodal will return a combination of all modes of transport (including auto).
         JsonObject response = getRouteResponse(start, destination, CostingModel.MULTIMODAL, departureTime);
-        int tripDuration = response.getJsonObject("trip").getJsonObject("summary").getInt("time");
 
-        return tripDuration;
+        return getTripDuration(response);
     }
 
     public RouteSummary getWalkingRouteSummary(Location start, Location destination) throws RoutingAPIException {
 
         JsonObject response = getRouteResponse(start, destination, CostingModel.PEDESTRIAN);
+        return getWalkingRouteSummaryWithoutTimes(response);
+    }
+
+    private RouteSummary getWalkingRouteSummaryWithoutTimes(JsonObject response) {
         RouteSummary routeSummary = new RouteSummary();
         int tripDuration = response.getJsonObject("trip").getJsonObject("summary").getInt("time");
         routeSummary.setTotalDuration(tripDuration);
@@ -72,6 +94,22 @@ class MapzenMobilityApiWrapper extends MapzenApi {
 
     public RouteSummary getWalkingRouteSummary(Location start, Location destination, LocalDateTime dateTime) throws RoutingAPIException {
         JsonObject response = getRouteResponse(start, destination, CostingModel.PEDESTRIAN, dateTime);
+        return getWalkingRouteSummaryWithTimes(response);
+    }
+
+    /**
+     * The non-blocking variant of {@link #getWalkingRouteSummary(Location, Location, LocalDateTime)}.
+     * @param dateTime the departure time, or {@code null} to get a summary without departure and arrival times
+     */
+    public CompletableFuture<RouteSummary> getWalkingRouteSummaryAsync(Location start, Location destination,
+                                                                       LocalDateTime dateTime) {
+        return getRouteResponseAsync(start, destination, CostingModel.PEDESTRIAN, dateTime)
+                .thenApply(response -> dateTime == null ?
+                        getWalkingRouteSummaryWithoutTimes(response) :
+                        getWalkingRouteSummaryWithTimes(response));
+    }
+
+    private RouteSummary getWalkingRouteSummaryWithTimes(JsonObject response) {
         JsonObject summaryJsonObject = response.getJsonObject("trip").getJsonObject("summary");
 
         int tripDuration = summaryJsonObject.getInt("time");
@@ -122,10 +160,28 @@ class MapzenMobilityApiWrapper extends MapzenApi {
         return getRouteResponse(start, destination, costingModel, null);
     }
 
+    private int getTripDuration(JsonObject response) {
+        return response.getJsonObject("trip").getJsonObject("summary").getInt("time");
+    }
+
     private JsonObject getRouteResponse(
             Location start, Location destination,
             CostingModel costingModel, LocalDateTime departureTime) throws RoutingAPIException {
 
+        return super.getResponse("route", buildRouteRequest(start, destination, costingModel, departureTime));
+    }
+
+    private CompletableFuture<JsonObject> getRouteResponseAsync(
+            Location start, Location destination,
+            CostingModel costingModel, LocalDateTime departureTime) {
+
+        return super.getResponseAsync("route", buildRouteRequest(start, destination, costingModel, departureTime));
+    }
+
+    private JsonObject buildRouteRequest(
+            Location start, Location destination,
+            CostingModel costingModel, LocalDateTime departureTime) {
+
         JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder()
                 .add("locations", Json.createArrayBuilder()
                         .add(Json.createObjectBuilder()
@@ -143,10 +199,6 @@ class MapzenMobilityApiWrapper extends MapzenApi {
                     .add("value", departureTime.format(ISO_LOCAL_DATE_TIME)));
         }
 
-        JsonObject json = jsonObjectBuilder.build();
-
-        JsonObject responseJsonObject = super.getResponse("route", json);
-
-        return responseJsonObject;
+        return jsonObjectBuilder.build();
     }
 }
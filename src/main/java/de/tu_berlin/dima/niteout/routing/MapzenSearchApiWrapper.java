@@ -22,6 +22,14 @@ class MapzenSearchApiWrapper extends MapzenApi implements GeocodingAPI {
         super("search", apiKey);
     }
 
+    /**
+     * @param urlFormat the format of the url of an endpoint, see {@link MapzenApi#MapzenApi(String, String,
+     *                  HttpTransport, String)}
+     */
+    MapzenSearchApiWrapper(String apiKey, HttpTransport transport, String urlFormat) {
+        super("search", apiKey, transport, urlFormat);
+    }
+
     @Override
     public Location getLocation(Address address) throws RoutingAPIException {
         LinkedHashMap<String, String> queryString = new LinkedHashMap<>();
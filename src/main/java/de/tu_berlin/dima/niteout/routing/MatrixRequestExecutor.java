@@ -0,0 +1,141 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Fans out the cells of a matrix as blocking requests to an external API, through an
+ * {@link UpstreamRequestExecutor} with its bounded pool, its limit of concurrent requests and its optional rate
+ * limiter or request scheduler.
+ */
+public class MatrixRequestExecutor {
+
+    public final static int DEFAULT_POOL_SIZE = UpstreamRequestExecutor.DEFAULT_POOL_SIZE;
+    public final static int DEFAULT_MAX_CONCURRENCY = UpstreamRequestExecutor.DEFAULT_MAX_CONCURRENCY;
+
+    private final UpstreamRequestExecutor requestExecutor;
+
+    /**
+     * Computes a single cell of a matrix.
+     * @param <T> the type of the cell
+     */
+    @FunctionalInterface
+    interface CellRequest<T> {
+        T compute(int row, int column) throws RoutingAPIException;
+    }
+
+    /**
+     * Starts a single non-blocking request of a cell of a matrix.
+     * @param <T> the type of the cell
+     */
+    @FunctionalInterface
+    interface AsyncCellRequest<T> {
+        CompletableFuture<T> start(int row, int column);
+    }
+
+    private MatrixRequestExecutor(UpstreamRequestExecutor requestExecutor) {
+        this.requestExecutor = requestExecutor;
+    }
+
+    /**
+     * @return the bounded pool shared by all executors that were not given their own pool
+     */
+    static ExecutorService getSharedPool() {
+        return UpstreamRequestExecutor.getSharedPool();
+    }
+
+    /**
+     * Creates a bounded pool of daemon threads which terminate when they are idle.
+     * @param size the maximum number of threads
+     */
+    public static ExecutorService createPool(int size) {
+        return UpstreamRequestExecutor.createPool(size);
+    }
+
+    /**
+     * Computes all cells of a rows x columns matrix and blocks until they are complete.
+     * @param rows the number of rows of the matrix
+     * @param columns the number of columns of the matrix
+     * @param request computes a single cell
+     * @param onResult receives each cell as soon as it is complete, may be {@code null}
+     * @param resultOrder the order of the returned cells
+     * @return all cells in the given order
+     * @throws RoutingAPIException the exception of the first failing cell
+     */
+    <T> List<T> execute(int rows, int columns, CellRequest<T> request, Consumer<T> onResult,
+                        Comparator<T> resultOrder) throws RoutingAPIException {
+        return requestExecutor.execute(rows * columns, i -> request.compute(i / columns, i % columns), onResult,
+                resultOrder);
+    }
+
+    /**
+     * Computes all cells of a rows x columns matrix without blocking the caller, within the same limits as
+     * {@link #execute}.
+     * @return a future of all cells in row-major order
+     */
+    <T> CompletableFuture<List<T>> executeAsync(int rows, int columns, AsyncCellRequest<T> request) {
+        return requestExecutor.executeAsync(rows * columns, i -> request.start(i / columns, i % columns));
+    }
+
+    /**
+     * @return the number of further requests this executor may start right now
+     */
+    public int getAvailablePermits() {
+        return requestExecutor.getAvailablePermits();
+    }
+
+    public static class MatrixRequestExecutorBuilder {
+        private final UpstreamRequestExecutor.UpstreamRequestExecutorBuilder requestExecutor =
+                new UpstreamRequestExecutor.UpstreamRequestExecutorBuilder();
+
+        /**
+         * @param executorService the pool the requests run on, instead of the shared bounded pool
+         */
+        public MatrixRequestExecutorBuilder executorService(ExecutorService executorService) {
+            requestExecutor.executorService(executorService);
+            return this;
+        }
+
+        /**
+         * @param maxConcurrency the maximum number of concurrent requests of the provider
+         */
+        public MatrixRequestExecutorBuilder maxConcurrency(int maxConcurrency) {
+            requestExecutor.maxConcurrency(maxConcurrency);
+            return this;
+        }
+
+        /**
+         * @param rateLimiter the rate limit of the provider, which is respected before a request is submitted
+         */
+        public MatrixRequestExecutorBuilder rateLimiter(RateLimiter rateLimiter) {
+            requestExecutor.rateLimiter(rateLimiter);
+            return this;
+        }
+
+        /**
+         * @param requestScheduler the scheduler of the provider, which grants a permit as a bulk request before a
+         *                         request is submitted
+         */
+        public MatrixRequestExecutorBuilder requestScheduler(RequestScheduler requestScheduler) {
+            requestExecutor.requestScheduler(requestScheduler);
+            return this;
+        }
+
+        /**
+         * @param metrics the metrics of the provider, into which the waits for the rate limit are recorded
+         */
+        MatrixRequestExecutorBuilder metrics(ProviderMetrics metrics) {
+            requestExecutor.metrics(metrics);
+            return this;
+        }
+
+        public MatrixRequestExecutor build() {
+            return new MatrixRequestExecutor(requestExecutor.build());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a matrix which is too large for a single request to a matrix API into tiles, each of which is a request of
+ * its own.
+ * <p>
+ * A tile is a sub-matrix of consecutive rows and columns whose start and destination locations together do not exceed
+ * the limit of the API. The planner picks the tile size that needs the fewest requests, and of those the one that
+ * sends the fewest locations, then spreads the rows and columns evenly over the tiles. A symmetric matrix only needs
+ * the tiles of its upper triangle.
+ */
+final class MatrixTilePlanner {
+
+    /**
+     * A sub-matrix of consecutive rows and columns.
+     */
+    static final class Tile {
+        private final int firstRow;
+        private final int rowCount;
+        private final int firstColumn;
+        private final int columnCount;
+
+        Tile(int firstRow, int rowCount, int firstColumn, int columnCount) {
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+            this.firstColumn = firstColumn;
+            this.columnCount = columnCount;
+        }
+
+        int getFirstRow() {
+            return firstRow;
+        }
+
+        int getRowCount() {
+            return rowCount;
+        }
+
+        int getFirstColumn() {
+            return firstColumn;
+        }
+
+        int getColumnCount() {
+            return columnCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Tile{" +
+                    "rows=" + firstRow + ".." + (firstRow + rowCount - 1) +
+                    ", columns=" + firstColumn + ".." + (firstColumn + columnCount - 1) +
+                    '}';
+        }
+    }
+
+    private MatrixTilePlanner() {
+    }
+
+    /**
+     * Plans the tiles of a matrix.
+     * @param rowCount the number of start locations
+     * @param columnCount the number of destination locations
+     * @param maxLocations the maximum number of start and destination locations of a single request
+     * @return the tiles, which cover every cell of the matrix exactly once, in row-major order
+     */
+    static List<Tile> plan(int rowCount, int columnCount, int maxLocations) {
+        if (maxLocations < 2) {
+            throw new IllegalArgumentException("a request must have room for at least two locations");
+        }
+        List<Tile> tiles = new ArrayList<>();
+        if (rowCount == 0 || columnCount == 0) {
+            return tiles;
+        }
+
+        // the number of row and column tiles of the best tile size
+        int rowTiles = 1;
+        int columnTiles = 1;
+        long bestRequests = Long.MAX_VALUE;
+        long bestLocations = Long.MAX_VALUE;
+        for (int tileRows = 1; tileRows <= Math.min(rowCount, maxLocations - 1); tileRows++) {
+            int tileColumns = Math.min(columnCount, maxLocations - tileRows);
+            int candidateRowTiles = divideRoundingUp(rowCount, tileRows);
+            int candidateColumnTiles = divideRoundingUp(columnCount, tileColumns);
+            long requests = (long) candidateRowTiles * candidateColumnTiles;
+            // every row is sent once per column tile and every column once per row tile
+            long locations = (long) candidateColumnTiles * rowCount + (long) candidateRowTiles * columnCount;
+            if (requests < bestRequests || (requests == bestRequests && locations < bestLocations)) {
+                rowTiles = candidateRowTiles;
+                columnTiles = candidateColumnTiles;
+                bestRequests = requests;
+                bestLocations = locations;
+            }
+        }
+
+        for (int rowTile = 0; rowTile < rowTiles; rowTile++) {
+            int firstRow = split(rowCount, rowTiles, rowTile);
+            int rows = split(rowCount, rowTiles, rowTile + 1) - firstRow;
+            for (int columnTile = 0; columnTile < columnTiles; columnTile++) {
+                int firstColumn = split(columnCount, columnTiles, columnTile);
+                int columns = split(columnCount, columnTiles, columnTile + 1) - firstColumn;
+                tiles.add(new Tile(firstRow, rows, firstColumn, columns));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Plans the tiles of the upper triangle of a square matrix between the same locations, for matrices whose lower
+     * triangle is taken to mirror the upper one. The locations are split into blocks of at most half the limit, and
+     * there is a tile for every pair of blocks where the row block does not come after the column block.
+     * @param count the number of locations
+     * @param maxLocations the maximum number of start and destination locations of a single request
+     * @return the tiles, which cover every cell on or above the diagonal, in row-major order
+     */
+    static List<Tile> planUpperTriangle(int count, int maxLocations) {
+        if (maxLocations < 2) {
+            throw new IllegalArgumentException("a request must have room for at least two locations");
+        }
+        List<Tile> tiles = new ArrayList<>();
+        int blocks = divideRoundingUp(count, maxLocations / 2);
+        for (int rowBlock = 0; rowBlock < blocks; rowBlock++) {
+            int firstRow = split(count, blocks, rowBlock);
+            int rows = split(count, blocks, rowBlock + 1) - firstRow;
+            for (int columnBlock = rowBlock; columnBlock < blocks; columnBlock++) {
+                int firstColumn = split(count, blocks, columnBlock);
+                int columns = split(count, blocks, columnBlock + 1) - firstColumn;
+                tiles.add(new Tile(firstRow, rows, firstColumn, columns));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * @return the first index of a part when splitting a range into parts of nearly equal size
+     */
+    private static int split(int count, int parts, int part) {
+        return (int) ((long) count * part / parts);
+    }
+
+    private static int divideRoundingUp(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,54 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.cache.CacheStats;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+import java.time.LocalDateTime;
+
+/**
+ * A {@link RouteCache} which records the lookups in the cache it wraps into a {@link RoutingMetrics} registry.
+ */
+class MeteredRouteCache implements RouteCache {
+
+    private final RouteCache routeCache;
+    private final RoutingMetrics metrics;
+
+    MeteredRouteCache(RouteCache routeCache, RoutingMetrics metrics) {
+        this.routeCache = routeCache;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public RouteCacheKey createKey(TransportMode transportMode, Location start, Location destination,
+                                   LocalDateTime departure) {
+        return routeCache.createKey(transportMode, start, destination, departure);
+    }
+
+    @Override
+    public CachedRoute get(RouteCacheKey key) {
+        CachedRoute route = routeCache.get(key);
+        metrics.recordCacheLookup(key.getTransportMode(), route != null);
+        return route;
+    }
+
+    @Override
+    public void put(RouteCacheKey key, CachedRoute route) {
+        routeCache.put(key, route);
+    }
+
+    @Override
+    public void putKeepingSummary(RouteCacheKey key, CachedRoute route) {
+        routeCache.putKeepingSummary(key, route);
+    }
+
+    @Override
+    public void invalidateAll() {
+        routeCache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats getStatistics() {
+        return routeCache.getStatistics();
+    }
+}
@@ -0,0 +1,70 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Address;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+/**
+ * Geocodes addresses locally from an {@link AddressIndex}, without any request to an external API.
+ * <p>
+ * A house number which is missing from the dataset is interpolated between its neighbours on the street, as long as
+ * they are close enough; otherwise the address is not found.
+ */
+public class OfflineGeocoder implements GeocodingAPI {
+
+    public final static int DEFAULT_MAX_INTERPOLATION_GAP = 20;
+
+    private final AddressIndex addressIndex;
+    private final int maxInterpolationGap;
+
+    private OfflineGeocoder(OfflineGeocoderBuilder builder) {
+        this.addressIndex = builder.addressIndex;
+        this.maxInterpolationGap = builder.maxInterpolationGap;
+    }
+
+    @Override
+    public Location getLocation(Address address) {
+        return addressIndex.find(address.getPostalCode(), address.getStreet(), address.getHouseNumber(),
+                maxInterpolationGap);
+    }
+
+    /**
+     * @return the index the addresses are looked up in
+     */
+    public AddressIndex getAddressIndex() {
+        return addressIndex;
+    }
+
+    public static class OfflineGeocoderBuilder {
+        private AddressIndex addressIndex;
+        private int maxInterpolationGap = DEFAULT_MAX_INTERPOLATION_GAP;
+
+        /**
+         * @param addressIndex the index the addresses are looked up in
+         */
+        public OfflineGeocoderBuilder addressIndex(AddressIndex addressIndex) {
+            this.addressIndex = addressIndex;
+            return this;
+        }
+
+        /**
+         * @param maxInterpolationGap the maximum difference between the house numbers a missing house number is
+         *                            interpolated between, or 0 to find only the house numbers of the dataset
+         */
+        public OfflineGeocoderBuilder maxInterpolationGap(int maxInterpolationGap) {
+            this.maxInterpolationGap = maxInterpolationGap;
+            return this;
+        }
+
+        public OfflineGeocoder build() {
+
+            if (addressIndex == null) {
+                throw new IllegalArgumentException("addressIndex is required");
+            }
+            if (maxInterpolationGap < 0) {
+                throw new IllegalArgumentException("maxInterpolationGap must not be negative");
+            }
+
+            return new OfflineGeocoder(this);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import org.openstreetmap.osmosis.osmbinary.BinaryParser;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.openstreetmap.osmosis.osmbinary.file.BlockInputStream;
+import org.openstreetmap.osmosis.osmbinary.file.FileBlockPosition;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a {@link PedestrianGraph} from an OpenStreetMap extract in the protocol buffer format.
+ * <p>
+ * The extract is read twice: first the ways, to find the walkable ways and the nodes they need, then the nodes, to
+ * set the locations of only these nodes. Neither the nodes nor the ways of the extract are kept in memory as objects.
+ */
+class OsmPedestrianGraphLoader {
+
+    private final static List<String> SUPPORTED_FEATURES = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
+
+    private final Path extract;
+    private final PedestrianGraphBuilder builder = new PedestrianGraphBuilder();
+
+    OsmPedestrianGraphLoader(Path extract) {
+        this.extract = extract;
+    }
+
+    PedestrianGraph load() throws RoutingAPIException {
+        read(new WayParser());
+        builder.getNodeIds();
+        read(new NodeParser());
+        return builder.build();
+    }
+
+    private void read(ExtractParser parser) throws RoutingAPIException {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(extract))) {
+            new BlockInputStream(input, parser).process();
+        } catch (IOException | RuntimeException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not read OpenStreetMap extract " + extract, e);
+        }
+        if (parser.error != null) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "OpenStreetMap extract " + extract + " " + parser.error);
+        }
+    }
+
+    /**
+     * Ignores all entities; the subclasses handle the entities of their pass.
+     */
+    private static abstract class ExtractParser extends BinaryParser {
+        String error;
+
+        @Override
+        public boolean skipBlock(FileBlockPosition block) {
+            return error != null || super.skipBlock(block);
+        }
+
+        @Override
+        protected void parse(Osmformat.HeaderBlock header) {
+            for (String feature : header.getRequiredFeaturesList()) {
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    error = "requires the unsupported feature " + feature;
+                }
+            }
+        }
+
+        @Override
+        protected void parseRelations(List<Osmformat.Relation> relations) {
+        }
+
+        @Override
+        protected void parseDense(Osmformat.DenseNodes nodes) {
+        }
+
+        @Override
+        protected void parseNodes(List<Osmformat.Node> nodes) {
+        }
+
+        @Override
+        protected void parseWays(List<Osmformat.Way> ways) {
+        }
+
+        @Override
+        public void complete() {
+        }
+    }
+
+    private class WayParser extends ExtractParser {
+        private final Map<String, String> tags = new HashMap<>();
+
+        @Override
+        protected void parseWays(List<Osmformat.Way> ways) {
+            for (Osmformat.Way way : ways) {
+                tags.clear();
+                for (int k = 0; k < way.getKeysCount(); k++) {
+                    tags.put(getStringById(way.getKeys(k)), getStringById(way.getVals(k)));
+                }
+                int edgeClass = PedestrianGraphBuilder.classify(tags);
+                if (edgeClass < 0) {
+                    continue;
+                }
+
+                // the references are delta coded
+                long[] nodeIds = new long[way.getRefsCount()];
+                long nodeId = 0;
+                for (int k = 0; k < nodeIds.length; k++) {
+                    nodeId += way.getRefs(k);
+                    nodeIds[k] = nodeId;
+                }
+                builder.addWay(nodeIds, edgeClass);
+            }
+        }
+    }
+
+    private class NodeParser extends ExtractParser {
+
+        @Override
+        protected void parseDense(Osmformat.DenseNodes nodes) {
+            // ids and coordinates are delta coded
+            long nodeId = 0;
+            long latitude = 0;
+            long longitude = 0;
+            for (int k = 0; k < nodes.getIdCount(); k++) {
+                nodeId += nodes.getId(k);
+                latitude += nodes.getLat(k);
+                longitude += nodes.getLon(k);
+                builder.setNodeLocation(nodeId, parseLat(latitude), parseLon(longitude));
+            }
+        }
+
+        @Override
+        protected void parseNodes(List<Osmformat.Node> nodes) {
+            for (Osmformat.Node node : nodes) {
+                builder.setNodeLocation(node.getId(), parseLat(node.getLat()), parseLon(node.getLon()));
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import de.tu_berlin.dima.niteout.routing.model.mapzen.PedestrianCostingOption;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Answers walking requests locally from a {@link PedestrianGraph}, using the costing options of Mapzen.
+ * <p>
+ * A location is connected to the nearest node of the graph by a straight line, walked at the walking speed. The route
+ * between the nodes is the cheapest by the costing, and its time is the time it takes to walk. Like Mapzen, distances
+ * are given in kilometers.
+ * <p>
+ * A matrix is computed with one one-to-many search per start location, which runs until all destinations are
+ * reached. The searches of the start locations run in parallel on a pool sized to the number of cores.
+ */
+public class OsmPedestrianWrapper implements WalkingDirectionsAPI {
+
+    public final static int DEFAULT_MAX_SNAP_DISTANCE_METERS = 500;
+
+    private final PedestrianGraph graph;
+    private final PedestrianCosting costing;
+    private final int maxSnapDistance;
+    private final ExecutorService executorService;
+    private final ThreadLocal<PedestrianSearch> searches = ThreadLocal.withInitial(this::createSearch);
+
+    private OsmPedestrianWrapper(OsmPedestrianWrapperBuilder builder) {
+        this.graph = builder.graph;
+        this.costing = new PedestrianCosting(builder.costingOptions);
+        this.maxSnapDistance = builder.maxSnapDistanceMeters;
+        this.executorService = builder.executorService != null ? builder.executorService : ComputePool.getSharedPool();
+    }
+
+    @Override
+    public int getWalkingTripTime(Location start, Location destination) throws RoutingAPIException {
+        return route(start, destination).getTime();
+    }
+
+    @Override
+    public int getWalkingTripTime(Location start, Location destination,
+                                  LocalDateTime startTime) throws RoutingAPIException {
+        // walking does not depend on the time of the day
+        return getWalkingTripTime(start, destination);
+    }
+
+    @Override
+    public RouteSummary getWalkingRouteSummary(Location start, Location destination) throws RoutingAPIException {
+        return getWalkingRouteSummary(start, destination, null);
+    }
+
+    @Override
+    public RouteSummary getWalkingRouteSummary(Location start, Location destination,
+                                               LocalDateTime departureTime) throws RoutingAPIException {
+        TimeMatrixEntry route = route(start, destination);
+
+        HashMap<TransportMode, Integer> modeOfTransportTravelTimes = new HashMap<>(1);
+        modeOfTransportTravelTimes.put(TransportMode.WALKING, route.getTime());
+
+        RouteSummary routeSummary = new RouteSummary();
+        routeSummary.setTotalDuration(route.getTime());
+        routeSummary.setTotalDistance(route.getDistance());
+        routeSummary.setModeOfTransportTravelTimes(modeOfTransportTravelTimes);
+        if (departureTime != null) {
+            routeSummary.setDepartureTime(departureTime);
+            routeSummary.setArrivalTime(departureTime.plusSeconds(route.getTime()));
+        }
+        return routeSummary;
+    }
+
+    @Override
+    public double getWalkingSpeedKmh() {
+        return costing.getWalkingSpeed() * 3.6;
+    }
+
+    @Override
+    public List<TimeMatrixEntry> getWalkingMatrix(Location[] startLocations,
+                                                  Location[] destinationLocations) throws RoutingAPIException {
+        return getWalkingTravelTimeMatrix(startLocations, destinationLocations).asEntries();
+    }
+
+    @Override
+    public TravelTimeMatrix getWalkingTravelTimeMatrix(Location[] startLocations,
+                                                       Location[] destinationLocations) throws RoutingAPIException {
+        checkRequest(startLocations, destinationLocations);
+        Snap[] targets = snap(destinationLocations);
+        int[] targetNodes = new int[targets.length];
+        for (int j = 0; j < targets.length; j++) {
+            targetNodes[j] = targets[j].node;
+        }
+
+        // each search sets the cells of its own row
+        TravelTimeMatrix matrix = new TravelTimeMatrix(startLocations.length, destinationLocations.length,
+                DistanceUnits.KILOMETERS);
+        ComputePool.computeAll(executorService, startLocations.length, searches, (i, search) -> {
+            Snap source = snap(startLocations[i]);
+            search.run(source.node, targetNodes);
+            for (int j = 0; j < targets.length; j++) {
+                setCell(matrix, search, i, source, j, targets[j]);
+            }
+            return null;
+        });
+        return matrix;
+    }
+
+    /**
+     * @return the graph the requests are answered from
+     */
+    public PedestrianGraph getGraph() {
+        return graph;
+    }
+
+    private PedestrianSearch createSearch() {
+        return new PedestrianSearch(graph, costing);
+    }
+
+    private TimeMatrixEntry route(Location start, Location destination) throws RoutingAPIException {
+        checkRequest(new Location[]{start}, new Location[]{destination});
+        Snap source = snap(start);
+        Snap target = snap(destination);
+        PedestrianSearch search = searches.get();
+        search.run(source.node, new int[]{target.node});
+        double distance = getDistance(search, source, target);
+        return new TimeMatrixEntry(0, 0, (int) Math.round(getTime(search, source, target)), distance / 1000,
+                DistanceUnits.KILOMETERS);
+    }
+
+    private void setCell(TravelTimeMatrix matrix, PedestrianSearch search, int sourceIndex, Snap source,
+                         int targetIndex, Snap target) throws RoutingAPIException {
+        double distance = getDistance(search, source, target);
+        matrix.set(sourceIndex, targetIndex, (int) Math.round(getTime(search, source, target)), distance / 1000);
+    }
+
+    /**
+     * @return the walking distance between two snapped locations in meters
+     */
+    private double getDistance(PedestrianSearch search, Snap source, Snap target) throws RoutingAPIException {
+        if (source.node == target.node) {
+            // both locations are closest to the same node, so they are closest to each other
+            return GeoMath.haversineMeters(source.location, target.location);
+        }
+        if (!search.isReached(target.node)) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.NO_ROUTE_FOUND,
+                    "no walking route from " + format(source.location) + " to " + format(target.location));
+        }
+        return source.distance + search.getDistance(target.node) + target.distance;
+    }
+
+    /**
+     * @return the walking time between two snapped locations in seconds, if {@link #getDistance} found a route
+     */
+    private double getTime(PedestrianSearch search, Snap source, Snap target) {
+        if (source.node == target.node) {
+            return costing.getTime(GeoMath.haversineMeters(source.location, target.location));
+        }
+        return costing.getTime(source.distance) + search.getTime(target.node) + costing.getTime(target.distance);
+    }
+
+    private Snap[] snap(Location[] locations) throws RoutingAPIException {
+        Snap[] snaps = new Snap[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            snaps[i] = snap(locations[i]);
+        }
+        return snaps;
+    }
+
+    private Snap snap(Location location) throws RoutingAPIException {
+        int node = graph.findNearestNode(location.getLatitude(), location.getLongitude(), maxSnapDistance);
+        if (node < 0) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.NO_ROUTE_FOUND,
+                    "no walkable way within " + maxSnapDistance + " meters of " + format(location));
+        }
+        Snap snap = new Snap();
+        snap.location = location;
+        snap.node = node;
+        snap.distance = GeoMath.haversineMeters(location.getLatitude(), location.getLongitude(),
+                graph.nodeLatitudes.get(node), graph.nodeLongitudes.get(node));
+        return snap;
+    }
+
+    private static String format(Location location) {
+        return location.getLatitude() + "," + location.getLongitude();
+    }
+
+    private static void checkRequest(Location[] startLocations,
+                                     Location[] destinationLocations) throws RoutingAPIException {
+        if (startLocations == null || destinationLocations == null
+                || Arrays.asList(startLocations).contains(null) || Arrays.asList(destinationLocations).contains(null)) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_ERROR_BAD_REQUEST,
+                    "start and destination are required");
+        }
+    }
+
+    /**
+     * A location and the node of the graph it is connected to.
+     */
+    private static class Snap {
+        Location location;
+        int node;
+        double distance;
+    }
+
+    public static class OsmPedestrianWrapperBuilder {
+        private PedestrianGraph graph;
+        private final Map<PedestrianCostingOption, Double> costingOptions =
+                new EnumMap<>(PedestrianCostingOption.class);
+        private int maxSnapDistanceMeters = DEFAULT_MAX_SNAP_DISTANCE_METERS;
+        private ExecutorService executorService;
+
+        /**
+         * @param graph the graph the requests are answered from
+         */
+        public OsmPedestrianWrapperBuilder graph(PedestrianGraph graph) {
+            this.graph = graph;
+            return this;
+        }
+
+        /**
+         * @param option an option of the costing, which defaults to the default of Mapzen
+         * @param value the value of the option, in the units of Mapzen
+         */
+        public OsmPedestrianWrapperBuilder costingOption(PedestrianCostingOption option, double value) {
+            this.costingOptions.put(option, value);
+            return this;
+        }
+
+        /**
+         * @param maxSnapDistanceMeters the maximum straight-line distance from a location to the nearest way
+         */
+        public OsmPedestrianWrapperBuilder maxSnapDistanceMeters(int maxSnapDistanceMeters) {
+            this.maxSnapDistanceMeters = maxSnapDistanceMeters;
+            return this;
+        }
+
+        /**
+         * @param executorService the pool the searches of a matrix run on, instead of the shared pool
+         */
+        public OsmPedestrianWrapperBuilder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        public OsmPedestrianWrapper build() {
+
+            if (graph == null) {
+                throw new IllegalArgumentException("graph is required");
+            }
+            if (maxSnapDistanceMeters < 0) {
+                throw new IllegalArgumentException("maxSnapDistanceMeters must not be negative");
+            }
+            for (Map.Entry<PedestrianCostingOption, Double> option : costingOptions.entrySet()) {
+                if (option.getValue() < 0 || Double.isNaN(option.getValue())) {
+                    throw new IllegalArgumentException(option.getKey().getApiString() + " must not be negative");
+                }
+            }
+            if (costingOptions.containsKey(PedestrianCostingOption.WALKING_SPEED)
+                    && costingOptions.get(PedestrianCostingOption.WALKING_SPEED) == 0) {
+                throw new IllegalArgumentException("walking_speed must be positive");
+            }
+
+            return new OsmPedestrianWrapper(this);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.mapzen.PedestrianCostingOption;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The cost of walking on the edges of a {@link PedestrianGraph}, modelled on the pedestrian costing of Mapzen.
+ * <p>
+ * The cost of an edge is its walking time multiplied by the factor of its class, plus the step penalty when stepping
+ * onto steps. The cost only chooses the route; the reported time is the walking time of the route.
+ */
+final class PedestrianCosting {
+
+    /**
+     * The default walking speed of Mapzen in kilometers per hour.
+     */
+    final static double DEFAULT_WALKING_SPEED_KMH = 5.1;
+
+    private final static Map<PedestrianCostingOption, Double> DEFAULTS = new EnumMap<>(PedestrianCostingOption.class);
+
+    static {
+        DEFAULTS.put(PedestrianCostingOption.WALKING_SPEED, DEFAULT_WALKING_SPEED_KMH);
+        DEFAULTS.put(PedestrianCostingOption.WALKING_FACTOR, 0.9);
+        DEFAULTS.put(PedestrianCostingOption.ALLEY_FACTOR, 2.0);
+        DEFAULTS.put(PedestrianCostingOption.DRIVEWAY_FACTOR, 5.0);
+        DEFAULTS.put(PedestrianCostingOption.STEP_PENALTY, 30.0);
+    }
+
+    private final double walkingSpeed;
+    private final double[] factors = new double[PedestrianGraph.EDGE_CLASS_COUNT];
+    private final double stepPenalty;
+
+    /**
+     * @param options the options which differ from the defaults of Mapzen
+     */
+    PedestrianCosting(Map<PedestrianCostingOption, Double> options) {
+        Map<PedestrianCostingOption, Double> values = new EnumMap<>(DEFAULTS);
+        values.putAll(options);
+        this.walkingSpeed = values.get(PedestrianCostingOption.WALKING_SPEED) / 3.6;
+        this.stepPenalty = values.get(PedestrianCostingOption.STEP_PENALTY);
+        factors[PedestrianGraph.ROAD] = 1;
+        factors[PedestrianGraph.WALKWAY] = values.get(PedestrianCostingOption.WALKING_FACTOR);
+        factors[PedestrianGraph.STEPS] = values.get(PedestrianCostingOption.WALKING_FACTOR);
+        factors[PedestrianGraph.ALLEY] = values.get(PedestrianCostingOption.ALLEY_FACTOR);
+        factors[PedestrianGraph.DRIVEWAY] = values.get(PedestrianCostingOption.DRIVEWAY_FACTOR);
+    }
+
+    /**
+     * @return the walking speed in meters per second
+     */
+    double getWalkingSpeed() {
+        return walkingSpeed;
+    }
+
+    double getTime(double lengthMeters) {
+        return lengthMeters / walkingSpeed;
+    }
+
+    /**
+     * @param previousEdgeClass the class of the edge the edge is entered from, or -1 at the start
+     */
+    double getCost(int edgeClass, double lengthMeters, int previousEdgeClass) {
+        double cost = getTime(lengthMeters) * factors[edgeClass];
+        if (edgeClass == PedestrianGraph.STEPS && previousEdgeClass != PedestrianGraph.STEPS) {
+            cost += stepPenalty;
+        }
+        return cost;
+    }
+}
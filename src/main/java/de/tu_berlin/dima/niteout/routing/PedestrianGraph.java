@@ -0,0 +1,118 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+
+/**
+ * A graph of the ways a pedestrian can walk on, built from an OpenStreetMap extract and stored in flat primitive
+ * arrays.
+ * <p>
+ * The nodes are the OpenStreetMap nodes of the walkable ways. The edges are stored as an adjacency array (compressed
+ * sparse rows): the edges leaving node {@code i} are {@code offsets[i]} to {@code offsets[i + 1] - 1}. Every segment
+ * of a way is an edge in both directions, since one-way streets do not restrict pedestrians. Only the largest
+ * connected part of the network is kept, so any two nodes are connected. The arrays are buffers, which wrap arrays on
+ * the heap when the graph is loaded from an extract, and map a file when a graph written by {@link #save(Path)} is
+ * opened with {@link #open(Path)}.
+ * <p>
+ * A graph is immutable and may be shared by any number of threads.
+ */
+public final class PedestrianGraph {
+
+    // the classes of edges, which are costed differently
+    final static byte ROAD = 0;
+    final static byte WALKWAY = 1;
+    final static byte STEPS = 2;
+    final static byte ALLEY = 3;
+    final static byte DRIVEWAY = 4;
+    final static int EDGE_CLASS_COUNT = 5;
+
+    private final static double GRID_CELL_METERS = 250;
+
+    // nodes
+    DoubleBuffer nodeLatitudes;
+    DoubleBuffer nodeLongitudes;
+
+    // edges, grouped by the node they leave
+    IntBuffer edgeOffsets;
+    IntBuffer edgeTargets;
+    FloatBuffer edgeLengths;
+    ByteBuffer edgeClasses;
+
+    // derived: a grid of the nodes for nearby searches
+    private PointGrid nodeGrid;
+
+    PedestrianGraph() {
+    }
+
+    /**
+     * Loads the walkable ways of an OpenStreetMap extract.
+     * @param osmPbf an extract in the OpenStreetMap protocol buffer format
+     */
+    public static PedestrianGraph load(Path osmPbf) throws RoutingAPIException {
+        return new OsmPedestrianGraphLoader(osmPbf).load();
+    }
+
+    /**
+     * Opens a graph written by {@link #save(Path)}. The file is mapped into memory, not read.
+     */
+    public static PedestrianGraph open(Path file) throws RoutingAPIException {
+        RoutingDataFile.Reader reader = new RoutingDataFile.Reader(file, RoutingDataFile.KIND_PEDESTRIAN_GRAPH);
+        PedestrianGraph graph = new PedestrianGraph();
+        graph.nodeLatitudes = reader.readDoubles();
+        graph.nodeLongitudes = reader.readDoubles();
+        graph.edgeOffsets = reader.readInts();
+        graph.edgeTargets = reader.readInts();
+        graph.edgeLengths = reader.readFloats();
+        graph.edgeClasses = reader.readBytes();
+        graph.nodeGrid = PointGrid.read(reader, graph.nodeLatitudes, graph.nodeLongitudes);
+        return graph;
+    }
+
+    /**
+     * Writes the graph to a file which can be opened with {@link #open(Path)}.
+     */
+    public void save(Path file) throws RoutingAPIException {
+        RoutingDataFile.Writer writer = new RoutingDataFile.Writer(RoutingDataFile.KIND_PEDESTRIAN_GRAPH)
+                .writeDoubles(nodeLatitudes)
+                .writeDoubles(nodeLongitudes)
+                .writeInts(edgeOffsets)
+                .writeInts(edgeTargets)
+                .writeFloats(edgeLengths)
+                .writeBytes(edgeClasses);
+        nodeGrid.write(writer);
+        writer.write(file);
+    }
+
+    public int getNodeCount() {
+        return nodeLatitudes.limit();
+    }
+
+    public int getEdgeCount() {
+        return edgeTargets.limit();
+    }
+
+    /**
+     * Builds the grid of the nodes. Has to be called once the nodes are set.
+     */
+    void indexNodes() {
+        nodeGrid = PointGrid.build(nodeLatitudes, nodeLongitudes, GRID_CELL_METERS);
+    }
+
+    /**
+     * @return the node nearest to the coordinate, or -1 if there is no node within the maximum distance
+     */
+    int findNearestNode(double latitude, double longitude, double maxDistanceMeters) {
+        return nodeGrid.findNearest(latitude, longitude, maxDistanceMeters);
+    }
+
+    @Override
+    public String toString() {
+        return "PedestrianGraph{" +
+                "nodes=" + getNodeCount() +
+                ", edges=" + getEdgeCount() +
+                '}';
+    }
+}
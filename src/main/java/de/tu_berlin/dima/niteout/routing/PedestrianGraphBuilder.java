@@ -0,0 +1,267 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Builds a {@link PedestrianGraph} from OpenStreetMap ways and nodes.
+ * <p>
+ * The ways are added first, since they determine which of the many nodes of an extract are needed. The locations of
+ * the needed nodes are set afterwards.
+ */
+class PedestrianGraphBuilder {
+
+    private final LongStream.Builder wayNodeIds = LongStream.builder();
+    private final IntStream.Builder wayOffsets = IntStream.builder().add(0);
+    private final IntStream.Builder wayClasses = IntStream.builder();
+    private int wayNodeCount;
+    private int wayCount;
+
+    private long[] wayNodes;
+    private long[] nodeIds;
+    private double[] nodeLatitudes;
+    private double[] nodeLongitudes;
+
+    /**
+     * Classifies a way by its tags.
+     * @return one of the edge classes of {@link PedestrianGraph}, or -1 if pedestrians can not walk on the way
+     */
+    static int classify(Map<String, String> tags) {
+        String highway = tags.get("highway");
+        if (highway == null) {
+            return -1;
+        }
+        String foot = tags.get("foot");
+        boolean footAllowed = "yes".equals(foot) || "designated".equals(foot) || "permissive".equals(foot);
+        if ("no".equals(foot) || "private".equals(foot) || "use_sidepath".equals(foot)) {
+            return -1;
+        }
+        String access = tags.get("access");
+        if (("no".equals(access) || "private".equals(access)) && !footAllowed) {
+            return -1;
+        }
+
+        switch (highway) {
+            case "steps":
+                return PedestrianGraph.STEPS;
+            case "footway":
+            case "pedestrian":
+            case "path":
+            case "corridor":
+            case "bridleway":
+                return PedestrianGraph.WALKWAY;
+            case "service":
+                String service = tags.get("service");
+                if ("alley".equals(service)) {
+                    return PedestrianGraph.ALLEY;
+                }
+                if ("driveway".equals(service)) {
+                    return PedestrianGraph.DRIVEWAY;
+                }
+                return PedestrianGraph.ROAD;
+            case "living_street":
+            case "residential":
+            case "unclassified":
+            case "road":
+            case "track":
+            case "cycleway":
+            case "tertiary":
+            case "tertiary_link":
+            case "secondary":
+            case "secondary_link":
+            case "primary":
+            case "primary_link":
+            case "trunk":
+            case "trunk_link":
+                return PedestrianGraph.ROAD;
+            case "motorway":
+            case "motorway_link":
+                return footAllowed ? PedestrianGraph.ROAD : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Adds a walkable way.
+     * @param nodeIds the OpenStreetMap ids of the nodes of the way, in order
+     * @param edgeClass the class of the way, see {@link #classify(Map)}
+     */
+    void addWay(long[] nodeIds, int edgeClass) {
+        if (nodeIds.length < 2) {
+            return;
+        }
+        for (long nodeId : nodeIds) {
+            wayNodeIds.add(nodeId);
+        }
+        wayNodeCount += nodeIds.length;
+        wayOffsets.add(wayNodeCount);
+        wayClasses.add(edgeClass);
+        wayCount++;
+    }
+
+    /**
+     * Ends adding ways.
+     * @return the sorted ids of the nodes whose locations are needed
+     */
+    long[] getNodeIds() {
+        if (nodeIds == null) {
+            wayNodes = wayNodeIds.build().toArray();
+            nodeIds = Arrays.stream(wayNodes).sorted().distinct().toArray();
+            nodeLatitudes = new double[nodeIds.length];
+            nodeLongitudes = new double[nodeIds.length];
+            Arrays.fill(nodeLatitudes, Double.NaN);
+        }
+        return nodeIds;
+    }
+
+    /**
+     * Sets the location of a node, which is ignored unless the node is part of a walkable way.
+     */
+    void setNodeLocation(long nodeId, double latitude, double longitude) {
+        int node = Arrays.binarySearch(getNodeIds(), nodeId);
+        if (node >= 0) {
+            nodeLatitudes[node] = latitude;
+            nodeLongitudes[node] = longitude;
+        }
+    }
+
+    /**
+     * Builds the graph of the largest connected part of the ways. Segments with a node missing from the extract are
+     * left out.
+     */
+    PedestrianGraph build() throws RoutingAPIException {
+        long[] ids = getNodeIds();
+        int[] offsets = wayOffsets.build().toArray();
+        int[] classes = wayClasses.build().toArray();
+
+        // the segments of all ways, between the indices of their nodes
+        IntStream.Builder segmentFroms = IntStream.builder();
+        IntStream.Builder segmentTos = IntStream.builder();
+        IntStream.Builder segmentClasses = IntStream.builder();
+        for (int way = 0; way < wayCount; way++) {
+            for (int k = offsets[way]; k < offsets[way + 1] - 1; k++) {
+                int from = Arrays.binarySearch(ids, wayNodes[k]);
+                int to = Arrays.binarySearch(ids, wayNodes[k + 1]);
+                if (from != to && !Double.isNaN(nodeLatitudes[from]) && !Double.isNaN(nodeLatitudes[to])) {
+                    segmentFroms.add(from);
+                    segmentTos.add(to);
+                    segmentClasses.add(classes[way]);
+                }
+            }
+        }
+        int[] froms = segmentFroms.build().toArray();
+        int[] tos = segmentTos.build().toArray();
+        int[] segmentClass = segmentClasses.build().toArray();
+        if (froms.length == 0) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "the extract contains no walkable ways");
+        }
+
+        // keep the nodes of the largest connected component, in the order of their ids
+        int[] components = findComponents(ids.length, froms, tos);
+        int[] componentSizes = new int[ids.length];
+        int largest = 0;
+        for (int from : froms) {
+            int component = components[from];
+            if (++componentSizes[component] > componentSizes[largest]) {
+                largest = component;
+            }
+        }
+        int[] newIndices = new int[ids.length];
+        int nodeCount = 0;
+        for (int node = 0; node < ids.length; node++) {
+            newIndices[node] = components[node] == largest && !Double.isNaN(nodeLatitudes[node]) ? nodeCount++ : -1;
+        }
+
+        double[] latitudes = new double[nodeCount];
+        double[] longitudes = new double[nodeCount];
+        for (int node = 0; node < ids.length; node++) {
+            if (newIndices[node] >= 0) {
+                latitudes[newIndices[node]] = nodeLatitudes[node];
+                longitudes[newIndices[node]] = nodeLongitudes[node];
+            }
+        }
+
+        // both directions of every segment, grouped by their first node with a counting sort
+        int[] edgeOffsets = new int[nodeCount + 1];
+        for (int segment = 0; segment < froms.length; segment++) {
+            int from = newIndices[froms[segment]];
+            if (from >= 0) {
+                edgeOffsets[from + 1]++;
+                edgeOffsets[newIndices[tos[segment]] + 1]++;
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            edgeOffsets[node + 1] += edgeOffsets[node];
+        }
+        int edgeCount = edgeOffsets[nodeCount];
+        int[] edgeTargets = new int[edgeCount];
+        float[] edgeLengths = new float[edgeCount];
+        byte[] edgeClasses = new byte[edgeCount];
+        int[] next = Arrays.copyOf(edgeOffsets, nodeCount);
+        for (int segment = 0; segment < froms.length; segment++) {
+            int from = newIndices[froms[segment]];
+            if (from < 0) {
+                continue;
+            }
+            int to = newIndices[tos[segment]];
+            float length = (float) GeoMath.haversineMeters(latitudes[from], longitudes[from],
+                    latitudes[to], longitudes[to]);
+            int forward = next[from]++;
+            edgeTargets[forward] = to;
+            edgeLengths[forward] = length;
+            edgeClasses[forward] = (byte) segmentClass[segment];
+            int backward = next[to]++;
+            edgeTargets[backward] = from;
+            edgeLengths[backward] = length;
+            edgeClasses[backward] = (byte) segmentClass[segment];
+        }
+
+        PedestrianGraph graph = new PedestrianGraph();
+        graph.nodeLatitudes = DoubleBuffer.wrap(latitudes);
+        graph.nodeLongitudes = DoubleBuffer.wrap(longitudes);
+        graph.edgeOffsets = IntBuffer.wrap(edgeOffsets);
+        graph.edgeTargets = IntBuffer.wrap(edgeTargets);
+        graph.edgeLengths = FloatBuffer.wrap(edgeLengths);
+        graph.edgeClasses = ByteBuffer.wrap(edgeClasses);
+        graph.indexNodes();
+        return graph;
+    }
+
+    /**
+     * Finds the connected components with a union-find over the segments.
+     * @return the representative node of the component of each node
+     */
+    private static int[] findComponents(int nodeCount, int[] froms, int[] tos) {
+        int[] parents = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            parents[node] = node;
+        }
+        for (int segment = 0; segment < froms.length; segment++) {
+            int from = findRoot(parents, froms[segment]);
+            int to = findRoot(parents, tos[segment]);
+            if (from != to) {
+                parents[Math.max(from, to)] = Math.min(from, to);
+            }
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            parents[node] = findRoot(parents, node);
+        }
+        return parents;
+    }
+
+    private static int findRoot(int[] parents, int node) {
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]];
+            node = parents[node];
+        }
+        return node;
+    }
+}
@@ -0,0 +1,161 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.util.Arrays;
+
+/**
+ * A one-to-many Dijkstra search on a {@link PedestrianGraph}, which settles the nodes by their cost and records the
+ * walking time and distance of the cheapest route to each node.
+ * <p>
+ * The labels are reset lazily with a search counter, so a search only touches the nodes it reaches. The queue is a
+ * binary heap of primitive entries which may hold outdated entries of a node; they are skipped when polled. A search
+ * holds the state of one request at a time and is not thread-safe, so there is one instance per thread.
+ */
+class PedestrianSearch {
+
+    private final PedestrianGraph graph;
+    private final PedestrianCosting costing;
+
+    // labels, valid if the stamp of the node is the current search
+    private final int[] stamps;
+    private final double[] costs;
+    private final double[] times;
+    private final double[] distances;
+    private final byte[] previousClasses;
+    private final boolean[] settled;
+    private final int[] targetStamps;
+    private int search;
+
+    private double[] queueCosts = new double[64];
+    private int[] queueNodes = new int[64];
+    private int queueSize;
+
+    PedestrianSearch(PedestrianGraph graph, PedestrianCosting costing) {
+        this.graph = graph;
+        this.costing = costing;
+        int nodeCount = graph.getNodeCount();
+        this.stamps = new int[nodeCount];
+        this.costs = new double[nodeCount];
+        this.times = new double[nodeCount];
+        this.distances = new double[nodeCount];
+        this.previousClasses = new byte[nodeCount];
+        this.settled = new boolean[nodeCount];
+        this.targetStamps = new int[nodeCount];
+    }
+
+    /**
+     * Searches from a node until all targets are settled.
+     */
+    void run(int source, int[] targets) {
+        search++;
+        queueSize = 0;
+        int remainingTargets = 0;
+        for (int target : targets) {
+            if (targetStamps[target] != search) {
+                targetStamps[target] = search;
+                remainingTargets++;
+            }
+        }
+
+        label(source, 0, 0, 0, (byte) -1);
+        while (queueSize > 0 && remainingTargets > 0) {
+            double cost = queueCosts[0];
+            int node = poll();
+            if (settled[node] || cost > costs[node]) {
+                continue;
+            }
+            settled[node] = true;
+            if (targetStamps[node] == search) {
+                remainingTargets--;
+            }
+
+            int end = graph.edgeOffsets.get(node + 1);
+            for (int edge = graph.edgeOffsets.get(node); edge < end; edge++) {
+                int target = graph.edgeTargets.get(edge);
+                double length = graph.edgeLengths.get(edge);
+                byte edgeClass = graph.edgeClasses.get(edge);
+                double targetCost = cost + costing.getCost(edgeClass, length, previousClasses[node]);
+                if (stamps[target] != search || targetCost < costs[target]) {
+                    label(target, targetCost, times[node] + costing.getTime(length), distances[node] + length,
+                            edgeClass);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return if the last search reached the node
+     */
+    boolean isReached(int node) {
+        return stamps[node] == search && settled[node];
+    }
+
+    /**
+     * @return the walking time of the cheapest route of the last search to a reached node in seconds
+     */
+    double getTime(int node) {
+        return times[node];
+    }
+
+    /**
+     * @return the length of the cheapest route of the last search to a reached node in meters
+     */
+    double getDistance(int node) {
+        return distances[node];
+    }
+
+    private void label(int node, double cost, double time, double distance, byte previousClass) {
+        if (stamps[node] != search) {
+            stamps[node] = search;
+            settled[node] = false;
+        }
+        costs[node] = cost;
+        times[node] = time;
+        distances[node] = distance;
+        previousClasses[node] = previousClass;
+        offer(node, cost);
+    }
+
+    private void offer(int node, double cost) {
+        if (queueSize == queueNodes.length) {
+            queueCosts = Arrays.copyOf(queueCosts, queueSize * 2);
+            queueNodes = Arrays.copyOf(queueNodes, queueSize * 2);
+        }
+        int position = queueSize++;
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (queueCosts[parent] <= cost) {
+                break;
+            }
+            queueCosts[position] = queueCosts[parent];
+            queueNodes[position] = queueNodes[parent];
+            position = parent;
+        }
+        queueCosts[position] = cost;
+        queueNodes[position] = node;
+    }
+
+    private int poll() {
+        int node = queueNodes[0];
+        double cost = queueCosts[--queueSize];
+        int last = queueNodes[queueSize];
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= queueSize) {
+                break;
+            }
+            if (child + 1 < queueSize && queueCosts[child + 1] < queueCosts[child]) {
+                child++;
+            }
+            if (cost <= queueCosts[child]) {
+                break;
+            }
+            queueCosts[position] = queueCosts[child];
+            queueNodes[position] = queueNodes[child];
+            position = child;
+        }
+        queueCosts[position] = cost;
+        queueNodes[position] = last;
+        return node;
+    }
+}
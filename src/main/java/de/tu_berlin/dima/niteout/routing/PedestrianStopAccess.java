@@ -0,0 +1,113 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+import java.util.Arrays;
+
+/**
+ * Finds the walks between locations and the stops of a {@link GtfsTimetable} along the ways of a
+ * {@link PedestrianGraph}, for the access and egress legs of journeys and for walking the whole way.
+ * <p>
+ * Every stop is connected to its nearest node once, when the access is created; a location is connected to its
+ * nearest node when it is requested. All walks from a location are found by one one-to-many search, which runs until
+ * all targets are reached. Since every way of the graph can be walked in both directions, the walks from the stops
+ * around a destination to the destination are found by a search from the destination as well. A location or a stop
+ * without a way within the maximum snap distance keeps its straight-line walk, as do a location and a target which
+ * share their nearest node.
+ */
+class PedestrianStopAccess {
+
+    private final PedestrianGraph graph;
+    private final int maxSnapDistance;
+    // the nearest node of each stop, or -1 if it has no way within the maximum snap distance
+    private final int[] stopNodes;
+    private final double[] stopSnapDistances;
+    private final ThreadLocal<PedestrianSearch> searches;
+
+    PedestrianStopAccess(GtfsTimetable timetable, PedestrianGraph graph, PedestrianCosting costing,
+                         int maxSnapDistance) {
+        this.graph = graph;
+        this.maxSnapDistance = maxSnapDistance;
+        this.searches = ThreadLocal.withInitial(() -> new PedestrianSearch(graph, costing));
+        int stopCount = timetable.getStopCount();
+        this.stopNodes = new int[stopCount];
+        this.stopSnapDistances = new double[stopCount];
+        for (int stop = 0; stop < stopCount; stop++) {
+            double latitude = timetable.stopLatitudes.get(stop);
+            double longitude = timetable.stopLongitudes.get(stop);
+            stopNodes[stop] = graph.findNearestNode(latitude, longitude, maxSnapDistance);
+            if (stopNodes[stop] >= 0) {
+                stopSnapDistances[stop] = getSnapDistance(latitude, longitude, stopNodes[stop]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the straight-line distances between a location and stops by the walking distances along the graph.
+     * @param stops the stops around the location
+     * @param distances the straight-line distances to the stops in meters
+     */
+    void walkToStops(Location location, int[] stops, double[] distances) {
+        int[] targetNodes = new int[stops.length];
+        double[] targetSnapDistances = new double[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            targetNodes[i] = stopNodes[stops[i]];
+            targetSnapDistances[i] = stopSnapDistances[stops[i]];
+        }
+        walk(location, targetNodes, targetSnapDistances, distances);
+    }
+
+    /**
+     * Replaces the straight-line distances from a start to destinations by the walking distances along the graph.
+     * @param needed whether the walk to a destination is needed, the other distances are kept
+     * @param distances the straight-line distances to the destinations in meters
+     */
+    void walkToLocations(Location start, Location[] destinations, boolean[] needed, double[] distances) {
+        int[] targetNodes = new int[destinations.length];
+        double[] targetSnapDistances = new double[destinations.length];
+        Arrays.fill(targetNodes, -1);
+        for (int j = 0; j < destinations.length; j++) {
+            if (needed[j]) {
+                Location destination = destinations[j];
+                targetNodes[j] = graph.findNearestNode(destination.getLatitude(), destination.getLongitude(),
+                        maxSnapDistance);
+                if (targetNodes[j] >= 0) {
+                    targetSnapDistances[j] = getSnapDistance(destination.getLatitude(), destination.getLongitude(),
+                            targetNodes[j]);
+                }
+            }
+        }
+        walk(start, targetNodes, targetSnapDistances, distances);
+    }
+
+    /**
+     * Replaces the distances to the targets which are connected to the graph by the walking distances of one search.
+     * @param targetNodes the nearest nodes of the targets, or -1 to keep a distance
+     */
+    private void walk(Location source, int[] targetNodes, double[] targetSnapDistances, double[] distances) {
+        int sourceNode = graph.findNearestNode(source.getLatitude(), source.getLongitude(), maxSnapDistance);
+        if (sourceNode < 0) {
+            return;
+        }
+        int[] targets = Arrays.stream(targetNodes).filter(node -> node >= 0 && node != sourceNode).toArray();
+        if (targets.length == 0) {
+            return;
+        }
+
+        double sourceSnapDistance = getSnapDistance(source.getLatitude(), source.getLongitude(), sourceNode);
+        PedestrianSearch search = searches.get();
+        search.run(sourceNode, targets);
+        for (int i = 0; i < targetNodes.length; i++) {
+            int node = targetNodes[i];
+            // a target closest to the node of the source keeps its straight-line distance
+            if (node >= 0 && node != sourceNode) {
+                distances[i] = sourceSnapDistance + search.getDistance(node) + targetSnapDistances[i];
+            }
+        }
+    }
+
+    private double getSnapDistance(double latitude, double longitude, int node) {
+        return GeoMath.haversineMeters(latitude, longitude, graph.nodeLatitudes.get(node),
+                graph.nodeLongitudes.get(node));
+    }
+}
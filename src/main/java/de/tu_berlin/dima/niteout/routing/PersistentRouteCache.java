@@ -0,0 +1,662 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.RouteSummary;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link RouteCache} in an append-only file, which survives restarts of the service.
+ * <p>
+ * Every put appends a record to the log, and the latest record of a key wins. Only the offsets of the records are
+ * kept in memory; a trip is read from the file when it is requested. When the cache is opened, the log is scanned on
+ * a background thread, so the service starts at once and serves the trips of the log as soon as their records are
+ * scanned. Records carry the time they were written and expire like the entries of an {@link InMemoryRouteCache}.
+ * <p>
+ * Once the log holds more than twice as many records as live entries, it is compacted: the live entries are written
+ * to a new file, which then replaces the log. A record torn by a crash ends the scan and is dropped by compacting the
+ * log. The keys depend on the grid size and the departure bucket, which are stored in the header of the log; a log
+ * written with other settings is discarded.
+ * <p>
+ * Put it behind an {@link InMemoryRouteCache} with a {@link TieredRouteCache}, so hot trips are not read from the file.
+ */
+public class PersistentRouteCache implements RouteCache, Closeable {
+
+    public final static int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+
+    // "NRTC" in ASCII
+    private final static int MAGIC = 0x4e525443;
+    private final static int FORMAT_VERSION = 1;
+    // magic, version, grid size and departure bucket
+    private final static int HEADER_BYTES = 24;
+    // length and checksum of the payload
+    private final static int RECORD_HEADER_BYTES = 8;
+    // written at, mode, cells, bucket, kind and time
+    private final static int MIN_PAYLOAD_BYTES = 38;
+    private final static int MAX_PAYLOAD_BYTES = 256;
+    private final static int SCAN_BUFFER_BYTES = 1 << 20;
+
+    private final static byte TRIP_TIME = 0;
+    private final static byte MATRIX_CELL = 1;
+    private final static byte ROUTE_SUMMARY = 2;
+
+    private final static ExecutorService LOADER = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("route-cache-loader-%d").build());
+
+    private final Path file;
+    private final long walkingTimeToLive;
+    private final long publicTransportTimeToLive;
+    private final Duration departureBucket;
+    private final SpatialGrid grid;
+    private final int compactionThreshold;
+    private final LongSupplier clock;
+    private final Executor compactionExecutor;
+
+    // appends hold the read lock, so that only compaction and invalidation exclude everything else
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object appendLock = new Object();
+    private final Map<RouteCacheKey, Long> offsets = new ConcurrentHashMap<>();
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final CompletableFuture<Void> loaded;
+    // the last background compaction, which close waits for
+    private volatile CompletableFuture<Void> compaction = CompletableFuture.completedFuture(null);
+    private FileChannel channel;
+    private long appendPosition;
+    private volatile boolean torn;
+    // set under the write lock
+    private volatile boolean closed;
+
+    private PersistentRouteCache(PersistentRouteCacheBuilder builder) throws RoutingAPIException {
+        this.file = builder.file;
+        this.walkingTimeToLive = builder.walkingTimeToLive.toMillis();
+        this.publicTransportTimeToLive = builder.publicTransportTimeToLive.toMillis();
+        this.departureBucket = builder.departureBucket;
+        this.grid = new SpatialGrid(builder.gridSizeMeters);
+        this.compactionThreshold = builder.compactionThreshold;
+        this.clock = builder.clock;
+        this.compactionExecutor = builder.compactionExecutor;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (!hasHeader(channel)) {
+                channel.truncate(0);
+                writeFully(channel, createHeader(), 0);
+            }
+            this.appendPosition = channel.size();
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not open route cache " + file, e);
+        }
+        long end = appendPosition;
+        this.loaded = CompletableFuture.runAsync(() -> scan(end), LOADER);
+        loaded.thenRun(this::compactIfNeeded);
+    }
+
+    @Override
+    public RouteCacheKey createKey(TransportMode transportMode, Location start, Location destination,
+                                   LocalDateTime departure) {
+        return RouteCacheKey.of(transportMode, start, destination, departure, grid, departureBucket);
+    }
+
+    @Override
+    public CachedRoute get(RouteCacheKey key) {
+        CachedRoute route = read(key);
+        if (route != null) {
+            hitCount.increment();
+        } else {
+            missCount.increment();
+        }
+        return route;
+    }
+
+    /**
+     * @return the trip of the key, or {@code null} if it is not cached or has expired
+     */
+    private CachedRoute read(RouteCacheKey key) {
+        lock.readLock().lock();
+        try {
+            Long offset = offsets.get(key);
+            if (offset != null) {
+                ByteBuffer record = readRecord(offset);
+                if (isExpired(record)) {
+                    offsets.remove(key, offset);
+                    evictionCount.increment();
+                } else {
+                    int payload = record.position();
+                    long expiresAt = record.getLong(payload) + getTimeToLive(record.get(payload + 8));
+                    // so a tier in front of this cache does not keep the trip longer than this cache
+                    return decode(record).expiringAt(expiresAt);
+                }
+            }
+        } catch (IOException e) {
+            // the trip is only not found
+        } finally {
+            lock.readLock().unlock();
+        }
+        return null;
+    }
+
+    @Override
+    public void put(RouteCacheKey key, CachedRoute route) {
+        ByteBuffer record = encode(key, route, clock.getAsLong());
+        lock.readLock().lock();
+        try {
+            synchronized (appendLock) {
+                writeFully(channel, record, appendPosition);
+                offsets.put(key, appendPosition);
+                appendPosition += record.limit();
+            }
+        } catch (IOException e) {
+            // the trip is only not cached
+            return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        recordCount.incrementAndGet();
+        compactIfNeeded();
+    }
+
+    @Override
+    public void putKeepingSummary(RouteCacheKey key, CachedRoute route) {
+        CachedRoute previous = read(key);
+        if (previous == null || !previous.knowsMoreThan(route)) {
+            put(key, route);
+        }
+    }
+
+    /**
+     * Removes all entries and truncates the log.
+     */
+    @Override
+    public void invalidateAll() {
+        loaded.join();
+        lock.writeLock().lock();
+        try {
+            channel.truncate(HEADER_BYTES);
+            offsets.clear();
+            appendPosition = HEADER_BYTES;
+            recordCount.set(0);
+            torn = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("can not truncate route cache " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public CacheStats getStatistics() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 0, 0, 0, evictionCount.sum());
+    }
+
+    /**
+     * @return the number of cached trips, including those which have expired but were not requested since
+     */
+    public long size() {
+        return offsets.size();
+    }
+
+    /**
+     * @return the number of records in the log, including those of replaced and expired entries
+     */
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    /**
+     * @return whether the log has been scanned since the cache was opened
+     */
+    public boolean isLoaded() {
+        return loaded.isDone();
+    }
+
+    /**
+     * Blocks until the log has been scanned, e.g. before a node is put into service.
+     */
+    public void awaitLoaded() {
+        loaded.join();
+    }
+
+    /**
+     * Rewrites the log with only the live entries. The cache is blocked while it is compacted.
+     */
+    public void compact() throws RoutingAPIException {
+        loaded.join();
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                        "route cache " + file + " is closed");
+            }
+            Path compactedFile = file.resolveSibling(file.getFileName() + ".compacting");
+            Map<RouteCacheKey, Long> compactedOffsets = new HashMap<>();
+            long position = HEADER_BYTES;
+            try (FileChannel compacted = FileChannel.open(compactedFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(compacted, createHeader(), 0);
+                for (Map.Entry<RouteCacheKey, Long> entry : offsets.entrySet()) {
+                    ByteBuffer record = readRecord(entry.getValue());
+                    if (isExpired(record)) {
+                        evictionCount.increment();
+                        continue;
+                    }
+                    writeFully(compacted, record, position);
+                    compactedOffsets.put(entry.getKey(), position);
+                    position += record.limit();
+                }
+                compacted.force(true);
+            }
+            Files.move(compactedFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel replaced = channel;
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replaced.close();
+            offsets.clear();
+            offsets.putAll(compactedOffsets);
+            appendPosition = position;
+            recordCount.set(compactedOffsets.size());
+            torn = false;
+        } catch (IOException e) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "can not compact route cache " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the log. A log with a torn record is compacted first, since the records appended after it could not be
+     * scanned. A background compaction which is still pending is waited for, and finds the log closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        loaded.join();
+        if (torn) {
+            try {
+                compact();
+            } catch (RoutingAPIException e) {
+                throw new IOException(e.getMessage(), e.getCause());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            closed = true;
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compaction.join();
+    }
+
+    private void compactIfNeeded() {
+        long records = recordCount.get();
+        if (!torn && (records < compactionThreshold || records <= 2L * offsets.size())) {
+            return;
+        }
+        if (loaded.isDone() && !closed && compacting.compareAndSet(false, true)) {
+            compaction = CompletableFuture.runAsync(() -> {
+                try {
+                    compact();
+                } catch (RoutingAPIException e) {
+                    // the log is compacted again with the next put, unless it was closed meanwhile
+                } finally {
+                    compacting.set(false);
+                }
+            }, compactionExecutor);
+        }
+    }
+
+    /**
+     * Indexes the records of the log up to its end at the time it was opened. Records appended since are already
+     * indexed and newer than all records of the scan.
+     */
+    private void scan(long end) {
+        long position = HEADER_BYTES;
+        long now = clock.getAsLong();
+        try {
+            LogWindow window = new LogWindow(channel, position, end);
+            ByteBuffer buffer = window.buffer;
+            CRC32 checksum = new CRC32();
+            while (window.request(RECORD_HEADER_BYTES)) {
+                int length = buffer.getInt();
+                int crc = buffer.getInt();
+                if (length < MIN_PAYLOAD_BYTES || length > MAX_PAYLOAD_BYTES || !window.request(length)) {
+                    break;
+                }
+                int payload = buffer.position();
+                checksum.reset();
+                checksum.update(buffer.array(), payload, length);
+                if ((int) checksum.getValue() != crc) {
+                    break;
+                }
+                if (!isExpired(buffer.getLong(payload), buffer.get(payload + 8), now)) {
+                    RouteCacheKey key = RouteCacheKey.of(TransportMode.values()[buffer.get(payload + 8)],
+                            buffer.getLong(payload + 9), buffer.getLong(payload + 17), buffer.getLong(payload + 25));
+                    offsets.merge(key, position, Math::max);
+                }
+                recordCount.incrementAndGet();
+                buffer.position(payload + length);
+                position += RECORD_HEADER_BYTES + length;
+            }
+        } catch (IOException e) {
+            // the rest of the log is dropped by the next compaction
+        }
+        torn = position < end;
+    }
+
+    private boolean hasHeader(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, header, 0);
+        return header.getInt(0) == MAGIC && header.getInt(4) == FORMAT_VERSION
+                && header.getDouble(8) == grid.getCellSizeMeters()
+                && header.getLong(16) == departureBucket.getSeconds();
+    }
+
+    private ByteBuffer createHeader() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putDouble(grid.getCellSizeMeters())
+                .putLong(departureBucket.getSeconds());
+        header.flip();
+        return header;
+    }
+
+    /**
+     * @return the record at the offset, positioned at its payload
+     */
+    private ByteBuffer readRecord(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        readFully(channel, header, offset);
+        int length = header.getInt(0);
+        if (length < MIN_PAYLOAD_BYTES || length > MAX_PAYLOAD_BYTES) {
+            throw new IOException("invalid record at " + offset + " of route cache " + file);
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+        readFully(channel, record, offset);
+        record.position(RECORD_HEADER_BYTES);
+        return record;
+    }
+
+    private boolean isExpired(ByteBuffer record) {
+        int payload = record.position();
+        return isExpired(record.getLong(payload), record.get(payload + 8), clock.getAsLong());
+    }
+
+    private boolean isExpired(long writtenAt, byte transportMode, long now) {
+        return now - writtenAt >= getTimeToLive(transportMode);
+    }
+
+    private long getTimeToLive(byte transportMode) {
+        return transportMode == TransportMode.WALKING.ordinal() ? walkingTimeToLive : publicTransportTimeToLive;
+    }
+
+    private static ByteBuffer encode(RouteCacheKey key, CachedRoute route, long writtenAt) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + MIN_PAYLOAD_BYTES + 64);
+        record.position(RECORD_HEADER_BYTES);
+        record.putLong(writtenAt)
+                .put((byte) key.getTransportMode().ordinal())
+                .putLong(key.getStart().toLong())
+                .putLong(key.getDestination().toLong())
+                .putLong(key.getDepartureBucket());
+        if (route.hasRouteSummary()) {
+            RouteSummary summary = route.getRouteSummary();
+            record.put(ROUTE_SUMMARY).putInt(route.getTime())
+                    .putLong(toEpochSecond(summary.getDepartureTime()))
+                    .putLong(toEpochSecond(summary.getArrivalTime()))
+                    .putDouble(summary.getTotalDistance())
+                    .putInt(summary.getNumberOfChanges());
+            Map<TransportMode, Integer> modeTimes = summary.getModeOfTransportTravelTimes();
+            record.put((byte) (modeTimes == null ? -1 : modeTimes.size()));
+            if (modeTimes != null) {
+                for (Map.Entry<TransportMode, Integer> modeTime : modeTimes.entrySet()) {
+                    record.put((byte) modeTime.getKey().ordinal()).putInt(modeTime.getValue());
+                }
+            }
+        } else if (route.hasDistance()) {
+            record.put(MATRIX_CELL).putInt(route.getTime())
+                    .putDouble(route.getDistance())
+                    .put((byte) route.getUnits().ordinal());
+        } else {
+            record.put(TRIP_TIME).putInt(route.getTime());
+        }
+        int length = record.position() - RECORD_HEADER_BYTES;
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), RECORD_HEADER_BYTES, length);
+        record.putInt(0, length).putInt(4, (int) checksum.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static CachedRoute decode(ByteBuffer record) throws IOException {
+        int length = record.getInt(0);
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), RECORD_HEADER_BYTES, length);
+        if ((int) checksum.getValue() != record.getInt(4)) {
+            throw new IOException("corrupt record in route cache");
+        }
+        // skip written at, mode, cells and bucket
+        record.position(RECORD_HEADER_BYTES + 33);
+        byte kind = record.get();
+        int time = record.getInt();
+        switch (kind) {
+            case MATRIX_CELL:
+                double distance = record.getDouble();
+                return CachedRoute.ofMatrixCell(time, distance, DistanceUnits.values()[record.get()]);
+            case ROUTE_SUMMARY:
+                RouteSummary summary = new RouteSummary();
+                summary.setTotalDuration(time);
+                summary.setDepartureTime(fromEpochSecond(record.getLong()));
+                summary.setArrivalTime(fromEpochSecond(record.getLong()));
+                summary.setTotalDistance(record.getDouble());
+                summary.setNumberOfChanges(record.getInt());
+                int modeCount = record.get();
+                if (modeCount >= 0) {
+                    HashMap<TransportMode, Integer> modeTimes = new HashMap<>(modeCount);
+                    for (int k = 0; k < modeCount; k++) {
+                        modeTimes.put(TransportMode.values()[record.get()], record.getInt());
+                    }
+                    summary.setModeOfTransportTravelTimes(modeTimes);
+                }
+                return CachedRoute.ofRouteSummary(summary);
+            default:
+                return CachedRoute.ofTripTime(time);
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime time) {
+        return time == null ? Long.MIN_VALUE : time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fromEpochSecond(long epochSecond) {
+        return epochSecond == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Reads a part of the log sequentially through a buffer, without moving the position of the channel.
+     */
+    private static final class LogWindow {
+        private final FileChannel channel;
+        private final long end;
+        private final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        // the position in the file after the last byte in the buffer
+        private long bufferEnd;
+
+        LogWindow(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.end = end;
+            this.bufferEnd = start;
+            buffer.limit(0);
+        }
+
+        /**
+         * @return whether the next bytes are in the buffer, false if the log ends before them
+         */
+        boolean request(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes && bufferEnd < end) {
+                ByteBuffer free = buffer.duplicate();
+                free.limit((int) Math.min(buffer.capacity(), buffer.position() + end - bufferEnd));
+                int read = channel.read(free, bufferEnd);
+                if (read < 0) {
+                    break;
+                }
+                buffer.position(free.position());
+                bufferEnd += read;
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+
+    public static class PersistentRouteCacheBuilder {
+        private Path file;
+        private Duration walkingTimeToLive = InMemoryRouteCache.DEFAULT_WALKING_TIME_TO_LIVE;
+        private Duration publicTransportTimeToLive = InMemoryRouteCache.DEFAULT_PUBLIC_TRANSPORT_TIME_TO_LIVE;
+        private Duration departureBucket = InMemoryRouteCache.DEFAULT_DEPARTURE_BUCKET;
+        private double gridSizeMeters = InMemoryRouteCache.DEFAULT_GRID_SIZE_METERS;
+        private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+        private LongSupplier clock = System::currentTimeMillis;
+        private Executor compactionExecutor = LOADER;
+
+        /**
+         * @param file the log, which is created if it does not exist
+         */
+        public PersistentRouteCacheBuilder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        public PersistentRouteCacheBuilder walkingTimeToLive(Duration walkingTimeToLive) {
+            this.walkingTimeToLive = walkingTimeToLive;
+            return this;
+        }
+
+        public PersistentRouteCacheBuilder publicTransportTimeToLive(Duration publicTransportTimeToLive) {
+            this.publicTransportTimeToLive = publicTransportTimeToLive;
+            return this;
+        }
+
+        /**
+         * @param departureBucket the length of the buckets public transport departure times are truncated to
+         */
+        public PersistentRouteCacheBuilder departureBucket(Duration departureBucket) {
+            this.departureBucket = departureBucket;
+            return this;
+        }
+
+        /**
+         * @param gridSizeMeters the edge length of the grid cells start and destination are snapped to
+         */
+        public PersistentRouteCacheBuilder gridSizeMeters(double gridSizeMeters) {
+            this.gridSizeMeters = gridSizeMeters;
+            return this;
+        }
+
+        /**
+         * @param compactionThreshold the number of records below which the log is not compacted
+         */
+        public PersistentRouteCacheBuilder compactionThreshold(int compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * @param clock the current time in milliseconds, for tests
+         */
+        PersistentRouteCacheBuilder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param compactionExecutor runs the compactions in the background, for tests
+         */
+        PersistentRouteCacheBuilder compactionExecutor(Executor compactionExecutor) {
+            this.compactionExecutor = compactionExecutor;
+            return this;
+        }
+
+        /**
+         * Opens the log and starts to scan it in the background.
+         */
+        public PersistentRouteCache build() throws RoutingAPIException {
+
+            if (file == null) {
+                throw new IllegalArgumentException("file is not set");
+            }
+            if (walkingTimeToLive.isNegative() || walkingTimeToLive.isZero()
+                    || publicTransportTimeToLive.isNegative() || publicTransportTimeToLive.isZero()) {
+                throw new IllegalArgumentException("timeToLive must be positive");
+            }
+            if (departureBucket.getSeconds() < 1) {
+                throw new IllegalArgumentException("departureBucket must be at least one second");
+            }
+            if (gridSizeMeters <= 0) {
+                throw new IllegalArgumentException("gridSizeMeters must be positive");
+            }
+            if (compactionThreshold < 0) {
+                throw new IllegalArgumentException("compactionThreshold cannot be negative");
+            }
+
+            return new PersistentRouteCache(this);
+        }
+    }
+}
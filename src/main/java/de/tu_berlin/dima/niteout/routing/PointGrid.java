@@ -0,0 +1,176 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A uniform grid over a set of points, to find the points near a coordinate without scanning all of them.
+ * <p>
+ * The points are sorted by their cell and stored in flat buffers; a cell is found by binary search of its key. The
+ * grid can be written to and read from a {@link RoutingDataFile}, so it is not rebuilt when the data is opened.
+ */
+final class PointGrid {
+
+    /**
+     * Receives the points found by {@link #forEachWithin(double, double, double, PointVisitor)}.
+     */
+    @FunctionalInterface
+    interface PointVisitor {
+        void visit(int point, double distanceMeters);
+    }
+
+    private final DoubleBuffer latitudes;
+    private final DoubleBuffer longitudes;
+    private final double cellLatitude;
+    private final double cellLongitude;
+    private final LongBuffer cells;
+    private final IntBuffer offsets;
+    private final IntBuffer points;
+
+    private PointGrid(DoubleBuffer latitudes, DoubleBuffer longitudes, double cellLatitude, double cellLongitude,
+                      LongBuffer cells, IntBuffer offsets, IntBuffer points) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.cellLatitude = cellLatitude;
+        this.cellLongitude = cellLongitude;
+        this.cells = cells;
+        this.offsets = offsets;
+        this.points = points;
+    }
+
+    /**
+     * Builds the grid of a set of points.
+     * @param latitudes the latitudes of the points, which are not copied
+     * @param longitudes the longitudes of the points, which are not copied
+     * @param cellMeters the approximate size of a cell
+     */
+    static PointGrid build(DoubleBuffer latitudes, DoubleBuffer longitudes, double cellMeters) {
+        int count = latitudes.limit();
+        double referenceLatitude = 0;
+        for (int point = 0; point < count; point++) {
+            referenceLatitude += latitudes.get(point) / count;
+        }
+        double cellLatitude = cellMeters / GeoMath.METERS_PER_DEGREE_LATITUDE;
+        double cellLongitude = cellMeters / GeoMath.metersPerDegreeLongitude(referenceLatitude);
+
+        // sort the points by cell with a single primitive sort of (cell index, point) pairs
+        long[] pointCells = new long[count];
+        for (int point = 0; point < count; point++) {
+            pointCells[point] = cell(row(latitudes.get(point), cellLatitude),
+                    column(longitudes.get(point), cellLongitude));
+        }
+        long[] distinctCells = Arrays.stream(pointCells).distinct().sorted().toArray();
+        long[] keys = new long[count];
+        for (int point = 0; point < count; point++) {
+            keys[point] = ((long) Arrays.binarySearch(distinctCells, pointCells[point]) << 32) | point;
+        }
+        Arrays.sort(keys);
+
+        int[] offsets = new int[distinctCells.length + 1];
+        int[] points = new int[count];
+        for (int k = 0; k < count; k++) {
+            offsets[(int) (keys[k] >>> 32) + 1]++;
+            points[k] = (int) keys[k];
+        }
+        for (int cell = 0; cell < distinctCells.length; cell++) {
+            offsets[cell + 1] += offsets[cell];
+        }
+        return new PointGrid(latitudes, longitudes, cellLatitude, cellLongitude,
+                LongBuffer.wrap(distinctCells), IntBuffer.wrap(offsets), IntBuffer.wrap(points));
+    }
+
+    /**
+     * Reads a grid written by {@link #write(RoutingDataFile.Writer)}.
+     * @param latitudes the latitudes of the points the grid was built of
+     * @param longitudes the longitudes of the points the grid was built of
+     */
+    static PointGrid read(RoutingDataFile.Reader reader, DoubleBuffer latitudes, DoubleBuffer longitudes)
+            throws RoutingAPIException {
+        return new PointGrid(latitudes, longitudes, reader.readDouble(), reader.readDouble(),
+                reader.readLongs(), reader.readInts(), reader.readInts());
+    }
+
+    void write(RoutingDataFile.Writer writer) {
+        writer.writeDouble(cellLatitude)
+                .writeDouble(cellLongitude)
+                .writeLongs(cells)
+                .writeInts(offsets)
+                .writeInts(points);
+    }
+
+    /**
+     * Visits all points within a straight-line distance of the coordinate.
+     */
+    void forEachWithin(double latitude, double longitude, double radiusMeters, PointVisitor visitor) {
+        double latitudeRadius = radiusMeters / GeoMath.METERS_PER_DEGREE_LATITUDE;
+        double longitudeRadius = radiusMeters / GeoMath.metersPerDegreeLongitude(
+                Math.min(89, Math.abs(latitude) + latitudeRadius));
+        int lastRow = row(latitude + latitudeRadius, cellLatitude);
+        int lastColumn = column(longitude + longitudeRadius, cellLongitude);
+        for (int row = row(latitude - latitudeRadius, cellLatitude); row <= lastRow; row++) {
+            for (int column = column(longitude - longitudeRadius, cellLongitude); column <= lastColumn; column++) {
+                int cell = findCell(cell(row, column));
+                if (cell < 0) {
+                    continue;
+                }
+                for (int k = offsets.get(cell); k < offsets.get(cell + 1); k++) {
+                    int point = points.get(k);
+                    double distance = GeoMath.haversineMeters(latitude, longitude,
+                            latitudes.get(point), longitudes.get(point));
+                    if (distance <= radiusMeters) {
+                        visitor.visit(point, distance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the point nearest to the coordinate, or -1 if there is no point within the maximum distance
+     */
+    int findNearest(double latitude, double longitude, double maxDistanceMeters) {
+        int[] nearest = {-1};
+        double[] nearestDistance = {Double.MAX_VALUE};
+        forEachWithin(latitude, longitude, maxDistanceMeters, (point, distance) -> {
+            if (distance < nearestDistance[0]) {
+                nearest[0] = point;
+                nearestDistance[0] = distance;
+            }
+        });
+        return nearest[0];
+    }
+
+    /**
+     * @return the index of the cell, or a negative value if no point lies in it
+     */
+    private int findCell(long key) {
+        int low = 0;
+        int high = cells.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long cell = cells.get(middle);
+            if (cell < key) {
+                low = middle + 1;
+            } else if (cell > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static int row(double latitude, double cellLatitude) {
+        return (int) Math.floor(latitude / cellLatitude);
+    }
+
+    private static int column(double longitude, double cellLongitude) {
+        return (int) Math.floor(longitude / cellLongitude);
+    }
+
+    private static long cell(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -0,0 +1,92 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Records the calls of a wrapper to one provider into the {@link RoutingMetrics} of its transport.
+ */
+final class ProviderMetrics {
+
+    interface Parse<T> {
+        T parse() throws RoutingAPIException;
+    }
+
+    private final Supplier<RoutingMetrics> metrics;
+    private final String provider;
+
+    /**
+     * @param metrics the registry, which is looked up on every call, e.g. of the default transport
+     */
+    ProviderMetrics(Supplier<RoutingMetrics> metrics, String provider) {
+        this.metrics = metrics;
+        this.provider = provider;
+    }
+
+    ProviderMetrics(HttpTransport transport, String provider) {
+        this(transport::getMetrics, provider);
+    }
+
+    /**
+     * Executes the request on the transport and records its latency, or its error if it failed.
+     */
+    Response execute(HttpTransport transport, Request request, String endpoint) throws RoutingAPIException {
+        long start = System.nanoTime();
+        try {
+            return transport.execute(request);
+        } catch (RoutingAPIException e) {
+            recordError(endpoint, e.getCode());
+            throw e;
+        } finally {
+            metrics.get().recordRequest(provider, endpoint, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #execute(HttpTransport, Request, String)}.
+     */
+    CompletableFuture<Response> executeAsync(HttpTransport transport, Request request, String endpoint) {
+        long start = System.nanoTime();
+        return transport.executeAsync(request).whenComplete((response, throwable) -> {
+            metrics.get().recordRequest(provider, endpoint, System.nanoTime() - start);
+            if (throwable != null) {
+                recordError(endpoint, throwable);
+            }
+        });
+    }
+
+    /**
+     * Parses a response and records the time it took, or its error if it failed.
+     */
+    <T> T parse(String endpoint, Parse<T> parse) throws RoutingAPIException {
+        long start = System.nanoTime();
+        try {
+            return parse.parse();
+        } catch (RoutingAPIException e) {
+            recordError(endpoint, e.getCode());
+            throw e;
+        } finally {
+            metrics.get().recordParse(provider, endpoint, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} at which the request started to wait for a permit
+     */
+    void recordRateLimiterWait(long startNanos) {
+        metrics.get().recordRateLimiterWait(provider, System.nanoTime() - startNanos);
+    }
+
+    void recordError(String endpoint, RoutingAPIException.ErrorCode code) {
+        metrics.get().recordError(provider, endpoint, code);
+    }
+
+    private void recordError(String endpoint, Throwable throwable) {
+        Throwable cause = CompletableFutures.unwrap(throwable);
+        recordError(endpoint, cause instanceof RoutingAPIException ?
+                ((RoutingAPIException) cause).getCode() : RoutingAPIException.ErrorCode.HTTP);
+    }
+}
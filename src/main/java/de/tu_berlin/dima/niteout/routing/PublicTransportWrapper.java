@@ -1,12 +1,15 @@
 package de.tu_berlin.dima.niteout.routing;
 
+import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
 import de.tu_berlin.dima.niteout.routing.model.Location;
 import de.tu_berlin.dima.niteout.routing.model.Route;
 import de.tu_berlin.dima.niteout.routing.model.RouteSummary;
 import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import de.tu_berlin.dima.niteout.routing.model.TravelTimeMatrix;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface PublicTransportWrapper {
 
@@ -42,4 +45,58 @@ public interface PublicTransportWrapper {
      */
     List<TimeMatrixEntry> getMultiModalMatrix(Location[] startLocations, Location[] destinationLocations,
                                               LocalDateTime departureTime) throws RoutingAPIException;
+
+    /**
+     * Gets a matrix like {@link #getMultiModalMatrix(Location[], Location[], LocalDateTime)}, but in flat primitive
+     * arrays instead of an object per cell. The default implementation adapts the list of entries.
+     */
+    default TravelTimeMatrix getMultiModalTravelTimeMatrix(Location[] startLocations, Location[] destinationLocations,
+                                                           LocalDateTime departureTime) throws RoutingAPIException {
+        return TravelTimeMatrix.fromEntries(startLocations.length, destinationLocations.length,
+                DistanceUnits.KILOMETERS, getMultiModalMatrix(startLocations, destinationLocations, departureTime));
+    }
+
+    /**
+     * The non-blocking variant of {@link #getPublicTransportTripTime(Location, Location, LocalDateTime)}. The default
+     * implementation computes the result in the calling thread; implementations backed by a remote service should
+     * override it.
+     */
+    default CompletableFuture<Integer> getPublicTransportTripTimeAsync(Location start, Location destination,
+                                                                       LocalDateTime departure) {
+        try {
+            return CompletableFuture.completedFuture(getPublicTransportTripTime(start, destination, departure));
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #getPublicTransportRouteSummary(Location, Location, LocalDateTime)}. The
+     * default implementation computes the result in the calling thread; implementations backed by a remote service
+     * should override it.
+     */
+    default CompletableFuture<RouteSummary> getPublicTransportRouteSummaryAsync(Location start, Location destination,
+                                                                                LocalDateTime departure) {
+        try {
+            return CompletableFuture.completedFuture(getPublicTransportRouteSummary(start, destination, departure));
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #getMultiModalMatrix(Location[], Location[], LocalDateTime)}. The default
+     * implementation computes the result in the calling thread; implementations backed by a remote service should
+     * override it.
+     */
+    default CompletableFuture<List<TimeMatrixEntry>> getMultiModalMatrixAsync(Location[] startLocations,
+                                                                              Location[] destinationLocations,
+                                                                              LocalDateTime departureTime) {
+        try {
+            return CompletableFuture.completedFuture(
+                    getMultiModalMatrix(startLocations, destinationLocations, departureTime));
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
 }
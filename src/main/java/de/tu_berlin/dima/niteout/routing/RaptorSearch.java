@@ -0,0 +1,407 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static de.tu_berlin.dima.niteout.routing.GtfsTimetable.SECONDS_PER_DAY;
+
+/**
+ * A RAPTOR search for the earliest arrival on a {@link GtfsTimetable}.
+ * <p>
+ * Round {@code k} finds all stops which can be reached with {@code k} rides, followed by a walking transfer. The
+ * search keeps the labels of every round, so the journey to any reached stop can be reconstructed afterwards.
+ * Trips of the previous, the current and the next service day are considered, so journeys around midnight find
+ * trips running past midnight as well as trips of the next day.
+ * <p>
+ * Without egress stops the search is one-to-all: a single run finds the earliest arrival at every stop. Consecutive
+ * runs after one {@link #reset(LocalDate)} form a range search (rRAPTOR): if they are started in order of decreasing
+ * departure, the labels of the later departure remain valid for the earlier one, because a traveller can always wait.
+ * Each run then only has to improve on them.
+ * <p>
+ * An instance holds the state of one search and must not be shared between threads.
+ */
+class RaptorSearch {
+
+    final static int UNREACHED = Integer.MAX_VALUE;
+
+    private final static int NOT_SET = -1;
+
+    private final GtfsTimetable timetable;
+    private final double walkingSpeed;
+    private final int maxRides;
+    private final int minimumChangeTime;
+
+    private final BitSet[] activeServices = new BitSet[3];
+    // labels of every round, indexed by stop
+    private final int[][] arrivals;
+    private final int[][] rideTrips;
+    private final int[][] rideLegs;
+    private final int[][] transfersFrom;
+    private final int[] bestArrivals;
+    private int lastRound;
+    private int initializedRounds;
+
+    private final boolean[] marked;
+    private final int[] markedStops;
+    private int markedCount;
+    private final int[] queuedPositions;
+    private final int[] queuedPatterns;
+    private int queuedCount;
+
+    private int[] egressStops;
+    private int[] egressTimes;
+    private int arrivalBound;
+
+    /**
+     * @param walkingSpeed the walking speed for transfers in meters per second
+     * @param maxRides the maximum number of rides, one more than the maximum number of changes
+     * @param minimumChangeTime the minimum time in seconds to change from one trip to another
+     */
+    RaptorSearch(GtfsTimetable timetable, double walkingSpeed, int maxRides, int minimumChangeTime) {
+        this.timetable = timetable;
+        this.walkingSpeed = walkingSpeed;
+        this.maxRides = maxRides;
+        this.minimumChangeTime = minimumChangeTime;
+
+        int stopCount = timetable.getStopCount();
+        this.arrivals = new int[maxRides + 1][];
+        this.rideTrips = new int[maxRides + 1][];
+        this.rideLegs = new int[maxRides + 1][];
+        this.transfersFrom = new int[maxRides + 1][];
+        this.bestArrivals = new int[stopCount];
+        this.marked = new boolean[stopCount];
+        this.markedStops = new int[stopCount];
+        this.queuedPositions = new int[timetable.getPatternCount()];
+        this.queuedPatterns = new int[timetable.getPatternCount()];
+        Arrays.fill(queuedPositions, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Runs a single search.
+     * @param date the service day the times refer to
+     * @param accessStops the stops reachable from the start
+     * @param accessTimes the arrival times at the access stops in seconds after midnight of the date
+     * @param egressStops the stops from which the destination is reachable, or {@code null} to search all stops
+     * @param egressTimes the times to reach the destination from the egress stops
+     * @param arrivalBound no labels at or after this time are of interest, e.g. the arrival by walking
+     */
+    void run(LocalDate date, int[] accessStops, int[] accessTimes, int[] egressStops, int[] egressTimes,
+             int arrivalBound) {
+        reset(date);
+        search(accessStops, accessTimes, egressStops, egressTimes, arrivalBound);
+    }
+
+    /**
+     * Clears all labels and selects the service day of the following searches.
+     */
+    void reset(LocalDate date) {
+        for (int day = 0; day < activeServices.length; day++) {
+            activeServices[day] = timetable.getActiveServices(date.plusDays(day - 1));
+        }
+        Arrays.fill(bestArrivals, UNREACHED);
+        initializedRounds = 0;
+        lastRound = 0;
+    }
+
+    /**
+     * Runs a search which keeps the labels of the previous searches since the last {@link #reset(LocalDate)}. The
+     * access times of consecutive searches must not increase.
+     * @see #run(LocalDate, int[], int[], int[], int[], int)
+     */
+    void search(int[] accessStops, int[] accessTimes, int[] egressStops, int[] egressTimes, int arrivalBound) {
+        this.egressStops = egressStops;
+        this.egressTimes = egressTimes;
+        this.arrivalBound = arrivalBound;
+
+        startRound(0);
+        for (int i = 0; i < accessStops.length; i++) {
+            int stop = accessStops[i];
+            int arrival = accessTimes[i];
+            if (arrival < bestArrivals[stop] && arrival < this.arrivalBound) {
+                arrivals[0][stop] = arrival;
+                bestArrivals[stop] = arrival;
+                mark(stop);
+            }
+        }
+
+        for (int round = 1; round <= maxRides && markedCount > 0; round++) {
+            startRound(round);
+            queueMarkedPatterns();
+            for (int k = 0; k < queuedCount; k++) {
+                int pattern = queuedPatterns[k];
+                scanPattern(round, pattern, queuedPositions[pattern]);
+                queuedPositions[pattern] = Integer.MAX_VALUE;
+            }
+            queuedCount = 0;
+            relaxTransfers(round);
+            updateArrivalBound(round);
+            lastRound = Math.max(lastRound, round);
+        }
+        clearMarks();
+    }
+
+    private void clearMarks() {
+        for (int k = 0; k < markedCount; k++) {
+            marked[markedStops[k]] = false;
+        }
+        markedCount = 0;
+    }
+
+    private void startRound(int round) {
+        int stopCount = bestArrivals.length;
+        if (round < initializedRounds) {
+            // a later search of a range: labels of any round may only improve
+            if (round > 0) {
+                int[] previous = arrivals[round - 1];
+                int[] current = arrivals[round];
+                for (int stop = 0; stop < stopCount; stop++) {
+                    if (previous[stop] < current[stop]) {
+                        current[stop] = previous[stop];
+                    }
+                }
+            }
+            return;
+        }
+
+        if (arrivals[round] == null) {
+            arrivals[round] = new int[stopCount];
+            rideTrips[round] = new int[stopCount];
+            rideLegs[round] = new int[stopCount];
+            transfersFrom[round] = new int[stopCount];
+        }
+        if (round == 0) {
+            Arrays.fill(arrivals[0], UNREACHED);
+        } else {
+            System.arraycopy(arrivals[round - 1], 0, arrivals[round], 0, stopCount);
+        }
+        Arrays.fill(rideTrips[round], NOT_SET);
+        Arrays.fill(transfersFrom[round], NOT_SET);
+        initializedRounds = round + 1;
+    }
+
+    private void mark(int stop) {
+        if (!marked[stop]) {
+            marked[stop] = true;
+            markedStops[markedCount++] = stop;
+        }
+    }
+
+    /**
+     * Queues every pattern serving a marked stop from the first marked position on and clears the marks.
+     */
+    private void queueMarkedPatterns() {
+        for (int k = 0; k < markedCount; k++) {
+            int stop = markedStops[k];
+            marked[stop] = false;
+            int end = timetable.stopPatternOffsets.get(stop + 1);
+            for (int index = timetable.stopPatternOffsets.get(stop); index < end; index++) {
+                int pattern = timetable.stopPatterns.get(index);
+                int position = timetable.stopPatternPositions.get(index);
+                if (position < queuedPositions[pattern]) {
+                    if (queuedPositions[pattern] == Integer.MAX_VALUE) {
+                        queuedPatterns[queuedCount++] = pattern;
+                    }
+                    queuedPositions[pattern] = position;
+                }
+            }
+        }
+        markedCount = 0;
+    }
+
+    private void scanPattern(int round, int pattern, int firstPosition) {
+        int stopsOffset = timetable.patternStopOffsets.get(pattern);
+        int length = timetable.patternStopOffsets.get(pattern + 1) - stopsOffset;
+        int[] previousArrivals = arrivals[round - 1];
+        int changeTime = round > 1 ? minimumChangeTime : 0;
+
+        int trip = NOT_SET;
+        int tripOffset = 0;
+        int dayOffset = 0;
+        int boardPosition = 0;
+
+        for (int position = firstPosition; position < length; position++) {
+            int stop = timetable.patternStops.get(stopsOffset + position);
+
+            if (trip != NOT_SET) {
+                int arrival = timetable.arrivals.get(tripOffset + position) + dayOffset;
+                if (arrival < bestArrivals[stop] && arrival < arrivalBound) {
+                    arrivals[round][stop] = arrival;
+                    bestArrivals[stop] = arrival;
+                    rideTrips[round][stop] = trip;
+                    rideLegs[round][stop] = encodeLeg(dayOffset / SECONDS_PER_DAY, boardPosition, position);
+                    transfersFrom[round][stop] = NOT_SET;
+                    mark(stop);
+                }
+            }
+
+            if (previousArrivals[stop] == UNREACHED) {
+                continue;
+            }
+            int ready = previousArrivals[stop] + changeTime;
+            if (trip != NOT_SET && ready > timetable.departures.get(tripOffset + position) + dayOffset) {
+                continue;
+            }
+            // an earlier trip may be caught at this stop
+            for (int day = -1; day <= 1; day++) {
+                int offset = day * SECONDS_PER_DAY;
+                int earliest = timetable.findEarliestTrip(pattern, position, ready - offset,
+                        activeServices[day + 1]);
+                if (earliest == NOT_SET) {
+                    continue;
+                }
+                int earliestOffset = timetable.tripStopTimeOffsets.get(earliest);
+                if (trip == NOT_SET || timetable.departures.get(earliestOffset + position) + offset
+                        < timetable.departures.get(tripOffset + position) + dayOffset) {
+                    trip = earliest;
+                    tripOffset = earliestOffset;
+                    dayOffset = offset;
+                    boardPosition = position;
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks from every stop reached by a ride in this round to the stops nearby.
+     */
+    private void relaxTransfers(int round) {
+        int rideMarkedCount = markedCount;
+        for (int k = 0; k < rideMarkedCount; k++) {
+            int stop = markedStops[k];
+            int departure = getRideArrival(round, stop);
+            int end = timetable.transferOffsets.get(stop + 1);
+            for (int index = timetable.transferOffsets.get(stop); index < end; index++) {
+                int target = timetable.transferStops.get(index);
+                int arrival = departure + getTransferTime(index);
+                if (arrival < bestArrivals[target] && arrival < arrivalBound) {
+                    arrivals[round][target] = arrival;
+                    bestArrivals[target] = arrival;
+                    transfersFrom[round][target] = stop;
+                    mark(target);
+                }
+            }
+        }
+    }
+
+    private void updateArrivalBound(int round) {
+        if (egressStops == null) {
+            return;
+        }
+        for (int i = 0; i < egressStops.length; i++) {
+            int arrival = arrivals[round][egressStops[i]];
+            if (arrival != UNREACHED) {
+                arrivalBound = Math.min(arrivalBound, arrival + egressTimes[i]);
+            }
+        }
+    }
+
+    int getTransferTime(int transferIndex) {
+        int walkingTime = (int) Math.ceil(timetable.transferDistances.get(transferIndex) / walkingSpeed);
+        return Math.max(walkingTime, timetable.transferMinimumTimes.get(transferIndex));
+    }
+
+    /**
+     * @return the arrival at a stop by the ride of a round, which may be later than the label of the stop if a
+     * transfer reached it even earlier
+     */
+    private int getRideArrival(int round, int stop) {
+        int trip = rideTrips[round][stop];
+        int leg = rideLegs[round][stop];
+        return timetable.arrivals.get(timetable.tripStopTimeOffsets.get(trip) + getAlightPosition(leg))
+                + getDay(leg) * SECONDS_PER_DAY;
+    }
+
+    /**
+     * @return the earliest arrival at the stop with at most the given number of rides
+     */
+    int getArrival(int rides, int stop) {
+        return arrivals[Math.min(rides, lastRound)][stop];
+    }
+
+    /**
+     * @return the earliest arrival at the stop with any number of rides
+     */
+    int getBestArrival(int stop) {
+        return bestArrivals[stop];
+    }
+
+    /**
+     * @return the number of rounds the last search ran, which is the maximum number of rides of its journeys
+     */
+    int getLastRound() {
+        return lastRound;
+    }
+
+    /**
+     * Reconstructs the journey which reaches a stop with at most the given number of rides.
+     * @param accessStops the access stops of the search
+     * @param accessTimes the times in seconds to walk to the access stops
+     * @param accessDistances the distances in meters to the access stops
+     */
+    GtfsJourney getJourney(int rides, int stop, int[] accessStops, int[] accessTimes, int[] accessDistances) {
+        int round = Math.min(rides, lastRound);
+        GtfsJourney journey = new GtfsJourney();
+        journey.arrival = arrivals[round][stop];
+
+        int firstDeparture = journey.arrival;
+        while (round > 0) {
+            if (arrivals[round][stop] == arrivals[round - 1][stop]) {
+                round--;
+                continue;
+            }
+            int transferFrom = transfersFrom[round][stop];
+            if (transferFrom != NOT_SET) {
+                journey.walkingTime += arrivals[round][stop] - getRideArrival(round, transferFrom);
+                journey.walkingDistance += getTransferDistance(transferFrom, stop);
+                stop = transferFrom;
+            }
+            int trip = rideTrips[round][stop];
+            int leg = rideLegs[round][stop];
+            int pattern = timetable.tripPatterns.get(trip);
+            int boardPosition = getBoardPosition(leg);
+            journey.rides++;
+            journey.rideDistance += timetable.getPatternDistance(pattern, boardPosition, getAlightPosition(leg));
+            firstDeparture = timetable.departures.get(timetable.tripStopTimeOffsets.get(trip) + boardPosition)
+                    + getDay(leg) * SECONDS_PER_DAY;
+            stop = timetable.patternStops.get(timetable.patternStopOffsets.get(pattern) + boardPosition);
+            round--;
+        }
+
+        for (int i = 0; i < accessStops.length; i++) {
+            if (accessStops[i] == stop) {
+                journey.walkingTime += accessTimes[i];
+                journey.walkingDistance += accessDistances[i];
+                journey.departure = firstDeparture - accessTimes[i];
+                break;
+            }
+        }
+        return journey;
+    }
+
+    private int getTransferDistance(int fromStop, int toStop) {
+        int end = timetable.transferOffsets.get(fromStop + 1);
+        for (int index = timetable.transferOffsets.get(fromStop); index < end; index++) {
+            if (timetable.transferStops.get(index) == toStop) {
+                return timetable.transferDistances.get(index);
+            }
+        }
+        return 0;
+    }
+
+    private static int encodeLeg(int day, int boardPosition, int alightPosition) {
+        return ((day + 1) << 30) | (boardPosition << 15) | alightPosition;
+    }
+
+    private static int getDay(int leg) {
+        return (leg >>> 30) - 1;
+    }
+
+    private static int getBoardPosition(int leg) {
+        return (leg >>> 15) & 0x7fff;
+    }
+
+    private static int getAlightPosition(int leg) {
+        return leg & 0x7fff;
+    }
+}
@@ -0,0 +1,275 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the requests to a rate limited external API.
+ * <p>
+ * A request first asks the scheduler for a permit of the {@link AdaptiveRateLimiter} of the API. Waiting requests are
+ * queued by priority, so interactive single trips overtake the cells of bulk matrices, and within a priority the
+ * permits go round-robin to the callers, so a large matrix can not hold back the other callers until it is complete.
+ * <p>
+ * The permits are handed out by a single thread shared by all schedulers, which waits for the rate limiter on behalf
+ * of all queued requests. The responses are reported back to the scheduler, so the rate limiter can learn the rate the
+ * API allows.
+ */
+public class RequestScheduler {
+
+    /**
+     * The priority of a request. The queued requests of a higher priority are served first.
+     */
+    public enum Priority {
+        /** a single trip a user is waiting for */
+        INTERACTIVE,
+        /** a cell of a matrix */
+        BULK
+    }
+
+    private final static ScheduledExecutorService DISPATCHER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("request-scheduler-%d").build());
+
+    private final AdaptiveRateLimiter rateLimiter;
+    private final Map<Priority, FairQueue> queues = new EnumMap<>(Priority.class);
+
+    // guarded by this
+    private int queueDepth;
+    private boolean dispatchScheduled;
+    // the permits which were granted to interrupted requests and are handed on without asking the rate limiter
+    private int sparePermits;
+    private long grantedCount;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public RequestScheduler(AdaptiveRateLimiter rateLimiter) {
+        if (rateLimiter == null) {
+            throw new IllegalArgumentException("rateLimiter cannot be null");
+        }
+        this.rateLimiter = rateLimiter;
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new FairQueue());
+        }
+    }
+
+    /**
+     * Waits for a permit to send a request.
+     * @param priority the priority of the request
+     * @param caller identifies the caller, e.g. the matrix the request belongs to, whose requests share the permits of
+     *               their priority fairly with the requests of other callers
+     */
+    void acquire(Priority priority, Object caller) throws InterruptedException {
+        Ticket ticket = enqueue(priority, caller);
+        try {
+            ticket.permit.get();
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                if (queues.get(priority).remove(caller, ticket)) {
+                    queueDepth--;
+                } else if (queueDepth > 0) {
+                    // the permit was granted meanwhile, so it goes to the next queued request instead of being lost
+                    sparePermits++;
+                    scheduleDispatch(0);
+                }
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a permit can not fail", e);
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #acquire(Priority, Object)}.
+     * @return a future which completes on the thread of the scheduler once the request may be sent, so its dependent
+     * actions must not block
+     */
+    CompletableFuture<Void> acquireAsync(Priority priority, Object caller) {
+        return enqueue(priority, caller).permit;
+    }
+
+    private synchronized Ticket enqueue(Priority priority, Object caller) {
+        Ticket ticket = new Ticket(System.nanoTime());
+        queues.get(priority).add(caller, ticket);
+        queueDepth++;
+        scheduleDispatch(0);
+        return ticket;
+    }
+
+    /**
+     * Reports the status code and {@code Retry-After} header of a response.
+     * @return whether the API signalled overload, so the request may be retried
+     */
+    boolean onResponse(int statusCode, String retryAfter) {
+        if (statusCode == 429) {
+            rateLimiter.onThrottled(AdaptiveRateLimiter.parseRetryAfterMillis(retryAfter,
+                    System.currentTimeMillis()));
+            return true;
+        }
+        if (statusCode == 502 || statusCode == 503 || statusCode == 504) {
+            rateLimiter.onServerError();
+            return true;
+        }
+        // a rejected request says nothing about the rate the API allows
+        if (statusCode >= 200 && statusCode < 300) {
+            rateLimiter.onSuccess();
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of requests waiting for a permit
+     */
+    public synchronized int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the number of requests of a priority waiting for a permit
+     */
+    public synchronized int getQueueDepth(Priority priority) {
+        return queues.get(priority).size;
+    }
+
+    /**
+     * @return the number of permits handed out so far
+     */
+    public synchronized long getGrantedCount() {
+        return grantedCount;
+    }
+
+    /**
+     * @return the average time a request waited for its permit, in milliseconds
+     */
+    public synchronized double getAverageWaitMillis() {
+        return grantedCount == 0 ? 0 : totalWaitNanos / (double) grantedCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the longest time a request waited for its permit, in milliseconds
+     */
+    public synchronized long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    /**
+     * @return the rate the scheduler currently sends requests at, in requests per second
+     */
+    public double getRate() {
+        return rateLimiter.getRate();
+    }
+
+    // guarded by this
+    private void scheduleDispatch(long delayNanos) {
+        if (!dispatchScheduled) {
+            dispatchScheduled = true;
+            DISPATCHER.schedule(this::dispatch, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void dispatch() {
+        List<Ticket> granted = new ArrayList<>();
+        synchronized (this) {
+            dispatchScheduled = false;
+            while (queueDepth > 0) {
+                if (sparePermits > 0) {
+                    sparePermits--;
+                } else {
+                    long waitNanos = rateLimiter.tryAcquire();
+                    if (waitNanos > 0) {
+                        scheduleDispatch(waitNanos);
+                        break;
+                    }
+                }
+                Ticket ticket = poll();
+                long now = System.nanoTime();
+                grantedCount++;
+                totalWaitNanos += now - ticket.queuedNanos;
+                maxWaitNanos = Math.max(maxWaitNanos, now - ticket.queuedNanos);
+                granted.add(ticket);
+            }
+        }
+        for (Ticket ticket : granted) {
+            ticket.permit.complete(null);
+        }
+    }
+
+    // guarded by this
+    private Ticket poll() {
+        for (Priority priority : Priority.values()) {
+            FairQueue queue = queues.get(priority);
+            if (queue.size > 0) {
+                queueDepth--;
+                return queue.poll();
+            }
+        }
+        throw new IllegalStateException("the queue depth is out of sync with the queues");
+    }
+
+    private static class Ticket {
+        private final long queuedNanos;
+        private final CompletableFuture<Void> permit = new CompletableFuture<>();
+
+        Ticket(long queuedNanos) {
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    /**
+     * The tickets of a priority, with a queue per caller whose turn comes round-robin.
+     */
+    private static class FairQueue {
+        private final Map<Object, ArrayDeque<Ticket>> tickets = new HashMap<>();
+        private final ArrayDeque<Object> callers = new ArrayDeque<>();
+        private int size;
+
+        void add(Object caller, Ticket ticket) {
+            ArrayDeque<Ticket> callerTickets = tickets.get(caller);
+            if (callerTickets == null) {
+                callerTickets = new ArrayDeque<>();
+                tickets.put(caller, callerTickets);
+                callers.addLast(caller);
+            }
+            callerTickets.addLast(ticket);
+            size++;
+        }
+
+        Ticket poll() {
+            Object caller = callers.pollFirst();
+            ArrayDeque<Ticket> callerTickets = tickets.get(caller);
+            Ticket ticket = callerTickets.pollFirst();
+            if (callerTickets.isEmpty()) {
+                tickets.remove(caller);
+            } else {
+                callers.addLast(caller);
+            }
+            size--;
+            return ticket;
+        }
+
+        /**
+         * @return whether the ticket was still queued
+         */
+        boolean remove(Object caller, Ticket ticket) {
+            ArrayDeque<Ticket> callerTickets = tickets.get(caller);
+            if (callerTickets == null || !callerTickets.remove(ticket)) {
+                return false;
+            }
+            if (callerTickets.isEmpty()) {
+                tickets.remove(caller);
+                callers.remove(caller);
+            }
+            size--;
+            return true;
+        }
+    }
+}
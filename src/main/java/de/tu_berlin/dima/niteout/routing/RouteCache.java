@@ -0,0 +1,58 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.cache.CacheStats;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+import java.time.LocalDateTime;
+
+/**
+ * A cache of computed trips which the {@link RoutingService} consults before it requests an external API.
+ * <p>
+ * Implementations decide how trips are mapped to keys (i.e. how coarse locations are snapped and departure times are
+ * bucketed), how many entries are kept and when they expire. They have to be safe for concurrent use.
+ */
+public interface RouteCache {
+
+    /**
+     * @param transportMode the mode of transport of the trip
+     * @param start the location where the trip starts
+     * @param destination the location where the trip terminates
+     * @param departure the date and time at which the trip starts
+     * @return the key under which the trip is cached
+     */
+    RouteCacheKey createKey(TransportMode transportMode, Location start, Location destination,
+                            LocalDateTime departure);
+
+    /**
+     * @return the cached trip, or {@code null} if the trip is not cached
+     */
+    CachedRoute get(RouteCacheKey key);
+
+    /**
+     * Caches the trip, replacing any previous entry of the key.
+     */
+    void put(RouteCacheKey key, CachedRoute route);
+
+    /**
+     * Caches the trip like {@link #put}, unless the key has an entry with a route summary and the trip has none, e.g.
+     * because the route summary was cached while the time of the trip was computed. The lookup of the previous entry
+     * is not counted as a hit or miss by the implementations of this package.
+     */
+    default void putKeepingSummary(RouteCacheKey key, CachedRoute route) {
+        CachedRoute previous = get(key);
+        if (previous == null || !previous.knowsMoreThan(route)) {
+            put(key, route);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void invalidateAll();
+
+    /**
+     * @return the hit, miss and eviction counters of the cache
+     */
+    CacheStats getStatistics();
+}
@@ -0,0 +1,114 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Objects;
+
+/**
+ * The immutable key of a {@link RouteCache} entry.
+ * <p>
+ * Start and destination are snapped to the cells of a {@link SpatialGrid}, so that nearly identical coordinates share
+ * a key, and the departure time is truncated to a bucket. Walking trips do not depend on the time of the day, so their
+ * keys have no departure bucket.
+ */
+public final class RouteCacheKey {
+
+    private final TransportMode transportMode;
+    private final long startCell;
+    private final long destinationCell;
+    private final long departureBucket;
+
+    private RouteCacheKey(TransportMode transportMode, long startCell, long destinationCell, long departureBucket) {
+        this.transportMode = transportMode;
+        this.startCell = startCell;
+        this.destinationCell = destinationCell;
+        this.departureBucket = departureBucket;
+    }
+
+    /**
+     * @param transportMode the mode of transport of the trip
+     * @param start the location where the trip starts
+     * @param destination the location where the trip terminates
+     * @param departure the date and time at which the trip starts, ignored for walking trips
+     * @param gridSizeMeters the edge length of the grid cells the locations are snapped to
+     * @param departureBucket the length of the buckets the departure time is truncated to
+     * @return the key of the trip
+     */
+    public static RouteCacheKey of(TransportMode transportMode, Location start, Location destination,
+                                   LocalDateTime departure, double gridSizeMeters, Duration departureBucket) {
+        return of(transportMode, start, destination, departure, new SpatialGrid(gridSizeMeters), departureBucket);
+    }
+
+    /**
+     * @param grid the grid the locations are snapped to
+     * @see #of(TransportMode, Location, Location, LocalDateTime, double, Duration)
+     */
+    public static RouteCacheKey of(TransportMode transportMode, Location start, Location destination,
+                                   LocalDateTime departure, SpatialGrid grid, Duration departureBucket) {
+        long bucket = 0;
+        if (transportMode != TransportMode.WALKING && departure != null) {
+            bucket = Math.floorDiv(departure.toEpochSecond(ZoneOffset.UTC), departureBucket.getSeconds());
+        }
+        return new RouteCacheKey(transportMode,
+                grid.pack(start.getLatitude(), start.getLongitude()),
+                grid.pack(destination.getLatitude(), destination.getLongitude()),
+                bucket);
+    }
+
+    /**
+     * @return the key of the already snapped cells and departure bucket, e.g. of an entry read from a file
+     */
+    static RouteCacheKey of(TransportMode transportMode, long startCell, long destinationCell, long departureBucket) {
+        return new RouteCacheKey(transportMode, startCell, destinationCell, departureBucket);
+    }
+
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * @return the cell the start was snapped to
+     */
+    public SpatialKey getStart() {
+        return SpatialKey.fromLong(startCell);
+    }
+
+    /**
+     * @return the cell the destination was snapped to
+     */
+    public SpatialKey getDestination() {
+        return SpatialKey.fromLong(destinationCell);
+    }
+
+    /**
+     * @return the number of the bucket the departure time was truncated to, 0 for walking trips
+     */
+    long getDepartureBucket() {
+        return departureBucket;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RouteCacheKey that = (RouteCacheKey) o;
+        return startCell == that.startCell &&
+                destinationCell == that.destinationCell &&
+                departureBucket == that.departureBucket &&
+                transportMode == that.transportMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(transportMode, startCell, destinationCell, departureBucket);
+    }
+
+    @Override
+    public String toString() {
+        return transportMode + "[" + getStart() + " -> " + getDestination() + " @" + departureBucket + "]";
+    }
+}
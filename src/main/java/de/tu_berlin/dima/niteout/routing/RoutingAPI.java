@@ -46,4 +46,51 @@ public interface RoutingAPI {
     List<TimeMatrixEntry> getMatrix(TransportMode transportMode,
                                     Location[] startLocations, Location[] destinationLocations,
                                     LocalDateTime startTime) throws RoutingAPIException;
+
+    /**
+     * Gets a matrix with the trip times and distances between start and destination locations like
+     * {@link #getMatrix(TransportMode, Location[], Location[], LocalDateTime)}, but in flat primitive arrays instead of
+     * an object per cell. The default implementation adapts the list of entries.
+     * @param transportMode the mode of transport for the trip (e.g. walking, public transport)
+     * @param startLocations the locations where the trips start, the rows of the matrix
+     * @param destinationLocations the locations where the trips terminate, the columns of the matrix
+     * @param startTime the date and time at which the trips start
+     * @return a matrix with trip information between start and destination locations
+     * @throws RoutingAPIException which contains an identifier of the error
+     */
+    default TravelTimeMatrix getTravelTimeMatrix(TransportMode transportMode,
+                                                 Location[] startLocations, Location[] destinationLocations,
+                                                 LocalDateTime startTime) throws RoutingAPIException {
+        return TravelTimeMatrix.fromEntries(startLocations.length, destinationLocations.length,
+                DistanceUnits.KILOMETERS, getMatrix(transportMode, startLocations, destinationLocations, startTime));
+    }
+
+    /**
+     * Gets the matrix of the trips between start and destination locations which take at most a given time, like
+     * {@link #getTravelTimeMatrix(TransportMode, Location[], Location[], LocalDateTime)}. The cells of the other trips
+     * are missing. The default implementation filters the full matrix; implementations may leave out the trips which
+     * can not take less than the time without requesting them.
+     * @param transportMode the mode of transport for the trip (e.g. walking, public transport)
+     * @param startLocations the locations where the trips start, the rows of the matrix
+     * @param destinationLocations the locations where the trips terminate, the columns of the matrix
+     * @param startTime the date and time at which the trips start
+     * @param maxTime the maximum time of a trip in seconds
+     * @return a matrix with trip information between start and destination locations
+     * @throws RoutingAPIException which contains an identifier of the error
+     */
+    default TravelTimeMatrix getTravelTimeMatrix(TransportMode transportMode,
+                                                 Location[] startLocations, Location[] destinationLocations,
+                                                 LocalDateTime startTime, int maxTime) throws RoutingAPIException {
+        TravelTimeMatrix matrix = getTravelTimeMatrix(transportMode, startLocations, destinationLocations, startTime);
+        TravelTimeMatrix withinTime = new TravelTimeMatrix(matrix.getRowCount(), matrix.getColumnCount(),
+                matrix.getUnits());
+        for (int i = 0; i < matrix.getRowCount(); i++) {
+            for (int j = 0; j < matrix.getColumnCount(); j++) {
+                if (matrix.hasCell(i, j) && matrix.time(i, j) <= maxTime) {
+                    withinTime.set(i, j, matrix.time(i, j), matrix.distance(i, j));
+                }
+            }
+        }
+        return withinTime;
+    }
 }
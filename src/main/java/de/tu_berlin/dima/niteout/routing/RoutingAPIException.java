@@ -95,7 +95,7 @@ public class RoutingAPIException extends Exception {
         return new RoutingAPIException(getErrorForStatusCode(statusCode));
     }
 
-    private static ErrorCode getErrorForStatusCode(int statusCode) {
+    static ErrorCode getErrorForStatusCode(int statusCode) {
         switch (statusCode) {
             case 200:
                 throw new IllegalArgumentException("200 is not an erroneous status code!");
@@ -105,6 +105,8 @@ public class RoutingAPIException extends Exception {
                 return API_ERROR_NOT_FOUND;
             case 405:
                 return API_ERROR_WRONG_METHOD;
+            case 429:
+                return API_ERROR_RATE_LIMITED;
             case 500:
                 return API_ERROR_INTERNAL;
             case 501:
@@ -126,9 +128,13 @@ public class RoutingAPIException extends Exception {
         API_ERROR_BAD_REQUEST("Request to data source was corrupted, see exception message, if available"),
         API_ERROR_WRONG_METHOD("405 - The used HTTP method was wrong, maybe try GET or POST"),
         API_ERROR_NOT_FOUND("404 - Request endpoint was not found"),
+        API_ERROR_RATE_LIMITED("429 - Too many requests, the rate limit of the data source was exceeded"),
         API_ERROR_INTERNAL("500 - Data source API had an internal error"),
         API_ERROR_NOT_IMPLEMENTED("501 - Request endpoint not implemented"),
-        PROCESS_RESPONSE_ERROR_JSON("Error while processing JSON response");
+        PROCESS_RESPONSE_ERROR_JSON("Error while processing JSON response"),
+        LOCAL_DATA_INVALID("Local routing data could not be read or is invalid"),
+        NO_ROUTE_FOUND("No route was found between the locations"),
+        OUTSIDE_SERVICE_AREA("The locations are outside of the areas served by the RoutingAPI");
 
         public final String message;
 
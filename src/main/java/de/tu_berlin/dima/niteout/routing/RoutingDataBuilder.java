@@ -0,0 +1,40 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Builds the prebuilt routing data files once, so the services only have to map them at startup.
+ * <p>
+ * Usage: {@code RoutingDataBuilder gtfs <feed> <file>} writes the {@link GtfsTimetable} of a GTFS feed, and
+ * {@code RoutingDataBuilder osm <extract.osm.pbf> <file>} writes the {@link PedestrianGraph} of an OpenStreetMap
+ * extract. The gradle task {@code buildRoutingData} runs it.
+ */
+public final class RoutingDataBuilder {
+
+    private RoutingDataBuilder() {
+    }
+
+    public static void main(String[] args) throws RoutingAPIException {
+        if (args.length != 3 || !(args[0].equals("gtfs") || args[0].equals("osm"))) {
+            System.err.println("usage: RoutingDataBuilder gtfs <feed> <file>");
+            System.err.println("       RoutingDataBuilder osm <extract.osm.pbf> <file>");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[1]);
+        Path output = Paths.get(args[2]);
+
+        long start = System.nanoTime();
+        Object data;
+        if (args[0].equals("gtfs")) {
+            GtfsTimetable timetable = GtfsTimetable.load(input);
+            timetable.save(output);
+            data = timetable;
+        } else {
+            PedestrianGraph graph = PedestrianGraph.load(input);
+            graph.save(output);
+            data = graph;
+        }
+        System.out.printf("wrote %s to %s in %d s%n", data, output, (System.nanoTime() - start) / 1_000_000_000);
+    }
+}
@@ -0,0 +1,244 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The versioned binary file format of prebuilt routing data, like a {@link GtfsTimetable} or a
+ * {@link PedestrianGraph}.
+ * <p>
+ * A file starts with a header: the magic number, the format version, the kind of data and a table of the sections.
+ * Each section is a little-endian array of one primitive type, aligned to 8 bytes. Reading maps every section with
+ * {@link FileChannel#map} and returns it as a read-only buffer, so the data is paged in by the operating system on
+ * first access instead of being copied to the heap. The sections are read back in the order they were written.
+ * <p>
+ * A single section is limited to 2 GB.
+ */
+final class RoutingDataFile {
+
+    // "NITE" in ASCII
+    private final static int MAGIC = 0x4e495445;
+    final static int FORMAT_VERSION = 1;
+
+    final static int KIND_GTFS_TIMETABLE = 1;
+    final static int KIND_PEDESTRIAN_GRAPH = 2;
+
+    private final static int HEADER_BYTES = 16;
+    private final static int SECTION_ENTRY_BYTES = 16;
+
+    private final static int TYPE_BYTE = 1;
+    private final static int TYPE_INT = 2;
+    private final static int TYPE_LONG = 3;
+    private final static int TYPE_FLOAT = 4;
+    private final static int TYPE_DOUBLE = 5;
+
+    private RoutingDataFile() {
+    }
+
+    private static int getElementBytes(int type) {
+        switch (type) {
+            case TYPE_BYTE:
+                return 1;
+            case TYPE_INT:
+            case TYPE_FLOAT:
+                return 4;
+            default:
+                return 8;
+        }
+    }
+
+    /**
+     * Collects the sections of a file and writes them at once.
+     */
+    static class Writer {
+        private final int kind;
+        private final List<ByteBuffer> sections = new ArrayList<>();
+        private final List<Integer> types = new ArrayList<>();
+
+        Writer(int kind) {
+            this.kind = kind;
+        }
+
+        Writer writeBytes(ByteBuffer values) {
+            ByteBuffer section = allocate(values.limit());
+            ByteBuffer source = values.duplicate();
+            source.rewind();
+            section.put(source);
+            return add(TYPE_BYTE, section);
+        }
+
+        Writer writeInts(IntBuffer values) {
+            ByteBuffer section = allocate(values.limit() * 4);
+            IntBuffer source = values.duplicate();
+            source.rewind();
+            section.asIntBuffer().put(source);
+            return add(TYPE_INT, section);
+        }
+
+        Writer writeLongs(LongBuffer values) {
+            ByteBuffer section = allocate(values.limit() * 8);
+            LongBuffer source = values.duplicate();
+            source.rewind();
+            section.asLongBuffer().put(source);
+            return add(TYPE_LONG, section);
+        }
+
+        Writer writeFloats(FloatBuffer values) {
+            ByteBuffer section = allocate(values.limit() * 4);
+            FloatBuffer source = values.duplicate();
+            source.rewind();
+            section.asFloatBuffer().put(source);
+            return add(TYPE_FLOAT, section);
+        }
+
+        Writer writeDoubles(DoubleBuffer values) {
+            ByteBuffer section = allocate(values.limit() * 8);
+            DoubleBuffer source = values.duplicate();
+            source.rewind();
+            section.asDoubleBuffer().put(source);
+            return add(TYPE_DOUBLE, section);
+        }
+
+        Writer writeDouble(double value) {
+            return writeDoubles(DoubleBuffer.wrap(new double[]{value}));
+        }
+
+        private static ByteBuffer allocate(int bytes) {
+            return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private Writer add(int type, ByteBuffer section) {
+            types.add(type);
+            sections.add(section);
+            return this;
+        }
+
+        void write(Path file) throws RoutingAPIException {
+            ByteBuffer header = allocate(HEADER_BYTES + sections.size() * SECTION_ENTRY_BYTES);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(kind).putInt(sections.size());
+            long offset = align(header.capacity());
+            for (int k = 0; k < sections.size(); k++) {
+                int bytes = sections.get(k).capacity();
+                header.putInt(types.get(k)).putInt(bytes / getElementBytes(types.get(k))).putLong(offset);
+                offset = align(offset + bytes);
+            }
+            header.flip();
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header, 0);
+                offset = align(header.capacity());
+                for (ByteBuffer section : sections) {
+                    writeFully(channel, section, offset);
+                    offset = align(offset + section.capacity());
+                }
+            } catch (IOException e) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                        "can not write routing data file " + file, e);
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            buffer.rewind();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+    }
+
+    /**
+     * Maps the sections of a file one after another.
+     */
+    static class Reader {
+        private final Path file;
+        private final ByteBuffer[] sections;
+        private final int[] types;
+        private int next;
+
+        /**
+         * Opens a file and maps all of its sections.
+         * @param kind the expected kind of data
+         */
+        Reader(Path file, int kind) throws RoutingAPIException {
+            this.file = file;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        Math.min(channel.size(), HEADER_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+                if (header.limit() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+                    throw invalid("is not a routing data file");
+                }
+                if (header.getInt(4) != FORMAT_VERSION) {
+                    throw invalid("has format version " + header.getInt(4) + " instead of " + FORMAT_VERSION
+                            + " and has to be built again");
+                }
+                if (header.getInt(8) != kind) {
+                    throw invalid("contains data of kind " + header.getInt(8) + " instead of " + kind);
+                }
+                int sectionCount = header.getInt(12);
+                ByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES,
+                        (long) sectionCount * SECTION_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+                this.sections = new ByteBuffer[sectionCount];
+                this.types = new int[sectionCount];
+                for (int k = 0; k < sectionCount; k++) {
+                    types[k] = entries.getInt(k * SECTION_ENTRY_BYTES);
+                    long bytes = (long) entries.getInt(k * SECTION_ENTRY_BYTES + 4) * getElementBytes(types[k]);
+                    long offset = entries.getLong(k * SECTION_ENTRY_BYTES + 8);
+                    if (offset + bytes > channel.size()) {
+                        throw invalid("is truncated");
+                    }
+                    sections[k] = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes)
+                            .order(ByteOrder.LITTLE_ENDIAN);
+                }
+            } catch (IOException e) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                        "can not read routing data file " + file, e);
+            }
+        }
+
+        ByteBuffer readBytes() throws RoutingAPIException {
+            return next(TYPE_BYTE).asReadOnlyBuffer();
+        }
+
+        IntBuffer readInts() throws RoutingAPIException {
+            return next(TYPE_INT).asIntBuffer().asReadOnlyBuffer();
+        }
+
+        LongBuffer readLongs() throws RoutingAPIException {
+            return next(TYPE_LONG).asLongBuffer().asReadOnlyBuffer();
+        }
+
+        FloatBuffer readFloats() throws RoutingAPIException {
+            return next(TYPE_FLOAT).asFloatBuffer().asReadOnlyBuffer();
+        }
+
+        DoubleBuffer readDoubles() throws RoutingAPIException {
+            return next(TYPE_DOUBLE).asDoubleBuffer().asReadOnlyBuffer();
+        }
+
+        double readDouble() throws RoutingAPIException {
+            return readDoubles().get(0);
+        }
+
+        private ByteBuffer next(int type) throws RoutingAPIException {
+            if (next >= sections.length || types[next] != type) {
+                throw invalid("does not match the expected layout at section " + next);
+            }
+            return sections[next++];
+        }
+
+        private RoutingAPIException invalid(String message) {
+            return new RoutingAPIException(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID,
+                    "routing data file " + file + " " + message);
+        }
+    }
+}
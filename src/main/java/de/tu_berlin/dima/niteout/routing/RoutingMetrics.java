@@ -0,0 +1,55 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+/**
+ * The registry of the metrics of the calls to the external APIs and of the route cache, e.g. a
+ * {@link DefaultRoutingMetrics} or an adapter to a metrics library.
+ * <p>
+ * The wrappers of the external APIs record into the registry of their {@link HttpTransport}, see
+ * {@link HttpTransport.HttpTransportBuilder#metrics(RoutingMetrics)}, and the {@link RoutingService} records the
+ * lookups of its route cache, see {@link RoutingService.RoutingServiceBuilder#metrics(RoutingMetrics)}. A provider is
+ * the name of an external API, like {@code "here.com"} or {@code "mapzen"}, and an endpoint one of its services.
+ * <p>
+ * The methods are called on the hot path from many threads, so implementations have to be cheap and thread-safe.
+ * All methods do nothing by default.
+ */
+public interface RoutingMetrics {
+
+    /**
+     * The registry which records nothing.
+     */
+    RoutingMetrics NONE = new RoutingMetrics() {
+    };
+
+    /**
+     * Records a request, from sending it until the headers of its response were received.
+     */
+    default void recordRequest(String provider, String endpoint, long latencyNanos) {
+    }
+
+    /**
+     * Records the time a request waited for a permit of the rate limit of the provider.
+     */
+    default void recordRateLimiterWait(String provider, long waitNanos) {
+    }
+
+    /**
+     * Records the time to read and parse the body of a response.
+     */
+    default void recordParse(String provider, String endpoint, long parseNanos) {
+    }
+
+    /**
+     * Records a failed request, or a response which was retried, e.g. after the provider throttled the request.
+     */
+    default void recordError(String provider, String endpoint, RoutingAPIException.ErrorCode code) {
+    }
+
+    /**
+     * Records a lookup in the route cache.
+     * @param hit whether the trip was cached
+     */
+    default void recordCacheLookup(TransportMode transportMode, boolean hit) {
+    }
+}
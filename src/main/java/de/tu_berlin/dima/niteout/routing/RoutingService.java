@@ -2,8 +2,14 @@ package de.tu_berlin.dima.niteout.routing;
 
 import de.tu_berlin.dima.niteout.routing.model.*;
 
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service to process routing requests.
@@ -11,9 +17,20 @@ import java.util.List;
  * This class typically takes input of locations and times and returns options of different rides using the public
  * transportation in Berlin.
  * <p>
- * It uses external APIs to serve requests.
+ * It uses external APIs to serve requests. Besides the blocking {@link RoutingAPI} it implements the
+ * {@link AsyncRoutingAPI}, whose requests do not occupy a thread while they wait for the external APIs. Public
+ * transport requests are answered locally from a GTFS feed instead of here.com if the system property
+ * {@code GTFS_FEED_PATH} is set, and walking requests from an OpenStreetMap extract instead of Mapzen if the system
+ * property {@code OSM_PBF_PATH} is set. Files prebuilt by {@link RoutingDataBuilder}, given by
+ * {@code GTFS_TIMETABLE_PATH} and {@code OSM_GRAPH_PATH}, take precedence and are mapped instead of parsed.
+ * <p>
+ * Identical trip time and route summary requests which are in flight at the same time, i.e. of the same mode,
+ * locations and minute of departure, share a single request to the external API.
+ * <p>
+ * If {@link ServiceArea}s are set, requests whose locations are not all within one of them are rejected before they
+ * are dispatched, and the datasets of the area, if it has any, serve the requests within it.
  */
-public class RoutingService implements RoutingAPI {
+public class RoutingService implements RoutingAPI, AsyncRoutingAPI {
 
     private static class Settings {
 
@@ -28,28 +45,148 @@ public class RoutingService implements RoutingAPI {
         static final String getMapzenApiKey() {
             return System.getProperty("API_KEY_MAPZEN");
         }
+
+        static final String getGtfsFeedPath() {
+            return System.getProperty("GTFS_FEED_PATH");
+        }
+
+        static final String getOsmPbfPath() {
+            return System.getProperty("OSM_PBF_PATH");
+        }
+
+        static final String getGtfsTimetablePath() {
+            return System.getProperty("GTFS_TIMETABLE_PATH");
+        }
+
+        static final String getOsmGraphPath() {
+            return System.getProperty("OSM_GRAPH_PATH");
+        }
+    }
+
+
+    // created at most once, on first use, since each one holds a request budget or a loaded dataset
+    private volatile PublicTransportWrapper publicTransportWrapper;
+    private volatile WalkingDirectionsAPI walkingDirectionsAPI;
+    private final Object publicTransportLock = new Object();
+    private final Object walkingDirectionsLock = new Object();
+    private final RouteCache routeCache;
+    private final ServiceAreaIndex serviceAreas;
+    private final SingleFlight<FlightKey, Integer> tripTimeFlights = new SingleFlight<>();
+    // every caller gets a summary of its own, since summaries are mutable
+    private final SingleFlight<FlightKey, RouteSummary> routeSummaryFlights = new SingleFlight<>(RouteSummary::new);
+
+    /**
+     * Creates a service that uses the default external APIs and does not cache any trips.
+     */
+    public RoutingService() {
+        this.routeCache = null;
+        this.serviceAreas = null;
+    }
+
+    private RoutingService(RoutingServiceBuilder builder) {
+        this.publicTransportWrapper = builder.publicTransportWrapper;
+        this.walkingDirectionsAPI = builder.walkingDirectionsAPI;
+        this.routeCache = builder.routeCache != null && builder.metrics != RoutingMetrics.NONE ?
+                new MeteredRouteCache(builder.routeCache, builder.metrics) : builder.routeCache;
+        this.serviceAreas = builder.serviceAreas.isEmpty() ? null :
+                new ServiceAreaIndex(builder.serviceAreas, ServiceAreaIndex.DEFAULT_CELL_SIZE_METERS);
+    }
+
+    /**
+     * @return the service area of the locations, or {@code null} if there are no service areas
+     * @throws RoutingAPIException if no service area contains all the locations
+     */
+    private ServiceArea getServiceArea(Location[] startLocations,
+                                       Location[] destinationLocations) throws RoutingAPIException {
+        if (serviceAreas == null || startLocations.length + destinationLocations.length == 0) {
+            return null;
+        }
+        ServiceArea serviceArea = serviceAreas.find(startLocations, destinationLocations);
+        if (serviceArea == null) {
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.OUTSIDE_SERVICE_AREA, "No service area " +
+                    "contains all of the " + (startLocations.length + destinationLocations.length) + " locations");
+        }
+        return serviceArea;
+    }
+
+    private PublicTransportWrapper getPublicTransportAPI(Location start,
+                                                         Location destination) throws RoutingAPIException {
+        return getPublicTransportAPI(new Location[]{start}, new Location[]{destination});
+    }
+
+    private PublicTransportWrapper getPublicTransportAPI(Location[] startLocations,
+                                                         Location[] destinationLocations) throws RoutingAPIException {
+        ServiceArea serviceArea = getServiceArea(startLocations, destinationLocations);
+        if (serviceArea != null && serviceArea.getPublicTransportWrapper() != null) {
+            return serviceArea.getPublicTransportWrapper();
+        }
+        return getPublicTransportAPI();
     }
 
+    private WalkingDirectionsAPI getWalkingDirectionsAPI(Location start,
+                                                         Location destination) throws RoutingAPIException {
+        return getWalkingDirectionsAPI(new Location[]{start}, new Location[]{destination});
+    }
 
-    private PublicTransportWrapper publicTransportWrapper;
-    private WalkingDirectionsAPI walkingDirectionsAPI;
+    private WalkingDirectionsAPI getWalkingDirectionsAPI(Location[] startLocations,
+                                                         Location[] destinationLocations) throws RoutingAPIException {
+        ServiceArea serviceArea = getServiceArea(startLocations, destinationLocations);
+        if (serviceArea != null && serviceArea.getWalkingDirectionsAPI() != null) {
+            return serviceArea.getWalkingDirectionsAPI();
+        }
+        return getWalkingDirectionsAPI();
+    }
 
     // API lazy initialization
     private PublicTransportWrapper getPublicTransportAPI() throws RoutingAPIException {
         if (publicTransportWrapper == null) {
-            // injection - TODO discuss if we use "proper" injection
-            publicTransportWrapper = new HereWrapper(Settings.getHereApiAppID(), Settings.getHereApiAppCode());
+            synchronized (publicTransportLock) {
+                if (publicTransportWrapper == null) {
+                    publicTransportWrapper = createPublicTransportAPI();
+                }
+            }
         }
         return publicTransportWrapper;
     }
 
-    private WalkingDirectionsAPI getWalkingDirectionsAPI() {
+    private static PublicTransportWrapper createPublicTransportAPI() throws RoutingAPIException {
+        // injection - TODO discuss if we use "proper" injection
+        String gtfsTimetablePath = Settings.getGtfsTimetablePath();
+        String gtfsFeedPath = Settings.getGtfsFeedPath();
+        if (gtfsTimetablePath != null || gtfsFeedPath != null) {
+            return new GtfsPublicTransportWrapper.GtfsPublicTransportWrapperBuilder()
+                    .timetable(gtfsTimetablePath != null ?
+                            GtfsTimetable.open(Paths.get(gtfsTimetablePath)) :
+                            GtfsTimetable.load(Paths.get(gtfsFeedPath)))
+                    .build();
+        }
+        return new HereWrapper(Settings.getHereApiAppID(), Settings.getHereApiAppCode());
+    }
+
+    private WalkingDirectionsAPI getWalkingDirectionsAPI() throws RoutingAPIException {
         if (walkingDirectionsAPI == null) {
-            walkingDirectionsAPI = new MapzenApiWrapper(Settings.getMapzenApiKey());
+            synchronized (walkingDirectionsLock) {
+                if (walkingDirectionsAPI == null) {
+                    walkingDirectionsAPI = createWalkingDirectionsAPI();
+                }
+            }
         }
         return walkingDirectionsAPI;
     }
 
+    private static WalkingDirectionsAPI createWalkingDirectionsAPI() throws RoutingAPIException {
+        String osmGraphPath = Settings.getOsmGraphPath();
+        String osmPbfPath = Settings.getOsmPbfPath();
+        if (osmGraphPath != null || osmPbfPath != null) {
+            return new OsmPedestrianWrapper.OsmPedestrianWrapperBuilder()
+                    .graph(osmGraphPath != null ?
+                            PedestrianGraph.open(Paths.get(osmGraphPath)) :
+                            PedestrianGraph.load(Paths.get(osmPbfPath)))
+                    .build();
+        }
+        return new MapzenApiWrapper(Settings.getMapzenApiKey());
+    }
+
     /**
      * The time in seconds to travel from one location to another via Public Transport
      *
@@ -59,7 +196,7 @@ public class RoutingService implements RoutingAPI {
      * @return The total travel time in seconds
      */
     private int getPublicTransportTripTime(Location start, Location destination, LocalDateTime startTime) throws RoutingAPIException {
-        return getPublicTransportAPI().getPublicTransportTripTime(start, destination, startTime);
+        return getPublicTransportAPI(start, destination).getPublicTransportTripTime(start, destination, startTime);
     }
 
     /**
@@ -71,23 +208,46 @@ public class RoutingService implements RoutingAPI {
      */
     private int getWalkingTripTime(Location start, Location destination) throws RoutingAPIException {
 
-        return getWalkingDirectionsAPI().getWalkingTripTime(start, destination);
+        return getWalkingDirectionsAPI(start, destination).getWalkingTripTime(start, destination);
     }
 
     private RouteSummary getPublicTransportRouteSummary(Location start, Location destination, LocalDateTime startTime)
             throws RoutingAPIException {
-        return getPublicTransportAPI().getPublicTransportRouteSummary(start, destination, startTime);
+        return getPublicTransportAPI(start, destination).getPublicTransportRouteSummary(start, destination,
+                startTime);
     }
 
     private RouteSummary getWalkingRouteSummary(Location start, Location destination, LocalDateTime startTime) throws RoutingAPIException {
 
-        return getWalkingDirectionsAPI().getWalkingRouteSummary(start, destination, startTime);
+        return getWalkingDirectionsAPI(start, destination).getWalkingRouteSummary(start, destination, startTime);
     }
 
     @Override
     public int getTripTime(TransportMode transportMode,
                            Location startLocation, Location destinationLocation,
                            LocalDateTime startTime) throws RoutingAPIException {
+        checkTransportMode(transportMode);
+        FlightKey flightKey = new FlightKey(transportMode, startLocation, destinationLocation, startTime);
+        if (routeCache == null) {
+            return tripTimeFlights.execute(flightKey,
+                    () -> computeTripTime(transportMode, startLocation, destinationLocation, startTime));
+        }
+
+        RouteCacheKey key = routeCache.createKey(transportMode, startLocation, destinationLocation, startTime);
+        CachedRoute cachedRoute = routeCache.get(key);
+        if (cachedRoute != null) {
+            return cachedRoute.getTime();
+        }
+        return tripTimeFlights.execute(flightKey, () -> {
+            int tripTime = computeTripTime(transportMode, startLocation, destinationLocation, startTime);
+            routeCache.putKeepingSummary(key, CachedRoute.ofTripTime(tripTime));
+            return tripTime;
+        });
+    }
+
+    private int computeTripTime(TransportMode transportMode,
+                                Location startLocation, Location destinationLocation,
+                                LocalDateTime startTime) throws RoutingAPIException {
         switch (transportMode) {
 
             case PUBLIC_TRANSPORT:
@@ -105,6 +265,29 @@ public class RoutingService implements RoutingAPI {
     public RouteSummary getRouteSummary(TransportMode transportMode,
                                         Location startLocation, Location destinationLocation,
                                         LocalDateTime startTime) throws RoutingAPIException {
+        checkTransportMode(transportMode);
+        FlightKey flightKey = new FlightKey(transportMode, startLocation, destinationLocation, startTime);
+        if (routeCache == null) {
+            return routeSummaryFlights.execute(flightKey,
+                    () -> computeRouteSummary(transportMode, startLocation, destinationLocation, startTime));
+        }
+
+        RouteCacheKey key = routeCache.createKey(transportMode, startLocation, destinationLocation, startTime);
+        RouteSummary cachedSummary = getCachedRouteSummary(key, startTime);
+        if (cachedSummary != null) {
+            return cachedSummary;
+        }
+        return routeSummaryFlights.execute(flightKey, () -> {
+            RouteSummary routeSummary = computeRouteSummary(transportMode, startLocation, destinationLocation,
+                    startTime);
+            routeCache.put(key, CachedRoute.ofRouteSummary(routeSummary));
+            return routeSummary;
+        });
+    }
+
+    private RouteSummary computeRouteSummary(TransportMode transportMode,
+                                             Location startLocation, Location destinationLocation,
+                                             LocalDateTime startTime) throws RoutingAPIException {
         switch (transportMode) {
 
             case PUBLIC_TRANSPORT:
@@ -118,26 +301,404 @@ public class RoutingService implements RoutingAPI {
         }
     }
 
+    /**
+     * @return a copy of the cached summary adjusted to the requested start time, or {@code null} if the cache has
+     * no summary which is valid for the start time
+     */
+    private RouteSummary getCachedRouteSummary(RouteCacheKey key, LocalDateTime startTime) {
+        CachedRoute cachedRoute = routeCache.get(key);
+        if (cachedRoute == null || !cachedRoute.hasRouteSummary()) {
+            return null;
+        }
+        RouteSummary routeSummary = cachedRoute.getRouteSummary();
+        if (startTime == null || routeSummary.getDepartureTime() == null) {
+            return routeSummary;
+        }
+        if (key.getTransportMode() == TransportMode.WALKING) {
+            // walking does not depend on the time of the day, so the trip can start at any time
+            routeSummary.setDepartureTime(startTime);
+            routeSummary.setArrivalTime(startTime.plusSeconds(routeSummary.getTotalDuration()));
+            return routeSummary;
+        }
+        // a connection of the same departure bucket which has left before the requested time can not be taken
+        return routeSummary.getDepartureTime().isBefore(startTime) ? null : routeSummary;
+    }
+
     @Override
     public List<TimeMatrixEntry> getMatrix(TransportMode transportMode,
                                            Location[] startLocations, Location[] destinationLocations,
                                            LocalDateTime startTime) throws RoutingAPIException {
+        checkTransportMode(transportMode);
+        if (routeCache == null) {
+            return computeMatrix(transportMode, startLocations, destinationLocations, startTime);
+        }
+
+        CachedMatrix cachedMatrix = new CachedMatrix(routeCache, transportMode,
+                startLocations, destinationLocations, startTime);
+        if (cachedMatrix.isComplete()) {
+            return cachedMatrix.complete(Collections.emptyList());
+        }
+        return cachedMatrix.complete(computeMatrix(transportMode,
+                cachedMatrix.getMissingStartLocations(), cachedMatrix.getMissingDestinationLocations(), startTime));
+    }
+
+    private List<TimeMatrixEntry> computeMatrix(TransportMode transportMode,
+                                                Location[] startLocations, Location[] destinationLocations,
+                                                LocalDateTime startTime) throws RoutingAPIException {
         switch (transportMode) {
 
             case PUBLIC_TRANSPORT:
-                return getPublicTransportAPI().getMultiModalMatrix(startLocations, destinationLocations, startTime);
+                return getPublicTransportAPI(startLocations, destinationLocations).getMultiModalMatrix(
+                        startLocations, destinationLocations, startTime);
 
             case WALKING:
-                return getWalkingDirectionsAPI().getWalkingMatrix(startLocations, destinationLocations);
+                return getWalkingDirectionsAPI(startLocations, destinationLocations).getWalkingMatrix(
+                        startLocations, destinationLocations);
 
             default:
                 throw createInvalidTransportModeException(transportMode);
         }
     }
 
+    @Override
+    public TravelTimeMatrix getTravelTimeMatrix(TransportMode transportMode,
+                                                Location[] startLocations, Location[] destinationLocations,
+                                                LocalDateTime startTime) throws RoutingAPIException {
+        checkTransportMode(transportMode);
+        if (routeCache == null) {
+            return computeTravelTimeMatrix(transportMode, startLocations, destinationLocations, startTime);
+        }
+
+        CachedMatrix cachedMatrix = new CachedMatrix(routeCache, transportMode,
+                startLocations, destinationLocations, startTime);
+        if (cachedMatrix.isComplete()) {
+            return cachedMatrix.complete(new TravelTimeMatrix(0, 0, DistanceUnits.KILOMETERS));
+        }
+        return cachedMatrix.complete(computeTravelTimeMatrix(transportMode,
+                cachedMatrix.getMissingStartLocations(), cachedMatrix.getMissingDestinationLocations(), startTime));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Walking trips whose straight line alone takes longer than the time at the walking speed of the walking API are
+     * not requested; only the start and destination locations with at least one trip that may take less are.
+     */
+    @Override
+    public TravelTimeMatrix getTravelTimeMatrix(TransportMode transportMode,
+                                                Location[] startLocations, Location[] destinationLocations,
+                                                LocalDateTime startTime, int maxTime) throws RoutingAPIException {
+        checkTransportMode(transportMode);
+        if (transportMode != TransportMode.WALKING) {
+            return RoutingAPI.super.getTravelTimeMatrix(transportMode, startLocations, destinationLocations,
+                    startTime, maxTime);
+        }
+
+        WalkingTimeBounds bounds = new WalkingTimeBounds(
+                getWalkingDirectionsAPI(startLocations, destinationLocations).getWalkingSpeedKmh());
+        WalkingTimeBounds.Candidates candidates = bounds.candidates(startLocations, destinationLocations, maxTime);
+        if (candidates.isEmpty()) {
+            return new TravelTimeMatrix(startLocations.length, destinationLocations.length, DistanceUnits.KILOMETERS);
+        }
+        TravelTimeMatrix candidateMatrix = getTravelTimeMatrix(transportMode,
+                candidates.getStartLocations(), candidates.getDestinationLocations(), startTime);
+
+        int[] rows = candidates.getStartIndices();
+        int[] columns = candidates.getDestinationIndices();
+        TravelTimeMatrix matrix = new TravelTimeMatrix(startLocations.length, destinationLocations.length,
+                candidateMatrix.getUnits());
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < columns.length; j++) {
+                if (candidates.isCandidate(rows[i], columns[j]) && candidateMatrix.hasCell(i, j)
+                        && candidateMatrix.time(i, j) <= maxTime) {
+                    matrix.set(rows[i], columns[j], candidateMatrix.time(i, j), candidateMatrix.distance(i, j));
+                }
+            }
+        }
+        return matrix;
+    }
+
+    private TravelTimeMatrix computeTravelTimeMatrix(TransportMode transportMode,
+                                                     Location[] startLocations, Location[] destinationLocations,
+                                                     LocalDateTime startTime) throws RoutingAPIException {
+        switch (transportMode) {
+
+            case PUBLIC_TRANSPORT:
+                return getPublicTransportAPI(startLocations, destinationLocations).getMultiModalTravelTimeMatrix(
+                        startLocations, destinationLocations, startTime);
+
+            case WALKING:
+                return getWalkingDirectionsAPI(startLocations, destinationLocations).getWalkingTravelTimeMatrix(
+                        startLocations, destinationLocations);
+
+            default:
+                throw createInvalidTransportModeException(transportMode);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> getTripTimeAsync(TransportMode transportMode,
+                                                       Location startLocation, Location destinationLocation,
+                                                       LocalDateTime startTime) {
+        try {
+            checkTransportMode(transportMode);
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+        FlightKey flightKey = new FlightKey(transportMode, startLocation, destinationLocation, startTime);
+        if (routeCache == null) {
+            return tripTimeFlights.executeAsync(flightKey,
+                    () -> computeTripTimeAsync(transportMode, startLocation, destinationLocation, startTime));
+        }
+
+        RouteCacheKey key = routeCache.createKey(transportMode, startLocation, destinationLocation, startTime);
+        CachedRoute cachedRoute = routeCache.get(key);
+        if (cachedRoute != null) {
+            return CompletableFuture.completedFuture(cachedRoute.getTime());
+        }
+        return tripTimeFlights.executeAsync(flightKey,
+                () -> computeTripTimeAsync(transportMode, startLocation, destinationLocation, startTime)
+                        .thenApply(tripTime -> {
+                            routeCache.putKeepingSummary(key, CachedRoute.ofTripTime(tripTime));
+                            return tripTime;
+                        }));
+    }
+
+    private CompletableFuture<Integer> computeTripTimeAsync(TransportMode transportMode,
+                                                            Location startLocation, Location destinationLocation,
+                                                            LocalDateTime startTime) {
+        try {
+            switch (transportMode) {
+
+                case PUBLIC_TRANSPORT:
+                    return getPublicTransportAPI(startLocation, destinationLocation).getPublicTransportTripTimeAsync(
+                            startLocation, destinationLocation, startTime);
+
+                case WALKING:
+                    return getWalkingDirectionsAPI(startLocation, destinationLocation).getWalkingTripTimeAsync(
+                            startLocation, destinationLocation);
+
+                default:
+                    throw createInvalidTransportModeException(transportMode);
+            }
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<RouteSummary> getRouteSummaryAsync(TransportMode transportMode,
+                                                                Location startLocation, Location destinationLocation,
+                                                                LocalDateTime startTime) {
+        try {
+            checkTransportMode(transportMode);
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+        FlightKey flightKey = new FlightKey(transportMode, startLocation, destinationLocation, startTime);
+        if (routeCache == null) {
+            return routeSummaryFlights.executeAsync(flightKey,
+                    () -> computeRouteSummaryAsync(transportMode, startLocation, destinationLocation, startTime));
+        }
+
+        RouteCacheKey key = routeCache.createKey(transportMode, startLocation, destinationLocation, startTime);
+        RouteSummary cachedSummary = getCachedRouteSummary(key, startTime);
+        if (cachedSummary != null) {
+            return CompletableFuture.completedFuture(cachedSummary);
+        }
+        return routeSummaryFlights.executeAsync(flightKey,
+                () -> computeRouteSummaryAsync(transportMode, startLocation, destinationLocation, startTime)
+                        .thenApply(routeSummary -> {
+                            routeCache.put(key, CachedRoute.ofRouteSummary(routeSummary));
+                            return routeSummary;
+                        }));
+    }
+
+    private CompletableFuture<RouteSummary> computeRouteSummaryAsync(TransportMode transportMode,
+                                                                     Location startLocation,
+                                                                     Location destinationLocation,
+                                                                     LocalDateTime startTime) {
+        try {
+            switch (transportMode) {
+
+                case PUBLIC_TRANSPORT:
+                    return getPublicTransportAPI(startLocation, destinationLocation)
+                            .getPublicTransportRouteSummaryAsync(
+                            startLocation, destinationLocation, startTime);
+
+                case WALKING:
+                    return getWalkingDirectionsAPI(startLocation, destinationLocation).getWalkingRouteSummaryAsync(
+                            startLocation, destinationLocation, startTime);
+
+                default:
+                    throw createInvalidTransportModeException(transportMode);
+            }
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<TimeMatrixEntry>> getMatrixAsync(TransportMode transportMode,
+                                                                   Location[] startLocations,
+                                                                   Location[] destinationLocations,
+                                                                   LocalDateTime startTime) {
+        try {
+            checkTransportMode(transportMode);
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+        if (routeCache == null) {
+            return computeMatrixAsync(transportMode, startLocations, destinationLocations, startTime);
+        }
+
+        CachedMatrix cachedMatrix = new CachedMatrix(routeCache, transportMode,
+                startLocations, destinationLocations, startTime);
+        if (cachedMatrix.isComplete()) {
+            return CompletableFuture.completedFuture(cachedMatrix.complete(Collections.emptyList()));
+        }
+        return computeMatrixAsync(transportMode,
+                cachedMatrix.getMissingStartLocations(), cachedMatrix.getMissingDestinationLocations(), startTime)
+                .thenApply(cachedMatrix::complete);
+    }
+
+    private CompletableFuture<List<TimeMatrixEntry>> computeMatrixAsync(TransportMode transportMode,
+                                                                        Location[] startLocations,
+                                                                        Location[] destinationLocations,
+                                                                        LocalDateTime startTime) {
+        try {
+            switch (transportMode) {
+
+                case PUBLIC_TRANSPORT:
+                    return getPublicTransportAPI(startLocations, destinationLocations).getMultiModalMatrixAsync(
+                            startLocations, destinationLocations, startTime);
+
+                case WALKING:
+                    return getWalkingDirectionsAPI(startLocations, destinationLocations).getWalkingMatrixAsync(
+                            startLocations, destinationLocations);
+
+                default:
+                    throw createInvalidTransportModeException(transportMode);
+            }
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    /**
+     * @return the cache consulted before the external APIs are requested, or {@code null} if trips are not cached
+     */
+    public RouteCache getRouteCache() {
+        return routeCache;
+    }
+
+    /**
+     * Identifies identical requests: the same mode, the same coordinates and the same minute of departure.
+     */
+    private static final class FlightKey {
+        private final TransportMode transportMode;
+        private final double startLatitude;
+        private final double startLongitude;
+        private final double destinationLatitude;
+        private final double destinationLongitude;
+        private final LocalDateTime departureMinute;
+
+        FlightKey(TransportMode transportMode, Location start, Location destination, LocalDateTime departure) {
+            this.transportMode = transportMode;
+            this.startLatitude = start.getLatitude();
+            this.startLongitude = start.getLongitude();
+            this.destinationLatitude = destination.getLatitude();
+            this.destinationLongitude = destination.getLongitude();
+            this.departureMinute = departure == null ? null : departure.truncatedTo(ChronoUnit.MINUTES);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FlightKey that = (FlightKey) o;
+            return Double.compare(that.startLatitude, startLatitude) == 0 &&
+                    Double.compare(that.startLongitude, startLongitude) == 0 &&
+                    Double.compare(that.destinationLatitude, destinationLatitude) == 0 &&
+                    Double.compare(that.destinationLongitude, destinationLongitude) == 0 &&
+                    transportMode == that.transportMode &&
+                    Objects.equals(departureMinute, that.departureMinute);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(transportMode, startLatitude, startLongitude, destinationLatitude,
+                    destinationLongitude, departureMinute);
+        }
+    }
+
+    private void checkTransportMode(TransportMode transportMode) throws RoutingAPIException {
+        if (transportMode != TransportMode.PUBLIC_TRANSPORT && transportMode != TransportMode.WALKING) {
+            throw createInvalidTransportModeException(transportMode);
+        }
+    }
+
     private RoutingAPIException createInvalidTransportModeException(TransportMode transportMode) {
         return new RoutingAPIException(RoutingAPIException.ErrorCode.INVALID_TRANSPORT_MODE, "Can not request" +
                 " for transport mode [" + transportMode + "]. Only " + TransportMode.PUBLIC_TRANSPORT +
                 " and " + TransportMode.WALKING + " are available.");
     }
-}
\ No newline at end of file
+
+    public static class RoutingServiceBuilder {
+        private PublicTransportWrapper publicTransportWrapper;
+        private WalkingDirectionsAPI walkingDirectionsAPI;
+        private RouteCache routeCache;
+        private RoutingMetrics metrics = RoutingMetrics.NONE;
+        private final List<ServiceArea> serviceAreas = new ArrayList<>();
+
+        /**
+         * @param publicTransportWrapper the API that serves public transport requests, instead of here.com, e.g. a
+         *                               {@link GtfsPublicTransportWrapper}
+         */
+        public RoutingServiceBuilder publicTransportWrapper(PublicTransportWrapper publicTransportWrapper) {
+            this.publicTransportWrapper = publicTransportWrapper;
+            return this;
+        }
+
+        /**
+         * @param walkingDirectionsAPI the API that serves walking requests, instead of Mapzen
+         */
+        public RoutingServiceBuilder walkingDirectionsAPI(WalkingDirectionsAPI walkingDirectionsAPI) {
+            this.walkingDirectionsAPI = walkingDirectionsAPI;
+            return this;
+        }
+
+        /**
+         * @param routeCache the cache consulted before the external APIs are requested
+         */
+        public RoutingServiceBuilder routeCache(RouteCache routeCache) {
+            this.routeCache = routeCache;
+            return this;
+        }
+
+        /**
+         * @param metrics the registry into which the lookups of the route cache are recorded; the requests to the
+         *                external APIs are recorded into the registry of their {@link HttpTransport}
+         */
+        public RoutingServiceBuilder metrics(RoutingMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Adds an area in which requests are served. If areas are added, requests outside of all of them are
+         * rejected; of overlapping areas, the one added first serves the requests within both.
+         */
+        public RoutingServiceBuilder serviceArea(ServiceArea serviceArea) {
+            this.serviceAreas.add(serviceArea);
+            return this;
+        }
+
+        public RoutingService build() {
+            if (metrics == null) {
+                throw new IllegalArgumentException("metrics cannot be null, use RoutingMetrics.NONE instead");
+            }
+            return new RoutingService(this);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.BoundingBox;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+/**
+ * An area in which the {@link RoutingService} serves requests, e.g. a city, given by a bounding box or a polygon.
+ * <p>
+ * An area may have datasets of its own, e.g. a {@link GtfsPublicTransportWrapper} and an
+ * {@link OsmPedestrianWrapper} loaded for the city, which serve the requests within it instead of the APIs of the
+ * service.
+ */
+public final class ServiceArea {
+
+    private final String name;
+    private final BoundingBox boundingBox;
+    // the corners of the polygon, or null if the area is its bounding box
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final PublicTransportWrapper publicTransportWrapper;
+    private final WalkingDirectionsAPI walkingDirectionsAPI;
+
+    private ServiceArea(ServiceAreaBuilder builder) {
+        this.name = builder.name;
+        this.publicTransportWrapper = builder.publicTransportWrapper;
+        this.walkingDirectionsAPI = builder.walkingDirectionsAPI;
+        if (builder.polygon == null) {
+            this.boundingBox = builder.boundingBox;
+            this.latitudes = null;
+            this.longitudes = null;
+            return;
+        }
+        int corners = builder.polygon.length;
+        this.latitudes = new double[corners];
+        this.longitudes = new double[corners];
+        double minLatitude = Double.POSITIVE_INFINITY;
+        double minLongitude = Double.POSITIVE_INFINITY;
+        double maxLatitude = Double.NEGATIVE_INFINITY;
+        double maxLongitude = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < corners; k++) {
+            latitudes[k] = builder.polygon[k].getLatitude();
+            longitudes[k] = builder.polygon[k].getLongitude();
+            minLatitude = Math.min(minLatitude, latitudes[k]);
+            minLongitude = Math.min(minLongitude, longitudes[k]);
+            maxLatitude = Math.max(maxLatitude, latitudes[k]);
+            maxLongitude = Math.max(maxLongitude, longitudes[k]);
+        }
+        this.boundingBox = new BoundingBox(minLongitude, minLatitude, maxLongitude, maxLatitude);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the bounding box of the area, which is the area itself if it is not a polygon
+     */
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * @return the API that serves the public transport requests within the area, or {@code null} if the API of the
+     * service serves them
+     */
+    public PublicTransportWrapper getPublicTransportWrapper() {
+        return publicTransportWrapper;
+    }
+
+    /**
+     * @return the API that serves the walking requests within the area, or {@code null} if the API of the service
+     * serves them
+     */
+    public WalkingDirectionsAPI getWalkingDirectionsAPI() {
+        return walkingDirectionsAPI;
+    }
+
+    public boolean contains(Location location) {
+        if (!boundingBox.contains(location)) {
+            return false;
+        }
+        return latitudes == null || polygonContains(location.getLatitude(), location.getLongitude());
+    }
+
+    // counts the edges crossed by a ray from the location towards the east
+    private boolean polygonContains(double latitude, double longitude) {
+        boolean inside = false;
+        for (int k = 0, previous = latitudes.length - 1; k < latitudes.length; previous = k++) {
+            if ((latitudes[k] > latitude) != (latitudes[previous] > latitude)) {
+                double crossing = longitudes[k] + (latitude - latitudes[k])
+                        * (longitudes[previous] - longitudes[k]) / (latitudes[previous] - latitudes[k]);
+                if (longitude < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceArea{" +
+                "name='" + name + '\'' +
+                '}';
+    }
+
+    public static class ServiceAreaBuilder {
+        private String name;
+        private BoundingBox boundingBox;
+        private Location[] polygon;
+        private PublicTransportWrapper publicTransportWrapper;
+        private WalkingDirectionsAPI walkingDirectionsAPI;
+
+        public ServiceAreaBuilder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * @param boundingBox the area, unless it is given by a polygon
+         */
+        public ServiceAreaBuilder boundingBox(BoundingBox boundingBox) {
+            this.boundingBox = boundingBox;
+            return this;
+        }
+
+        /**
+         * @param corners the corners of the area in order, without repeating the first one at the end
+         */
+        public ServiceAreaBuilder polygon(Location... corners) {
+            this.polygon = corners.clone();
+            return this;
+        }
+
+        /**
+         * @param publicTransportWrapper the API that serves the public transport requests within the area
+         */
+        public ServiceAreaBuilder publicTransportWrapper(PublicTransportWrapper publicTransportWrapper) {
+            this.publicTransportWrapper = publicTransportWrapper;
+            return this;
+        }
+
+        /**
+         * @param walkingDirectionsAPI the API that serves the walking requests within the area
+         */
+        public ServiceAreaBuilder walkingDirectionsAPI(WalkingDirectionsAPI walkingDirectionsAPI) {
+            this.walkingDirectionsAPI = walkingDirectionsAPI;
+            return this;
+        }
+
+        public ServiceArea build() {
+            if (name == null) {
+                throw new IllegalArgumentException("the name of the area is not set");
+            }
+            if ((boundingBox == null) == (polygon == null)) {
+                throw new IllegalArgumentException("either the bounding box or the polygon of the area must be set");
+            }
+            if (polygon != null && polygon.length < 3) {
+                throw new IllegalArgumentException("a polygon has at least three corners");
+            }
+            return new ServiceArea(this);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.BoundingBox;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the {@link ServiceArea} of locations in constant time, whatever the number of areas.
+ * <p>
+ * The areas are registered in all cells of a {@link SpatialGrid} their bounding boxes overlap, so a location is only
+ * tested against the few areas of its cell. Of overlapping areas, the one registered first is found first.
+ */
+final class ServiceAreaIndex {
+
+    final static double DEFAULT_CELL_SIZE_METERS = 10_000;
+
+    private final static ServiceArea[] NONE = new ServiceArea[0];
+
+    private final SpatialGrid grid;
+    private final Map<Long, ServiceArea[]> cells = new HashMap<>();
+
+    ServiceAreaIndex(List<ServiceArea> areas, double cellSizeMeters) {
+        this.grid = new SpatialGrid(cellSizeMeters);
+        Map<Long, List<ServiceArea>> lists = new HashMap<>();
+        for (ServiceArea area : areas) {
+            BoundingBox box = area.getBoundingBox();
+            int firstRow = SpatialGrid.row(grid.pack(box.MinY, box.MinX));
+            int lastRow = SpatialGrid.row(grid.pack(box.MaxY, box.MinX));
+            for (int row = firstRow; row <= lastRow; row++) {
+                // the columns of each row have widths of their own
+                double latitude = grid.center(SpatialGrid.cell(row, 0)).getLatitude();
+                int firstColumn = SpatialGrid.column(grid.pack(latitude, box.MinX));
+                int lastColumn = SpatialGrid.column(grid.pack(latitude, box.MaxX));
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    lists.computeIfAbsent(SpatialGrid.cell(row, column), cell -> new ArrayList<>(1)).add(area);
+                }
+            }
+        }
+        for (Map.Entry<Long, List<ServiceArea>> cell : lists.entrySet()) {
+            cells.put(cell.getKey(), cell.getValue().toArray(new ServiceArea[cell.getValue().size()]));
+        }
+    }
+
+    /**
+     * @return the area which contains the location, or {@code null} if no area does
+     */
+    ServiceArea find(Location location) {
+        for (ServiceArea area : candidates(location)) {
+            if (area.contains(location)) {
+                return area;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the area which contains all the start and destination locations, or {@code null} if no area does
+     */
+    ServiceArea find(Location[] startLocations, Location[] destinationLocations) {
+        Location first = startLocations.length > 0 ? startLocations[0] :
+                destinationLocations.length > 0 ? destinationLocations[0] : null;
+        if (first == null) {
+            return null;
+        }
+        for (ServiceArea area : candidates(first)) {
+            if (containsAll(area, startLocations) && containsAll(area, destinationLocations)) {
+                return area;
+            }
+        }
+        return null;
+    }
+
+    private ServiceArea[] candidates(Location location) {
+        ServiceArea[] areas = cells.get(grid.pack(location.getLatitude(), location.getLongitude()));
+        return areas != null ? areas : NONE;
+    }
+
+    private static boolean containsAll(ServiceArea area, Location[] locations) {
+        for (Location location : locations) {
+            if (!area.contains(location)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
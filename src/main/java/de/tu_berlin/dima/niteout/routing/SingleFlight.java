@@ -0,0 +1,128 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Coalesces identical requests which are in flight at the same time, so that they share a single request to an
+ * external API and its parsed result.
+ * <p>
+ * The first caller of a key is the leader of the flight and computes the result, blocking on its own thread or
+ * asynchronously. Callers of the same key that arrive before the result is complete join the flight and get the
+ * result, or the failure, of the leader. A flight ends when it is complete, so later callers start a new one; results
+ * are not remembered beyond that, which is the task of the {@link RouteCache}.
+ * @param <K> the type of the keys, which must implement equality
+ * @param <V> the type of the results
+ */
+final class SingleFlight<K, V> {
+
+    /**
+     * Computes the result of a flight on the thread of the leader.
+     */
+    @FunctionalInterface
+    interface Call<V> {
+        V call() throws RoutingAPIException;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> share;
+
+    /**
+     * @param share creates the instance of a result handed to a caller that joined a flight, e.g. a copy of a
+     *              mutable result
+     */
+    SingleFlight(UnaryOperator<V> share) {
+        this.share = share;
+    }
+
+    SingleFlight() {
+        this(UnaryOperator.identity());
+    }
+
+    /**
+     * Computes the result of a key, or waits for the flight of the key which is already in the air.
+     */
+    V execute(K key, Call<V> call) throws RoutingAPIException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            return share.apply(join(existing));
+        }
+        try {
+            V result = call.call();
+            land(key, flight);
+            flight.complete(result);
+            return result;
+        } catch (RoutingAPIException | RuntimeException | Error e) {
+            land(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #execute(Object, Call)}. Flights are shared with the blocking callers.
+     * @param call starts the computation of the result if there is no flight of the key
+     */
+    CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            // a dependent future, so the caller can not complete or cancel the flight of the others
+            return existing.thenApply(share);
+        }
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFutures.failed(e);
+        }
+        result.whenComplete((value, throwable) -> {
+            land(key, flight);
+            if (throwable != null) {
+                flight.completeExceptionally(CompletableFutures.unwrap(throwable));
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight.thenApply(UnaryOperator.identity());
+    }
+
+    /**
+     * @return the number of flights in the air
+     */
+    int getFlightCount() {
+        return flights.size();
+    }
+
+    // a flight leaves the map before it completes, so a caller that arrives later does not get a stale result
+    private void land(K key, CompletableFuture<V> flight) {
+        flights.remove(key, flight);
+    }
+
+    private static <V> V join(CompletableFuture<V> flight) throws RoutingAPIException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, "interrupted while waiting for an " +
+                    "identical request in flight", e);
+        } catch (ExecutionException e) {
+            Throwable cause = CompletableFutures.unwrap(e);
+            if (cause instanceof RoutingAPIException) {
+                throw (RoutingAPIException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, cause);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+/**
+ * A grid of roughly square cells over the surface of the earth, to which locations are snapped so that nearly
+ * identical coordinates share a key.
+ * <p>
+ * The rows are bands of latitude of the cell size. The columns of a row are as wide as the cell size at the edge of
+ * the row nearest to the pole, so a cell is at least the cell size wide everywhere and the columns get wider in
+ * degrees towards the poles, like the cells of a geohash get narrower in meters. The width of a row depends only on
+ * the row, so every location is snapped to the same cell no matter where it came from.
+ * <p>
+ * A cell is identified by its row and column, which are packed into a single {@code long}: the row in the upper and
+ * the column in the lower 32 bits. The packed cells can be kept in primitive arrays and collections, so millions of
+ * them need no objects; {@link SpatialKey} wraps one where an object key is needed. Cells are only comparable within
+ * the same grid.
+ */
+public final class SpatialGrid {
+
+    private final double cellSizeMeters;
+    private final double cellLatitude;
+
+    /**
+     * @param cellSizeMeters the edge length of the cells, e.g. 10 to 50 meters to merge the coordinates of the same
+     *                       entrance or venue
+     */
+    public SpatialGrid(double cellSizeMeters) {
+        if (!(cellSizeMeters > 0)) {
+            throw new IllegalArgumentException("the cell size must be positive");
+        }
+        this.cellSizeMeters = cellSizeMeters;
+        this.cellLatitude = cellSizeMeters / GeoMath.METERS_PER_DEGREE_LATITUDE;
+    }
+
+    public double getCellSizeMeters() {
+        return cellSizeMeters;
+    }
+
+    /**
+     * @return the key of the cell of the location
+     */
+    public SpatialKey snap(Location location) {
+        return new SpatialKey(pack(location.getLatitude(), location.getLongitude()));
+    }
+
+    /**
+     * @return the packed cell of the coordinate
+     */
+    public long pack(double latitude, double longitude) {
+        int row = latitudeRow(latitude);
+        return cell(row, longitudeColumn(row, longitude));
+    }
+
+    /**
+     * @return the center of a packed cell
+     */
+    public Location center(long cell) {
+        int row = row(cell);
+        return new Location((row + 0.5) * cellLatitude, (column(cell) + 0.5) * cellLongitude(row));
+    }
+
+    /**
+     * @return the packed cell of the coordinate and the eight cells around it, which contain all locations within the
+     * cell size of the coordinate
+     */
+    public long[] neighbourhood(double latitude, double longitude) {
+        long[] cells = new long[9];
+        int row = latitudeRow(latitude);
+        int k = 0;
+        for (int r = row - 1; r <= row + 1; r++) {
+            // the columns of the neighbouring rows have widths of their own
+            int column = longitudeColumn(r, longitude);
+            for (int c = column - 1; c <= column + 1; c++) {
+                cells[k++] = cell(r, c);
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return the row of a packed cell
+     */
+    public static int row(long cell) {
+        return (int) (cell >> 32);
+    }
+
+    /**
+     * @return the column of a packed cell
+     */
+    public static int column(long cell) {
+        return (int) cell;
+    }
+
+    /**
+     * @return the packed cell of a row and column
+     */
+    public static long cell(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    private int latitudeRow(double latitude) {
+        return (int) Math.floor(latitude / cellLatitude);
+    }
+
+    private int longitudeColumn(int row, double longitude) {
+        return (int) Math.floor(longitude / cellLongitude(row));
+    }
+
+    /**
+     * @return the width of the columns of a row in degrees
+     */
+    private double cellLongitude(int row) {
+        // the edge of the row nearest to the pole, the polar rows are capped to keep the columns finite
+        double poleward = row >= 0 ? (row + 1) * cellLatitude : row * cellLatitude;
+        return cellSizeMeters / GeoMath.metersPerDegreeLongitude(Math.min(89, Math.abs(poleward)));
+    }
+
+    @Override
+    public String toString() {
+        return "SpatialGrid{" +
+                "cellSizeMeters=" + cellSizeMeters +
+                '}';
+    }
+}
@@ -0,0 +1,55 @@
+package de.tu_berlin.dima.niteout.routing;
+
+/**
+ * The immutable key of a cell of a {@link SpatialGrid}, e.g. for caches and the deduplication of locations.
+ * <p>
+ * Keys are only equal within the same grid; a key carries its packed cell and nothing else, so {@link #toLong()} and
+ * {@link #fromLong(long)} convert it to and from the compact form without loss.
+ */
+public final class SpatialKey {
+
+    private final long cell;
+
+    SpatialKey(long cell) {
+        this.cell = cell;
+    }
+
+    /**
+     * @param cell a packed cell of a {@link SpatialGrid}
+     */
+    public static SpatialKey fromLong(long cell) {
+        return new SpatialKey(cell);
+    }
+
+    /**
+     * @return the packed cell
+     */
+    public long toLong() {
+        return cell;
+    }
+
+    public int getRow() {
+        return SpatialGrid.row(cell);
+    }
+
+    public int getColumn() {
+        return SpatialGrid.column(cell);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return cell == ((SpatialKey) o).cell;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cell);
+    }
+
+    @Override
+    public String toString() {
+        return getRow() + "," + getColumn();
+    }
+}
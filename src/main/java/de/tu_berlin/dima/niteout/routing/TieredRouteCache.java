@@ -0,0 +1,91 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.cache.CacheStats;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+
+import java.time.LocalDateTime;
+
+/**
+ * A {@link RouteCache} of two tiers, e.g. an {@link InMemoryRouteCache} in front of a {@link PersistentRouteCache}.
+ * <p>
+ * A trip is looked up in the first tier, then in the second one, from which it is copied into the first tier. A copied
+ * trip keeps the time it expires at in the second tier, so the first tier does not serve it after the second tier
+ * dropped it. Trips are put into both. The tiers have to create the same keys, i.e. use the same grid size and
+ * departure bucket; the keys are created by the first tier.
+ */
+public class TieredRouteCache implements RouteCache {
+
+    private final RouteCache first;
+    private final RouteCache second;
+
+    /**
+     * @param first the fast tier, which is consulted first
+     * @param second the tier behind it, e.g. one which survives restarts
+     */
+    public TieredRouteCache(RouteCache first, RouteCache second) {
+        if (first == null || second == null) {
+            throw new IllegalArgumentException("both tiers must be set");
+        }
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public RouteCacheKey createKey(TransportMode transportMode, Location start, Location destination,
+                                   LocalDateTime departure) {
+        return first.createKey(transportMode, start, destination, departure);
+    }
+
+    @Override
+    public CachedRoute get(RouteCacheKey key) {
+        CachedRoute route = first.get(key);
+        if (route != null) {
+            return route;
+        }
+        route = second.get(key);
+        if (route != null) {
+            first.put(key, route);
+        }
+        return route;
+    }
+
+    @Override
+    public void put(RouteCacheKey key, CachedRoute route) {
+        first.put(key, route);
+        second.put(key, route);
+    }
+
+    @Override
+    public void putKeepingSummary(RouteCacheKey key, CachedRoute route) {
+        first.putKeepingSummary(key, route);
+        second.putKeepingSummary(key, route);
+    }
+
+    @Override
+    public void invalidateAll() {
+        first.invalidateAll();
+        second.invalidateAll();
+    }
+
+    /**
+     * @return the hits of both tiers, the misses of the second tier, which are the misses of the cache, and the
+     * evictions of both tiers
+     */
+    @Override
+    public CacheStats getStatistics() {
+        CacheStats firstStatistics = first.getStatistics();
+        CacheStats secondStatistics = second.getStatistics();
+        return new CacheStats(firstStatistics.hitCount() + secondStatistics.hitCount(),
+                secondStatistics.missCount(), 0, 0, 0,
+                firstStatistics.evictionCount() + secondStatistics.evictionCount());
+    }
+
+    public RouteCache getFirstTier() {
+        return first;
+    }
+
+    public RouteCache getSecondTier() {
+        return second;
+    }
+}
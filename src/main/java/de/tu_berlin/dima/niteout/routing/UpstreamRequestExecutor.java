@@ -0,0 +1,328 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Fans out a batch of blocking requests to an external API, like the cells of a matrix or a batch of addresses.
+ * <p>
+ * The requests run on a dedicated, bounded thread pool instead of the JVM-wide common {@link ForkJoinPool}, so a
+ * large batch can not starve the parallel streams of the rest of the process. Each provider uses its own executor
+ * with its own limit of concurrent requests, while all executors may share one pool. An optional rate limiter or
+ * request scheduler is consulted on the calling thread before a request is submitted, so threads of the pool never
+ * wait for it. A scheduler shares its permits fairly between the batches which are executed at the same time.
+ * <p>
+ * The first failing request cancels all outstanding requests. Results are handed to an optional consumer in the order
+ * in which they complete.
+ * <p>
+ * Non-blocking requests wait for their permits on a dispatcher thread of the executor instead of the calling thread
+ * and return their permits when they complete, so they count against the same limits as the blocking requests.
+ */
+public class UpstreamRequestExecutor {
+
+    public final static int DEFAULT_POOL_SIZE = 32;
+    public final static int DEFAULT_MAX_CONCURRENCY = 8;
+
+    private final static long POLL_INTERVAL_MILLIS = 10;
+
+    private static volatile ExecutorService sharedPool;
+
+    private final ExecutorService executorService;
+    private final ExecutorService dispatcher;
+    private final Semaphore permits;
+    private final RateLimiter rateLimiter;
+    private final RequestScheduler requestScheduler;
+    private final ProviderMetrics metrics;
+
+    /**
+     * Computes the result of a single request of a batch.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    interface Request<T> {
+        T compute(int index) throws RoutingAPIException;
+    }
+
+    /**
+     * Starts a single non-blocking request of a batch.
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    interface AsyncRequest<T> {
+        CompletableFuture<T> start(int index);
+    }
+
+    private UpstreamRequestExecutor(UpstreamRequestExecutorBuilder builder) {
+        this.executorService = builder.executorService != null ? builder.executorService : getSharedPool();
+        ThreadPoolExecutor dispatcher = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("upstream-dispatcher-%d").build());
+        dispatcher.allowCoreThreadTimeOut(true);
+        this.dispatcher = dispatcher;
+        this.permits = new Semaphore(builder.maxConcurrency);
+        this.rateLimiter = builder.rateLimiter;
+        this.requestScheduler = builder.requestScheduler;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * @return the bounded pool shared by all executors that were not given their own pool
+     */
+    static ExecutorService getSharedPool() {
+        if (sharedPool == null) {
+            synchronized (UpstreamRequestExecutor.class) {
+                if (sharedPool == null) {
+                    sharedPool = createPool(DEFAULT_POOL_SIZE);
+                }
+            }
+        }
+        return sharedPool;
+    }
+
+    /**
+     * Creates a bounded pool of daemon threads which terminate when they are idle.
+     * @param size the maximum number of threads
+     */
+    public static ExecutorService createPool(int size) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("upstream-request-%d").build());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Executes all requests of a batch and blocks until they are complete.
+     * @param total the number of requests of the batch
+     * @param request computes the result of a single request
+     * @param onResult receives each result as soon as it is complete, may be {@code null}
+     * @param resultOrder the order of the returned results
+     * @return all results in the given order
+     * @throws RoutingAPIException the exception of the first failing request
+     */
+    <T> List<T> execute(int total, Request<T> request, Consumer<T> onResult,
+                        Comparator<T> resultOrder) throws RoutingAPIException {
+
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
+        List<Future<T>> futures = new ArrayList<>(total);
+        List<AtomicBoolean> claims = new ArrayList<>(total);
+        List<T> results = new ArrayList<>(total);
+        // the requests of this batch are one caller of the scheduler
+        Object caller = new Object();
+
+        try {
+            int next = 0;
+            while (next < total) {
+                drain(completionService, results, onResult, false);
+                if (!permits.tryAcquire(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                awaitTurn(caller);
+                AtomicBoolean claimed = new AtomicBoolean();
+                int index = next;
+                claims.add(claimed);
+                futures.add(completionService.submit(() -> {
+                    if (!claimed.compareAndSet(false, true)) {
+                        // cancelled before it started, the permit was already released
+                        return null;
+                    }
+                    try {
+                        return request.compute(index);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+                next++;
+            }
+            while (results.size() < total) {
+                drain(completionService, results, onResult, true);
+            }
+        } catch (RoutingAPIException | RuntimeException e) {
+            cancel(futures, claims);
+            throw e;
+        } catch (InterruptedException e) {
+            cancel(futures, claims);
+            Thread.currentThread().interrupt();
+            throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, "interrupted while waiting for " +
+                    "the requests of the batch", e);
+        }
+
+        results.sort(resultOrder);
+        return results;
+    }
+
+    /**
+     * Executes all requests of a batch without blocking the caller.
+     * @param total the number of requests of the batch
+     * @param request starts a single request
+     * @return a future of all results in the order of the requests, which completes exceptionally with the exception
+     * of the first failing request; the requests which have not been started by then are skipped
+     */
+    <T> CompletableFuture<List<T>> executeAsync(int total, AsyncRequest<T> request) {
+
+        List<CompletableFuture<T>> futures = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        CompletableFuture<List<T>> results = CompletableFutures.allOf(futures);
+        // the requests of this batch are one caller of the scheduler
+        Object caller = new Object();
+
+        dispatcher.execute(() -> {
+            for (int i = 0; i < total && !results.isDone(); i++) {
+                CompletableFuture<T> future = futures.get(i);
+                try {
+                    permits.acquire();
+                    awaitTurn(caller);
+                } catch (InterruptedException e) {
+                    future.completeExceptionally(new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP,
+                            "interrupted while waiting for the requests of the batch", e));
+                    return;
+                }
+                CompletableFuture<T> response;
+                try {
+                    response = request.start(i);
+                } catch (RuntimeException e) {
+                    response = CompletableFutures.failed(e);
+                }
+                response.whenComplete((result, throwable) -> {
+                    permits.release();
+                    if (throwable != null) {
+                        future.completeExceptionally(CompletableFutures.unwrap(throwable));
+                    } else {
+                        future.complete(result);
+                    }
+                });
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Waits for the rate limiter and the scheduler, if any, once a permit is acquired. The permit is released if the
+     * wait is interrupted.
+     */
+    private void awaitTurn(Object caller) throws InterruptedException {
+        long waitStart = System.nanoTime();
+        try {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            if (requestScheduler != null) {
+                requestScheduler.acquire(RequestScheduler.Priority.BULK, caller);
+            }
+        } catch (InterruptedException e) {
+            permits.release();
+            throw e;
+        }
+        if (metrics != null && (rateLimiter != null || requestScheduler != null)) {
+            metrics.recordRateLimiterWait(waitStart);
+        }
+    }
+
+    private static <T> void drain(CompletionService<T> completionService, List<T> results, Consumer<T> onResult,
+                                  boolean block) throws RoutingAPIException, InterruptedException {
+        Future<T> future = block ? completionService.take() : completionService.poll();
+        while (future != null) {
+            T result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RoutingAPIException) {
+                    throw (RoutingAPIException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, cause);
+            }
+            results.add(result);
+            if (onResult != null) {
+                onResult.accept(result);
+            }
+            future = completionService.poll();
+        }
+    }
+
+    private <T> void cancel(List<Future<T>> futures, List<AtomicBoolean> claims) {
+        for (int i = 0; i < futures.size(); i++) {
+            futures.get(i).cancel(true);
+            if (claims.get(i).compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * @return the number of further requests this executor may start right now
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public static class UpstreamRequestExecutorBuilder {
+        private ExecutorService executorService;
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private RateLimiter rateLimiter;
+        private RequestScheduler requestScheduler;
+        private ProviderMetrics metrics;
+
+        /**
+         * @param executorService the pool the requests run on, instead of the shared bounded pool
+         */
+        public UpstreamRequestExecutorBuilder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrency the maximum number of concurrent requests of the provider
+         */
+        public UpstreamRequestExecutorBuilder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /**
+         * @param rateLimiter the rate limit of the provider, which is respected before a request is submitted
+         */
+        public UpstreamRequestExecutorBuilder rateLimiter(RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * @param requestScheduler the scheduler of the provider, which grants a permit as a bulk request before a
+         *                         request is submitted
+         */
+        public UpstreamRequestExecutorBuilder requestScheduler(RequestScheduler requestScheduler) {
+            this.requestScheduler = requestScheduler;
+            return this;
+        }
+
+        /**
+         * @param metrics the metrics of the provider, into which the waits for the rate limit are recorded
+         */
+        UpstreamRequestExecutorBuilder metrics(ProviderMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public UpstreamRequestExecutor build() {
+
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency must be at least 1");
+            }
+
+            return new UpstreamRequestExecutor(this);
+        }
+    }
+}
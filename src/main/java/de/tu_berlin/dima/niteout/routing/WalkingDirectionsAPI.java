@@ -1,11 +1,14 @@
 package de.tu_berlin.dima.niteout.routing;
 
+import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
 import de.tu_berlin.dima.niteout.routing.model.Location;
 import de.tu_berlin.dima.niteout.routing.model.RouteSummary;
 import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import de.tu_berlin.dima.niteout.routing.model.TravelTimeMatrix;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by aardila on 1/29/2017.
@@ -26,4 +29,62 @@ public interface WalkingDirectionsAPI {
 
     List<TimeMatrixEntry> getWalkingMatrix(Location[] startLocations,
                                            Location[] destinationLocations) throws RoutingAPIException;
+
+    /**
+     * Gets a walking matrix like {@link #getWalkingMatrix(Location[], Location[])}, but in flat primitive arrays
+     * instead of an object per cell. The default implementation adapts the list of entries.
+     */
+    default TravelTimeMatrix getWalkingTravelTimeMatrix(Location[] startLocations,
+                                                        Location[] destinationLocations) throws RoutingAPIException {
+        return TravelTimeMatrix.fromEntries(startLocations.length, destinationLocations.length,
+                DistanceUnits.KILOMETERS, getWalkingMatrix(startLocations, destinationLocations));
+    }
+
+    /**
+     * @return the walking speed in kilometers per hour the times of this API are computed with, like
+     * {@link de.tu_berlin.dima.niteout.routing.model.mapzen.PedestrianCostingOption#WALKING_SPEED}; the default is the
+     * one of Mapzen
+     */
+    default double getWalkingSpeedKmh() {
+        return PedestrianCosting.DEFAULT_WALKING_SPEED_KMH;
+    }
+
+    /**
+     * The non-blocking variant of {@link #getWalkingTripTime(Location, Location)}. The default implementation
+     * computes the result in the calling thread; implementations backed by a remote service should override it.
+     */
+    default CompletableFuture<Integer> getWalkingTripTimeAsync(Location startLocation, Location destinationLocation) {
+        try {
+            return CompletableFuture.completedFuture(getWalkingTripTime(startLocation, destinationLocation));
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #getWalkingRouteSummary(Location, Location, LocalDateTime)}. The default
+     * implementation computes the result in the calling thread; implementations backed by a remote service should
+     * override it.
+     */
+    default CompletableFuture<RouteSummary> getWalkingRouteSummaryAsync(Location start, Location destination,
+                                                                        LocalDateTime departureTime) {
+        try {
+            return CompletableFuture.completedFuture(getWalkingRouteSummary(start, destination, departureTime));
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
+
+    /**
+     * The non-blocking variant of {@link #getWalkingMatrix(Location[], Location[])}. The default implementation
+     * computes the result in the calling thread; implementations backed by a remote service should override it.
+     */
+    default CompletableFuture<List<TimeMatrixEntry>> getWalkingMatrixAsync(Location[] startLocations,
+                                                                           Location[] destinationLocations) {
+        try {
+            return CompletableFuture.completedFuture(getWalkingMatrix(startLocations, destinationLocations));
+        } catch (RoutingAPIException e) {
+            return CompletableFutures.failed(e);
+        }
+    }
 }
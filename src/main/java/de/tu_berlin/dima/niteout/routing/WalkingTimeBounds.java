@@ -0,0 +1,201 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+
+/**
+ * Lower bounds of walking times from the straight-line distance between locations, to prune the pairs of a matrix
+ * which can not be walked within a time before they are requested from an external API.
+ * <p>
+ * No path is shorter than the great circle between its ends, so the time of walking the great circle at the walking
+ * speed is an admissible lower bound of the walking time as long as the walking speed is not lower than the one the
+ * API computes its times with. There is no such upper bound, as a river or a fence can make any detour necessary.
+ * <p>
+ * The locations are copied into primitive arrays of the sines and cosines of their coordinates once, so the distances
+ * of a row are computed by a loop of multiplications and additions over arrays, which the compiler can vectorize.
+ * A distance is compared with a threshold in the haversine term, which grows with the distance, so no trigonometric
+ * function is evaluated per pair.
+ */
+final class WalkingTimeBounds {
+
+    // covers the rounding of the haversine terms, it widens the threshold by less than a meter beyond 100 meters
+    private final static double TOLERANCE = 1e-12;
+
+    private final double walkingSpeed;
+
+    /**
+     * @param walkingSpeedKmh the walking speed in kilometers per hour, like the costing option
+     *                        {@code WALKING_SPEED}
+     */
+    WalkingTimeBounds(double walkingSpeedKmh) {
+        if (!(walkingSpeedKmh > 0)) {
+            throw new IllegalArgumentException("the walking speed must be positive");
+        }
+        this.walkingSpeed = walkingSpeedKmh / 3.6;
+    }
+
+    /**
+     * @return the lower bound of the walking time between the locations in seconds
+     */
+    int lowerBound(Location start, Location destination) {
+        return (int) Math.floor(GeoMath.haversineMeters(start, destination) / walkingSpeed);
+    }
+
+    /**
+     * Finds the pairs of locations which may be walked within a time, i.e. whose lower bound is not above it.
+     * @param maxTime the time in seconds
+     */
+    Candidates candidates(Location[] startLocations, Location[] destinationLocations, int maxTime) {
+        if (maxTime < 0) {
+            throw new IllegalArgumentException("the time must not be negative");
+        }
+        // the haversine term of the distance walked in the time, a = sin^2(d / 2r)
+        double halfAngle = Math.min(Math.PI / 2, (maxTime + 1) * walkingSpeed / (2 * GeoMath.EARTH_RADIUS_METERS));
+        double maxTerm = Math.sin(halfAngle) * Math.sin(halfAngle) + TOLERANCE;
+
+        Coordinates starts = new Coordinates(startLocations);
+        Coordinates destinations = new Coordinates(destinationLocations);
+        int columnCount = destinationLocations.length;
+        double[] terms = new double[columnCount];
+        boolean[] cells = new boolean[startLocations.length * columnCount];
+        for (int i = 0; i < startLocations.length; i++) {
+            haversineTerms(starts, i, destinations, terms);
+            int offset = i * columnCount;
+            for (int j = 0; j < columnCount; j++) {
+                cells[offset + j] = terms[j] <= maxTerm;
+            }
+        }
+        return new Candidates(startLocations, destinationLocations, cells);
+    }
+
+    /**
+     * Computes the haversine terms between a start and all destinations,
+     * a = (1 - cos dLat) / 2 + cos lat1 cos lat2 (1 - cos dLon) / 2, with the cosines of the differences expanded into
+     * products of the sines and cosines of the coordinates.
+     */
+    private static void haversineTerms(Coordinates starts, int i, Coordinates destinations, double[] terms) {
+        double sinLatitude = starts.sinLatitudes[i];
+        double cosLatitude = starts.cosLatitudes[i];
+        double sinLongitude = starts.sinLongitudes[i];
+        double cosLongitude = starts.cosLongitudes[i];
+        double[] sinLatitudes = destinations.sinLatitudes;
+        double[] cosLatitudes = destinations.cosLatitudes;
+        double[] sinLongitudes = destinations.sinLongitudes;
+        double[] cosLongitudes = destinations.cosLongitudes;
+        for (int j = 0; j < terms.length; j++) {
+            double cosLatitudeProduct = cosLatitude * cosLatitudes[j];
+            double cosDLatitude = cosLatitudeProduct + sinLatitude * sinLatitudes[j];
+            double cosDLongitude = cosLongitude * cosLongitudes[j] + sinLongitude * sinLongitudes[j];
+            terms[j] = 0.5 * ((1 - cosDLatitude) + cosLatitudeProduct * (1 - cosDLongitude));
+        }
+    }
+
+    /**
+     * The sines and cosines of the coordinates of locations, one array each.
+     */
+    private static final class Coordinates {
+        private final double[] sinLatitudes;
+        private final double[] cosLatitudes;
+        private final double[] sinLongitudes;
+        private final double[] cosLongitudes;
+
+        Coordinates(Location[] locations) {
+            sinLatitudes = new double[locations.length];
+            cosLatitudes = new double[locations.length];
+            sinLongitudes = new double[locations.length];
+            cosLongitudes = new double[locations.length];
+            for (int i = 0; i < locations.length; i++) {
+                double latitude = Math.toRadians(locations[i].getLatitude());
+                double longitude = Math.toRadians(locations[i].getLongitude());
+                sinLatitudes[i] = Math.sin(latitude);
+                cosLatitudes[i] = Math.cos(latitude);
+                sinLongitudes[i] = Math.sin(longitude);
+                cosLongitudes[i] = Math.cos(longitude);
+            }
+        }
+    }
+
+    /**
+     * The pairs of a matrix which may be walked within a time, and the start and destination locations which are part
+     * of at least one of them. Only the matrix of these locations needs to be requested.
+     */
+    static final class Candidates {
+        private final int columnCount;
+        private final boolean[] cells;
+        private final int[] startIndices;
+        private final int[] destinationIndices;
+        private final Location[] startLocations;
+        private final Location[] destinationLocations;
+
+        private Candidates(Location[] startLocations, Location[] destinationLocations, boolean[] cells) {
+            this.columnCount = destinationLocations.length;
+            this.cells = cells;
+            boolean[] rows = new boolean[startLocations.length];
+            boolean[] columns = new boolean[destinationLocations.length];
+            for (int k = 0; k < cells.length; k++) {
+                if (cells[k]) {
+                    rows[k / columnCount] = true;
+                    columns[k % columnCount] = true;
+                }
+            }
+            this.startIndices = indices(rows);
+            this.destinationIndices = indices(columns);
+            this.startLocations = select(startLocations, startIndices);
+            this.destinationLocations = select(destinationLocations, destinationIndices);
+        }
+
+        boolean isCandidate(int row, int column) {
+            return cells[row * columnCount + column];
+        }
+
+        boolean isEmpty() {
+            return startIndices.length == 0;
+        }
+
+        /**
+         * @return the indices of the start locations with a candidate, in ascending order
+         */
+        int[] getStartIndices() {
+            return startIndices;
+        }
+
+        /**
+         * @return the indices of the destination locations with a candidate, in ascending order
+         */
+        int[] getDestinationIndices() {
+            return destinationIndices;
+        }
+
+        Location[] getStartLocations() {
+            return startLocations;
+        }
+
+        Location[] getDestinationLocations() {
+            return destinationLocations;
+        }
+
+        private static int[] indices(boolean[] selected) {
+            int count = 0;
+            for (boolean s : selected) {
+                if (s) {
+                    count++;
+                }
+            }
+            int[] indices = new int[count];
+            int k = 0;
+            for (int i = 0; i < selected.length; i++) {
+                if (selected[i]) {
+                    indices[k++] = i;
+                }
+            }
+            return indices;
+        }
+
+        private static Location[] select(Location[] locations, int[] indices) {
+            Location[] selected = new Location[indices.length];
+            for (int k = 0; k < indices.length; k++) {
+                selected[k] = locations[indices[k]];
+            }
+            return selected;
+        }
+    }
+}
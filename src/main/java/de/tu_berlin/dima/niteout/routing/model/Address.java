@@ -50,7 +50,7 @@ public class Address {
         }
 
         public AddressBuilder city(String city) {
-            this.street = street.trim();
+            this.city = city.trim();
             return this;
         }
 
@@ -15,6 +15,22 @@ public class RouteSummary {
     private HashMap<TransportMode, Integer> modeOfTransportTravelTimes;
     private int numberOfChanges;
 
+    public RouteSummary() {
+    }
+
+    /**
+     * Creates a copy of the given summary, e.g. to hand out a cached summary without sharing it.
+     * @param other the summary to copy
+     */
+    public RouteSummary(RouteSummary other) {
+        this.departureTime = other.departureTime;
+        this.arrivalTime = other.arrivalTime;
+        this.totalDuration = other.totalDuration;
+        this.totalDistance = other.totalDistance;
+        this.modeOfTransportTravelTimes = other.modeOfTransportTravelTimes == null ?
+                null : new HashMap<>(other.modeOfTransportTravelTimes);
+        this.numberOfChanges = other.numberOfChanges;
+    }
 
     public LocalDateTime getArrivalTime() {
         return arrivalTime;
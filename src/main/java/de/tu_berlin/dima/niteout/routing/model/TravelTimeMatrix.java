@@ -0,0 +1,190 @@
+package de.tu_berlin.dima.niteout.routing.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A matrix of the trip times and distances between start locations (rows) and destination locations (columns).
+ * <p>
+ * The cells are stored in flat primitive arrays in row-major order, so a cell is looked up in constant time and a
+ * matrix of any size consists of three objects. A cell may be missing if there was no trip between its locations.
+ * {@link #asEntries()} adapts the matrix to the list of entries returned by the former methods.
+ * <p>
+ * The producer of a matrix sets its cells before returning it; it is not meant to be changed afterwards.
+ */
+public final class TravelTimeMatrix {
+
+    /**
+     * The time of a missing cell.
+     */
+    public final static int MISSING = -1;
+
+    private final int rowCount;
+    private final int columnCount;
+    private final DistanceUnits units;
+    private final int[] times;
+    private final float[] distances;
+
+    /**
+     * Creates a matrix with all cells missing.
+     * @param rowCount the number of start locations
+     * @param columnCount the number of destination locations
+     * @param units the units of the distances
+     */
+    public TravelTimeMatrix(int rowCount, int columnCount, DistanceUnits units) {
+        if (rowCount < 0 || columnCount < 0 || (long) rowCount * columnCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("invalid size " + rowCount + "x" + columnCount);
+        }
+        if (units == null) {
+            throw new IllegalArgumentException("the units of the distances are not set");
+        }
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.units = units;
+        this.times = new int[rowCount * columnCount];
+        this.distances = new float[rowCount * columnCount];
+        Arrays.fill(times, MISSING);
+        Arrays.fill(distances, Float.NaN);
+    }
+
+    /**
+     * Creates a matrix from a list of entries, e.g. of an external API. The cells without an entry are missing.
+     * @param units the units of the distances if there are no entries, otherwise the units of the entries
+     * @throws IllegalArgumentException if an entry is outside the matrix or the entries are in different units
+     */
+    public static TravelTimeMatrix fromEntries(int rowCount, int columnCount, DistanceUnits units,
+                                               List<TimeMatrixEntry> entries) {
+        if (!entries.isEmpty()) {
+            units = entries.get(0).getUnits();
+        }
+        TravelTimeMatrix matrix = new TravelTimeMatrix(rowCount, columnCount, units);
+        for (TimeMatrixEntry entry : entries) {
+            if (entry.getUnits() != units) {
+                throw new IllegalArgumentException("the entries are in different units");
+            }
+            matrix.set(entry.getFromIndex(), entry.getToIndex(), entry.getTime(), entry.getDistance());
+        }
+        return matrix;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public DistanceUnits getUnits() {
+        return units;
+    }
+
+    /**
+     * @return whether there is a trip from the start location {@code i} to the destination location {@code j}
+     */
+    public boolean hasCell(int i, int j) {
+        return times[index(i, j)] != MISSING;
+    }
+
+    /**
+     * @return the trip time from the start location {@code i} to the destination location {@code j} in seconds, or
+     * {@link #MISSING} if there is no trip
+     */
+    public int time(int i, int j) {
+        return times[index(i, j)];
+    }
+
+    /**
+     * @return the distance of the trip from the start location {@code i} to the destination location {@code j} in
+     * the units of the matrix, or {@code NaN} if there is no trip
+     */
+    public float distance(int i, int j) {
+        return distances[index(i, j)];
+    }
+
+    /**
+     * Sets a cell. Cells of different rows may be set by different threads.
+     * @param time the trip time in seconds, must not be negative
+     * @param distance the distance of the trip in the units of the matrix
+     */
+    public void set(int i, int j, int time, double distance) {
+        if (time < 0) {
+            throw new IllegalArgumentException("negative trip time " + time);
+        }
+        int index = index(i, j);
+        times[index] = time;
+        distances[index] = (float) distance;
+    }
+
+    /**
+     * @return the number of cells which are not missing
+     */
+    public int getCellCount() {
+        int count = 0;
+        for (int time : times) {
+            if (time != MISSING) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adapts the matrix to a list of its cells in row-major order, leaving out the missing cells. The entries are
+     * created when they are accessed, and the list reflects later changes of the cells which are not missing.
+     */
+    public List<TimeMatrixEntry> asEntries() {
+        int cellCount = getCellCount();
+        if (cellCount == times.length) {
+            return new EntryList(null);
+        }
+        int[] cells = new int[cellCount];
+        for (int index = 0, k = 0; index < times.length; index++) {
+            if (times[index] != MISSING) {
+                cells[k++] = index;
+            }
+        }
+        return new EntryList(cells);
+    }
+
+    private int index(int i, int j) {
+        if (i < 0 || i >= rowCount || j < 0 || j >= columnCount) {
+            throw new IndexOutOfBoundsException("cell " + i + "," + j + " of a " + rowCount + "x" + columnCount +
+                    " matrix");
+        }
+        return i * columnCount + j;
+    }
+
+    @Override
+    public String toString() {
+        return "TravelTimeMatrix{" +
+                "rows=" + rowCount +
+                ", columns=" + columnCount +
+                ", units=" + units +
+                '}';
+    }
+
+    private class EntryList extends AbstractList<TimeMatrixEntry> implements RandomAccess {
+
+        // the indices of the cells in the list, or null if no cell is missing
+        private final int[] cells;
+
+        EntryList(int[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public TimeMatrixEntry get(int k) {
+            int index = cells == null ? k : cells[k];
+            return new TimeMatrixEntry(index / columnCount, index % columnCount, times[index], distances[index],
+                    units);
+        }
+
+        @Override
+        public int size() {
+            return cells == null ? times.length : cells.length;
+        }
+    }
+}
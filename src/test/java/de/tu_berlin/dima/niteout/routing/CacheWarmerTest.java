@@ -0,0 +1,105 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link CacheWarmer}.
+ */
+public class CacheWarmerTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+    private static final Location[] VENUES = {TU_BERLIN, HAUPTBAHNHOF, BRANDENBURGER_TOR, POTSDAMER_PLATZ,
+            SIEGESSAEULE, ALEXANDERPLATZ};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void warmsTheCacheAndResumesAfterAnInterruption() throws Exception {
+        StraightLineWalkingDirectionsAPI walking = new StraightLineWalkingDirectionsAPI();
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .walkingDirectionsAPI(walking)
+                .routeCache(new InMemoryRouteCache.InMemoryRouteCacheBuilder().build())
+                .build();
+        Path checkpoint = folder.getRoot().toPath().resolve("warm-up.checkpoint");
+        List<CacheWarmer.Progress> reports = new ArrayList<>();
+        AtomicInteger interruptAfter = new AtomicInteger(2);
+
+        CacheWarmer.CacheWarmerBuilder builder = new CacheWarmer.CacheWarmerBuilder()
+                .routingService(service)
+                .venues(VENUES)
+                // walking is computed for the first slot only
+                .departures(Arrays.asList(EVENING, EVENING.plusMinutes(30)))
+                .transportModes(TransportMode.WALKING)
+                .tileLocations(6)
+                .checkpoint(checkpoint)
+                .progressListener(progress -> {
+                    reports.add(progress);
+                    if (reports.size() == interruptAfter.get()) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        try {
+            builder.build().run();
+            fail("the run was interrupted");
+        } catch (InterruptedException e) {
+            // the third of the four 3x3 tiles was not started
+        }
+        assertEquals(2, walking.matrices.get());
+        assertEquals(4, reports.get(1).getTaskCount());
+        assertEquals(18, reports.get(1).getCellCount());
+
+        interruptAfter.set(-1);
+        CacheWarmer.Progress progress = builder.build().run();
+        assertTrue(progress.isComplete());
+        assertEquals(2, progress.getResumedTaskCount());
+        assertEquals(4, walking.matrices.get());
+        assertEquals(18, progress.getCellCount());
+
+        // every trip between the venues is cached
+        service.getTravelTimeMatrix(TransportMode.WALKING, VENUES, VENUES, EVENING);
+        assertEquals(4, walking.matrices.get());
+    }
+
+    @Test
+    public void retriesRateLimitedTasksAndStoresTheMatrices() throws Exception {
+        // the first two tiles are rejected as rate limited
+        StraightLineWalkingDirectionsAPI walking = new StraightLineWalkingDirectionsAPI()
+                .failFirstMatrices(2, RoutingAPIException.ErrorCode.API_ERROR_RATE_LIMITED);
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .walkingDirectionsAPI(walking)
+                .build();
+        List<String> stored = new ArrayList<>();
+
+        CacheWarmer.Progress progress = new CacheWarmer.CacheWarmerBuilder()
+                .routingService(service)
+                .venues(VENUES)
+                .departures(Arrays.asList(EVENING))
+                .transportModes(TransportMode.WALKING)
+                .tileLocations(12)
+                .retries(2, Duration.ofMillis(10))
+                .matrixStore((mode, departure, firstRow, firstColumn, matrix) ->
+                        stored.add(firstRow + "," + firstColumn + ":" + matrix.getCellCount()))
+                .build()
+                .run();
+
+        assertTrue(progress.isComplete());
+        assertEquals(0, progress.getFailedTaskCount());
+        assertEquals(3, walking.matrices.get());
+        assertEquals(Arrays.asList("0,0:36"), stored);
+    }
+}
@@ -0,0 +1,93 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the wrappers close the responses they read, partially or completely, so that all requests to a host go
+ * over a single pooled connection.
+ */
+public class ConnectionReuseTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+    private static final double UNTHROTTLED_RPS = 1_000_000;
+    private static final int REQUESTS = 20;
+
+    private MockWebServer server;
+    private HttpTransport transport;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        transport = new HttpTransport.HttpTransportBuilder().build();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void hereWrapperClosesTheResponses() throws Exception {
+        HereWrapper hereWrapper = new HereWrapper("app-id", "app-code", transport,
+                new MatrixRequestExecutor.MatrixRequestExecutorBuilder(),
+                new RequestScheduler(new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                        .initialRate(UNTHROTTLED_RPS)
+                        .bounds(UNTHROTTLED_RPS, UNTHROTTLED_RPS)
+                        .build()),
+                server.url("/calculateroute.json").toString());
+        String route = new String(Files.readAllBytes(Paths.get(getClass()
+                .getResource("/responses/here-public-transport-route.json").toURI())), StandardCharsets.UTF_8);
+        for (int i = 0; i < 3 * REQUESTS; i++) {
+            server.enqueue(new MockResponse().setBody(route));
+        }
+
+        for (int i = 0; i < REQUESTS; i++) {
+            // only the summary at the start of the route is read
+            assertEquals(6393, hereWrapper.getPublicTransportTripTime(TU_BERLIN, ALEXANDERPLATZ, EVENING));
+            assertEquals(6393, hereWrapper.getPublicTransportRouteSummary(TU_BERLIN, ALEXANDERPLATZ, EVENING)
+                    .getTotalDuration());
+            assertEquals(6393, hereWrapper.getPublicTransportRouteSummaryAsync(TU_BERLIN, ALEXANDERPLATZ, EVENING)
+                    .get().getTotalDuration());
+        }
+
+        assertSingleConnection(3 * REQUESTS);
+    }
+
+    @Test
+    public void mapzenWrapperClosesTheResponses() throws Exception {
+        MapzenApiWrapper mapzenWrapper = new MapzenApiWrapper("key", transport,
+                server.url("/").toString() + "%s/%s");
+        for (int i = 0; i < 2 * REQUESTS; i++) {
+            server.enqueue(new MockResponse().setBody("{\"trip\":{\"summary\":{\"time\":1234,\"length\":1.5}}}"));
+        }
+
+        for (int i = 0; i < REQUESTS; i++) {
+            assertEquals(1234, mapzenWrapper.getWalkingTripTime(TU_BERLIN, ALEXANDERPLATZ));
+            assertEquals(1234, (int) mapzenWrapper.getWalkingTripTimeAsync(TU_BERLIN, ALEXANDERPLATZ).get());
+        }
+
+        assertSingleConnection(2 * REQUESTS);
+    }
+
+    private void assertSingleConnection(int requests) throws InterruptedException {
+        for (int i = 0; i < requests; i++) {
+            // the number of the request on its connection
+            assertEquals(i, server.takeRequest().getSequenceNumber());
+        }
+        assertEquals(1, transport.getHttpClient().connectionPool().connectionCount());
+    }
+}
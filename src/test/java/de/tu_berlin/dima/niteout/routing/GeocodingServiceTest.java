@@ -0,0 +1,193 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Address;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link GeocodingService} and the {@link GeocodingCache}.
+ */
+public class GeocodingServiceTest {
+
+    private static final Address TU_BERLIN = address("Straße des 17. Juni", "135", 10623);
+    private static final Address TU_BERLIN_ABBREVIATED = address("Str. des 17.  Juni", "135", 10623);
+    private static final Address HAUPTBAHNHOF = address("Europaplatz", "1", 10557);
+    private static final Address ALEXANDERPLATZ = address("Alexanderplatz", "1 A", 10178);
+    private static final Address UNKNOWN = address("Nirgendwostrasse", "1", 10115);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void normalizedAddressesShareAKey() {
+        assertEquals(GeocodingCache.createKey(TU_BERLIN), GeocodingCache.createKey(TU_BERLIN_ABBREVIATED));
+        assertEquals(GeocodingCache.createKey(address("Hauptstraße", "12a", 10827)),
+                GeocodingCache.createKey(address("hauptstrasse", "12 A", 10827)));
+        assertNotEquals(GeocodingCache.createKey(address("Hauptstraße", "12", 10827)),
+                GeocodingCache.createKey(address("Hauptstraße", "12", 12159)));
+    }
+
+    @Test
+    public void batchIsDeduplicatedAndCachedAcrossRestarts() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("geocoding.tsv");
+        CountingGeocodingAPI api = new CountingGeocodingAPI();
+        List<Address> batch = Arrays.asList(TU_BERLIN, HAUPTBAHNHOF, TU_BERLIN_ABBREVIATED, UNKNOWN, TU_BERLIN);
+
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            GeocodingService service = new GeocodingService.GeocodingServiceBuilder()
+                    .geocodingAPI(api)
+                    .cache(cache)
+                    .build();
+            List<Location> locations = service.getLocations(batch);
+            assertEquals(5, locations.size());
+            assertEquals(52.5125, locations.get(0).getLatitude(), 0);
+            assertEquals(52.525, locations.get(1).getLatitude(), 0);
+            assertSame(locations.get(0), locations.get(2));
+            assertNull(locations.get(3));
+            assertSame(locations.get(0), locations.get(4));
+            assertEquals(3, api.calls.get());
+        }
+        // a crash in the middle of a line
+        Files.write(file, "10178\talexanderplatz\t1a\t52.5".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            assertEquals(3, cache.size());
+            GeocodingService service = new GeocodingService.GeocodingServiceBuilder()
+                    .geocodingAPI(api)
+                    .cache(cache)
+                    .build();
+            List<Location> locations = service.getLocations(Arrays.asList(UNKNOWN, ALEXANDERPLATZ, TU_BERLIN));
+            assertNull(locations.get(0));
+            assertEquals(52.5219, locations.get(1).getLatitude(), 0);
+            assertEquals(13.3259, locations.get(2).getLongitude(), 0);
+            assertEquals(4, api.calls.get());
+            assertEquals(2, cache.getHitCount());
+        }
+
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            assertEquals(4, cache.size());
+            GeocodingService service = new GeocodingService.GeocodingServiceBuilder()
+                    .geocodingAPI(api)
+                    .cache(cache)
+                    .build();
+            assertEquals(13.4132, service.getLocation(ALEXANDERPLATZ).getLongitude(), 0);
+            assertEquals(4, api.calls.get());
+        }
+    }
+
+    @Test
+    public void tornLineIsCutOffOnOpen() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("geocoding.tsv");
+        String tuBerlin = GeocodingCache.createKey(TU_BERLIN);
+        String alexanderplatz = GeocodingCache.createKey(ALEXANDERPLATZ);
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            cache.put(tuBerlin, new Location(52.5125, 13.3259));
+            cache.put(alexanderplatz, new Location(52.5219, 13.4132));
+        }
+        byte[] content = Files.readAllBytes(file);
+        String lines = new String(content, StandardCharsets.UTF_8);
+        int firstLine = lines.indexOf('\n') + 1;
+
+        // a crash within the longitude, which would still leave five fields
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            assertEquals(1, cache.size());
+            assertNull(cache.get(alexanderplatz));
+            assertEquals(firstLine, Files.size(file));
+            cache.put(alexanderplatz, new Location(52.5219, 13.4132));
+        }
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            assertEquals(2, cache.size());
+            assertEquals(13.4132, cache.get(alexanderplatz).get().getLongitude(), 0);
+        }
+
+        // a crash within the house number, which would leave the three fields of an address that was not found
+        Files.write(file, Arrays.copyOf(content, lines.indexOf("\t1a\t") + 2));
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            assertEquals(1, cache.size());
+            assertNull(cache.get(GeocodingCache.createKey(address("Alexanderplatz", "1", 10178))));
+            assertEquals(firstLine, Files.size(file));
+            cache.put(alexanderplatz, null);
+        }
+        try (GeocodingCache cache = new GeocodingCache.GeocodingCacheBuilder().file(file).build()) {
+            assertEquals(2, cache.size());
+            assertFalse(cache.get(alexanderplatz).isPresent());
+            assertTrue(cache.get(tuBerlin).isPresent());
+        }
+    }
+
+    @Test
+    public void batchRespectsTheMaximumConcurrency() throws Exception {
+        CountingGeocodingAPI api = new CountingGeocodingAPI();
+        api.delayMillis = 20;
+        GeocodingService service = new GeocodingService.GeocodingServiceBuilder()
+                .geocodingAPI(api)
+                .maxConcurrency(2)
+                .build();
+        Address[] addresses = new Address[8];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = address("Europaplatz", Integer.toString(i + 1), 10557);
+        }
+
+        List<Location> locations = service.getLocations(Arrays.asList(addresses));
+        assertEquals(8, locations.size());
+        assertEquals(8, api.calls.get());
+        assertEquals(2, api.maxActive.get());
+    }
+
+    private static Address address(String street, String houseNumber, int postalCode) {
+        return new Address.AddressBuilder()
+                .street(street)
+                .houseNumber(houseNumber)
+                .city("Berlin")
+                .postalCode(postalCode)
+                .build();
+    }
+
+    /**
+     * Knows a few addresses by their postal code and counts the requests.
+     */
+    private static class CountingGeocodingAPI implements GeocodingAPI {
+
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        long delayMillis;
+
+        @Override
+        public Location getLocation(Address address) throws RoutingAPIException {
+            calls.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new RoutingAPIException(RoutingAPIException.ErrorCode.HTTP, e);
+            } finally {
+                active.decrementAndGet();
+            }
+            switch (address.getPostalCode()) {
+                case "10623":
+                    return new Location(52.5125, 13.3259);
+                case "10557":
+                    return new Location(52.525, 13.3694);
+                case "10178":
+                    return new Location(52.5219, 13.4132);
+                default:
+                    return null;
+            }
+        }
+    }
+}
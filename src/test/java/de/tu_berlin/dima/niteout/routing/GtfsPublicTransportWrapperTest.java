@@ -0,0 +1,287 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link GtfsPublicTransportWrapper} on a small feed with a subway line A-B-C and a bus line C2-E-D,
+ * where C2 is a short walk from C.
+ */
+public class GtfsPublicTransportWrapperTest {
+
+    private static final Location NEAR_A = new Location(52.5005, 13.3000);
+    private static final Location NEAR_C = new Location(52.5005, 13.4000);
+    private static final Location NEAR_D = new Location(52.5305, 13.4000);
+
+    private static final LocalDateTime FRIDAY_MORNING = LocalDateTime.of(2017, 2, 10, 8, 1);
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static GtfsTimetable timetable;
+    private static GtfsPublicTransportWrapper wrapper;
+
+    @BeforeClass
+    public static void loadFeed() throws RoutingAPIException, URISyntaxException {
+        timetable = GtfsTimetable.load(getFeedPath("berlin-mini"));
+        wrapper = new GtfsPublicTransportWrapper.GtfsPublicTransportWrapperBuilder()
+                .timetable(timetable)
+                .build();
+    }
+
+    static Path getFeedPath(String name) throws URISyntaxException {
+        return Paths.get(GtfsPublicTransportWrapperTest.class.getResource("/gtfs/" + name).toURI());
+    }
+
+    @Test
+    public void loadsStopsPatternsAndTrips() {
+        // the parent station is not a stop
+        assertEquals(6, timetable.getStopCount());
+        // the night trip shares the pattern of the subway
+        assertEquals(2, timetable.getPatternCount());
+        assertEquals(18 + 1 + 18, timetable.getTripCount());
+
+        // the bus does not stop at a time at E, so the time is interpolated
+        int e = timetable.getStopIndex("E");
+        int bus = timetable.stopPatterns.get(timetable.stopPatternOffsets.get(e));
+        int firstBus = timetable.patternTripOffsets.get(bus);
+        assertEquals(7 * 3600 + 8 * 60, timetable.arrivals.get(timetable.tripStopTimeOffsets.get(firstBus) + 1));
+    }
+
+    @Test
+    public void changesToTheBusAfterWalkingToItsStop() throws RoutingAPIException {
+        RouteSummary summary = wrapper.getPublicTransportRouteSummary(NEAR_A, NEAR_D, FRIDAY_MORNING);
+
+        // 40 seconds to A, the subway at 08:10 to C, a walk to C2, the bus at 08:25 to D and 40 seconds to the end
+        assertEquals(LocalDateTime.of(2017, 2, 10, 8, 9, 20), summary.getDepartureTime());
+        assertEquals(LocalDateTime.of(2017, 2, 10, 8, 31, 40), summary.getArrivalTime());
+        assertEquals(Duration.ofMinutes(22).plusSeconds(20).getSeconds(), summary.getTotalDuration());
+        assertEquals(1, summary.getNumberOfChanges());
+        int walking = summary.getModeOfTransportTravelTimes().get(TransportMode.WALKING);
+        int publicTransport = summary.getModeOfTransportTravelTimes().get(TransportMode.PUBLIC_TRANSPORT);
+        assertEquals(40 + 79 + 40, walking);
+        assertEquals(summary.getTotalDuration(), walking + publicTransport);
+        assertTrue(summary.getTotalDistance() > 10_000);
+
+        assertEquals(summary.getTotalDuration(),
+                wrapper.getPublicTransportTripTime(NEAR_A, NEAR_D, FRIDAY_MORNING));
+    }
+
+    @Test
+    public void walksWhenTheServiceDoesNotRun() throws RoutingAPIException {
+        // the service is removed on this monday
+        LocalDateTime monday = LocalDateTime.of(2017, 2, 13, 8, 1);
+        RouteSummary summary = wrapper.getPublicTransportRouteSummary(NEAR_A, NEAR_D, monday);
+
+        assertEquals(monday, summary.getDepartureTime());
+        assertEquals(0, (int) summary.getModeOfTransportTravelTimes().get(TransportMode.PUBLIC_TRANSPORT));
+        assertEquals(summary.getTotalDuration(),
+                (int) summary.getModeOfTransportTravelTimes().get(TransportMode.WALKING));
+        assertEquals(GeoMath.haversineMeters(NEAR_A, NEAR_D) / (5.1 / 3.6), summary.getTotalDuration(), 1);
+    }
+
+    @Test
+    public void findsTripsOfThePreviousServiceDayAfterMidnight() throws RoutingAPIException {
+        // the night trip of friday's service leaves at 24:10
+        LocalDateTime saturdayNight = LocalDateTime.of(2017, 2, 11, 0, 5);
+        RouteSummary summary = wrapper.getPublicTransportRouteSummary(NEAR_A, NEAR_C, saturdayNight);
+
+        assertEquals(LocalDateTime.of(2017, 2, 11, 0, 9, 20), summary.getDepartureTime());
+        assertEquals(LocalDateTime.of(2017, 2, 11, 0, 20, 40), summary.getArrivalTime());
+        assertEquals(0, summary.getNumberOfChanges());
+    }
+
+    @Test
+    public void matrixMatchesSingleTrips() throws RoutingAPIException {
+        Location[] starts = {NEAR_A, NEAR_C};
+        Location[] destinations = {NEAR_D, NEAR_C, NEAR_A};
+        List<TimeMatrixEntry> matrix = wrapper.getMultiModalMatrix(starts, destinations, FRIDAY_MORNING);
+
+        assertEquals(6, matrix.size());
+        for (TimeMatrixEntry entry : matrix) {
+            assertEquals(wrapper.getPublicTransportTripTime(starts[entry.getFromIndex()],
+                    destinations[entry.getToIndex()], FRIDAY_MORNING), entry.getTime());
+            assertEquals(DistanceUnits.KILOMETERS, entry.getUnits());
+        }
+        // from C to C is walking nowhere
+        assertEquals(0, matrix.get(4).getTime());
+
+        TravelTimeMatrix travelTimeMatrix = wrapper.getMultiModalTravelTimeMatrix(starts, destinations,
+                FRIDAY_MORNING);
+        for (TimeMatrixEntry entry : matrix) {
+            assertEquals(entry.getTime(), travelTimeMatrix.time(entry.getFromIndex(), entry.getToIndex()));
+            assertEquals(entry.getDistance(), travelTimeMatrix.distance(entry.getFromIndex(), entry.getToIndex()),
+                    0);
+        }
+    }
+
+    @Test
+    public void profileGivesTheTimeUntilTheEarliestArrivalOfEachDeparture() throws RoutingAPIException {
+        Location[] starts = {NEAR_A, NEAR_C};
+        Location[] destinations = {NEAR_D, NEAR_C};
+        SortedMap<LocalDateTime, List<TimeMatrixEntry>> profile = wrapper.getMultiModalMatrixProfile(starts,
+                destinations, FRIDAY_MORNING, FRIDAY_MORNING.plusMinutes(30), Duration.ofMinutes(3));
+
+        assertEquals(11, profile.size());
+        assertEquals(FRIDAY_MORNING.plusMinutes(30), profile.lastKey());
+        for (Map.Entry<LocalDateTime, List<TimeMatrixEntry>> matrix : profile.entrySet()) {
+            assertEquals(4, matrix.getValue().size());
+            for (TimeMatrixEntry entry : matrix.getValue()) {
+                RouteSummary summary = wrapper.getPublicTransportRouteSummary(starts[entry.getFromIndex()],
+                        destinations[entry.getToIndex()], matrix.getKey());
+                assertEquals(Duration.between(matrix.getKey(), summary.getArrivalTime()).getSeconds(),
+                        entry.getTime());
+            }
+        }
+        // leaving at 08:01 means waiting for the subway at 08:10
+        assertEquals(Duration.ofMinutes(30).plusSeconds(40).getSeconds(),
+                profile.get(FRIDAY_MORNING).get(0).getTime());
+    }
+
+    @Test
+    public void routingServiceCanUseTheTimetable() throws RoutingAPIException {
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .publicTransportWrapper(wrapper)
+                .build();
+
+        assertEquals(22 * 60 + 20,
+                service.getTripTime(TransportMode.PUBLIC_TRANSPORT, NEAR_A, NEAR_D, FRIDAY_MORNING));
+    }
+
+    @Test
+    public void walksAlongTheWaysOfThePedestrianGraph() throws RoutingAPIException {
+        // NEAR_A is around a block from A, NEAR_D is straight down the road from D
+        PedestrianGraphBuilder builder = new PedestrianGraphBuilder();
+        builder.addWay(new long[]{1, 2, 3, 4}, PedestrianGraph.ROAD);
+        builder.addWay(new long[]{4, 5, 6}, PedestrianGraph.ROAD);
+        builder.setNodeLocation(1, NEAR_A.getLatitude(), NEAR_A.getLongitude());
+        builder.setNodeLocation(2, 52.5005, 13.3030);
+        builder.setNodeLocation(3, 52.5000, 13.3030);
+        builder.setNodeLocation(4, 52.5000, 13.3000);
+        builder.setNodeLocation(5, 52.5300, 13.4000);
+        builder.setNodeLocation(6, NEAR_D.getLatitude(), NEAR_D.getLongitude());
+        PedestrianGraph graph = builder.build();
+        GtfsPublicTransportWrapper graphWrapper = new GtfsPublicTransportWrapper.GtfsPublicTransportWrapperBuilder()
+                .timetable(timetable)
+                .pedestrianGraph(graph)
+                .build();
+        double toA = GeoMath.haversineMeters(52.5005, 13.3, 52.5005, 13.303)
+                + GeoMath.haversineMeters(52.5005, 13.303, 52.5, 13.303)
+                + GeoMath.haversineMeters(52.5, 13.303, 52.5, 13.3);
+        int toATime = (int) Math.ceil(Math.round(toA) / (5.1 / 3.6));
+
+        // the same subway and bus, but a longer walk to A
+        RouteSummary summary = graphWrapper.getPublicTransportRouteSummary(NEAR_A, NEAR_D, FRIDAY_MORNING);
+        assertEquals(LocalDateTime.of(2017, 2, 10, 8, 31, 40), summary.getArrivalTime());
+        assertEquals(LocalDateTime.of(2017, 2, 10, 8, 10).minusSeconds(toATime), summary.getDepartureTime());
+        assertEquals(1, summary.getNumberOfChanges());
+        int walking = summary.getModeOfTransportTravelTimes().get(TransportMode.WALKING);
+        int publicTransport = summary.getModeOfTransportTravelTimes().get(TransportMode.PUBLIC_TRANSPORT);
+        assertEquals(toATime + 79 + 40, walking);
+        assertEquals(summary.getTotalDuration(), walking + publicTransport);
+
+        // A is too far along the ways, so the whole way is walked along them
+        GtfsPublicTransportWrapper shortWalks = new GtfsPublicTransportWrapper.GtfsPublicTransportWrapperBuilder()
+                .timetable(timetable)
+                .pedestrianGraph(graph)
+                .maxWalkingDistanceMeters(400)
+                .build();
+        double toNearD = toA + GeoMath.haversineMeters(52.5, 13.3, 52.53, 13.4)
+                + GeoMath.haversineMeters(52.53, 13.4, NEAR_D.getLatitude(), NEAR_D.getLongitude());
+        summary = shortWalks.getPublicTransportRouteSummary(NEAR_A, NEAR_D, FRIDAY_MORNING);
+        assertEquals(0, (int) summary.getModeOfTransportTravelTimes().get(TransportMode.PUBLIC_TRANSPORT));
+        assertEquals(toNearD / (5.1 / 3.6), summary.getTotalDuration(), 1);
+        assertEquals(toNearD, summary.getTotalDistance(), 1);
+
+        Location[] starts = {NEAR_A, NEAR_C};
+        Location[] destinations = {NEAR_D, NEAR_A};
+        for (GtfsPublicTransportWrapper w : new GtfsPublicTransportWrapper[]{graphWrapper, shortWalks}) {
+            for (TimeMatrixEntry entry : w.getMultiModalMatrix(starts, destinations, FRIDAY_MORNING)) {
+                assertEquals(w.getPublicTransportTripTime(starts[entry.getFromIndex()],
+                        destinations[entry.getToIndex()], FRIDAY_MORNING), entry.getTime());
+            }
+        }
+    }
+
+    @Test
+    public void prebuiltTimetableAnswersLikeTheFeed() throws RoutingAPIException, IOException {
+        Path file = folder.newFile("berlin-mini.timetable").toPath();
+        timetable.save(file);
+        GtfsTimetable opened = GtfsTimetable.open(file);
+        GtfsPublicTransportWrapper openedWrapper = new GtfsPublicTransportWrapper.GtfsPublicTransportWrapperBuilder()
+                .timetable(opened)
+                .build();
+
+        assertEquals(timetable.toString(), opened.toString());
+        assertEquals(timetable.getStopIndex("C2"), opened.getStopIndex("C2"));
+        for (LocalDateTime departure : new LocalDateTime[]{FRIDAY_MORNING, LocalDateTime.of(2017, 2, 11, 0, 5)}) {
+            RouteSummary expected = wrapper.getPublicTransportRouteSummary(NEAR_A, NEAR_D, departure);
+            RouteSummary actual = openedWrapper.getPublicTransportRouteSummary(NEAR_A, NEAR_D, departure);
+            assertEquals(expected.getArrivalTime(), actual.getArrivalTime());
+            assertEquals(expected.getNumberOfChanges(), actual.getNumberOfChanges());
+            assertEquals(expected.getTotalDistance(), actual.getTotalDistance(), 0);
+        }
+    }
+
+    @Test
+    public void forbiddenTransfersAreNotGenerated() throws RoutingAPIException, IOException, URISyntaxException {
+        Path feed = folder.newFolder("berlin-forbidden").toPath();
+        try (DirectoryStream<Path> tables = Files.newDirectoryStream(getFeedPath("berlin-mini"))) {
+            for (Path table : tables) {
+                Files.copy(table, feed.resolve(table.getFileName().toString()));
+            }
+        }
+        Files.write(feed.resolve("transfers.txt"), Arrays.asList(
+                "from_stop_id,to_stop_id,transfer_type,min_transfer_time",
+                "C,C2,3,",
+                "C2,C,2,120"), StandardCharsets.UTF_8);
+        GtfsTimetable forbidden = GtfsTimetable.load(feed);
+        int c = forbidden.getStopIndex("C");
+        int c2 = forbidden.getStopIndex("C2");
+
+        assertTrue(hasTransfer(timetable, c, c2));
+        assertFalse(hasTransfer(forbidden, c, c2));
+        assertTrue(hasTransfer(forbidden, c2, c));
+        assertEquals(timetable.getTransferCount() - 1, forbidden.getTransferCount());
+        // the bus can not be reached from the subway anymore
+        RouteSummary summary = new GtfsPublicTransportWrapper.GtfsPublicTransportWrapperBuilder()
+                .timetable(forbidden)
+                .build()
+                .getPublicTransportRouteSummary(NEAR_A, NEAR_D, FRIDAY_MORNING);
+        assertNotEquals(1, summary.getNumberOfChanges());
+    }
+
+    private static boolean hasTransfer(GtfsTimetable timetable, int fromStop, int toStop) {
+        for (int i = timetable.transferOffsets.get(fromStop); i < timetable.transferOffsets.get(fromStop + 1); i++) {
+            if (timetable.transferStops.get(i) == toStop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void splitsQuotedFields() {
+        assertArrayEquals(new String[]{"C2", "Alexanderplatz, \"Bus\"", "52.5010"},
+                GtfsFeedReader.split("C2,\"Alexanderplatz, \"\"Bus\"\"\",52.5010"));
+    }
+}
@@ -0,0 +1,87 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the asynchronous requests of {@link HttpTransport}.
+ */
+public class HttpTransportAsyncTest {
+
+    private static final int REQUESTS = 64;
+    private static final long DELAY_MILLIS = 200;
+
+    private MockWebServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void manyRequestsAreInFlightAtTheSameTime() throws Exception {
+        for (int i = 0; i < REQUESTS; i++) {
+            server.enqueue(new MockResponse().setBody("{}").setBodyDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        HttpTransport transport = new HttpTransport.HttpTransportBuilder()
+                .maxRequests(REQUESTS)
+                .maxRequestsPerHost(REQUESTS)
+                .build();
+        Request request = new Request.Builder().url(server.url("/")).build();
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<String>> bodies = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            bodies.add(transport.executeAsync(request).thenApply(response -> {
+                try (Response closeableResponse = response) {
+                    return closeableResponse.body().string();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        // enqueueing must not block the calling thread for the round trips
+        assertTrue(System.currentTimeMillis() - start < DELAY_MILLIS * REQUESTS / 4);
+
+        List<String> results = CompletableFutures.allOf(bodies).get(10, TimeUnit.SECONDS);
+        assertEquals(REQUESTS, results.size());
+        assertTrue(results.stream().allMatch("{}"::equals));
+        // requests ran concurrently instead of one after another
+        assertTrue(System.currentTimeMillis() - start < DELAY_MILLIS * REQUESTS / 4);
+    }
+
+    @Test
+    public void failedRequestCompletesWithRoutingApiException() throws Exception {
+        Request request = new Request.Builder().url(server.url("/")).build();
+        server.shutdown();
+
+        CompletableFuture<Response> future = new HttpTransport.HttpTransportBuilder().build().executeAsync(request);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("request to a stopped server should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RoutingAPIException);
+            assertEquals(RoutingAPIException.ErrorCode.HTTP, ((RoutingAPIException) e.getCause()).getCode());
+        }
+    }
+}
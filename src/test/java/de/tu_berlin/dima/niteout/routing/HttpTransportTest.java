@@ -0,0 +1,80 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the requests of the shared {@link HttpTransport} go over a single pooled connection, unlike those of a
+ * new {@link OkHttpClient} per request (as the wrappers used to do). The latencies of both are compared by the
+ * {@code HttpTransportBenchmark} of the JMH benchmarks.
+ */
+public class HttpTransportTest {
+
+    private static final int REQUESTS = 10;
+    private static final String BODY = "{\"trip\":{\"summary\":{\"time\":1234,\"length\":1.5}}}";
+
+    private MockWebServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        for (int i = 0; i < 2 * REQUESTS; i++) {
+            server.enqueue(new MockResponse().setBody(BODY));
+        }
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void sharedTransportReusesOneConnection() throws Exception {
+        Request request = new Request.Builder().url(server.url("/route")).build();
+        HttpTransport transport = new HttpTransport.HttpTransportBuilder().build();
+
+        for (int i = 0; i < REQUESTS; i++) {
+            try (Response response = transport.execute(request)) {
+                assertEquals(BODY, response.body().string());
+            }
+        }
+        for (int i = 0; i < REQUESTS; i++) {
+            // the position of the request on its connection
+            assertEquals(i, server.takeRequest().getSequenceNumber());
+        }
+        assertEquals(1, transport.getHttpClient().connectionPool().connectionCount());
+
+        for (int i = 0; i < REQUESTS; i++) {
+            try (Response response = new OkHttpClient().newCall(request).execute()) {
+                assertEquals(BODY, response.body().string());
+            }
+            assertEquals(0, server.takeRequest().getSequenceNumber());
+        }
+    }
+
+    @Test
+    public void defaultTransportIsSharedUntilItIsReplaced() {
+        HttpTransport defaultTransport = HttpTransport.getDefault();
+        assertSame(defaultTransport, HttpTransport.getDefault());
+        assertSame(defaultTransport.getHttpClient(), HttpTransport.getDefault().getHttpClient());
+
+        HttpTransport replacement = new HttpTransport.HttpTransportBuilder().build();
+        try {
+            HttpTransport.setDefault(replacement);
+            assertSame(replacement, HttpTransport.getDefault());
+        } finally {
+            HttpTransport.setDefault(defaultTransport);
+        }
+    }
+}
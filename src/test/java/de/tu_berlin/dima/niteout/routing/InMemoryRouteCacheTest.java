@@ -0,0 +1,165 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link InMemoryRouteCache} and its use by the {@link RoutingService}.
+ */
+public class InMemoryRouteCacheTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+
+    private final InMemoryRouteCache cache = new InMemoryRouteCache.InMemoryRouteCacheBuilder()
+            .departureBucket(Duration.ofMinutes(10))
+            .gridSizeMeters(25)
+            .build();
+
+    @Test
+    public void nearlyIdenticalLocationsShareAKey() {
+        Location nearTuBerlin = new Location(TU_BERLIN.getLatitude() - 0.00001, TU_BERLIN.getLongitude());
+        assertEquals(
+                cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING),
+                cache.createKey(TransportMode.WALKING, nearTuBerlin, ALEXANDERPLATZ, EVENING));
+        assertNotEquals(
+                cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING),
+                cache.createKey(TransportMode.WALKING, ALEXANDERPLATZ, TU_BERLIN, EVENING));
+    }
+
+    @Test
+    public void onlyPublicTransportKeysDependOnTheDeparture() {
+        LocalDateTime later = EVENING.plusMinutes(30);
+        assertEquals(
+                cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING),
+                cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, later));
+        assertNotEquals(
+                cache.createKey(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, EVENING),
+                cache.createKey(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, later));
+        assertEquals(
+                cache.createKey(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, EVENING),
+                cache.createKey(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, EVENING.plusMinutes(9)));
+    }
+
+    @Test
+    public void countsHitsMissesAndEvictions() {
+        InMemoryRouteCache smallCache = new InMemoryRouteCache.InMemoryRouteCacheBuilder().maximumSize(1).build();
+        RouteCacheKey first = smallCache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+        RouteCacheKey second = smallCache.createKey(TransportMode.WALKING, TU_BERLIN, HAUPTBAHNHOF, EVENING);
+
+        assertNull(smallCache.get(first));
+        smallCache.put(first, CachedRoute.ofTripTime(600));
+        assertEquals(600, smallCache.get(first).getTime());
+        smallCache.put(second, CachedRoute.ofTripTime(900));
+        assertNull(smallCache.get(first));
+
+        assertEquals(1, smallCache.getStatistics().hitCount());
+        assertEquals(2, smallCache.getStatistics().missCount());
+        assertEquals(1, smallCache.getStatistics().evictionCount());
+    }
+
+    @Test
+    public void routingServiceRequestsOnlyUncachedTrips() throws RoutingAPIException {
+        StraightLineWalkingDirectionsAPI walking = new StraightLineWalkingDirectionsAPI();
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .walkingDirectionsAPI(walking)
+                .routeCache(cache)
+                .build();
+
+        assertEquals(walking.getWalkingTripTime(TU_BERLIN, ALEXANDERPLATZ),
+                service.getTripTime(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING));
+        service.getTripTime(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING.plusHours(1));
+        assertEquals(2, walking.calls.get());
+
+        RouteSummary summary = service.getRouteSummary(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+        RouteSummary cachedSummary = service.getRouteSummary(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ,
+                EVENING.plusHours(1));
+        assertEquals(3, walking.calls.get());
+        assertEquals(summary.getTotalDuration(), cachedSummary.getTotalDuration());
+        assertEquals(EVENING.plusHours(1), cachedSummary.getDepartureTime());
+
+        Location[] starts = {TU_BERLIN, HAUPTBAHNHOF};
+        Location[] destinations = {ALEXANDERPLATZ, POTSDAMER_PLATZ};
+        List<TimeMatrixEntry> matrix = service.getMatrix(TransportMode.WALKING, starts, destinations, EVENING);
+        assertEquals(4, walking.matrixCells.get());
+        Location[] moreDestinations = {ALEXANDERPLATZ, POTSDAMER_PLATZ, SIEGESSAEULE};
+        List<TimeMatrixEntry> largerMatrix = service.getMatrix(TransportMode.WALKING, starts, moreDestinations, EVENING);
+        // only the new column was requested
+        assertEquals(6, walking.matrixCells.get());
+        assertEquals(6, largerMatrix.size());
+        assertEquals(matrix.get(3).getTime(), largerMatrix.get(4).getTime());
+        for (TimeMatrixEntry entry : largerMatrix) {
+            assertEquals(walking.getWalkingTripTime(starts[entry.getFromIndex()], moreDestinations[entry.getToIndex()]),
+                    entry.getTime());
+        }
+    }
+
+    @Test
+    public void tripTimeKeepsARouteSummaryCachedMeanwhile() throws RoutingAPIException {
+        RouteCacheKey key = cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+        RouteSummary summary = new RouteSummary();
+        summary.setTotalDuration(1234);
+        summary.setDepartureTime(EVENING);
+        StraightLineWalkingDirectionsAPI walking = new StraightLineWalkingDirectionsAPI() {
+            @Override
+            public int getWalkingTripTime(Location startLocation, Location destinationLocation) {
+                // the route summary of the trip is requested and cached while its time is computed
+                cache.put(key, CachedRoute.ofRouteSummary(summary));
+                return super.getWalkingTripTime(startLocation, destinationLocation);
+            }
+        };
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .walkingDirectionsAPI(walking)
+                .routeCache(cache)
+                .build();
+
+        service.getTripTime(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+        assertTrue(cache.get(key).hasRouteSummary());
+        assertEquals(1234, service.getRouteSummary(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING)
+                .getTotalDuration());
+        assertEquals(1, walking.calls.get());
+
+        // a trip without a summary is still replaced
+        cache.putKeepingSummary(key, CachedRoute.ofRouteSummary(summary));
+        RouteCacheKey other = cache.createKey(TransportMode.WALKING, TU_BERLIN, HAUPTBAHNHOF, EVENING);
+        cache.put(other, CachedRoute.ofTripTime(600));
+        cache.putKeepingSummary(other, CachedRoute.ofTripTime(700));
+        assertEquals(700, cache.get(other).getTime());
+    }
+
+    @Test
+    public void travelTimeMatrixMergesCachedAndRequestedCells() throws RoutingAPIException {
+        StraightLineWalkingDirectionsAPI walking = new StraightLineWalkingDirectionsAPI();
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .walkingDirectionsAPI(walking)
+                .routeCache(cache)
+                .build();
+
+        Location[] starts = {TU_BERLIN, HAUPTBAHNHOF};
+        service.getMatrix(TransportMode.WALKING, starts, new Location[]{ALEXANDERPLATZ}, EVENING);
+        assertEquals(2, walking.matrixCells.get());
+
+        Location[] destinations = {ALEXANDERPLATZ, POTSDAMER_PLATZ};
+        TravelTimeMatrix matrix = service.getTravelTimeMatrix(TransportMode.WALKING, starts, destinations, EVENING);
+        // only the new column was requested
+        assertEquals(4, walking.matrixCells.get());
+        assertEquals(2, matrix.getRowCount());
+        assertEquals(2, matrix.getColumnCount());
+        for (int i = 0; i < starts.length; i++) {
+            for (int j = 0; j < destinations.length; j++) {
+                assertEquals(walking.getWalkingTripTime(starts[i], destinations[j]), matrix.time(i, j));
+            }
+        }
+
+        TravelTimeMatrix cachedMatrix = service.getTravelTimeMatrix(TransportMode.WALKING, starts, destinations,
+                EVENING);
+        assertEquals(4, walking.matrixCells.get());
+        assertEquals(matrix.distance(1, 1), cachedMatrix.distance(1, 1), 0);
+    }
+}
@@ -0,0 +1,171 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link MatrixRequestExecutor} and the matrices of the {@link HereWrapper} which it executes.
+ */
+public class MatrixRequestExecutorTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+    private static final double UNTHROTTLED_RPS = 1_000_000;
+
+    private final ExecutorService pool = MatrixRequestExecutor.createPool(16);
+
+    @Test
+    public void respectsTheConcurrencyLimitOfTheProvider() throws RoutingAPIException {
+        MatrixRequestExecutor executor = new MatrixRequestExecutor.MatrixRequestExecutorBuilder()
+                .executorService(pool)
+                .maxConcurrency(3)
+                .build();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Integer> cells = executor.execute(4, 5, (row, column) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(5);
+            running.decrementAndGet();
+            return row * 5 + column;
+        }, null, Comparator.<Integer>naturalOrder());
+
+        assertEquals(20, cells.size());
+        for (int i = 0; i < cells.size(); i++) {
+            assertEquals(i, (int) cells.get(i));
+        }
+        assertTrue(maxRunning.get() <= 3);
+        assertEquals(3, executor.getAvailablePermits());
+    }
+
+    @Test
+    public void streamsResultsInCompletionOrder() throws RoutingAPIException {
+        MatrixRequestExecutor executor = new MatrixRequestExecutor.MatrixRequestExecutorBuilder()
+                .executorService(pool)
+                .maxConcurrency(4)
+                .build();
+        List<Integer> completionOrder = Collections.synchronizedList(new ArrayList<>());
+
+        List<Integer> cells = executor.execute(1, 4, (row, column) -> {
+            // the first cell takes longest
+            sleep(column == 0 ? 200 : 10);
+            return column;
+        }, completionOrder::add, Comparator.<Integer>naturalOrder());
+
+        assertEquals(4, completionOrder.size());
+        assertEquals(0, (int) completionOrder.get(3));
+        assertEquals(0, (int) cells.get(0));
+    }
+
+    @Test
+    public void firstFailureCancelsOutstandingCells() {
+        MatrixRequestExecutor executor = new MatrixRequestExecutor.MatrixRequestExecutorBuilder()
+                .executorService(pool)
+                .maxConcurrency(2)
+                .build();
+        AtomicInteger started = new AtomicInteger();
+
+        try {
+            executor.execute(10, 10, (row, column) -> {
+                started.incrementAndGet();
+                if (row == 0 && column == 1) {
+                    throw new RoutingAPIException(RoutingAPIException.ErrorCode.API_ERROR_INTERNAL);
+                }
+                sleep(20);
+                return column;
+            }, null, Comparator.<Integer>naturalOrder());
+            fail("the failing cell should fail the matrix");
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.API_ERROR_INTERNAL, e.getCode());
+        }
+
+        assertTrue(started.get() < 100);
+        // permits of cancelled cells are returned once the running ones finished
+        sleep(100);
+        assertEquals(2, executor.getAvailablePermits());
+    }
+
+    @Test
+    public void asyncHereMatrixRespectsTheConcurrencyLimitAndStopsAtTheFirstFailure() throws Exception {
+        String route = new String(Files.readAllBytes(Paths.get(getClass()
+                .getResource("/responses/here-public-transport-route.json").toURI())), StandardCharsets.UTF_8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger failing = new AtomicInteger();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(20);
+                running.decrementAndGet();
+                return failing.get() > 0 && failing.decrementAndGet() == 0 ?
+                        new MockResponse().setResponseCode(500) : new MockResponse().setBody(route);
+            }
+        });
+        server.start();
+        try {
+            RequestScheduler scheduler = new RequestScheduler(new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                    .initialRate(UNTHROTTLED_RPS)
+                    .bounds(UNTHROTTLED_RPS, UNTHROTTLED_RPS)
+                    .build());
+            HereWrapper hereWrapper = new HereWrapper("app-id", "app-code", new HttpTransport.HttpTransportBuilder()
+                    .build(), new MatrixRequestExecutor.MatrixRequestExecutorBuilder().maxConcurrency(2),
+                    scheduler, server.url("/calculateroute.json").toString());
+            Location[] starts = {TU_BERLIN, ALEXANDERPLATZ, HAUPTBAHNHOF};
+            Location[] destinations = {ALEXANDERPLATZ, HAUPTBAHNHOF, TU_BERLIN, TU_BERLIN};
+
+            List<TimeMatrixEntry> entries = hereWrapper.getMultiModalMatrixAsync(starts, destinations, EVENING)
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(12, entries.size());
+            assertEquals(2, entries.get(9).getFromIndex());
+            assertEquals(1, entries.get(9).getToIndex());
+            assertTrue(maxRunning.get() <= 2);
+            // the executor acquires the permit of each cell, the cells do not acquire another one
+            assertEquals(12, scheduler.getGrantedCount());
+
+            // the fourth request fails, after which no further cell is started
+            failing.set(4);
+            try {
+                hereWrapper.getMultiModalMatrixAsync(starts, destinations, EVENING).get(10, TimeUnit.SECONDS);
+                fail("the failing cell should fail the matrix");
+            } catch (ExecutionException e) {
+                // the error page is not json
+                assertEquals(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON,
+                        ((RoutingAPIException) e.getCause()).getCode());
+            }
+            sleep(100);
+            assertTrue(server.getRequestCount() < 12 + 12);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
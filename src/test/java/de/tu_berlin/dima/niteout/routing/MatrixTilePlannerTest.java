@@ -0,0 +1,235 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import de.tu_berlin.dima.niteout.routing.model.TravelTimeMatrix;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link MatrixTilePlanner}, {@link DistinctLocations} and the tiled matrices of the
+ * {@link MapzenMatrixApiWrapper}.
+ */
+public class MatrixTilePlannerTest {
+
+    @Test
+    public void smallMatrixIsASingleTile() {
+        List<MatrixTilePlanner.Tile> tiles = MatrixTilePlanner.plan(20, 30, 50);
+        assertEquals(1, tiles.size());
+        assertEquals(20, tiles.get(0).getRowCount());
+        assertEquals(30, tiles.get(0).getColumnCount());
+    }
+
+    @Test
+    public void tilesCoverEveryCellOnceWithinTheLimit() {
+        int[][] sizes = {{100, 100}, {1, 500}, {500, 1}, {49, 2}, {51, 51}, {7, 300}, {0, 10}};
+        for (int[] size : sizes) {
+            int[][] covered = new int[size[0]][size[1]];
+            for (MatrixTilePlanner.Tile tile : MatrixTilePlanner.plan(size[0], size[1], 50)) {
+                assertTrue(tile.toString(), tile.getRowCount() + tile.getColumnCount() <= 50);
+                for (int i = tile.getFirstRow(); i < tile.getFirstRow() + tile.getRowCount(); i++) {
+                    for (int j = tile.getFirstColumn(); j < tile.getFirstColumn() + tile.getColumnCount(); j++) {
+                        covered[i][j]++;
+                    }
+                }
+            }
+            for (int[] row : covered) {
+                for (int count : row) {
+                    assertEquals(1, count);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void usesTheFewestRequests() {
+        // 25 + 25 locations per tile
+        assertEquals(16, MatrixTilePlanner.plan(100, 100, 50).size());
+        // a single start location leaves room for 49 destinations per tile
+        assertEquals(3, MatrixTilePlanner.plan(1, 140, 50).size());
+    }
+
+    @Test
+    public void stitchesTheTilesWithGlobalIndices() throws RoutingAPIException {
+        AtomicInteger requests = new AtomicInteger();
+        MapzenMatrixApiWrapper wrapper = new MapzenMatrixApiWrapper("key", HttpTransport.getDefault(),
+                new MatrixRequestExecutor.MatrixRequestExecutorBuilder().maxConcurrency(4).build()) {
+            @Override
+            List<TimeMatrixEntry> requestTile(Location[] startLocations, Location[] destinationLocations) {
+                requests.incrementAndGet();
+                assertTrue(startLocations.length + destinationLocations.length <= MAX_MATRIX_LOCATIONS);
+                return entries(startLocations, destinationLocations);
+            }
+        };
+
+        Location[] starts = locations(60, 0);
+        Location[] destinations = locations(70, 1);
+        TravelTimeMatrix matrix = wrapper.getWalkingTravelTimeMatrix(starts, destinations);
+
+        assertEquals(MatrixTilePlanner.plan(60, 70, 50).size(), requests.get());
+        for (int i = 0; i < starts.length; i++) {
+            for (int j = 0; j < destinations.length; j++) {
+                assertEquals(time(starts[i], destinations[j]), matrix.time(i, j));
+            }
+        }
+        List<TimeMatrixEntry> entries = wrapper.getWalkingMatrix(starts, destinations);
+        assertEquals(60 * 70, entries.size());
+        assertEquals(time(starts[1], destinations[2]), entries.get(72).getTime());
+    }
+
+    @Test
+    public void asyncMatrixRequestsTheTilesOfTheDistinctLocationsWithinTheLimit() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        MapzenMatrixApiWrapper wrapper = new MapzenMatrixApiWrapper("key", HttpTransport.getDefault(),
+                new MatrixRequestExecutor.MatrixRequestExecutorBuilder().maxConcurrency(2).build()) {
+            @Override
+            CompletableFuture<List<TimeMatrixEntry>> requestTileAsync(Location[] startLocations,
+                                                                      Location[] destinationLocations) {
+                requests.incrementAndGet();
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                assertTrue(startLocations.length + destinationLocations.length <= MAX_MATRIX_LOCATIONS);
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    active.decrementAndGet();
+                    return entries(startLocations, destinationLocations);
+                });
+            }
+        };
+
+        // 60 distinct start locations, each given twice
+        Location[] distinctStarts = locations(60, 0);
+        Location[] starts = new Location[120];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = distinctStarts[i % 60];
+        }
+        Location[] destinations = locations(70, 1);
+        List<TimeMatrixEntry> entries = wrapper.getWalkingMatrixAsync(starts, destinations).get();
+
+        assertEquals(MatrixTilePlanner.plan(60, 70, 50).size(), requests.get());
+        assertEquals(2, maxActive.get());
+        assertEquals(120 * 70, entries.size());
+        assertEquals(time(starts[61], destinations[2]), entries.get(61 * 70 + 2).getTime());
+        assertEquals(61, entries.get(61 * 70 + 2).getFromIndex());
+    }
+
+    @Test
+    public void upperTriangleTilesCoverEveryCellOnOrAboveTheDiagonalOnce() {
+        List<MatrixTilePlanner.Tile> tiles = MatrixTilePlanner.planUpperTriangle(120, 50);
+        // 5 blocks of 24 locations
+        assertEquals(5 * 6 / 2, tiles.size());
+        int[][] covered = new int[120][120];
+        for (MatrixTilePlanner.Tile tile : tiles) {
+            assertTrue(tile.toString(), tile.getRowCount() + tile.getColumnCount() <= 50);
+            for (int i = tile.getFirstRow(); i < tile.getFirstRow() + tile.getRowCount(); i++) {
+                for (int j = tile.getFirstColumn(); j < tile.getFirstColumn() + tile.getColumnCount(); j++) {
+                    covered[i][j]++;
+                }
+            }
+        }
+        for (int i = 0; i < 120; i++) {
+            for (int j = i; j < 120; j++) {
+                assertEquals(1, covered[i][j]);
+            }
+        }
+    }
+
+    @Test
+    public void mergesIdenticalAndNearbyLocations() {
+        Location[] locations = {new Location(52.5, 13.4), new Location(52.51, 13.4), new Location(52.5, 13.4),
+                new Location(52.50001, 13.40001)};
+
+        DistinctLocations identical = DistinctLocations.of(locations, 0);
+        assertEquals(3, identical.getLocations().length);
+        assertEquals(identical.getIndex(0), identical.getIndex(2));
+
+        // the last location is about 1.3 m away from the first
+        DistinctLocations nearby = DistinctLocations.of(locations, 5);
+        assertEquals(2, nearby.getLocations().length);
+        assertEquals(0, nearby.getIndex(3));
+        assertEquals(1, nearby.getIndex(1));
+    }
+
+    @Test
+    public void symmetricMatrixRequestsTheUpperTriangleOfTheDistinctLocations() throws RoutingAPIException {
+        AtomicInteger requests = new AtomicInteger();
+        MapzenMatrixApiWrapper wrapper = new MapzenMatrixApiWrapper("key", HttpTransport.getDefault(),
+                new MatrixRequestExecutor.MatrixRequestExecutorBuilder().maxConcurrency(4).build()) {
+            @Override
+            List<TimeMatrixEntry> requestTile(Location[] startLocations, Location[] destinationLocations) {
+                requests.incrementAndGet();
+                assertTrue(startLocations.length + destinationLocations.length <= MAX_MATRIX_LOCATIONS);
+                return entries(startLocations, destinationLocations);
+            }
+
+            @Override
+            List<TimeMatrixEntry> requestManyToMany(Location[] locations) {
+                requests.incrementAndGet();
+                assertTrue(locations.length <= MAX_MATRIX_LOCATIONS);
+                return entries(locations, locations);
+            }
+        };
+
+        // 100 distinct locations, each given twice
+        Location[] distinct = locations(100, 0);
+        Location[] locations = new Location[200];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = distinct[i % 100];
+        }
+
+        TravelTimeMatrix symmetric = wrapper.getWalkingTravelTimeMatrix(locations, 0, true);
+        // 4 blocks of 25 locations
+        assertEquals(4 * 5 / 2, requests.getAndSet(0));
+        for (int i = 0; i < locations.length; i++) {
+            for (int j = 0; j < locations.length; j++) {
+                // the tiles on the diagonal are requested in both directions, the others are mirrored
+                boolean sameBlock = i % 100 / 25 == j % 100 / 25;
+                int row = sameBlock ? i % 100 : Math.min(i % 100, j % 100);
+                int column = sameBlock ? j % 100 : Math.max(i % 100, j % 100);
+                assertEquals(time(distinct[row], distinct[column]), symmetric.time(i, j));
+            }
+        }
+
+        TravelTimeMatrix full = wrapper.getWalkingTravelTimeMatrix(locations, 0, false);
+        assertEquals(MatrixTilePlanner.plan(100, 100, 50).size(), requests.getAndSet(0));
+        assertEquals(time(distinct[70], distinct[3]), full.time(170, 103));
+
+        assertEquals(200 * 200, wrapper.getWalkingMatrix(locations).size());
+    }
+
+    private static List<TimeMatrixEntry> entries(Location[] startLocations, Location[] destinationLocations) {
+        List<TimeMatrixEntry> entries = new ArrayList<>();
+        for (int i = 0; i < startLocations.length; i++) {
+            for (int j = 0; j < destinationLocations.length; j++) {
+                entries.add(new TimeMatrixEntry(i, j, time(startLocations[i], destinationLocations[j]), 0.5,
+                        DistanceUnits.KILOMETERS));
+            }
+        }
+        return entries;
+    }
+
+    private static Location[] locations(int count, double longitude) {
+        Location[] locations = new Location[count];
+        for (int i = 0; i < count; i++) {
+            locations[i] = new Location(i, longitude);
+        }
+        return locations;
+    }
+
+    // identifies the pair of locations
+    private static int time(Location start, Location destination) {
+        return (int) start.getLatitude() * 1000 + (int) destination.getLatitude();
+    }
+}
@@ -0,0 +1,110 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Address;
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link OfflineGeocoder} and the {@link AddressIndex}.
+ */
+public class OfflineGeocoderTest {
+
+    private static final List<String> ADDRESSES = Arrays.asList(
+            "LON,LAT,NUMBER,STREET,UNIT,CITY,DISTRICT,REGION,POSTCODE,ID,HASH",
+            "13.3259,52.5125,135,Straße des 17. Juni,,Berlin,,BE,10623,,a1",
+            // the same house number twice, the first one wins
+            "13.3300,52.5130,135,Straße des 17. Juni,,Berlin,,BE,10623,,a2",
+            "13.4000,52.5000,1,Hauptstraße,,Berlin,,BE,10827,,b1",
+            "13.4000,52.5010,11,Hauptstraße,,Berlin,,BE,10827,,b2",
+            "13.4100,52.5000,2,Hauptstraße,,Berlin,,BE,10827,,b3",
+            "13.4100,52.5100,12,Hauptstraße,,Berlin,,BE,10827,,b4",
+            "13.4050,52.5050,12a,Hauptstraße,,Berlin,,BE,10827,,b5",
+            "13.4200,52.5200,90,Hauptstraße,,Berlin,,BE,10827,,b6",
+            "13.3500,52.4500,1,Hauptstraße,,Berlin,,BE,12159,,c1",
+            "13.3700,52.5250,\"5, Hinterhaus\",Europaplatz,,Berlin,,BE,10557,,d1",
+            // rows which miss a field or have no house number are ignored
+            "13.3700,52.5250,7,Europaplatz,,Berlin,,BE,,,d2",
+            "13.3700,52.5250,ohne,Europaplatz,,Berlin,,BE,10557,,d3");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsAndInterpolatesHouseNumbers() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("berlin.csv");
+        Files.write(file, ADDRESSES, StandardCharsets.UTF_8);
+        AddressIndex index = AddressIndex.load(file);
+        assertEquals(4, index.getStreetCount());
+        assertEquals(9, index.getHouseCount());
+        OfflineGeocoder geocoder = new OfflineGeocoder.OfflineGeocoderBuilder()
+                .addressIndex(index)
+                .build();
+
+        assertLocation(52.5125, 13.3259, geocoder.getLocation(address("Str. des 17. Juni", "135", 10623)));
+        assertLocation(52.525, 13.37, geocoder.getLocation(address("Europaplatz", "5", 10557)));
+        assertLocation(52.45, 13.35, geocoder.getLocation(address("hauptstrasse", "1", 12159)));
+        // the suffix, or else the number without it
+        assertLocation(52.505, 13.405, geocoder.getLocation(address("Hauptstraße", "12 A", 10827)));
+        assertLocation(52.51, 13.41, geocoder.getLocation(address("Hauptstraße", "12b", 10827)));
+        // interpolated between the house numbers on the same side of the street
+        assertLocation(52.5002, 13.4, geocoder.getLocation(address("Hauptstraße", "3", 10827)));
+        assertLocation(52.504, 13.41, geocoder.getLocation(address("Hauptstraße", "6", 10827)));
+        // too far apart, or beyond the last house number
+        assertNull(geocoder.getLocation(address("Hauptstraße", "40", 10827)));
+        assertNull(geocoder.getLocation(address("Hauptstraße", "92", 10827)));
+        assertNull(geocoder.getLocation(address("Hauptstraße", "1", 10115)));
+        assertNull(geocoder.getLocation(address("Nebenstraße", "1", 10827)));
+
+        OfflineGeocoder exact = new OfflineGeocoder.OfflineGeocoderBuilder()
+                .addressIndex(index)
+                .maxInterpolationGap(0)
+                .build();
+        assertNull(exact.getLocation(address("Hauptstraße", "3", 10827)));
+    }
+
+    @Test
+    public void loadsATableOfAZipArchive() throws Exception {
+        Path archive = folder.getRoot().toPath().resolve("de.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("de/berlin.csv"));
+            zip.write(String.join("\n", ADDRESSES).getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        AddressIndex index = AddressIndex.load(archive, "de/berlin.csv");
+        assertEquals(9, index.getHouseCount());
+        try {
+            AddressIndex.load(archive, "de/hamburg.csv");
+            fail("the archive does not contain the table");
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID, e.getCode());
+        }
+    }
+
+    private static Address address(String street, String houseNumber, int postalCode) {
+        return new Address.AddressBuilder()
+                .street(street)
+                .houseNumber(houseNumber)
+                .city("Berlin")
+                .postalCode(postalCode)
+                .build();
+    }
+
+    private static void assertLocation(double latitude, double longitude, Location location) {
+        assertNotNull(location);
+        assertEquals(latitude, location.getLatitude(), 1e-6);
+        assertEquals(longitude, location.getLongitude(), 1e-6);
+    }
+}
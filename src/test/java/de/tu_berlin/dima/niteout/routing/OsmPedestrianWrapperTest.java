@@ -0,0 +1,229 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import com.google.protobuf.ByteString;
+import de.tu_berlin.dima.niteout.routing.model.*;
+import de.tu_berlin.dima.niteout.routing.model.mapzen.PedestrianCostingOption;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.openstreetmap.osmosis.osmbinary.file.BlockOutputStream;
+import org.openstreetmap.osmosis.osmbinary.file.FileBlock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link OsmPedestrianWrapper} on a small extract with a residential street 1-2-3, a slightly longer
+ * footway 1-4-3 next to it and steps 3-5. A motorway, a footway pedestrians may not use and a separate footway far
+ * away are not part of the graph.
+ */
+public class OsmPedestrianWrapperTest {
+
+    private static final Location NODE_1 = new Location(52.5000, 13.4000);
+    private static final Location NODE_3 = new Location(52.5000, 13.4040);
+    private static final Location NODE_4 = new Location(52.5003, 13.4020);
+    private static final Location NODE_5 = new Location(52.5010, 13.4040);
+    private static final Location NODE_10 = new Location(52.5100, 13.4000);
+
+    private static final double WALKING_SPEED = 5.1 / 3.6;
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static PedestrianGraph graph;
+    private static OsmPedestrianWrapper wrapper;
+
+    @BeforeClass
+    public static void loadExtract() throws IOException, RoutingAPIException {
+        File extract = folder.newFile("mini.osm.pbf");
+        writeExtract(extract);
+        graph = PedestrianGraph.load(extract.toPath());
+        wrapper = new OsmPedestrianWrapper.OsmPedestrianWrapperBuilder()
+                .graph(graph)
+                .build();
+    }
+
+    @Test
+    public void keepsTheConnectedWalkableWays() {
+        assertEquals(5, graph.getNodeCount());
+        assertEquals(2 * 5, graph.getEdgeCount());
+    }
+
+    @Test
+    public void prefersTheFootwayUnlessItsFactorIsRemoved() throws RoutingAPIException {
+        double footway = GeoMath.haversineMeters(NODE_1, NODE_4) + GeoMath.haversineMeters(NODE_4, NODE_3);
+        double street = GeoMath.haversineMeters(NODE_1, NODE_3);
+        assertTrue(footway > street);
+
+        assertEquals(Math.round(footway / WALKING_SPEED), wrapper.getWalkingTripTime(NODE_1, NODE_3));
+
+        OsmPedestrianWrapper withoutFactor = new OsmPedestrianWrapper.OsmPedestrianWrapperBuilder()
+                .graph(graph)
+                .costingOption(PedestrianCostingOption.WALKING_FACTOR, 1.0)
+                .build();
+        assertEquals(Math.round(street / WALKING_SPEED), withoutFactor.getWalkingTripTime(NODE_1, NODE_3));
+    }
+
+    @Test
+    public void summaryHasTheWalkingTimeAndDistanceInKilometers() throws RoutingAPIException {
+        LocalDateTime departure = LocalDateTime.of(2017, 2, 10, 8, 0);
+        RouteSummary summary = wrapper.getWalkingRouteSummary(NODE_1, NODE_5, departure);
+
+        // the step penalty only affects the choice of the route, not its time
+        double distance = GeoMath.haversineMeters(NODE_1, NODE_4) + GeoMath.haversineMeters(NODE_4, NODE_3)
+                + GeoMath.haversineMeters(NODE_3, NODE_5);
+        assertEquals(Math.round(distance / WALKING_SPEED), summary.getTotalDuration());
+        assertEquals(distance / 1000, summary.getTotalDistance(), 1e-3);
+        assertEquals(summary.getTotalDuration(),
+                (int) summary.getModeOfTransportTravelTimes().get(TransportMode.WALKING));
+        assertEquals(departure, summary.getDepartureTime());
+        assertEquals(departure.plusSeconds(summary.getTotalDuration()), summary.getArrivalTime());
+    }
+
+    @Test
+    public void matrixMatchesSingleTrips() throws RoutingAPIException {
+        Location[] starts = {NODE_1, new Location(52.5001, 13.4041)};
+        Location[] destinations = {NODE_5, NODE_1, NODE_3};
+        List<TimeMatrixEntry> matrix = wrapper.getWalkingMatrix(starts, destinations);
+
+        assertEquals(6, matrix.size());
+        for (TimeMatrixEntry entry : matrix) {
+            assertEquals(wrapper.getWalkingTripTime(starts[entry.getFromIndex()], destinations[entry.getToIndex()]),
+                    entry.getTime());
+            assertEquals(DistanceUnits.KILOMETERS, entry.getUnits());
+        }
+        assertEquals(0, matrix.get(1).getTime());
+    }
+
+    @Test
+    public void failsFarFromAnyWalkableWay() {
+        try {
+            wrapper.getWalkingTripTime(NODE_1, NODE_10);
+            fail();
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.NO_ROUTE_FOUND, e.getCode());
+        }
+    }
+
+    @Test
+    public void prebuiltGraphAnswersLikeTheExtract() throws RoutingAPIException, IOException {
+        File file = folder.newFile("mini.graph");
+        graph.save(file.toPath());
+        OsmPedestrianWrapper openedWrapper = new OsmPedestrianWrapper.OsmPedestrianWrapperBuilder()
+                .graph(PedestrianGraph.open(file.toPath()))
+                .build();
+
+        Location[] locations = {NODE_1, NODE_3, NODE_4, NODE_5};
+        List<TimeMatrixEntry> expected = wrapper.getWalkingMatrix(locations, locations);
+        List<TimeMatrixEntry> actual = openedWrapper.getWalkingMatrix(locations, locations);
+        for (int k = 0; k < expected.size(); k++) {
+            assertEquals(expected.get(k).getTime(), actual.get(k).getTime());
+            assertEquals(expected.get(k).getDistance(), actual.get(k).getDistance(), 0);
+        }
+
+        try {
+            GtfsTimetable.open(file.toPath());
+            fail();
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.LOCAL_DATA_INVALID, e.getCode());
+        }
+    }
+
+    @Test
+    public void classifiesWaysByTheirTags() {
+        assertEquals(PedestrianGraph.ALLEY,
+                PedestrianGraphBuilder.classify(tags("highway", "service", "service", "alley")));
+        assertEquals(PedestrianGraph.WALKWAY, PedestrianGraphBuilder.classify(tags("highway", "footway")));
+        assertEquals(-1, PedestrianGraphBuilder.classify(tags("highway", "motorway")));
+        assertEquals(-1, PedestrianGraphBuilder.classify(tags("highway", "residential", "foot", "no")));
+        assertEquals(PedestrianGraph.ROAD,
+                PedestrianGraphBuilder.classify(tags("highway", "residential", "access", "private", "foot", "yes")));
+        assertEquals(-1, PedestrianGraphBuilder.classify(tags("building", "yes")));
+    }
+
+    private static Map<String, String> tags(String... keysAndValues) {
+        Map<String, String> tags = new HashMap<>();
+        for (int k = 0; k < keysAndValues.length; k += 2) {
+            tags.put(keysAndValues[k], keysAndValues[k + 1]);
+        }
+        return tags;
+    }
+
+    /**
+     * Writes the extract in the protocol buffer format, with dense nodes and delta coded ids and coordinates.
+     */
+    private static void writeExtract(File file) throws IOException {
+        List<String> strings = new ArrayList<>(Collections.singletonList(""));
+
+        long[][] nodes = {
+                {1, 525000000, 134000000},
+                {2, 525000000, 134020000},
+                {3, 525000000, 134040000},
+                {4, 525003000, 134020000},
+                {5, 525010000, 134040000},
+                {6, 525010000, 134000000},
+                {10, 525100000, 134000000},
+                {11, 525100000, 134010000},
+                // a tree, which is not part of a way
+                {12, 525005000, 134005000},
+        };
+        Osmformat.DenseNodes.Builder dense = Osmformat.DenseNodes.newBuilder();
+        long[] last = new long[3];
+        for (long[] node : nodes) {
+            dense.addId(node[0] - last[0]).addLat(node[1] - last[1]).addLon(node[2] - last[2]);
+            last = node;
+        }
+
+        Osmformat.PrimitiveGroup.Builder ways = Osmformat.PrimitiveGroup.newBuilder();
+        ways.addWays(way(strings, 100, new long[]{1, 2, 3}, "highway", "residential"));
+        ways.addWays(way(strings, 101, new long[]{1, 4, 3}, "highway", "footway"));
+        ways.addWays(way(strings, 102, new long[]{3, 5}, "highway", "steps"));
+        ways.addWays(way(strings, 103, new long[]{1, 6}, "highway", "motorway"));
+        ways.addWays(way(strings, 104, new long[]{6, 5}, "highway", "footway", "foot", "no"));
+        ways.addWays(way(strings, 105, new long[]{10, 11}, "highway", "footway"));
+
+        Osmformat.StringTable.Builder stringTable = Osmformat.StringTable.newBuilder();
+        strings.forEach(string -> stringTable.addS(ByteString.copyFromUtf8(string)));
+        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.newBuilder()
+                .setStringtable(stringTable)
+                .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(dense))
+                .addPrimitivegroup(ways)
+                .build();
+        Osmformat.HeaderBlock header = Osmformat.HeaderBlock.newBuilder()
+                .addRequiredFeatures("OsmSchema-V0.6")
+                .addRequiredFeatures("DenseNodes")
+                .build();
+
+        BlockOutputStream output = new BlockOutputStream(new FileOutputStream(file));
+        output.write(FileBlock.newInstance("OSMHeader", header.toByteString(), null));
+        output.write(FileBlock.newInstance("OSMData", block.toByteString(), null));
+        output.close();
+    }
+
+    private static Osmformat.Way way(List<String> strings, long id, long[] nodeIds, String... keysAndValues) {
+        Osmformat.Way.Builder way = Osmformat.Way.newBuilder().setId(id);
+        for (int k = 0; k < keysAndValues.length; k += 2) {
+            way.addKeys(stringId(strings, keysAndValues[k])).addVals(stringId(strings, keysAndValues[k + 1]));
+        }
+        long last = 0;
+        for (long nodeId : nodeIds) {
+            way.addRefs(nodeId - last);
+            last = nodeId;
+        }
+        return way.build();
+    }
+
+    private static int stringId(List<String> strings, String string) {
+        if (!strings.contains(string)) {
+            strings.add(string);
+        }
+        return strings.indexOf(string);
+    }
+}
@@ -0,0 +1,259 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link PersistentRouteCache} and the {@link TieredRouteCache}.
+ */
+public class PersistentRouteCacheTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void tripsSurviveARestart() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("routes.log");
+        RouteSummary summary = new RouteSummary();
+        summary.setTotalDuration(1500);
+        summary.setTotalDistance(6.2);
+        summary.setNumberOfChanges(1);
+        summary.setDepartureTime(EVENING);
+        summary.setArrivalTime(EVENING.plusSeconds(1500));
+        HashMap<TransportMode, Integer> modeTimes = new HashMap<>();
+        modeTimes.put(TransportMode.PUBLIC_TRANSPORT, 1200);
+        modeTimes.put(TransportMode.WALKING, 300);
+        summary.setModeOfTransportTravelTimes(modeTimes);
+
+        RouteCacheKey tripTime;
+        RouteCacheKey matrixCell;
+        RouteCacheKey routeSummary;
+        try (PersistentRouteCache cache = open(file)) {
+            tripTime = cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            matrixCell = cache.createKey(TransportMode.WALKING, TU_BERLIN, HAUPTBAHNHOF, EVENING);
+            routeSummary = cache.createKey(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            cache.put(tripTime, CachedRoute.ofTripTime(700));
+            cache.put(tripTime, CachedRoute.ofTripTime(600));
+            cache.put(matrixCell, CachedRoute.ofMatrixCell(900, 1.3, DistanceUnits.KILOMETERS));
+            cache.put(routeSummary, CachedRoute.ofRouteSummary(summary));
+            assertEquals(600, cache.get(tripTime).getTime());
+        }
+
+        try (PersistentRouteCache cache = open(file)) {
+            cache.awaitLoaded();
+            assertEquals(3, cache.size());
+            assertEquals(4, cache.getRecordCount());
+            assertEquals(600, cache.get(tripTime).getTime());
+            assertFalse(cache.get(tripTime).hasDistance());
+            CachedRoute cell = cache.get(matrixCell);
+            assertEquals(900, cell.getTime());
+            assertEquals(1.3, cell.getDistance(), 0);
+            assertEquals(DistanceUnits.KILOMETERS, cell.getUnits());
+            RouteSummary cached = cache.get(routeSummary).getRouteSummary();
+            assertEquals(1500, cached.getTotalDuration());
+            assertEquals(6.2, cached.getTotalDistance(), 0);
+            assertEquals(1, cached.getNumberOfChanges());
+            assertEquals(EVENING, cached.getDepartureTime());
+            assertEquals(EVENING.plusSeconds(1500), cached.getArrivalTime());
+            assertEquals(modeTimes, cached.getModeOfTransportTravelTimes());
+            assertEquals(4, cache.getStatistics().hitCount());
+        }
+    }
+
+    @Test
+    public void entriesExpireAndAreDroppedByCompaction() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("routes.log");
+        try (PersistentRouteCache cache = open(file)) {
+            RouteCacheKey walking = cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            RouteCacheKey publicTransport = cache.createKey(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN,
+                    ALEXANDERPLATZ, EVENING);
+            for (int time = 1; time <= 10; time++) {
+                cache.put(walking, CachedRoute.ofTripTime(time));
+            }
+            cache.put(publicTransport, CachedRoute.ofTripTime(1200));
+            long size = Files.size(file);
+
+            now.addAndGet(Duration.ofHours(7).toMillis());
+            assertNull(cache.get(publicTransport));
+            assertEquals(10, cache.get(walking).getTime());
+            assertEquals(1, cache.getStatistics().evictionCount());
+
+            cache.compact();
+            assertEquals(1, cache.getRecordCount());
+            assertTrue(Files.size(file) < size / 5);
+            assertEquals(10, cache.get(walking).getTime());
+        }
+    }
+
+    @Test
+    public void closeWaitsForAPendingCompactionWhichFindsTheLogClosed() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("routes.log");
+        AtomicReference<Runnable> pending = new AtomicReference<>();
+        PersistentRouteCache cache = new PersistentRouteCache.PersistentRouteCacheBuilder()
+                .file(file)
+                .clock(now::get)
+                .compactionThreshold(4)
+                .compactionExecutor(pending::set)
+                .build();
+        cache.awaitLoaded();
+        RouteCacheKey key = cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+        for (int time = 1; time <= 5; time++) {
+            cache.put(key, CachedRoute.ofTripTime(time));
+        }
+        assertNotNull(pending.get());
+
+        // the compaction only starts once the cache is closing
+        AtomicBoolean started = new AtomicBoolean();
+        Thread compaction = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            started.set(true);
+            pending.get().run();
+        });
+        compaction.start();
+        cache.close();
+        assertTrue(started.get());
+        compaction.join();
+
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".compacting")));
+        try (PersistentRouteCache reopened = open(file)) {
+            reopened.awaitLoaded();
+            assertEquals(5, reopened.getRecordCount());
+            assertEquals(5, reopened.get(key).getTime());
+        }
+    }
+
+    @Test
+    public void tornRecordEndsTheScanAndDifferentSettingsDiscardTheLog() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("routes.log");
+        RouteCacheKey first;
+        RouteCacheKey second;
+        try (PersistentRouteCache cache = open(file)) {
+            first = cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            second = cache.createKey(TransportMode.WALKING, TU_BERLIN, HAUPTBAHNHOF, EVENING);
+            cache.put(first, CachedRoute.ofTripTime(600));
+            cache.put(second, CachedRoute.ofTripTime(900));
+        }
+        // a crash in the middle of the second record
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        try (PersistentRouteCache cache = open(file)) {
+            cache.awaitLoaded();
+            assertEquals(600, cache.get(first).getTime());
+            assertNull(cache.get(second));
+            cache.put(second, CachedRoute.ofTripTime(900));
+        }
+        try (PersistentRouteCache cache = open(file)) {
+            cache.awaitLoaded();
+            assertEquals(600, cache.get(first).getTime());
+            assertEquals(900, cache.get(second).getTime());
+        }
+
+        try (PersistentRouteCache cache = new PersistentRouteCache.PersistentRouteCacheBuilder()
+                .file(file)
+                .gridSizeMeters(50)
+                .build()) {
+            cache.awaitLoaded();
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    public void tieredCacheCopiesTripsIntoTheFirstTier() throws RoutingAPIException, IOException {
+        InMemoryRouteCache memory = new InMemoryRouteCache.InMemoryRouteCacheBuilder()
+                .clock(now::get)
+                .build();
+        try (PersistentRouteCache disk = open(folder.getRoot().toPath().resolve("routes.log"))) {
+            TieredRouteCache cache = new TieredRouteCache(memory, disk);
+            RouteCacheKey key = cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            disk.put(key, CachedRoute.ofTripTime(600));
+
+            assertEquals(600, cache.get(key).getTime());
+            assertEquals(600, memory.get(key).getTime());
+            assertEquals(600, cache.get(key).getTime());
+            assertNull(cache.get(cache.createKey(TransportMode.WALKING, TU_BERLIN, HAUPTBAHNHOF, EVENING)));
+            assertEquals(1, disk.getStatistics().hitCount());
+            assertEquals(1, cache.getStatistics().missCount());
+        }
+    }
+
+    @Test
+    public void copiedTripsExpireWhenTheyExpireInTheSecondTier() throws RoutingAPIException, IOException {
+        InMemoryRouteCache memory = new InMemoryRouteCache.InMemoryRouteCacheBuilder()
+                .clock(now::get)
+                .build();
+        try (PersistentRouteCache disk = open(folder.getRoot().toPath().resolve("routes.log"))) {
+            TieredRouteCache cache = new TieredRouteCache(memory, disk);
+            RouteCacheKey key = cache.createKey(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            disk.put(key, CachedRoute.ofTripTime(900));
+
+            now.addAndGet(Duration.ofHours(5).toMillis());
+            assertEquals(900, cache.get(key).getTime());
+            assertEquals(900, memory.get(key).getTime());
+            // six hours after the trip was put, not after it was copied
+            now.addAndGet(Duration.ofHours(1).toMillis());
+            assertNull(memory.get(key));
+            assertNull(cache.get(key));
+            // the expired copy is counted as a miss of the first tier
+            assertEquals(1, memory.getStatistics().hitCount());
+            assertEquals(3, memory.getStatistics().missCount());
+
+            // a trip put into the first tier lives as long as the first tier keeps it
+            cache.put(key, CachedRoute.ofTripTime(960));
+            now.addAndGet(Duration.ofHours(1).toMillis());
+            assertEquals(960, memory.get(key).getTime());
+        }
+    }
+
+    @Test
+    public void tripTimeKeepsACachedRouteSummaryInBothTiers() throws RoutingAPIException, IOException {
+        InMemoryRouteCache memory = new InMemoryRouteCache.InMemoryRouteCacheBuilder().build();
+        try (PersistentRouteCache disk = open(folder.getRoot().toPath().resolve("routes.log"))) {
+            TieredRouteCache cache = new TieredRouteCache(memory, disk);
+            RouteCacheKey key = cache.createKey(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            RouteSummary summary = new RouteSummary();
+            summary.setTotalDuration(1500);
+            cache.put(key, CachedRoute.ofRouteSummary(summary));
+
+            cache.putKeepingSummary(key, CachedRoute.ofTripTime(600));
+            assertEquals(0, disk.getStatistics().hitCount());
+            assertEquals(0, memory.getStatistics().hitCount());
+            assertTrue(memory.get(key).hasRouteSummary());
+            assertTrue(disk.get(key).hasRouteSummary());
+            assertEquals(1, disk.getRecordCount());
+        }
+    }
+
+    private PersistentRouteCache open(Path file) throws RoutingAPIException {
+        return new PersistentRouteCache.PersistentRouteCacheBuilder()
+                .file(file)
+                .clock(now::get)
+                .build();
+    }
+}
@@ -0,0 +1,129 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link RequestScheduler} and {@link AdaptiveRateLimiter}.
+ */
+public class RequestSchedulerTest {
+
+    @Test
+    public void rateIncreasesAdditivelyAndDecreasesMultiplicatively() {
+        AtomicLong now = new AtomicLong();
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                .initialRate(2)
+                .bounds(0.5, 4)
+                .additiveIncrease(1)
+                .ticker(now::get)
+                .build();
+
+        // a second of successful requests at 2 requests per second
+        rateLimiter.onSuccess();
+        rateLimiter.onSuccess();
+        assertEquals(2.9, rateLimiter.getRate(), 0.05);
+
+        rateLimiter.onServerError();
+        assertEquals(1.45, rateLimiter.getRate(), 0.05);
+        // the requests which were in flight at the same time do not count again
+        rateLimiter.onServerError();
+        assertEquals(1.45, rateLimiter.getRate(), 0.05);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        rateLimiter.onServerError();
+        rateLimiter.onServerError();
+        assertEquals(0.73, rateLimiter.getRate(), 0.05);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        rateLimiter.onServerError();
+        assertEquals(0.5, rateLimiter.getRate(), 0);
+    }
+
+    @Test
+    public void permitsAreSpacedByTheRateAndBlockedByRetryAfter() {
+        AtomicLong now = new AtomicLong();
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                .initialRate(4)
+                .ticker(now::get)
+                .build();
+
+        assertEquals(0, rateLimiter.tryAcquire());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), rateLimiter.tryAcquire());
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(0, rateLimiter.tryAcquire());
+
+        rateLimiter.onThrottled(3000);
+        assertEquals(TimeUnit.SECONDS.toNanos(3), rateLimiter.tryAcquire());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(3));
+        assertEquals(0, rateLimiter.tryAcquire());
+    }
+
+    @Test
+    public void parsesRetryAfterAsSecondsOrDate() {
+        assertEquals(120_000, AdaptiveRateLimiter.parseRetryAfterMillis("120", 0));
+        assertEquals(30_000, AdaptiveRateLimiter.parseRetryAfterMillis("Thu, 01 Jan 1970 00:00:40 GMT", 10_000));
+        assertEquals(-1, AdaptiveRateLimiter.parseRetryAfterMillis("soon", 0));
+        assertEquals(-1, AdaptiveRateLimiter.parseRetryAfterMillis(null, 0));
+    }
+
+    @Test
+    public void interactiveRequestsOvertakeAndCallersTakeTurns() {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                .initialRate(100)
+                .bounds(1, 100)
+                .build();
+        // hold back all permits until every request is queued
+        rateLimiter.onThrottled(300);
+        RequestScheduler scheduler = new RequestScheduler(rateLimiter);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> permits = new ArrayList<>();
+
+        Object matrixA = new Object();
+        Object matrixB = new Object();
+        for (int i = 0; i < 3; i++) {
+            permits.add(scheduler.acquireAsync(RequestScheduler.Priority.BULK, matrixA)
+                    .thenRun(() -> order.add("a")));
+        }
+        for (int i = 0; i < 2; i++) {
+            permits.add(scheduler.acquireAsync(RequestScheduler.Priority.BULK, matrixB)
+                    .thenRun(() -> order.add("b")));
+        }
+        permits.add(scheduler.acquireAsync(RequestScheduler.Priority.INTERACTIVE, this)
+                .thenRun(() -> order.add("trip")));
+        assertEquals(6, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getQueueDepth(RequestScheduler.Priority.INTERACTIVE));
+
+        CompletableFuture.allOf(permits.toArray(new CompletableFuture<?>[0])).join();
+
+        assertEquals(Arrays.asList("trip", "a", "b", "a", "b", "a"), order);
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(6, scheduler.getGrantedCount());
+        assertTrue(scheduler.getMaxWaitMillis() >= 250);
+        assertTrue(scheduler.getAverageWaitMillis() >= 250);
+    }
+
+    @Test
+    public void overloadResponsesCanBeRetried() {
+        RequestScheduler scheduler = new RequestScheduler(new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                .build());
+        assertFalse(scheduler.onResponse(200, null));
+        double rate = scheduler.getRate();
+        // only a successful request increases the rate
+        assertFalse(scheduler.onResponse(400, null));
+        assertFalse(scheduler.onResponse(404, null));
+        assertEquals(rate, scheduler.getRate(), 0);
+        assertTrue(scheduler.onResponse(429, "1"));
+        assertTrue(scheduler.onResponse(503, null));
+        assertFalse(scheduler.onResponse(500, null));
+        assertEquals(RoutingAPIException.ErrorCode.API_ERROR_RATE_LIMITED,
+                RoutingAPIException.buildFromStatusCode(429).getCode());
+    }
+}
@@ -0,0 +1,161 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.DistanceUnits;
+import de.tu_berlin.dima.niteout.routing.model.RouteSummary;
+import de.tu_berlin.dima.niteout.routing.model.TimeMatrixEntry;
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+import okhttp3.ResponseBody;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the streaming readers of the HERE and Mapzen responses against reading the object tree of the responses, as
+ * the wrappers used to do. The latency and allocation of both are compared by the {@code ResponseParsingBenchmark} of
+ * the JMH benchmarks.
+ */
+public class ResponseParsingTest {
+
+    private static String hereRoute;
+    private static String mapzenMatrix;
+
+    @BeforeClass
+    public static void readResponses() throws Exception {
+        hereRoute = readResource("/responses/here-public-transport-route.json");
+        mapzenMatrix = readResource("/responses/mapzen-sources-to-targets.json");
+    }
+
+    @Test
+    public void hereRouteSummaryMatchesTheTree() throws RoutingAPIException {
+        RouteSummary summary = HereWrapper.readRouteSummary(body(hereRoute));
+
+        assertEquals(6393, summary.getTotalDuration());
+        assertEquals(3835, (int) summary.getModeOfTransportTravelTimes().get(TransportMode.WALKING));
+        assertEquals(2558, (int) summary.getModeOfTransportTravelTimes().get(TransportMode.PUBLIC_TRANSPORT));
+        assertEquals(3, summary.getNumberOfChanges());
+        assertEquals(LocalDateTime.of(2017, 2, 7, 11, 0), summary.getDepartureTime());
+        assertEquals(summary.getDepartureTime().plusSeconds(6393), summary.getArrivalTime());
+
+        JsonObject summaryTree = Json.createReader(body(hereRoute).charStream()).readObject()
+                .getJsonObject("response").getJsonArray("route").getJsonObject(0).getJsonObject("summary");
+        assertEquals(summaryTree.getInt("distance"), summary.getTotalDistance(), 0);
+
+        TimeMatrixEntry entry = HereWrapper.readTimeMatrixEntry(2, 3, body(hereRoute));
+        assertEquals(2, entry.getFromIndex());
+        assertEquals(3, entry.getToIndex());
+        assertEquals(summaryTree.getInt("baseTime"), entry.getTime());
+        assertEquals(summaryTree.getInt("distance"), entry.getDistance(), 0);
+    }
+
+    @Test
+    public void hereWalkingOnlyRouteHasMinusOneChanges() throws RoutingAPIException {
+        String walkingOnly = "{\"response\":{\"route\":[{\"leg\":[{\"maneuver\":[{\"travelTime\":900," +
+                "\"_type\":\"PrivateTransportManeuverType\"}]}],\"publicTransportLine\":[]," +
+                "\"summary\":{\"distance\":1200,\"baseTime\":900,\"travelTime\":900," +
+                "\"departure\":\"2017-02-07T11:00:00+01:00\"}}]}}";
+        RouteSummary summary = HereWrapper.readRouteSummary(body(walkingOnly));
+
+        // the number of lines minus one, as it was read from the tree
+        int linesTree = Json.createReader(body(walkingOnly).charStream()).readObject().getJsonObject("response")
+                .getJsonArray("route").getJsonObject(0).getJsonArray("publicTransportLine").size();
+        assertEquals(linesTree - 1, summary.getNumberOfChanges());
+        assertEquals(-1, summary.getNumberOfChanges());
+        assertEquals(900, (int) summary.getModeOfTransportTravelTimes().get(TransportMode.WALKING));
+        assertEquals(0, (int) summary.getModeOfTransportTravelTimes().get(TransportMode.PUBLIC_TRANSPORT));
+    }
+
+    @Test
+    public void hereErrorResponseHasNoRoutes() {
+        String error = "{\"_type\":\"ns2:RoutingServiceErrorType\",\"type\":\"ApplicationError\"," +
+                "\"subtype\":\"NoRouteFound\",\"details\":\"Error is NGEO_ERROR_ROUTE_NO_END_POINT\"," +
+                "\"additionalData\":[{\"key\":\"error_code\",\"value\":\"NGEO_ERROR_ROUTE_NO_END_POINT\"}]," +
+                "\"metaInfo\":{\"timestamp\":\"2017-02-07T10:12:45Z\"}}";
+        try {
+            HereWrapper.readRouteSummary(body(error));
+            fail();
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, e.getCode());
+            assertTrue(e.getMessage().contains("NoRouteFound"));
+        }
+        try {
+            HereWrapper.readTimeMatrixEntry(0, 0, body("<html>Service Unavailable</html>"));
+            fail();
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, e.getCode());
+        }
+    }
+
+    @Test
+    public void mapzenMatrixMatchesTheTree() throws RoutingAPIException {
+        List<TimeMatrixEntry> streamed = readMatrixStreaming();
+        List<TimeMatrixEntry> tree = readMatrixTree();
+
+        assertEquals(40 * 40, streamed.size());
+        assertEquals(tree.size(), streamed.size());
+        for (int i = 0; i < tree.size(); i++) {
+            assertEquals(tree.get(i).getFromIndex(), streamed.get(i).getFromIndex());
+            assertEquals(tree.get(i).getToIndex(), streamed.get(i).getToIndex());
+            assertEquals(tree.get(i).getTime(), streamed.get(i).getTime());
+            assertEquals(tree.get(i).getDistance(), streamed.get(i).getDistance(), 0);
+        }
+    }
+
+    @Test
+    public void mapzenErrorStatusIsChecked() throws RoutingAPIException {
+        String error = "{\"error_code\":154,\"error\":\"Path distance exceeds the max distance limit\"," +
+                "\"status_code\":400,\"status\":\"Bad Request\"}";
+        try {
+            JsonStreams.read(body(error), "mapzen", new MapzenMatrixApiWrapper("key")
+                    .getSourcesToTargetsReader());
+            fail();
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.API_ERROR_BAD_REQUEST, e.getCode());
+        }
+    }
+
+    private List<TimeMatrixEntry> readMatrixStreaming() throws RoutingAPIException {
+        return JsonStreams.read(body(mapzenMatrix), "mapzen",
+                new MapzenMatrixApiWrapper("key").getSourcesToTargetsReader());
+    }
+
+    // the former reading of the wrappers
+    private static List<TimeMatrixEntry> readMatrixTree() {
+        JsonObject response = Json.createReader(body(mapzenMatrix).charStream()).readObject();
+        ArrayList<TimeMatrixEntry> out = new ArrayList<>();
+        for (JsonValue innerJsonValue : response.getJsonArray("sources_to_targets")) {
+            for (JsonValue value : (JsonArray) innerJsonValue) {
+                JsonObject jsonObject = (JsonObject) value;
+                out.add(new TimeMatrixEntry(jsonObject.getInt("from_index"), jsonObject.getInt("to_index"),
+                        jsonObject.getInt("time"), jsonObject.getJsonNumber("distance").doubleValue(),
+                        DistanceUnits.KILOMETERS));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return the body of a response, which is read from its UTF-8 bytes like the body of a real response
+     */
+    private static ResponseBody body(String json) {
+        return ResponseBody.create(null, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readResource(String name) throws Exception {
+        return new String(Files.readAllBytes(Paths.get(ResponseParsingTest.class.getResource(name).toURI())),
+                StandardCharsets.UTF_8);
+    }
+}
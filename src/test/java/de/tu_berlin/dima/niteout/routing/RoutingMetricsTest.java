@@ -0,0 +1,140 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.TransportMode;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the {@link LatencyHistogram} and the {@link DefaultRoutingMetrics} recorded by the wrappers and the
+ * {@link RoutingService}.
+ */
+public class RoutingMetricsTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+    private static final double UNTHROTTLED_RPS = 1_000_000;
+
+    private MockWebServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void histogramBucketsAreWithinThreePercent() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() & LatencyHistogram.MAX_VALUE >>> random.nextInt(44);
+            long upperBound = LatencyHistogram.upperBound(LatencyHistogram.bucket(value));
+            assertTrue(value <= upperBound);
+            assertTrue(upperBound <= value + value / 32);
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        histogram.record(-1);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(500_000, histogram.getValueAtPercentile(50), 500_000 / 32);
+        assertEquals(990_000, histogram.getValueAtPercentile(99), 990_000 / 32);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_500_000 / 1001.0, histogram.getMean(), 1);
+    }
+
+    @Test
+    public void hereWrapperRecordsRequestsRetriesAndErrors() throws Exception {
+        DefaultRoutingMetrics metrics = new DefaultRoutingMetrics();
+        HereWrapper hereWrapper = new HereWrapper("app-id", "app-code",
+                new HttpTransport.HttpTransportBuilder().metrics(metrics).build(),
+                new MatrixRequestExecutor.MatrixRequestExecutorBuilder(),
+                new RequestScheduler(new AdaptiveRateLimiter.AdaptiveRateLimiterBuilder()
+                        .initialRate(UNTHROTTLED_RPS)
+                        .bounds(UNTHROTTLED_RPS, UNTHROTTLED_RPS)
+                        .build()),
+                server.url("/calculateroute.json").toString());
+        String route = new String(Files.readAllBytes(Paths.get(getClass()
+                .getResource("/responses/here-public-transport-route.json").toURI())), StandardCharsets.UTF_8);
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse().setBody(route));
+        server.enqueue(new MockResponse().setBody("<html>Service Unavailable</html>"));
+
+        assertEquals(6393, hereWrapper.getPublicTransportTripTime(TU_BERLIN, ALEXANDERPLATZ, EVENING));
+        try {
+            hereWrapper.getPublicTransportTripTime(TU_BERLIN, ALEXANDERPLATZ, EVENING);
+            fail("the response is not json");
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON, e.getCode());
+        }
+
+        assertEquals(Collections.singleton("here.com"), metrics.getProviders());
+        assertEquals(Collections.singleton("calculateroute"), metrics.getEndpoints("here.com"));
+        assertEquals(3, metrics.getRequestLatency("here.com", "calculateroute").getCount());
+        assertEquals(3, metrics.getRateLimiterWait("here.com").getCount());
+        assertEquals(2, metrics.getParseTime("here.com", "calculateroute").getCount());
+        assertEquals(1, metrics.getErrorCount("here.com", "calculateroute",
+                RoutingAPIException.ErrorCode.API_ERROR_RATE_LIMITED));
+        assertEquals(1, metrics.getErrorCount("here.com", "calculateroute",
+                RoutingAPIException.ErrorCode.PROCESS_RESPONSE_ERROR_JSON));
+        // the api keys are not part of the metrics
+        assertFalse(metrics.toString().contains("app-code"));
+
+        // looking up metrics which were not recorded does not register the provider or endpoint
+        assertEquals(0, metrics.getRequestLatency("here.com", "matrix").getCount());
+        assertEquals(0, metrics.getParseTime("mapzen", "matrix").getCount());
+        assertEquals(0, metrics.getRateLimiterWait("mapzen").getCount());
+        assertEquals(0, metrics.getErrorCount("mapzen", "matrix", RoutingAPIException.ErrorCode.HTTP));
+        assertEquals(Collections.singleton("here.com"), metrics.getProviders());
+        assertEquals(Collections.singleton("calculateroute"), metrics.getEndpoints("here.com"));
+        assertFalse(metrics.toString().contains("mapzen"));
+    }
+
+    @Test
+    public void routingServiceRecordsCacheLookups() throws Exception {
+        DefaultRoutingMetrics metrics = new DefaultRoutingMetrics();
+        MapzenApiWrapper mapzenWrapper = new MapzenApiWrapper("key",
+                new HttpTransport.HttpTransportBuilder().metrics(metrics).build(),
+                server.url("/").toString() + "%s/%s");
+        RoutingService routingService = new RoutingService.RoutingServiceBuilder()
+                .walkingDirectionsAPI(mapzenWrapper)
+                .routeCache(new InMemoryRouteCache.InMemoryRouteCacheBuilder().build())
+                .metrics(metrics)
+                .build();
+        server.enqueue(new MockResponse().setBody("{\"trip\":{\"summary\":{\"time\":1234,\"length\":1.5}}}"));
+
+        assertEquals(1234, routingService.getTripTime(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING));
+        assertEquals(1234, routingService.getTripTime(TransportMode.WALKING, TU_BERLIN, ALEXANDERPLATZ, EVENING));
+
+        assertTrue(server.takeRequest().getPath().startsWith("/valhalla/route?"));
+        assertEquals(1, metrics.getRequestLatency("mapzen", "valhalla/route").getCount());
+        assertEquals(1, metrics.getParseTime("mapzen", "valhalla/route").getCount());
+        assertEquals(1, metrics.getCacheHitCount(TransportMode.WALKING));
+        assertEquals(1, metrics.getCacheMissCount(TransportMode.WALKING));
+        assertEquals(0.5, metrics.getCacheHitRatio(TransportMode.WALKING), 0);
+        assertEquals(1, metrics.getCacheHitRatio(TransportMode.PUBLIC_TRANSPORT), 0);
+    }
+}
@@ -0,0 +1,141 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link ServiceArea}, the {@link ServiceAreaIndex} and their use by the {@link RoutingService}.
+ */
+public class ServiceAreaTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+    private static final Location MUNICH = new Location(48.1374, 11.5755);
+    private static final Location PARIS = new Location(48.8566, 2.3522);
+
+    // a triangle between the Hauptbahnhof, Alexanderplatz and the Potsdamer Platz
+    private static final ServiceArea MITTE = new ServiceArea.ServiceAreaBuilder()
+            .name("Mitte")
+            .polygon(new Location(52.53, 13.36), new Location(52.525, 13.42), new Location(52.505, 13.375))
+            .build();
+
+    @Test
+    public void polygonContainsOnlyTheLocationsWithinIt() {
+        assertTrue(MITTE.contains(BRANDENBURGER_TOR));
+        assertTrue(MITTE.contains(HAUPTBAHNHOF));
+        assertFalse(MITTE.contains(TU_BERLIN));
+        // within the bounding box, but outside of the triangle
+        assertTrue(MITTE.getBoundingBox().contains(new Location(52.506, 13.415)));
+        assertFalse(MITTE.contains(new Location(52.506, 13.415)));
+    }
+
+    @Test
+    public void indexFindsTheFirstAreaContainingAllLocations() {
+        ServiceArea berlin = area("Berlin", BERLIN_BOUNDING_BOX);
+        ServiceArea munich = area("Munich", new BoundingBox(11.36, 48.06, 11.72, 48.25));
+        List<ServiceArea> areas = new ArrayList<>(Arrays.asList(MITTE, berlin, munich));
+        // areas all over Europe which are never found
+        for (int i = 0; i < 100; i++) {
+            areas.add(area("Elsewhere " + i, new BoundingBox(-5 + i * 0.3, 40, -4.9 + i * 0.3, 40.1)));
+        }
+        ServiceAreaIndex index = new ServiceAreaIndex(areas, ServiceAreaIndex.DEFAULT_CELL_SIZE_METERS);
+
+        assertSame(MITTE, index.find(HAUPTBAHNHOF));
+        assertSame(berlin, index.find(TU_BERLIN));
+        assertSame(munich, index.find(MUNICH));
+        assertNull(index.find(PARIS));
+        assertSame(MITTE, index.find(new Location[]{HAUPTBAHNHOF}, new Location[]{BRANDENBURGER_TOR}));
+        assertSame(berlin, index.find(new Location[]{HAUPTBAHNHOF}, new Location[]{TU_BERLIN, ALEXANDERPLATZ}));
+        assertNull(index.find(new Location[]{TU_BERLIN}, new Location[]{MUNICH}));
+    }
+
+    @Test
+    public void routingServiceRejectsAndRoutesByArea() throws Exception {
+        FixedPublicTransportWrapper berlinTimetable = new FixedPublicTransportWrapper(600);
+        FixedPublicTransportWrapper munichTimetable = new FixedPublicTransportWrapper(900);
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .serviceArea(new ServiceArea.ServiceAreaBuilder()
+                        .name("Berlin")
+                        .boundingBox(BERLIN_BOUNDING_BOX)
+                        .publicTransportWrapper(berlinTimetable)
+                        .build())
+                .serviceArea(new ServiceArea.ServiceAreaBuilder()
+                        .name("Munich")
+                        .boundingBox(new BoundingBox(11.36, 48.06, 11.72, 48.25))
+                        .publicTransportWrapper(munichTimetable)
+                        .build())
+                .build();
+
+        assertEquals(600, service.getTripTime(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, EVENING));
+        assertEquals(900, service.getTripTime(TransportMode.PUBLIC_TRANSPORT, MUNICH,
+                new Location(48.15, 11.58), EVENING));
+        try {
+            service.getTripTime(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, MUNICH, EVENING);
+            fail("no area contains both locations");
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.OUTSIDE_SERVICE_AREA, e.getCode());
+        }
+        try {
+            service.getTripTimeAsync(TransportMode.PUBLIC_TRANSPORT, PARIS, PARIS, EVENING).get();
+            fail("no area contains the locations");
+        } catch (ExecutionException e) {
+            assertEquals(RoutingAPIException.ErrorCode.OUTSIDE_SERVICE_AREA,
+                    ((RoutingAPIException) e.getCause()).getCode());
+        }
+        try {
+            service.getMatrix(TransportMode.PUBLIC_TRANSPORT, new Location[]{TU_BERLIN},
+                    new Location[]{ALEXANDERPLATZ, PARIS}, EVENING);
+            fail("no area contains all locations");
+        } catch (RoutingAPIException e) {
+            assertEquals(RoutingAPIException.ErrorCode.OUTSIDE_SERVICE_AREA, e.getCode());
+        }
+        assertEquals(1, berlinTimetable.calls);
+        assertEquals(1, munichTimetable.calls);
+    }
+
+    private static ServiceArea area(String name, BoundingBox boundingBox) {
+        return new ServiceArea.ServiceAreaBuilder()
+                .name(name)
+                .boundingBox(boundingBox)
+                .build();
+    }
+
+    /**
+     * Answers every trip with the same time.
+     */
+    private static class FixedPublicTransportWrapper implements PublicTransportWrapper {
+
+        private final int time;
+        int calls;
+
+        FixedPublicTransportWrapper(int time) {
+            this.time = time;
+        }
+
+        @Override
+        public int getPublicTransportTripTime(Location start, Location destination, LocalDateTime departure) {
+            calls++;
+            return time;
+        }
+
+        @Override
+        public RouteSummary getPublicTransportRouteSummary(Location start, Location destination,
+                                                           LocalDateTime departure) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<TimeMatrixEntry> getMultiModalMatrix(Location[] startLocations, Location[] destinationLocations,
+                                                         LocalDateTime departureTime) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link SingleFlight} and its use by the {@link RoutingService}.
+ */
+public class SingleFlightTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+
+    @Test
+    public void blockingCallersJoinTheFlightInTheAir() throws Exception {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CompletableFuture<Integer> upstream = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<Integer> leader = flights.executeAsync("trip", () -> {
+            calls.incrementAndGet();
+            return upstream;
+        });
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> followers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            followers.add(threads.submit(() -> flights.execute("trip", () -> calls.incrementAndGet())));
+        }
+        // give the followers time to join
+        Thread.sleep(200);
+        upstream.complete(600);
+
+        assertEquals(600, (int) leader.get());
+        for (Future<Integer> follower : followers) {
+            assertEquals(600, (int) follower.get());
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flights.getFlightCount());
+        threads.shutdown();
+
+        // the flight has landed, so the next caller starts a new one
+        assertEquals(2, (int) flights.execute("trip", calls::incrementAndGet));
+    }
+
+    @Test
+    public void followersShareTheFailureOfTheLeader() throws InterruptedException {
+        SingleFlight<String, Integer> flights = new SingleFlight<>();
+        CompletableFuture<Integer> upstream = new CompletableFuture<>();
+        CompletableFuture<Integer> leader = flights.executeAsync("trip", () -> upstream);
+        CompletableFuture<Integer> follower = flights.executeAsync("trip", () -> {
+            throw new AssertionError("the follower must not call the api");
+        });
+
+        upstream.completeExceptionally(
+                new RoutingAPIException(RoutingAPIException.ErrorCode.API_ERROR_RATE_LIMITED));
+        for (CompletableFuture<Integer> future : Arrays.asList(leader, follower)) {
+            try {
+                future.get();
+                fail("the flight failed");
+            } catch (ExecutionException e) {
+                assertEquals(RoutingAPIException.ErrorCode.API_ERROR_RATE_LIMITED,
+                        ((RoutingAPIException) e.getCause()).getCode());
+            }
+        }
+    }
+
+    @Test
+    public void routingServiceCoalescesIdenticalRequests() throws Exception {
+        PendingPublicTransportWrapper publicTransport = new PendingPublicTransportWrapper();
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .publicTransportWrapper(publicTransport)
+                .build();
+
+        List<CompletableFuture<Integer>> tripTimes = new ArrayList<>();
+        for (int second = 0; second < 5; second++) {
+            tripTimes.add(service.getTripTimeAsync(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ,
+                    EVENING.plusSeconds(second * 10)));
+        }
+        // another minute and another destination are other requests
+        service.getTripTimeAsync(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, ALEXANDERPLATZ, EVENING.plusMinutes(1));
+        service.getTripTimeAsync(TransportMode.PUBLIC_TRANSPORT, TU_BERLIN, HAUPTBAHNHOF, EVENING);
+        assertEquals(3, publicTransport.tripTimeCalls.get());
+
+        publicTransport.tripTime.complete(1200);
+        for (CompletableFuture<Integer> tripTime : tripTimes) {
+            assertEquals(1200, (int) tripTime.get());
+        }
+
+        CompletableFuture<RouteSummary> first = service.getRouteSummaryAsync(TransportMode.PUBLIC_TRANSPORT,
+                TU_BERLIN, ALEXANDERPLATZ, EVENING);
+        CompletableFuture<RouteSummary> second = service.getRouteSummaryAsync(TransportMode.PUBLIC_TRANSPORT,
+                TU_BERLIN, ALEXANDERPLATZ, EVENING);
+        RouteSummary summary = new RouteSummary();
+        summary.setTotalDuration(1200);
+        publicTransport.routeSummary.complete(summary);
+
+        assertEquals(1, publicTransport.routeSummaryCalls.get());
+        assertEquals(1200, second.get().getTotalDuration());
+        // summaries are mutable, so every caller gets its own
+        assertNotSame(first.get(), second.get());
+    }
+
+    /**
+     * Answers the first asynchronous request of each kind with a future completed by the test, and all later ones
+     * with futures which never complete.
+     */
+    private static class PendingPublicTransportWrapper implements PublicTransportWrapper {
+
+        final AtomicInteger tripTimeCalls = new AtomicInteger();
+        final AtomicInteger routeSummaryCalls = new AtomicInteger();
+        final CompletableFuture<Integer> tripTime = new CompletableFuture<>();
+        final CompletableFuture<RouteSummary> routeSummary = new CompletableFuture<>();
+
+        @Override
+        public int getPublicTransportTripTime(Location start, Location destination, LocalDateTime departure) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RouteSummary getPublicTransportRouteSummary(Location start, Location destination,
+                                                           LocalDateTime departure) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<TimeMatrixEntry> getMultiModalMatrix(Location[] startLocations, Location[] destinationLocations,
+                                                         LocalDateTime departureTime) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<Integer> getPublicTransportTripTimeAsync(Location start, Location destination,
+                                                                          LocalDateTime departure) {
+            return tripTimeCalls.getAndIncrement() == 0 ? tripTime : new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<RouteSummary> getPublicTransportRouteSummaryAsync(Location start,
+                                                                                   Location destination,
+                                                                                   LocalDateTime departure) {
+            return routeSummaryCalls.getAndIncrement() == 0 ? routeSummary : new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.Location;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link SpatialGrid} and {@link SpatialKey}.
+ */
+public class SpatialGridTest {
+
+    private final SpatialGrid grid = new SpatialGrid(25);
+
+    @Test
+    public void nearlyIdenticalLocationsShareACell() {
+        Location center = grid.center(grid.pack(TU_BERLIN.getLatitude(), TU_BERLIN.getLongitude()));
+        Location nearCenter = new Location(center.getLatitude() + 0.00005, center.getLongitude() - 0.00005);
+
+        assertEquals(grid.snap(center), grid.snap(nearCenter));
+        assertEquals(grid.snap(center).hashCode(), grid.snap(nearCenter).hashCode());
+        assertNotEquals(grid.snap(TU_BERLIN), grid.snap(ALEXANDERPLATZ));
+    }
+
+    @Test
+    public void cellsAreAtLeastTheCellSizeWide() {
+        for (Location location : new Location[]{TU_BERLIN, new Location(-33.9, 18.4), new Location(64.1, -21.9)}) {
+            Location center = grid.center(grid.pack(location.getLatitude(), location.getLongitude()));
+            // 12 m from the center in each direction is still within a cell of 25 m
+            double latitudeOffset = 12 / GeoMath.METERS_PER_DEGREE_LATITUDE;
+            double longitudeOffset = 12 / GeoMath.metersPerDegreeLongitude(center.getLatitude());
+            for (int sign = -1; sign <= 1; sign += 2) {
+                assertEquals(grid.snap(center), grid.snap(new Location(center.getLatitude() + sign * latitudeOffset,
+                        center.getLongitude())));
+                assertEquals(grid.snap(center), grid.snap(new Location(center.getLatitude(),
+                        center.getLongitude() + sign * longitudeOffset)));
+            }
+        }
+    }
+
+    @Test
+    public void packedCellsConvertWithoutLoss() {
+        for (Location location : new Location[]{TU_BERLIN, new Location(-33.9, -70.6), new Location(0, 0)}) {
+            SpatialKey key = grid.snap(location);
+            assertEquals(key, SpatialKey.fromLong(key.toLong()));
+            assertEquals(key.toLong(), SpatialGrid.cell(key.getRow(), key.getColumn()));
+            assertEquals(key, grid.snap(grid.center(key.toLong())));
+        }
+        assertEquals(-1, SpatialGrid.row(SpatialGrid.cell(-1, -2)));
+        assertEquals(-2, SpatialGrid.column(SpatialGrid.cell(-1, -2)));
+    }
+
+    @Test
+    public void neighbourhoodContainsAllLocationsWithinTheCellSize() {
+        for (int bearing = 0; bearing < 360; bearing += 15) {
+            double latitude = TU_BERLIN.getLatitude() + 24 * Math.cos(Math.toRadians(bearing)) /
+                    GeoMath.METERS_PER_DEGREE_LATITUDE;
+            double longitude = TU_BERLIN.getLongitude() + 24 * Math.sin(Math.toRadians(bearing)) /
+                    GeoMath.metersPerDegreeLongitude(TU_BERLIN.getLatitude());
+            long[] neighbourhood = grid.neighbourhood(TU_BERLIN.getLatitude(), TU_BERLIN.getLongitude());
+            long cell = grid.pack(latitude, longitude);
+            assertTrue(Arrays.stream(neighbourhood).anyMatch(neighbour -> neighbour == cell));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link WalkingDirectionsAPI} for tests, which walks at a meter per second along the straight line between the
+ * locations. It counts the requests, records the locations of the matrices and can reject the first matrices.
+ */
+class StraightLineWalkingDirectionsAPI implements WalkingDirectionsAPI {
+
+    /** the trips and route summaries requested so far */
+    final AtomicInteger calls = new AtomicInteger();
+    /** the matrices requested so far, including the rejected ones */
+    final AtomicInteger matrices = new AtomicInteger();
+    /** the cells of the matrices returned so far */
+    final AtomicInteger matrixCells = new AtomicInteger();
+    /** the start locations of all matrices returned so far */
+    final List<Location> startLocations = Collections.synchronizedList(new ArrayList<>());
+    /** the destination locations of all matrices returned so far */
+    final List<Location> destinationLocations = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile int failingMatrices;
+    private volatile RoutingAPIException.ErrorCode failure;
+
+    /**
+     * @return the time in seconds of walking the straight line between the locations
+     */
+    static int time(Location start, Location destination) {
+        return (int) GeoMath.haversineMeters(start, destination);
+    }
+
+    /**
+     * Rejects the first matrices that are requested.
+     * @param count the number of matrices to reject, counted from the first matrix requested
+     * @param code the error the matrices are rejected with
+     */
+    StraightLineWalkingDirectionsAPI failFirstMatrices(int count, RoutingAPIException.ErrorCode code) {
+        this.failingMatrices = count;
+        this.failure = code;
+        return this;
+    }
+
+    @Override
+    public int getWalkingTripTime(Location startLocation, Location destinationLocation) {
+        calls.incrementAndGet();
+        return time(startLocation, destinationLocation);
+    }
+
+    @Override
+    public int getWalkingTripTime(Location startLocation, Location destinationLocation, LocalDateTime startTime) {
+        return getWalkingTripTime(startLocation, destinationLocation);
+    }
+
+    @Override
+    public RouteSummary getWalkingRouteSummary(Location start, Location destination) {
+        return getWalkingRouteSummary(start, destination, null);
+    }
+
+    @Override
+    public RouteSummary getWalkingRouteSummary(Location start, Location destination, LocalDateTime departureTime) {
+        int time = getWalkingTripTime(start, destination);
+        RouteSummary summary = new RouteSummary();
+        summary.setTotalDuration(time);
+        summary.setTotalDistance(time / 1000.0);
+        summary.setDepartureTime(departureTime);
+        summary.setArrivalTime(departureTime == null ? null : departureTime.plusSeconds(time));
+        HashMap<TransportMode, Integer> times = new HashMap<>();
+        times.put(TransportMode.WALKING, time);
+        summary.setModeOfTransportTravelTimes(times);
+        return summary;
+    }
+
+    @Override
+    public List<TimeMatrixEntry> getWalkingMatrix(Location[] startLocations,
+                                                  Location[] destinationLocations) throws RoutingAPIException {
+        if (matrices.incrementAndGet() <= failingMatrices) {
+            throw new RoutingAPIException(failure);
+        }
+        this.startLocations.addAll(Arrays.asList(startLocations));
+        this.destinationLocations.addAll(Arrays.asList(destinationLocations));
+        List<TimeMatrixEntry> matrix = new ArrayList<>();
+        for (int i = 0; i < startLocations.length; i++) {
+            for (int j = 0; j < destinationLocations.length; j++) {
+                matrixCells.incrementAndGet();
+                int time = time(startLocations[i], destinationLocations[j]);
+                matrix.add(new TimeMatrixEntry(i, j, time, time / 1000.0, DistanceUnits.KILOMETERS));
+            }
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,85 @@
+package de.tu_berlin.dima.niteout.routing;
+
+import de.tu_berlin.dima.niteout.routing.model.*;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import static de.tu_berlin.dima.niteout.routing.LocationDirectory.*;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link WalkingTimeBounds} and the walking matrices of the {@link RoutingService} within a time.
+ */
+public class WalkingTimeBoundsTest {
+
+    private static final LocalDateTime EVENING = LocalDateTime.of(2017, 2, 10, 20, 0);
+
+    @Test
+    public void candidatesAreThePairsWhoseLowerBoundIsWithinTheTime() {
+        WalkingTimeBounds bounds = new WalkingTimeBounds(5.1);
+        Random random = new Random(42);
+        Location[] starts = randomLocations(random, 40);
+        Location[] destinations = randomLocations(random, 60);
+
+        WalkingTimeBounds.Candidates candidates = bounds.candidates(starts, destinations, 1200);
+        int count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            for (int j = 0; j < destinations.length; j++) {
+                int lowerBound = bounds.lowerBound(starts[i], destinations[j]);
+                assertEquals(lowerBound + "s", lowerBound <= 1200, candidates.isCandidate(i, j));
+                count += candidates.isCandidate(i, j) ? 1 : 0;
+            }
+        }
+        assertTrue(count > 0 && count < starts.length * destinations.length);
+        // 1.7 km take 20 minutes at 5.1 km/h
+        assertEquals(1200, bounds.lowerBound(TU_BERLIN, new Location(TU_BERLIN.getLatitude() + 1701
+                / GeoMath.METERS_PER_DEGREE_LATITUDE, TU_BERLIN.getLongitude())));
+    }
+
+    @Test
+    public void routingServiceRequestsOnlyTheCandidates() throws RoutingAPIException {
+        StraightLineWalkingDirectionsAPI walking = new StraightLineWalkingDirectionsAPI();
+        RoutingService service = new RoutingService.RoutingServiceBuilder()
+                .walkingDirectionsAPI(walking)
+                .build();
+        Location[] starts = {TU_BERLIN, HAUPTBAHNHOF};
+        Location[] venues = {ALEXANDERPLATZ, SIEGESSAEULE, BRANDENBURGER_TOR, POTSDAMER_PLATZ};
+
+        // the straight lines within 2.4 km may be walked in 1700 seconds, Alexanderplatz is farther from both starts
+        TravelTimeMatrix matrix = service.getTravelTimeMatrix(TransportMode.WALKING, starts, venues, EVENING, 1700);
+
+        assertEquals(Arrays.asList(TU_BERLIN, HAUPTBAHNHOF), walking.startLocations);
+        assertEquals(Arrays.asList(SIEGESSAEULE, BRANDENBURGER_TOR, POTSDAMER_PLATZ), walking.destinationLocations);
+        assertEquals(2, matrix.getRowCount());
+        assertEquals(4, matrix.getColumnCount());
+        for (int i = 0; i < starts.length; i++) {
+            for (int j = 0; j < venues.length; j++) {
+                int time = StraightLineWalkingDirectionsAPI.time(starts[i], venues[j]);
+                assertEquals(time <= 1700, matrix.hasCell(i, j));
+                if (matrix.hasCell(i, j)) {
+                    assertEquals(time, matrix.time(i, j));
+                }
+            }
+        }
+        // requested along with the others, but slower than the time
+        assertTrue(matrix.hasCell(0, 1));
+        assertFalse(matrix.hasCell(1, 1));
+
+        walking.startLocations.clear();
+        matrix = service.getTravelTimeMatrix(TransportMode.WALKING, new Location[]{TU_BERLIN},
+                new Location[]{ALEXANDERPLATZ}, EVENING, 1700);
+        assertTrue(walking.startLocations.isEmpty());
+        assertFalse(matrix.hasCell(0, 0));
+    }
+
+    private static Location[] randomLocations(Random random, int count) {
+        Location[] locations = new Location[count];
+        for (int i = 0; i < count; i++) {
+            locations[i] = new Location(52.45 + random.nextDouble() * 0.1, 13.3 + random.nextDouble() * 0.15);
+        }
+        return locations;
+    }
+}
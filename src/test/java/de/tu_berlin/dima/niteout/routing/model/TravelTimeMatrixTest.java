@@ -0,0 +1,71 @@
+package de.tu_berlin.dima.niteout.routing.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link TravelTimeMatrix}.
+ */
+public class TravelTimeMatrixTest {
+
+    @Test
+    public void cellsAreMissingUntilTheyAreSet() {
+        TravelTimeMatrix matrix = new TravelTimeMatrix(2, 3, DistanceUnits.KILOMETERS);
+        assertFalse(matrix.hasCell(1, 2));
+        assertEquals(TravelTimeMatrix.MISSING, matrix.time(1, 2));
+        assertTrue(Float.isNaN(matrix.distance(1, 2)));
+
+        matrix.set(1, 2, 600, 0.75);
+        assertTrue(matrix.hasCell(1, 2));
+        assertEquals(600, matrix.time(1, 2));
+        assertEquals(0.75, matrix.distance(1, 2), 0);
+        assertEquals(1, matrix.getCellCount());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void cellsOutsideTheMatrixAreRejected() {
+        new TravelTimeMatrix(2, 3, DistanceUnits.KILOMETERS).time(0, 3);
+    }
+
+    @Test
+    public void entriesLeaveOutTheMissingCells() {
+        TravelTimeMatrix matrix = new TravelTimeMatrix(2, 2, DistanceUnits.KILOMETERS);
+        matrix.set(0, 1, 60, 0.1);
+        matrix.set(1, 0, 120, 0.2);
+
+        List<TimeMatrixEntry> entries = matrix.asEntries();
+        assertEquals(2, entries.size());
+        assertEquals(0, entries.get(0).getFromIndex());
+        assertEquals(1, entries.get(0).getToIndex());
+        assertEquals(1, entries.get(1).getFromIndex());
+        assertEquals(0, entries.get(1).getToIndex());
+        assertEquals(120, entries.get(1).getTime());
+        assertEquals(DistanceUnits.KILOMETERS, entries.get(1).getUnits());
+
+        matrix.set(0, 0, 0, 0);
+        matrix.set(1, 1, 0, 0);
+        assertEquals(4, matrix.asEntries().size());
+        assertEquals(60, matrix.asEntries().get(1).getTime());
+    }
+
+    @Test
+    public void entriesCanBeAdaptedToAMatrix() {
+        TravelTimeMatrix matrix = TravelTimeMatrix.fromEntries(1, 2, DistanceUnits.KILOMETERS, Arrays.asList(
+                new TimeMatrixEntry(0, 1, 300, 2.5, DistanceUnits.MILES)));
+        assertEquals(DistanceUnits.MILES, matrix.getUnits());
+        assertFalse(matrix.hasCell(0, 0));
+        assertEquals(300, matrix.time(0, 1));
+        assertEquals(2.5, matrix.distance(0, 1), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void entriesInDifferentUnitsAreRejected() {
+        TravelTimeMatrix.fromEntries(1, 2, DistanceUnits.KILOMETERS, Arrays.asList(
+                new TimeMatrixEntry(0, 0, 300, 2.5, DistanceUnits.MILES),
+                new TimeMatrixEntry(0, 1, 300, 4, DistanceUnits.KILOMETERS)));
+    }
+}